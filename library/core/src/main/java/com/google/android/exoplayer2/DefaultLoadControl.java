@@ -70,7 +70,7 @@ public class DefaultLoadControl implements LoadControl {
   /** Builder for {@link DefaultLoadControl}. */
   public static final class Builder {
 
-    private DefaultAllocator allocator;
+    private Allocator allocator;
     private int minBufferAudioMs;
     private int minBufferVideoMs;
     private int maxBufferMs;
@@ -103,6 +103,18 @@ public class DefaultLoadControl implements LoadControl {
      * @throws IllegalStateException If {@link #createDefaultLoadControl()} has already been called.
      */
     public Builder setAllocator(DefaultAllocator allocator) {
+      return setAllocator((Allocator) allocator);
+    }
+
+    /**
+     * Sets the {@link Allocator} used by the loader. Its target buffer size is set to the target
+     * buffer size of the load control, and it's reset when the player is stopped or released.
+     *
+     * @param allocator The {@link Allocator}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createDefaultLoadControl()} has already been called.
+     */
+    public Builder setAllocator(Allocator allocator) {
       Assertions.checkState(!createDefaultLoadControlCalled);
       this.allocator = allocator;
       return this;
@@ -215,7 +227,7 @@ public class DefaultLoadControl implements LoadControl {
     }
   }
 
-  private final DefaultAllocator allocator;
+  private final Allocator allocator;
 
   private final long minBufferAudioUs;
   private final long minBufferVideoUs;
@@ -240,6 +252,12 @@ public class DefaultLoadControl implements LoadControl {
   /** @deprecated Use {@link Builder} instead. */
   @Deprecated
   public DefaultLoadControl(DefaultAllocator allocator) {
+    this((Allocator) allocator);
+  }
+
+  /** @deprecated Use {@link Builder} instead. */
+  @Deprecated
+  public DefaultLoadControl(Allocator allocator) {
     this(
         allocator,
         /* minBufferAudioMs= */ DEFAULT_MIN_BUFFER_MS,
@@ -263,6 +281,26 @@ public class DefaultLoadControl implements LoadControl {
       int bufferForPlaybackAfterRebufferMs,
       int targetBufferBytes,
       boolean prioritizeTimeOverSizeThresholds) {
+    this(
+        (Allocator) allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds);
+  }
+
+  /** @deprecated Use {@link Builder} instead. */
+  @Deprecated
+  public DefaultLoadControl(
+      Allocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds) {
     this(
         allocator,
         /* minBufferAudioMs= */ minBufferMs,
@@ -287,6 +325,30 @@ public class DefaultLoadControl implements LoadControl {
       boolean prioritizeTimeOverSizeThresholds,
       int backBufferDurationMs,
       boolean retainBackBufferFromKeyframe) {
+    this(
+        (Allocator) allocator,
+        minBufferAudioMs,
+        minBufferVideoMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        backBufferDurationMs,
+        retainBackBufferFromKeyframe);
+  }
+
+  protected DefaultLoadControl(
+      Allocator allocator,
+      int minBufferAudioMs,
+      int minBufferVideoMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe) {
     assertGreaterOrEqual(bufferForPlaybackMs, 0, "bufferForPlaybackMs", "0");
     assertGreaterOrEqual(
         bufferForPlaybackAfterRebufferMs, 0, "bufferForPlaybackAfterRebufferMs", "0");
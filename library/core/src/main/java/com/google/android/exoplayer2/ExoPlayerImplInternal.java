@@ -85,6 +85,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private static final int PREPARING_SOURCE_INTERVAL_MS = 10;
   private static final int RENDERING_INTERVAL_MS = 10;
+  private static final int MAX_RENDERING_INTERVAL_MS = 100;
   private static final int IDLE_INTERVAL_MS = 1000;
 
   private final Renderer[] renderers;
@@ -570,12 +571,23 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     boolean renderersEnded = true;
     boolean renderersReadyOrEnded = true;
+    long durationToProgressUs = C.TIME_UNSET;
     for (Renderer renderer : enabledRenderers) {
-      // TODO: Each renderer should return the maximum delay before which it wishes to be called
-      // again. The minimum of these values should then be used as the delay before the next
-      // invocation of this method.
       renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
       renderersEnded = renderersEnded && renderer.isEnded();
+      if (!renderer.isEnded()) {
+        // A renderer that's read its stream to the end may be waiting for the next period's stream,
+        // which is only set during this method, so don't let it defer the next invocation.
+        long rendererDurationToProgressUs =
+            renderer.hasReadStreamToEnd() && !renderer.isCurrentStreamFinal()
+                ? Renderer.DEFAULT_DURATION_TO_PROGRESS_US
+                : renderer.getDurationToProgressUs(
+                    rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        durationToProgressUs =
+            durationToProgressUs == C.TIME_UNSET
+                ? rendererDurationToProgressUs
+                : Math.min(durationToProgressUs, rendererDurationToProgressUs);
+      }
       // Determine whether the renderer is ready (or ended). We override to assume the renderer is
       // ready if it needs the next sample stream. This is necessary to avoid getting stuck if
       // tracks in the current period have uneven durations. See:
@@ -617,8 +629,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
       }
     }
 
-    if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
-        || playbackInfo.playbackState == Player.STATE_BUFFERING) {
+    if (playWhenReady && playbackInfo.playbackState == Player.STATE_READY) {
+      scheduleNextWork(operationStartTimeMs, getRenderingIntervalMs(durationToProgressUs));
+    } else if (playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      // Renderers aren't notified when more data becomes available, so poll them.
       scheduleNextWork(operationStartTimeMs, RENDERING_INTERVAL_MS);
     } else if (enabledRenderers.length != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
       scheduleNextWork(operationStartTimeMs, IDLE_INTERVAL_MS);
@@ -634,6 +648,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
     handler.sendEmptyMessageAtTime(MSG_DO_SOME_WORK, thisOperationStartTimeMs + intervalMs);
   }
 
+  /**
+   * Returns the interval after which to next do some work whilst playing, given the minimum of the
+   * durations after which the renderers that haven't ended will be able to make progress, or {@link
+   * C#TIME_UNSET} if all renderers have ended.
+   */
+  private static long getRenderingIntervalMs(long durationToProgressUs) {
+    if (durationToProgressUs == C.TIME_UNSET) {
+      return RENDERING_INTERVAL_MS;
+    }
+    return Util.constrainValue(
+        durationToProgressUs / 1000, RENDERING_INTERVAL_MS, MAX_RENDERING_INTERVAL_MS);
+  }
+
   private void seekToInternal(SeekPosition seekPosition) throws ExoPlaybackException {
     playbackInfoUpdate.incrementPendingOperationAcks(/* operationAcks= */ 1);
 
@@ -61,6 +61,12 @@ public interface Renderer extends PlayerMessage.Target {
    */
   int STATE_STARTED = 2;
 
+  /**
+   * The duration returned by {@link #getDurationToProgressUs(long, long)} by renderers that can't
+   * predict when they'll next be able to make progress.
+   */
+  long DEFAULT_DURATION_TO_PROGRESS_US = 10000;
+
   /**
    * Returns the track type that the {@link Renderer} handles. For example, a video renderer will
    * return {@link C#TRACK_TYPE_VIDEO}, an audio renderer will return {@link C#TRACK_TYPE_AUDIO}, a
@@ -246,6 +252,30 @@ public interface Renderer extends PlayerMessage.Target {
    */
   void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException;
 
+  /**
+   * Returns the amount of elapsed real time that should pass before the next call to {@link
+   * #render(long, long)} is able to make progress. For example, a video renderer holding a decoded
+   * frame that isn't due to be released yet may return the time until the frame can be released.
+   * The player calls {@link #render(long, long)} again after the minimum of the durations returned
+   * by its renderers, so a renderer that can't predict when it'll next be able to make progress
+   * should return {@link #DEFAULT_DURATION_TO_PROGRESS_US}.
+   *
+   * <p>This method is called immediately after {@link #render(long, long)}, and is only used to
+   * schedule rendering whilst the renderer is in the {@link #STATE_STARTED} state.
+   *
+   * <p>The default implementation returns {@link #DEFAULT_DURATION_TO_PROGRESS_US}.
+   *
+   * @param positionUs The current media time in microseconds, as passed to the preceding call to
+   *     {@link #render(long, long)}.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds,
+   *     measured at the start of the current iteration of the rendering loop.
+   * @return The amount of elapsed real time after which the renderer will next be able to make
+   *     progress, in microseconds.
+   */
+  default long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    return DEFAULT_DURATION_TO_PROGRESS_US;
+  }
+
   /**
    * Whether the renderer is able to immediately render media from the current position.
    * <p>
@@ -96,6 +96,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   private boolean allowPositionDiscontinuity;
   private long lastInputTimeUs;
   private int pendingStreamChangeCount;
+  private long rejectedOutputBufferPresentationTimeUs;
 
   /**
    * @param context A context.
@@ -294,6 +295,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     this.context = context.getApplicationContext();
     this.audioSink = audioSink;
     lastInputTimeUs = C.TIME_UNSET;
+    rejectedOutputBufferPresentationTimeUs = C.TIME_UNSET;
     pendingStreamChangeTimesUs = new long[MAX_PENDING_STREAM_CHANGE_COUNT];
     eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     audioSink.setListener(new AudioSinkListener());
@@ -629,6 +631,24 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     }
   }
 
+  @Override
+  public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    rejectedOutputBufferPresentationTimeUs = C.TIME_UNSET;
+    super.render(positionUs, elapsedRealtimeUs);
+  }
+
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (rejectedOutputBufferPresentationTimeUs == C.TIME_UNSET) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink is full, and holds the audio up to the start of the buffer it rejected. Top it up
+    // once half of that audio has been played, so that it doesn't underrun.
+    long bufferedDurationUs = rejectedOutputBufferPresentationTimeUs - positionUs;
+    float speed = audioSink.getPlaybackParameters().speed;
+    return Math.max(0, (long) (bufferedDurationUs / 2 / speed));
+  }
+
   @Override
   public boolean isEnded() {
     return super.isEnded() && audioSink.isEnded();
@@ -728,6 +748,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     } catch (AudioSink.InitializationException | AudioSink.WriteException e) {
       throw ExoPlaybackException.createForRenderer(e, getIndex());
     }
+    rejectedOutputBufferPresentationTimeUs = bufferPresentationTimeUs;
     return false;
   }
 
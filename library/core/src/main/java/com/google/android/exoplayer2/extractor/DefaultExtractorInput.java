@@ -15,13 +15,14 @@
  */
 package com.google.android.exoplayer2.extractor;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 /**
  * An {@link ExtractorInput} that wraps a {@link DataSource}.
@@ -31,6 +32,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
   private static final int PEEK_MIN_FREE_SPACE_AFTER_RESIZE = 64 * 1024;
   private static final int PEEK_MAX_FREE_SPACE = 512 * 1024;
   private static final int SCRATCH_SPACE_SIZE = 4096;
+  private static final int BYTE_BUFFER_READ_SCRATCH_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
 
   private final byte[] scratchSpace;
   private final DataSource dataSource;
@@ -38,8 +40,13 @@ public final class DefaultExtractorInput implements ExtractorInput {
 
   private long position;
   private byte[] peekBuffer;
+  // The peeked data that's yet to be read starts at peekBufferOffset. The peek position and length
+  // are relative to it, so that reading peeked data doesn't require the rest to be moved.
+  private int peekBufferOffset;
   private int peekBufferPosition;
   private int peekBufferLength;
+  @Nullable private byte[] byteBufferReadScratch;
+  private long bytesCopied;
 
   /**
    * @param dataSource The wrapped {@link DataSource}.
@@ -64,6 +71,16 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer target, int length) throws IOException, InterruptedException {
+    int bytesRead = readFromPeekBuffer(target, length);
+    if (bytesRead == 0) {
+      bytesRead = readFromDataSource(target, length);
+    }
+    commitBytesRead(bytesRead);
+    return bytesRead;
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
@@ -116,7 +133,8 @@ public final class DefaultExtractorInput implements ExtractorInput {
     if (!advancePeekPosition(length, allowEndOfInput)) {
       return false;
     }
-    System.arraycopy(peekBuffer, peekBufferPosition - length, target, offset, length);
+    System.arraycopy(
+        peekBuffer, peekBufferOffset + peekBufferPosition - length, target, offset, length);
     return true;
   }
 
@@ -132,8 +150,13 @@ public final class DefaultExtractorInput implements ExtractorInput {
     ensureSpaceForPeek(length);
     int bytesPeeked = peekBufferLength - peekBufferPosition;
     while (bytesPeeked < length) {
-      bytesPeeked = readFromDataSource(peekBuffer, peekBufferPosition, length, bytesPeeked,
-          allowEndOfInput);
+      bytesPeeked =
+          readFromDataSource(
+              peekBuffer,
+              peekBufferOffset + peekBufferPosition,
+              length,
+              bytesPeeked,
+              allowEndOfInput);
       if (bytesPeeked == C.RESULT_END_OF_INPUT) {
         return false;
       }
@@ -175,17 +198,30 @@ public final class DefaultExtractorInput implements ExtractorInput {
     throw e;
   }
 
+  @Override
+  public long getBytesCopied() {
+    return bytesCopied;
+  }
+
   /**
    * Ensures {@code peekBuffer} is large enough to store at least {@code length} bytes from the
    * current peek position.
    */
   private void ensureSpaceForPeek(int length) {
     int requiredLength = peekBufferPosition + length;
+    if (peekBufferOffset + requiredLength <= peekBuffer.length) {
+      return;
+    }
     if (requiredLength > peekBuffer.length) {
       int newPeekCapacity = Util.constrainValue(peekBuffer.length * 2,
           requiredLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE, requiredLength + PEEK_MAX_FREE_SPACE);
-      peekBuffer = Arrays.copyOf(peekBuffer, newPeekCapacity);
+      byte[] newPeekBuffer = new byte[newPeekCapacity];
+      System.arraycopy(peekBuffer, peekBufferOffset, newPeekBuffer, 0, peekBufferLength);
+      peekBuffer = newPeekBuffer;
+    } else {
+      System.arraycopy(peekBuffer, peekBufferOffset, peekBuffer, 0, peekBufferLength);
     }
+    peekBufferOffset = 0;
   }
 
   /**
@@ -213,8 +249,27 @@ public final class DefaultExtractorInput implements ExtractorInput {
       return 0;
     }
     int peekBytes = Math.min(peekBufferLength, length);
-    System.arraycopy(peekBuffer, 0, target, offset, peekBytes);
+    System.arraycopy(peekBuffer, peekBufferOffset, target, offset, peekBytes);
+    updatePeekBuffer(peekBytes);
+    bytesCopied += peekBytes;
+    return peekBytes;
+  }
+
+  /**
+   * Reads from the peek buffer into a {@link ByteBuffer}.
+   *
+   * @param target A target buffer into which data should be written.
+   * @param length The maximum number of bytes to read from the peek buffer.
+   * @return The number of bytes read.
+   */
+  private int readFromPeekBuffer(ByteBuffer target, int length) {
+    if (peekBufferLength == 0) {
+      return 0;
+    }
+    int peekBytes = Math.min(peekBufferLength, length);
+    target.put(peekBuffer, peekBufferOffset, peekBytes);
     updatePeekBuffer(peekBytes);
+    bytesCopied += peekBytes;
     return peekBytes;
   }
 
@@ -226,12 +281,13 @@ public final class DefaultExtractorInput implements ExtractorInput {
   private void updatePeekBuffer(int bytesConsumed) {
     peekBufferLength -= bytesConsumed;
     peekBufferPosition = 0;
-    byte[] newPeekBuffer = peekBuffer;
+    peekBufferOffset = peekBufferLength == 0 ? 0 : peekBufferOffset + bytesConsumed;
     if (peekBufferLength < peekBuffer.length - PEEK_MAX_FREE_SPACE) {
-      newPeekBuffer = new byte[peekBufferLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
+      byte[] newPeekBuffer = new byte[peekBufferLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
+      System.arraycopy(peekBuffer, peekBufferOffset, newPeekBuffer, 0, peekBufferLength);
+      peekBuffer = newPeekBuffer;
+      peekBufferOffset = 0;
     }
-    System.arraycopy(peekBuffer, bytesConsumed, newPeekBuffer, 0, peekBufferLength);
-    peekBuffer = newPeekBuffer;
   }
 
   /**
@@ -267,6 +323,37 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesAlreadyRead + bytesRead;
   }
 
+  /**
+   * Reads from the data source into a {@link ByteBuffer}. The data is read directly into the
+   * buffer if the data source supports it, and via an intermediate array otherwise.
+   *
+   * @param target A target buffer into which data should be written.
+   * @param length The maximum number of bytes to read from the input.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the input has ended.
+   * @throws IOException If an error occurs reading from the input.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  private int readFromDataSource(ByteBuffer target, int length)
+      throws InterruptedException, IOException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    if (dataSource.supportsByteBufferReads()) {
+      return dataSource.read(target, length);
+    }
+    if (byteBufferReadScratch == null) {
+      byteBufferReadScratch = new byte[BYTE_BUFFER_READ_SCRATCH_SIZE];
+    }
+    int bytesRead =
+        dataSource.read(
+            byteBufferReadScratch, 0, Math.min(length, BYTE_BUFFER_READ_SCRATCH_SIZE));
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      target.put(byteBufferReadScratch, 0, bytesRead);
+      bytesCopied += bytesRead;
+    }
+    return bytesRead;
+  }
+
   /**
    * Advances the position by the specified number of bytes read.
    *
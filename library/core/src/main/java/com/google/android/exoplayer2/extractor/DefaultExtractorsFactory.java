@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.extractor;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.extractor.amr.AmrExtractor;
 import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
 import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
@@ -32,6 +33,7 @@ import com.google.android.exoplayer2.extractor.ts.TsPayloadReader;
 import com.google.android.exoplayer2.extractor.wav.WavExtractor;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import java.lang.reflect.Constructor;
+import java.util.concurrent.Executor;
 
 /**
  * An {@link ExtractorsFactory} that provides an array of extractors for the following formats:
@@ -83,6 +85,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   private @Mp3Extractor.Flags int mp3Flags;
   private @TsExtractor.Mode int tsMode;
   private @DefaultTsPayloadReaderFactory.Flags int tsFlags;
+  @Nullable private Executor tsPayloadParsingExecutor;
 
   public DefaultExtractorsFactory() {
     tsMode = TsExtractor.MODE_SINGLE_PMT;
@@ -206,6 +209,22 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return this;
   }
 
+  /**
+   * Sets the {@link Executor} on which {@link TsExtractor} instances created by the factory parse
+   * the payloads of elementary streams. The default value is null, in which case they're parsed on
+   * the loading thread. Payloads may still be being parsed after a read from the extractor returns,
+   * so the extractor must be sought or released before its track outputs are reset.
+   *
+   * @see TsExtractor#TsExtractor(int, TimestampAdjuster, TsPayloadReader.Factory, Executor)
+   * @param payloadParsingExecutor The {@link Executor} to use, or null.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory setTsExtractorPayloadParsingExecutor(
+      @Nullable Executor payloadParsingExecutor) {
+    tsPayloadParsingExecutor = payloadParsingExecutor;
+    return this;
+  }
+
   @Override
   public synchronized Extractor[] createExtractors() {
     Extractor[] extractors = new Extractor[FLAC_EXTRACTOR_CONSTRUCTOR == null ? 13 : 14];
@@ -225,7 +244,12 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
                     ? AdtsExtractor.FLAG_ENABLE_CONSTANT_BITRATE_SEEKING
                     : 0));
     extractors[5] = new Ac3Extractor();
-    extractors[6] = new TsExtractor(tsMode, tsFlags);
+    extractors[6] =
+        new TsExtractor(
+            tsMode,
+            new TimestampAdjuster(0),
+            new DefaultTsPayloadReaderFactory(tsFlags),
+            tsPayloadParsingExecutor);
     extractors[7] = new FlvExtractor();
     extractors[8] = new OggExtractor();
     extractors[9] = new PsExtractor();
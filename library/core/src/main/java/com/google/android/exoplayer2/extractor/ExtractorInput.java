@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.extractor;
 import com.google.android.exoplayer2.C;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Provides data to be consumed by an {@link Extractor}.
@@ -39,6 +40,40 @@ public interface ExtractorInput {
    */
   int read(byte[] target, int offset, int length) throws IOException, InterruptedException;
 
+  /**
+   * Like {@link #read(byte[], int, int)}, but reads into a {@link ByteBuffer}, starting at its
+   * position. The position of {@code target} is advanced by the number of bytes read.
+   * <p>
+   * Where possible, the data is read from the underlying source directly into {@code target}, which
+   * allows it to be read into direct buffers without passing through an intermediate array.
+   * <p>
+   * The default implementation reads using {@link #read(byte[], int, int)}, into the array that
+   * backs {@code target} if it has one, and into a new array otherwise.
+   *
+   * @param target A target buffer into which data should be written. Must have at least {@code
+   *     length} bytes remaining.
+   * @param length The maximum number of bytes to read from the input.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the input has ended.
+   * @throws IOException If an error occurs reading from the input.
+   * @throws InterruptedException If the thread has been interrupted.
+   */
+  default int read(ByteBuffer target, int length) throws IOException, InterruptedException {
+    int position = target.position();
+    if (target.hasArray()) {
+      int bytesRead = read(target.array(), target.arrayOffset() + position, length);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        target.position(position + bytesRead);
+      }
+      return bytesRead;
+    }
+    byte[] data = new byte[length];
+    int bytesRead = read(data, /* offset= */ 0, length);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      target.put(data, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   /**
    * Like {@link #read(byte[], int, int)}, but reads the requested {@code length} in full.
    * <p>
@@ -233,4 +268,16 @@ public interface ExtractorInput {
    */
   <E extends Throwable> void setRetryPosition(long position, E e) throws E;
 
+  /**
+   * Returns the total number of bytes that have been read from the input via an intermediate buffer
+   * held by the input, rather than from the underlying source directly into the read target. For
+   * example, bytes that were peeked before being read are copied from the peek buffer. Bytes that
+   * are skipped, or peeked but not read, are not counted.
+   * <p>
+   * The default implementation returns 0.
+   */
+  default long getBytesCopied() {
+    return 0;
+  }
+
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import java.util.Arrays;
+
+/**
+ * Calculates, for each sample of each track, the accumulated size of all samples which need to be
+ * read before that sample can be used, assuming that the samples of all tracks are read in order of
+ * their timestamps.
+ *
+ * <p>The accumulated sizes are calculated on demand, by merging the sample tables of the tracks in
+ * timestamp order. A merge cursor is kept for each track, so that sizes are calculated in amortized
+ * constant time when the samples of a track are requested in order. The state of the merge is
+ * recorded after every {@link #SAMPLES_PER_CHECKPOINT} samples, so that the merge can be resumed
+ * close to any sample when samples are requested out of order, for example after a seek.
+ *
+ * <p>Instances must only be accessed from a single thread.
+ */
+/* package */ final class AccumulatedSampleSizes {
+
+  private static final int SAMPLES_PER_CHECKPOINT = 1024;
+
+  private final TrackSampleTable[] sampleTables;
+  private final MergeCursor[] cursors;
+
+  private int checkpointCount;
+  private int[] checkpointSampleIndices;
+  private long[] checkpointAccumulatedSizes;
+
+  /** @param sampleTables The sample tables of the tracks, each of which must be non-empty. */
+  public AccumulatedSampleSizes(TrackSampleTable[] sampleTables) {
+    this.sampleTables = sampleTables;
+    int trackCount = sampleTables.length;
+    cursors = new MergeCursor[trackCount];
+    for (int i = 0; i < trackCount; i++) {
+      cursors[i] = new MergeCursor();
+    }
+    checkpointSampleIndices = new int[trackCount];
+    checkpointAccumulatedSizes = new long[1];
+    checkpointCount = 1;
+  }
+
+  /**
+   * Returns the accumulated size of all samples which need to be read before a sample can be used.
+   *
+   * @param trackIndex The index of the track to which the sample belongs.
+   * @param sampleIndex The index of the sample in its track.
+   * @return The accumulated size of all samples which need to be read before the sample, in bytes.
+   */
+  public long get(int trackIndex, int sampleIndex) {
+    MergeCursor cursor = cursors[trackIndex];
+    int checkpoint = getLatestCheckpointBefore(trackIndex, sampleIndex);
+    if (cursor.nextSampleIndices[trackIndex] > sampleIndex
+        || cursor.mergedSampleCount < (long) checkpoint * SAMPLES_PER_CHECKPOINT) {
+      // The cursor is past the sample, or further from it than the checkpoint.
+      cursor.restore(checkpoint);
+    }
+    while (true) {
+      int nextTrackIndex = cursor.getNextTrackIndex();
+      if (nextTrackIndex == trackIndex && cursor.nextSampleIndices[trackIndex] == sampleIndex) {
+        return cursor.accumulatedSize;
+      }
+      cursor.advance(nextTrackIndex);
+    }
+  }
+
+  /**
+   * Returns the latest checkpoint before the sample with the given index of the given track was
+   * merged.
+   */
+  private int getLatestCheckpointBefore(int trackIndex, int sampleIndex) {
+    int trackCount = sampleTables.length;
+    int low = 0;
+    int high = checkpointCount - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (checkpointSampleIndices[mid * trackCount + trackIndex] <= sampleIndex) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private void addCheckpoint(int[] nextSampleIndices, long accumulatedSize) {
+    int trackCount = sampleTables.length;
+    if (checkpointCount == checkpointAccumulatedSizes.length) {
+      checkpointSampleIndices =
+          Arrays.copyOf(checkpointSampleIndices, checkpointSampleIndices.length * 2);
+      checkpointAccumulatedSizes =
+          Arrays.copyOf(checkpointAccumulatedSizes, checkpointAccumulatedSizes.length * 2);
+    }
+    System.arraycopy(
+        nextSampleIndices, 0, checkpointSampleIndices, checkpointCount * trackCount, trackCount);
+    checkpointAccumulatedSizes[checkpointCount] = accumulatedSize;
+    checkpointCount++;
+  }
+
+  /** The state of a merge of the sample tables in timestamp order. */
+  private final class MergeCursor {
+
+    /** The index of the next sample of each track, or the sample count if all have been merged. */
+    public final int[] nextSampleIndices;
+    /** The accumulated size of the samples that have been merged. */
+    public long accumulatedSize;
+
+    /** The number of samples that have been merged. */
+    public long mergedSampleCount;
+
+    private final long[] nextSampleTimesUs;
+
+    public MergeCursor() {
+      nextSampleIndices = new int[sampleTables.length];
+      nextSampleTimesUs = new long[sampleTables.length];
+      for (int i = 0; i < sampleTables.length; i++) {
+        nextSampleTimesUs[i] = sampleTables[i].getTimestampUs(0);
+      }
+    }
+
+    /** Restores the state of the merge that was recorded in the given checkpoint. */
+    public void restore(int checkpoint) {
+      int trackCount = sampleTables.length;
+      System.arraycopy(
+          checkpointSampleIndices, checkpoint * trackCount, nextSampleIndices, 0, trackCount);
+      for (int i = 0; i < trackCount; i++) {
+        int sampleIndex = nextSampleIndices[i];
+        if (sampleIndex < sampleTables[i].sampleCount) {
+          nextSampleTimesUs[i] = sampleTables[i].getTimestampUs(sampleIndex);
+        }
+      }
+      accumulatedSize = checkpointAccumulatedSizes[checkpoint];
+      mergedSampleCount = (long) checkpoint * SAMPLES_PER_CHECKPOINT;
+    }
+
+    /**
+     * Returns the index of the track whose next sample is merged next. Ties are resolved in favor
+     * of the track with the highest index.
+     */
+    public int getNextTrackIndex() {
+      long minTimeUs = Long.MAX_VALUE;
+      int minTimeTrackIndex = -1;
+      for (int i = 0; i < sampleTables.length; i++) {
+        if (nextSampleIndices[i] < sampleTables[i].sampleCount
+            && nextSampleTimesUs[i] <= minTimeUs) {
+          minTimeTrackIndex = i;
+          minTimeUs = nextSampleTimesUs[i];
+        }
+      }
+      return minTimeTrackIndex;
+    }
+
+    /** Merges the next sample of the given track. */
+    public void advance(int trackIndex) {
+      TrackSampleTable sampleTable = sampleTables[trackIndex];
+      int sampleIndex = nextSampleIndices[trackIndex];
+      accumulatedSize += sampleTable.getSize(sampleIndex);
+      nextSampleIndices[trackIndex] = ++sampleIndex;
+      if (sampleIndex < sampleTable.sampleCount) {
+        nextSampleTimesUs[trackIndex] = sampleTable.getTimestampUs(sampleIndex);
+      }
+      mergedSampleCount++;
+      if (mergedSampleCount == (long) checkpointCount * SAMPLES_PER_CHECKPOINT) {
+        addCheckpoint(nextSampleIndices, accumulatedSize);
+      }
+    }
+  }
+
+}
@@ -157,7 +157,7 @@ import java.util.List;
 
     int sampleCount = sampleSizeBox.getSampleCount();
     if (sampleCount == 0) {
-      return new TrackSampleTable(
+      return new ExpandedTrackSampleTable(
           track,
           /* offsets= */ new long[0],
           /* sizes= */ new int[0],
@@ -186,32 +186,20 @@ import java.util.List;
     Atom.LeafAtom cttsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_ctts);
     ParsableByteArray ctts = cttsAtom != null ? cttsAtom.data : null;
 
-    // Prepare to read chunk information.
-    ChunkIterator chunkIterator = new ChunkIterator(stsc, chunkOffsets, chunkOffsetsAreLongs);
-
-    // Prepare to read sample timestamps.
     stts.setPosition(Atom.FULL_HEADER_SIZE);
-    int remainingTimestampDeltaChanges = stts.readUnsignedIntToInt() - 1;
-    int remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
+    int timestampDeltaChanges = stts.readUnsignedIntToInt();
+    stts.skipBytes(4); // Skip sample_count.
     int timestampDeltaInTimeUnits = stts.readUnsignedIntToInt();
 
-    // Prepare to read sample timestamp offsets, if ctts is present.
-    int remainingSamplesAtTimestampOffset = 0;
-    int remainingTimestampOffsetChanges = 0;
-    int timestampOffset = 0;
+    int timestampOffsetChanges = 0;
     if (ctts != null) {
       ctts.setPosition(Atom.FULL_HEADER_SIZE);
-      remainingTimestampOffsetChanges = ctts.readUnsignedIntToInt();
+      timestampOffsetChanges = ctts.readUnsignedIntToInt();
     }
 
-    int nextSynchronizationSampleIndex = C.INDEX_UNSET;
-    int remainingSynchronizationSamples = 0;
     if (stss != null) {
       stss.setPosition(Atom.FULL_HEADER_SIZE);
-      remainingSynchronizationSamples = stss.readUnsignedIntToInt();
-      if (remainingSynchronizationSamples > 0) {
-        nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
-      } else {
+      if (stss.readUnsignedIntToInt() == 0) {
         // Ignore empty stss boxes, which causes all samples to be treated as sync samples.
         stss = null;
       }
@@ -221,153 +209,169 @@ import java.util.List;
     boolean isFixedSampleSizeRawAudio =
         sampleSizeBox.isFixedSampleSize()
             && MimeTypes.AUDIO_RAW.equals(track.format.sampleMimeType)
-            && remainingTimestampDeltaChanges == 0
-            && remainingTimestampOffsetChanges == 0
-            && remainingSynchronizationSamples == 0;
-
-    long[] offsets;
-    int[] sizes;
-    int maximumSize = 0;
-    long[] timestamps;
-    int[] flags;
-    long timestampTimeUnits = 0;
-    long duration;
+            && timestampDeltaChanges == 1
+            && timestampOffsetChanges == 0
+            && stss == null;
 
     if (!isFixedSampleSizeRawAudio) {
-      offsets = new long[sampleCount];
-      sizes = new int[sampleCount];
-      timestamps = new long[sampleCount];
-      flags = new int[sampleCount];
-      long offset = 0;
-      int remainingSamplesInChunk = 0;
-
-      for (int i = 0; i < sampleCount; i++) {
-        // Advance to the next chunk if necessary.
-        boolean chunkDataComplete = true;
-        while (remainingSamplesInChunk == 0 && (chunkDataComplete = chunkIterator.moveNext())) {
-          offset = chunkIterator.offset;
-          remainingSamplesInChunk = chunkIterator.numSamples;
-        }
-        if (!chunkDataComplete) {
-          Log.w(TAG, "Unexpected end of chunk data");
-          sampleCount = i;
-          offsets = Arrays.copyOf(offsets, sampleCount);
-          sizes = Arrays.copyOf(sizes, sampleCount);
-          timestamps = Arrays.copyOf(timestamps, sampleCount);
-          flags = Arrays.copyOf(flags, sampleCount);
-          break;
-        }
+      // Decode samples on demand, so that long tracks don't require large per-sample arrays.
+      SampleTableDecoder decoder =
+          new SampleTableDecoder(
+              track, sampleSizeBox, chunkOffsets, chunkOffsetsAreLongs, stsc, stts, ctts, stss);
+      return createTrackSampleTable(track, decoder, gaplessInfoHolder);
+    }
 
-        // Add on the timestamp offset if ctts is present.
-        if (ctts != null) {
-          while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
-            remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
-            // The BMFF spec (ISO 14496-12) states that sample offsets should be unsigned integers
-            // in version 0 ctts boxes, however some streams violate the spec and use signed
-            // integers instead. It's safe to always decode sample offsets as signed integers here,
-            // because unsigned integers will still be parsed correctly (unless their top bit is
-            // set, which is never true in practice because sample offsets are always small).
-            timestampOffset = ctts.readInt();
-            remainingTimestampOffsetChanges--;
-          }
-          remainingSamplesAtTimestampOffset--;
-        }
+    ChunkIterator chunkIterator = new ChunkIterator(stsc, chunkOffsets, chunkOffsetsAreLongs);
+    long[] chunkOffsetsBytes = new long[chunkIterator.length];
+    int[] chunkSampleCounts = new int[chunkIterator.length];
+    while (chunkIterator.moveNext()) {
+      chunkOffsetsBytes[chunkIterator.index] = chunkIterator.offset;
+      chunkSampleCounts[chunkIterator.index] = chunkIterator.numSamples;
+    }
+    int fixedSampleSize =
+        Util.getPcmFrameSize(track.format.pcmEncoding, track.format.channelCount);
+    FixedSampleSizeRechunker.Results rechunkedResults = FixedSampleSizeRechunker.rechunk(
+        fixedSampleSize, chunkOffsetsBytes, chunkSampleCounts, timestampDeltaInTimeUnits);
+    return createTrackSampleTable(
+        track,
+        rechunkedResults.offsets,
+        rechunkedResults.sizes,
+        rechunkedResults.maximumSize,
+        rechunkedResults.timestamps,
+        rechunkedResults.flags,
+        rechunkedResults.duration,
+        gaplessInfoHolder);
+  }
 
-        offsets[i] = offset;
-        sizes[i] = sampleSizeBox.readNextSampleSize();
-        if (sizes[i] > maximumSize) {
-          maximumSize = sizes[i];
-        }
-        timestamps[i] = timestampTimeUnits + timestampOffset;
-
-        // All samples are synchronization samples if the stss is not present.
-        flags[i] = stss == null ? C.BUFFER_FLAG_KEY_FRAME : 0;
-        if (i == nextSynchronizationSampleIndex) {
-          flags[i] = C.BUFFER_FLAG_KEY_FRAME;
-          remainingSynchronizationSamples--;
-          if (remainingSynchronizationSamples > 0) {
-            nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
-          }
-        }
+  /**
+   * Returns a {@link TrackSampleTable} that decodes samples on demand using {@code decoder}, with
+   * the track's edit list applied. If the edit list can't be applied to samples that are decoded
+   * on demand, all samples are decoded and the sample table is created from them instead.
+   *
+   * @param track The track to which the samples belong.
+   * @param decoder The {@link SampleTableDecoder} for the samples of the track.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @return The {@link TrackSampleTable}.
+   */
+  private static TrackSampleTable createTrackSampleTable(
+      Track track, SampleTableDecoder decoder, GaplessInfoHolder gaplessInfoHolder) {
+    int sampleCount = decoder.sampleCount;
+    long duration = decoder.duration;
+    if (sampleCount > 0) {
+      if (track.editListDurations == null || gaplessInfoHolder.hasGaplessInfo()) {
+        // There is no edit list, or we are ignoring it as we already have gapless metadata to
+        // apply. This implementation does not support applying both gapless metadata and an edit
+        // list.
+        long durationUs =
+            Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
+        return new LazyTrackSampleTable(track, decoder, /* timestampOffset= */ 0, durationUs);
+      }
 
-        // Add on the duration of this sample.
-        timestampTimeUnits += timestampDeltaInTimeUnits;
-        remainingSamplesAtTimestampDelta--;
-        if (remainingSamplesAtTimestampDelta == 0 && remainingTimestampDeltaChanges > 0) {
-          remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
-          // The BMFF spec (ISO 14496-12) states that sample deltas should be unsigned integers
-          // in stts boxes, however some streams violate the spec and use signed integers instead.
-          // See https://github.com/google/ExoPlayer/issues/3384. It's safe to always decode sample
-          // deltas as signed integers here, because unsigned integers will still be parsed
-          // correctly (unless their top bit is set, which is never true in practice because sample
-          // deltas are always small).
-          timestampDeltaInTimeUnits = stts.readInt();
-          remainingTimestampDeltaChanges--;
+      // The edit list is applied in the same way as in createTrackSampleTable(Track, long[], ...),
+      // in the cases that amount to removing or adding a constant offset to the sample timestamps.
+      if (track.editListDurations.length == 1
+          && track.type == C.TRACK_TYPE_AUDIO
+          && sampleCount >= 2) {
+        long editStartTime = track.editListMediaTimes[0];
+        long editEndTime = editStartTime + Util.scaleLargeTimestamp(track.editListDurations[0],
+            track.timescale, track.movieTimescale);
+        if (canApplyEditWithGaplessInfo(decoder, duration, editStartTime, editEndTime)
+            && maybeSetGaplessInfo(
+                track,
+                decoder.getTimestamp(0),
+                duration,
+                editStartTime,
+                editEndTime,
+                gaplessInfoHolder)) {
+          long editedDurationUs =
+              Util.scaleLargeTimestamp(
+                  track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
+          return new LazyTrackSampleTable(
+              track, decoder, /* timestampOffset= */ 0, editedDurationUs);
         }
+      }
 
-        offset += sizes[i];
-        remainingSamplesInChunk--;
+      if (track.editListDurations.length == 1 && track.editListDurations[0] == 0) {
+        long editStartTime = track.editListMediaTimes[0];
+        long durationUs =
+            Util.scaleLargeTimestamp(
+                duration - editStartTime, C.MICROS_PER_SECOND, track.timescale);
+        return new LazyTrackSampleTable(track, decoder, editStartTime, durationUs);
       }
-      duration = timestampTimeUnits + timestampOffset;
-
-      // If the stbl's child boxes are not consistent the container is malformed, but the stream may
-      // still be playable.
-      boolean isCttsValid = true;
-      while (remainingTimestampOffsetChanges > 0) {
-        if (ctts.readUnsignedIntToInt() != 0) {
-          isCttsValid = false;
-          break;
+
+      if (track.editListDurations.length == 1 && track.editListMediaTimes[0] != -1) {
+        // A single edit that neither discards nor reorders samples only offsets their timestamps.
+        long editMediaTime = track.editListMediaTimes[0];
+        long editDuration =
+            Util.scaleLargeTimestamp(
+                track.editListDurations[0], track.timescale, track.movieTimescale);
+        int startIndex =
+            decoder.binarySearchCeilTimestamp(
+                editMediaTime, /* inclusive= */ true, /* stayInBounds= */ true);
+        int endIndex =
+            decoder.binarySearchCeilTimestamp(
+                editMediaTime + editDuration,
+                /* inclusive= */ track.type == C.TRACK_TYPE_AUDIO,
+                /* stayInBounds= */ false);
+        if (startIndex == 0 && endIndex == sampleCount && decoder.isSynchronizationSample(0)) {
+          long editedDurationUs =
+              Util.scaleLargeTimestamp(
+                  track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
+          return new LazyTrackSampleTable(track, decoder, editMediaTime, editedDurationUs);
         }
-        ctts.readInt(); // Ignore offset.
-        remainingTimestampOffsetChanges--;
-      }
-      if (remainingSynchronizationSamples != 0
-          || remainingSamplesAtTimestampDelta != 0
-          || remainingSamplesInChunk != 0
-          || remainingTimestampDeltaChanges != 0
-          || remainingSamplesAtTimestampOffset != 0
-          || !isCttsValid) {
-        Log.w(
-            TAG,
-            "Inconsistent stbl box for track "
-                + track.id
-                + ": remainingSynchronizationSamples "
-                + remainingSynchronizationSamples
-                + ", remainingSamplesAtTimestampDelta "
-                + remainingSamplesAtTimestampDelta
-                + ", remainingSamplesInChunk "
-                + remainingSamplesInChunk
-                + ", remainingTimestampDeltaChanges "
-                + remainingTimestampDeltaChanges
-                + ", remainingSamplesAtTimestampOffset "
-                + remainingSamplesAtTimestampOffset
-                + (!isCttsValid ? ", ctts invalid" : ""));
-      }
-    } else {
-      long[] chunkOffsetsBytes = new long[chunkIterator.length];
-      int[] chunkSampleCounts = new int[chunkIterator.length];
-      while (chunkIterator.moveNext()) {
-        chunkOffsetsBytes[chunkIterator.index] = chunkIterator.offset;
-        chunkSampleCounts[chunkIterator.index] = chunkIterator.numSamples;
       }
-      int fixedSampleSize =
-          Util.getPcmFrameSize(track.format.pcmEncoding, track.format.channelCount);
-      FixedSampleSizeRechunker.Results rechunkedResults = FixedSampleSizeRechunker.rechunk(
-          fixedSampleSize, chunkOffsetsBytes, chunkSampleCounts, timestampDeltaInTimeUnits);
-      offsets = rechunkedResults.offsets;
-      sizes = rechunkedResults.sizes;
-      maximumSize = rechunkedResults.maximumSize;
-      timestamps = rechunkedResults.timestamps;
-      flags = rechunkedResults.flags;
-      duration = rechunkedResults.duration;
     }
+
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestamps = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      offsets[i] = decoder.getOffset(i);
+      sizes[i] = decoder.getSize(i);
+      timestamps[i] = decoder.getTimestamp(i);
+      flags[i] = decoder.isSynchronizationSample(i) ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+    return createTrackSampleTable(
+        track,
+        offsets,
+        sizes,
+        decoder.maximumSize,
+        timestamps,
+        flags,
+        duration,
+        gaplessInfoHolder);
+  }
+
+  /**
+   * Returns a {@link TrackSampleTable} for the given samples, with the track's edit list applied.
+   *
+   * @param track The track to which the samples belong.
+   * @param offsets The sample offsets in bytes.
+   * @param sizes The sample sizes in bytes.
+   * @param maximumSize The maximum sample size in bytes.
+   * @param timestamps The sample timestamps in the track timescale. Modified by this method.
+   * @param flags The sample flags.
+   * @param duration The duration of the samples in the track timescale.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @return The {@link TrackSampleTable}.
+   */
+  private static TrackSampleTable createTrackSampleTable(
+      Track track,
+      long[] offsets,
+      int[] sizes,
+      int maximumSize,
+      long[] timestamps,
+      int[] flags,
+      long duration,
+      GaplessInfoHolder gaplessInfoHolder) {
     long durationUs = Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
 
     if (track.editListDurations == null || gaplessInfoHolder.hasGaplessInfo()) {
       // There is no edit list, or we are ignoring it as we already have gapless metadata to apply.
       // This implementation does not support applying both gapless metadata and an edit list.
       Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
+      return new ExpandedTrackSampleTable(
           track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
     }
 
@@ -384,23 +388,15 @@ import java.util.List;
       long editStartTime = track.editListMediaTimes[0];
       long editEndTime = editStartTime + Util.scaleLargeTimestamp(track.editListDurations[0],
           track.timescale, track.movieTimescale);
-      if (canApplyEditWithGaplessInfo(timestamps, duration, editStartTime, editEndTime)) {
-        long paddingTimeUnits = duration - editEndTime;
-        long encoderDelay = Util.scaleLargeTimestamp(editStartTime - timestamps[0],
-            track.format.sampleRate, track.timescale);
-        long encoderPadding = Util.scaleLargeTimestamp(paddingTimeUnits,
-            track.format.sampleRate, track.timescale);
-        if ((encoderDelay != 0 || encoderPadding != 0) && encoderDelay <= Integer.MAX_VALUE
-            && encoderPadding <= Integer.MAX_VALUE) {
-          gaplessInfoHolder.encoderDelay = (int) encoderDelay;
-          gaplessInfoHolder.encoderPadding = (int) encoderPadding;
-          Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-          long editedDurationUs =
-              Util.scaleLargeTimestamp(
-                  track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
-          return new TrackSampleTable(
-              track, offsets, sizes, maximumSize, timestamps, flags, editedDurationUs);
-        }
+      if (canApplyEditWithGaplessInfo(timestamps, duration, editStartTime, editEndTime)
+          && maybeSetGaplessInfo(
+              track, timestamps[0], duration, editStartTime, editEndTime, gaplessInfoHolder)) {
+        Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
+        long editedDurationUs =
+            Util.scaleLargeTimestamp(
+                track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
+        return new ExpandedTrackSampleTable(
+            track, offsets, sizes, maximumSize, timestamps, flags, editedDurationUs);
       }
     }
 
@@ -416,7 +412,7 @@ import java.util.List;
       }
       durationUs =
           Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
+      return new ExpandedTrackSampleTable(
           track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
     }
 
@@ -452,7 +448,7 @@ import java.util.List;
         nextSampleIndex = endIndices[i];
       }
     }
-    copyMetadata |= editedSampleCount != sampleCount;
+    copyMetadata |= editedSampleCount != timestamps.length;
 
     // Calculate edited sample timestamps and update the corresponding metadata arrays.
     long[] editedOffsets = copyMetadata ? new long[editedSampleCount] : offsets;
@@ -487,7 +483,7 @@ import java.util.List;
     }
     long editedDurationUs =
         Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
-    return new TrackSampleTable(
+    return new ExpandedTrackSampleTable(
         track,
         editedOffsets,
         editedSizes,
@@ -1389,6 +1385,46 @@ import java.util.List;
         && editEndTime <= duration;
   }
 
+  /** Equivalent to {@link #canApplyEditWithGaplessInfo(long[], long, long, long)}. */
+  private static boolean canApplyEditWithGaplessInfo(
+      SampleTableDecoder decoder, long duration, long editStartTime, long editEndTime) {
+    int lastIndex = decoder.sampleCount - 1;
+    int latestDelayIndex = Util.constrainValue(MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    int earliestPaddingIndex =
+        Util.constrainValue(decoder.sampleCount - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    return decoder.getTimestamp(0) <= editStartTime
+        && editStartTime < decoder.getTimestamp(latestDelayIndex)
+        && decoder.getTimestamp(earliestPaddingIndex) < editEndTime
+        && editEndTime <= duration;
+  }
+
+  /**
+   * Sets the encoder delay and padding implied by an edit that trims the start and end of an audio
+   * track, if they are valid and at least one of them is non-zero.
+   *
+   * @return Whether the encoder delay and padding were set.
+   */
+  private static boolean maybeSetGaplessInfo(
+      Track track,
+      long firstTimestamp,
+      long duration,
+      long editStartTime,
+      long editEndTime,
+      GaplessInfoHolder gaplessInfoHolder) {
+    long paddingTimeUnits = duration - editEndTime;
+    long encoderDelay = Util.scaleLargeTimestamp(editStartTime - firstTimestamp,
+        track.format.sampleRate, track.timescale);
+    long encoderPadding = Util.scaleLargeTimestamp(paddingTimeUnits,
+        track.format.sampleRate, track.timescale);
+    if ((encoderDelay != 0 || encoderPadding != 0) && encoderDelay <= Integer.MAX_VALUE
+        && encoderPadding <= Integer.MAX_VALUE) {
+      gaplessInfoHolder.encoderDelay = (int) encoderDelay;
+      gaplessInfoHolder.encoderPadding = (int) encoderPadding;
+      return true;
+    }
+    return false;
+  }
+
   private AtomParsers() {
     // Prevent instantiation.
   }
@@ -1479,7 +1515,7 @@ import java.util.List;
   /**
    * A box containing sample sizes (e.g. stsz, stz2).
    */
-  private interface SampleSizeBox {
+  /* package */ interface SampleSizeBox {
 
     /**
      * Returns the number of samples.
@@ -1491,6 +1527,12 @@ import java.util.List;
      */
     int readNextSampleSize();
 
+    /**
+     * Returns the size of the sample with the given index, without affecting the sample whose size
+     * is returned by {@link #readNextSampleSize()}.
+     */
+    int getSampleSize(int index);
+
     /**
      * Returns whether samples have a fixed size.
      */
@@ -1524,6 +1566,24 @@ import java.util.List;
       return fixedSampleSize == 0 ? data.readUnsignedIntToInt() : fixedSampleSize;
     }
 
+    @Override
+    public int getSampleSize(int index) {
+      if (fixedSampleSize != 0) {
+        return fixedSampleSize;
+      }
+      byte[] sizes = data.data;
+      int position = Atom.FULL_HEADER_SIZE + 8 + index * 4;
+      int size =
+          (sizes[position] & 0xFF) << 24
+              | (sizes[position + 1] & 0xFF) << 16
+              | (sizes[position + 2] & 0xFF) << 8
+              | (sizes[position + 3] & 0xFF);
+      if (size < 0) {
+        throw new IllegalStateException("Top bit not zero: " + size);
+      }
+      return size;
+    }
+
     @Override
     public boolean isFixedSampleSize() {
       return fixedSampleSize != 0;
@@ -1576,6 +1636,22 @@ import java.util.List;
       }
     }
 
+    @Override
+    public int getSampleSize(int index) {
+      byte[] sizes = data.data;
+      int position = Atom.FULL_HEADER_SIZE + 8;
+      if (fieldSize == 8) {
+        return sizes[position + index] & 0xFF;
+      } else if (fieldSize == 16) {
+        position += index * 2;
+        return (sizes[position] & 0xFF) << 8 | (sizes[position + 1] & 0xFF);
+      } else {
+        // fieldSize == 4.
+        int sizeByte = sizes[position + index / 2] & 0xFF;
+        return index % 2 == 0 ? sizeByte >> 4 : sizeByte & 0x0F;
+      }
+    }
+
     @Override
     public boolean isFixedSampleSize() {
       return false;
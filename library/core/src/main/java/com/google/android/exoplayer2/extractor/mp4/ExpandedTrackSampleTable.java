@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+
+/** A {@link TrackSampleTable} that holds the offset, size, timestamp and flags of every sample. */
+/* package */ final class ExpandedTrackSampleTable extends TrackSampleTable {
+
+  private final long[] offsets;
+  private final int[] sizes;
+  private final long[] timestampsUs;
+  private final int[] flags;
+
+  /**
+   * @param track The track corresponding to the sample table.
+   * @param offsets Sample offsets in bytes.
+   * @param sizes Sample sizes in bytes.
+   * @param maximumSize Maximum sample size in {@code sizes}.
+   * @param timestampsUs Sample timestamps in microseconds.
+   * @param flags Sample flags. {@link C#BUFFER_FLAG_LAST_SAMPLE} is set on the last sample.
+   * @param durationUs The duration of the sample table in microseconds, or {@link C#TIME_UNSET}
+   *     if the sample table is empty.
+   */
+  public ExpandedTrackSampleTable(
+      Track track,
+      long[] offsets,
+      int[] sizes,
+      int maximumSize,
+      long[] timestampsUs,
+      int[] flags,
+      long durationUs) {
+    super(track, offsets.length, maximumSize, durationUs);
+    Assertions.checkArgument(sizes.length == timestampsUs.length);
+    Assertions.checkArgument(offsets.length == timestampsUs.length);
+    Assertions.checkArgument(flags.length == timestampsUs.length);
+
+    this.offsets = offsets;
+    this.sizes = sizes;
+    this.timestampsUs = timestampsUs;
+    this.flags = flags;
+    if (flags.length > 0) {
+      flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+  }
+
+  @Override
+  public long getOffset(int index) {
+    return offsets[index];
+  }
+
+  @Override
+  public int getSize(int index) {
+    return sizes[index];
+  }
+
+  @Override
+  public long getTimestampUs(int index) {
+    return timestampsUs[index];
+  }
+
+  @Override
+  public int getFlags(int index) {
+    return flags[index];
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link TrackSampleTable} that decodes the samples of a track from its sample table boxes on
+ * demand, using a {@link SampleTableDecoder}.
+ */
+/* package */ final class LazyTrackSampleTable extends TrackSampleTable {
+
+  private final SampleTableDecoder decoder;
+  private final long timestampOffset;
+
+  /**
+   * @param track The track corresponding to the sample table.
+   * @param decoder The {@link SampleTableDecoder} for the samples of the track.
+   * @param timestampOffset An offset in the track timescale that is subtracted from the timestamps
+   *     returned by the decoder, before they are converted to microseconds.
+   * @param durationUs The duration of the sample table in microseconds.
+   */
+  public LazyTrackSampleTable(
+      Track track, SampleTableDecoder decoder, long timestampOffset, long durationUs) {
+    super(track, decoder.sampleCount, decoder.maximumSize, durationUs);
+    this.decoder = decoder;
+    this.timestampOffset = timestampOffset;
+  }
+
+  @Override
+  public long getOffset(int index) {
+    return decoder.getOffset(index);
+  }
+
+  @Override
+  public int getSize(int index) {
+    return decoder.getSize(index);
+  }
+
+  @Override
+  public long getTimestampUs(int index) {
+    return Util.scaleLargeTimestamp(
+        decoder.getTimestamp(index) - timestampOffset, C.MICROS_PER_SECOND, track.timescale);
+  }
+
+  @Override
+  public int getFlags(int index) {
+    int flags = decoder.isSynchronizationSample(index) ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    if (index == sampleCount - 1) {
+      flags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    return flags;
+  }
+
+  @Override
+  protected int findSynchronizationSampleAtOrBefore(int index) {
+    return decoder.getIndexOfEarlierOrEqualSynchronizationSample(index);
+  }
+
+  @Override
+  protected int findSynchronizationSampleAtOrAfter(int index) {
+    return decoder.getIndexOfLaterOrEqualSynchronizationSample(index);
+  }
+
+}
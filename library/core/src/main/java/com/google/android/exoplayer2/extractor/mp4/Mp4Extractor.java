@@ -115,7 +115,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   // Extractor outputs.
   private ExtractorOutput extractorOutput;
   private Mp4Track[] tracks;
-  private long[][] accumulatedSampleSizes;
+  private AccumulatedSampleSizes accumulatedSampleSizes;
   private int firstVideoTrackIndex;
   private long durationUs;
   private boolean isQuickTime;
@@ -226,14 +226,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -438,7 +438,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     this.firstVideoTrackIndex = firstVideoTrackIndex;
     this.durationUs = durationUs;
     this.tracks = tracks.toArray(new Mp4Track[0]);
-    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    TrackSampleTable[] sampleTables = new TrackSampleTable[this.tracks.length];
+    for (int i = 0; i < sampleTables.length; i++) {
+      sampleTables[i] = this.tracks[i].sampleTable;
+    }
+    accumulatedSampleSizes = new AccumulatedSampleSizes(sampleTables);
 
     extractorOutput.endTracks();
     extractorOutput.seekMap(this);
@@ -507,8 +511,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     long skipAmount = position - inputPosition + sampleBytesWritten;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
@@ -570,8 +574,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesWritten = 0;
@@ -606,8 +610,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = accumulatedSampleSizes[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
+      long sampleAccumulatedBytes = accumulatedSampleSizes.get(trackIndex, sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -671,45 +675,6 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
-  /**
-   * For each sample of each track, calculates accumulated size of all samples which need to be read
-   * before this sample can be used.
-   */
-  private static long[][] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
-    long[][] accumulatedSampleSizes = new long[tracks.length][];
-    int[] nextSampleIndex = new int[tracks.length];
-    long[] nextSampleTimesUs = new long[tracks.length];
-    boolean[] tracksFinished = new boolean[tracks.length];
-    for (int i = 0; i < tracks.length; i++) {
-      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
-    }
-    long accumulatedSampleSize = 0;
-    int finishedTracks = 0;
-    while (finishedTracks < tracks.length) {
-      long minTimeUs = Long.MAX_VALUE;
-      int minTimeTrackIndex = -1;
-      for (int i = 0; i < tracks.length; i++) {
-        if (!tracksFinished[i] && nextSampleTimesUs[i] <= minTimeUs) {
-          minTimeTrackIndex = i;
-          minTimeUs = nextSampleTimesUs[i];
-        }
-      }
-      int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
-      accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
-      nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
-      if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
-        nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
-      } else {
-        tracksFinished[minTimeTrackIndex] = true;
-        finishedTracks++;
-      }
-    }
-    return accumulatedSampleSizes;
-  }
-
   /**
    * Adjusts a seek point offset to take into account the track with the given {@code sampleTable},
    * for a given {@code seekTimeUs}.
@@ -725,7 +690,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return Math.min(sampleOffset, offset);
   }
 
@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.LongArray;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Decodes the samples of a track from the boxes of its sample table (stbl) atom on demand.
+ *
+ * <p>The chunk offset, sample to chunk, decoding time to sample, composition time to sample and
+ * sync sample boxes describe most samples as part of runs of samples that share a property. Rather
+ * than expanding the boxes into arrays with an element per sample, the decoder keeps the boxes,
+ * along with an index of every {@link #ENTRIES_PER_INDEX_POINT}th entry of each run based box, and
+ * resolves a sample by searching the index and then the box entries that follow the index point.
+ * The boxes are interpreted in the same way as when they are iterated over sample by sample,
+ * including when they are inconsistent with each other.
+ *
+ * <p>The decoder may be accessed from any thread.
+ */
+/* package */ final class SampleTableDecoder {
+
+  private static final String TAG = "SampleTableDecoder";
+
+  /** The number of box entries between consecutive points of the index into a run based box. */
+  private static final int ENTRIES_PER_INDEX_POINT = 16;
+
+  private static final int STCO_ENTRY_SIZE = 4;
+  private static final int CO64_ENTRY_SIZE = 8;
+  private static final int STSC_ENTRY_SIZE = 12;
+  private static final int STTS_ENTRY_SIZE = 8;
+  private static final int CTTS_ENTRY_SIZE = 8;
+  private static final int STSS_ENTRY_SIZE = 4;
+
+  /** The number of samples. */
+  public final int sampleCount;
+  /** The maximum sample size in bytes. */
+  public final int maximumSize;
+  /** The duration of the samples in the track timescale. */
+  public final long duration;
+
+  private final AtomParsers.SampleSizeBox sampleSizeBox;
+
+  private final byte[] chunkOffsets;
+  private final int chunkOffsetEntrySize;
+  private final int chunkCount;
+
+  private final byte[] stsc;
+  private final int stscEntryCount;
+  private final long[] stscIndexFirstSampleIndices;
+
+  private final byte[] stts;
+  private final int sttsEntryCount;
+  private final long[] sttsIndexFirstSampleIndices;
+  private final long[] sttsIndexFirstTimes;
+
+  @Nullable private final byte[] ctts;
+  private final int cttsEntryCount;
+  @Nullable private final long[] cttsIndexFirstSampleIndices;
+
+  @Nullable private final byte[] stss;
+  private final int stssEntryCount;
+
+  // The chunk and the offset of the sample that were resolved last. Guarded by this.
+  private int cachedChunkIndex;
+  private int cachedChunkFirstSampleIndex;
+  private int cachedChunkEndSampleIndex;
+  private int cachedSampleIndex;
+  private long cachedSampleOffset;
+
+  /**
+   * @param track The track whose samples are decoded.
+   * @param sampleSizeBox The sample size box (stsz or stz2).
+   * @param chunkOffsets The data of the chunk offset box (stco or co64).
+   * @param chunkOffsetsAreLongs Whether the chunk offset box is a co64 box.
+   * @param stsc The data of the sample to chunk box.
+   * @param stts The data of the decoding time to sample box.
+   * @param ctts The data of the composition time to sample box, or null if the track has none.
+   * @param stss The data of the sync sample box, or null if every sample is a sync sample.
+   */
+  public SampleTableDecoder(
+      Track track,
+      AtomParsers.SampleSizeBox sampleSizeBox,
+      ParsableByteArray chunkOffsets,
+      boolean chunkOffsetsAreLongs,
+      ParsableByteArray stsc,
+      ParsableByteArray stts,
+      @Nullable ParsableByteArray ctts,
+      @Nullable ParsableByteArray stss) {
+    this.sampleSizeBox = sampleSizeBox;
+    this.chunkOffsets = chunkOffsets.data;
+    chunkOffsetEntrySize = chunkOffsetsAreLongs ? CO64_ENTRY_SIZE : STCO_ENTRY_SIZE;
+    chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE);
+    chunkCount = chunkOffsets.readUnsignedIntToInt();
+
+    // Only the entries up to the first one whose first chunk does not follow that of the previous
+    // entry are used, since the chunks are iterated over in order.
+    this.stsc = stsc.data;
+    stsc.setPosition(Atom.FULL_HEADER_SIZE);
+    int stscBoxEntryCount = stsc.readUnsignedIntToInt();
+    Assertions.checkState(stsc.readInt() == 1, "first_chunk must be 1");
+    int stscEntryCount = 0;
+    int firstChunkIndex = 0;
+    long chunkSampleCount = 0;
+    LongArray stscIndex = new LongArray();
+    while (true) {
+      int samplesPerChunk = stsc.readUnsignedIntToInt();
+      stsc.skipBytes(4); // Skip sample_description_index.
+      int nextFirstChunkIndex =
+          ++stscEntryCount < stscBoxEntryCount ? stsc.readUnsignedIntToInt() - 1 : C.INDEX_UNSET;
+      boolean isLastEntry =
+          nextFirstChunkIndex <= firstChunkIndex || nextFirstChunkIndex >= chunkCount;
+      int endChunkIndex = isLastEntry ? chunkCount : nextFirstChunkIndex;
+      if ((stscEntryCount - 1) % ENTRIES_PER_INDEX_POINT == 0) {
+        stscIndex.add(chunkSampleCount);
+      }
+      chunkSampleCount += (long) (endChunkIndex - firstChunkIndex) * samplesPerChunk;
+      if (isLastEntry) {
+        break;
+      }
+      firstChunkIndex = nextFirstChunkIndex;
+    }
+    this.stscEntryCount = stscEntryCount;
+    stscIndexFirstSampleIndices = stscIndex.toArray();
+
+    int sampleCount = sampleSizeBox.getSampleCount();
+    if (chunkSampleCount < sampleCount) {
+      Log.w(TAG, "Unexpected end of chunk data");
+      sampleCount = (int) chunkSampleCount;
+    }
+    this.sampleCount = sampleCount;
+
+    // Only the entries up to the first one that has no samples are used. The last entry that is
+    // used applies to all of the remaining samples.
+    this.stts = stts.data;
+    stts.setPosition(Atom.FULL_HEADER_SIZE);
+    int sttsBoxEntryCount = stts.readUnsignedIntToInt();
+    int sttsEntryCount = 0;
+    long sttsSampleCount = 0;
+    long time = 0;
+    boolean isSttsConsistent = true;
+    LongArray sttsIndexSampleIndices = new LongArray();
+    LongArray sttsIndexTimes = new LongArray();
+    do {
+      int entrySampleCount = stts.readUnsignedIntToInt();
+      // The BMFF spec (ISO 14496-12) states that sample deltas should be unsigned integers in stts
+      // boxes, however some streams violate the spec and use signed integers instead. See
+      // https://github.com/google/ExoPlayer/issues/3384. It's safe to always decode sample deltas
+      // as signed integers here, because unsigned integers will still be parsed correctly (unless
+      // their top bit is set, which is never true in practice because sample deltas are always
+      // small). The first sample delta is read as an unsigned integer, as it always has been.
+      int delta = sttsEntryCount == 0 ? stts.readUnsignedIntToInt() : stts.readInt();
+      if (sttsEntryCount % ENTRIES_PER_INDEX_POINT == 0) {
+        sttsIndexSampleIndices.add(sttsSampleCount);
+        sttsIndexTimes.add(time);
+      }
+      sttsEntryCount++;
+      sttsSampleCount += entrySampleCount;
+      time += (long) entrySampleCount * delta;
+      if (entrySampleCount == 0) {
+        isSttsConsistent = sttsEntryCount == sttsBoxEntryCount && sttsEntryCount > 1;
+        break;
+      }
+    } while (sttsEntryCount < sttsBoxEntryCount);
+    isSttsConsistent &= sttsSampleCount == sampleCount;
+    this.sttsEntryCount = sttsEntryCount;
+    sttsIndexFirstSampleIndices = sttsIndexSampleIndices.toArray();
+    sttsIndexFirstTimes = sttsIndexTimes.toArray();
+
+    // Entries that have no samples are skipped. The last entry applies to any remaining samples.
+    boolean isCttsConsistent = true;
+    if (ctts != null) {
+      this.ctts = ctts.data;
+      ctts.setPosition(Atom.FULL_HEADER_SIZE);
+      cttsEntryCount = ctts.readUnsignedIntToInt();
+      long cttsSampleCount = 0;
+      LongArray cttsIndex = new LongArray();
+      for (int i = 0; i < cttsEntryCount; i++) {
+        if (i % ENTRIES_PER_INDEX_POINT == 0) {
+          cttsIndex.add(cttsSampleCount);
+        }
+        cttsSampleCount += ctts.readUnsignedIntToInt();
+        ctts.skipBytes(4); // Skip sample_offset.
+      }
+      isCttsConsistent = cttsSampleCount == sampleCount;
+      cttsIndexFirstSampleIndices = cttsIndex.toArray();
+    } else {
+      this.ctts = null;
+      cttsEntryCount = 0;
+      cttsIndexFirstSampleIndices = null;
+    }
+
+    // Only the entries up to the first one that does not follow the previous entry, or that is
+    // after the last sample, are used, since the samples are iterated over in order.
+    int stssEntryCount = 0;
+    int stssBoxEntryCount = 0;
+    if (stss != null) {
+      this.stss = stss.data;
+      stss.setPosition(Atom.FULL_HEADER_SIZE);
+      stssBoxEntryCount = stss.readUnsignedIntToInt();
+      int previousSynchronizationSampleIndex = C.INDEX_UNSET;
+      while (stssEntryCount < stssBoxEntryCount) {
+        int synchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+        if (synchronizationSampleIndex <= previousSynchronizationSampleIndex
+            || synchronizationSampleIndex >= sampleCount) {
+          break;
+        }
+        previousSynchronizationSampleIndex = synchronizationSampleIndex;
+        stssEntryCount++;
+      }
+    } else {
+      this.stss = null;
+    }
+    this.stssEntryCount = stssEntryCount;
+
+    int maximumSize = 0;
+    if (sampleSizeBox.isFixedSampleSize()) {
+      maximumSize = sampleCount > 0 ? sampleSizeBox.getSampleSize(0) : 0;
+    } else {
+      for (int i = 0; i < sampleCount; i++) {
+        maximumSize = Math.max(maximumSize, sampleSizeBox.getSampleSize(i));
+      }
+    }
+    this.maximumSize = maximumSize;
+
+    duration =
+        getDecodingTime(sampleCount) + (sampleCount > 0 ? getTimeOffset(sampleCount - 1) : 0);
+
+    cachedSampleIndex = C.INDEX_UNSET;
+    int remainingSamplesInChunk = 0;
+    if (sampleCount > 0 && sampleCount == sampleSizeBox.getSampleCount()) {
+      locateChunk(sampleCount - 1);
+      remainingSamplesInChunk = cachedChunkEndSampleIndex - sampleCount;
+    }
+    if (stssEntryCount != stssBoxEntryCount
+        || !isSttsConsistent
+        || remainingSamplesInChunk != 0
+        || !isCttsConsistent) {
+      Log.w(
+          TAG,
+          "Inconsistent stbl box for track "
+              + track.id
+              + ": sampleCount "
+              + sampleCount
+              + ", sttsSampleCount "
+              + sttsSampleCount
+              + ", remainingSynchronizationSamples "
+              + (stssBoxEntryCount - stssEntryCount)
+              + ", remainingSamplesInChunk "
+              + remainingSamplesInChunk
+              + (!isCttsConsistent ? ", ctts invalid" : ""));
+    }
+  }
+
+  /**
+   * Returns the offset of a sample in bytes.
+   *
+   * <p>Resolving the sample that follows the one resolved by the previous call is a constant time
+   * operation.
+   *
+   * @param index The index of the sample.
+   * @return The offset of the sample in bytes.
+   */
+  public synchronized long getOffset(int index) {
+    if (index == cachedSampleIndex + 1
+        && index > cachedChunkFirstSampleIndex
+        && index < cachedChunkEndSampleIndex) {
+      cachedSampleOffset += sampleSizeBox.getSampleSize(cachedSampleIndex);
+    } else {
+      if (index < cachedChunkFirstSampleIndex || index >= cachedChunkEndSampleIndex) {
+        locateChunk(index);
+      }
+      long offset = getChunkOffset(cachedChunkIndex);
+      if (sampleSizeBox.isFixedSampleSize()) {
+        offset += (long) (index - cachedChunkFirstSampleIndex) * sampleSizeBox.getSampleSize(0);
+      } else {
+        for (int i = cachedChunkFirstSampleIndex; i < index; i++) {
+          offset += sampleSizeBox.getSampleSize(i);
+        }
+      }
+      cachedSampleOffset = offset;
+    }
+    cachedSampleIndex = index;
+    return cachedSampleOffset;
+  }
+
+  /**
+   * Returns the size of a sample in bytes.
+   *
+   * @param index The index of the sample.
+   * @return The size of the sample in bytes.
+   */
+  public int getSize(int index) {
+    return sampleSizeBox.getSampleSize(index);
+  }
+
+  /**
+   * Returns the composition timestamp of a sample in the track timescale, before any edits are
+   * applied.
+   *
+   * @param index The index of the sample.
+   * @return The composition timestamp of the sample.
+   */
+  public long getTimestamp(int index) {
+    return getDecodingTime(index) + getTimeOffset(index);
+  }
+
+  /**
+   * Returns whether a sample is a synchronization sample.
+   *
+   * @param index The index of the sample.
+   * @return Whether the sample is a synchronization sample.
+   */
+  public boolean isSynchronizationSample(int index) {
+    if (stss == null) {
+      return true;
+    }
+    int entryIndex = binarySearchSynchronizationSamples(index);
+    return entryIndex >= 0;
+  }
+
+  /**
+   * Returns the index of the closest synchronization sample at or before the sample with the given
+   * index, or {@link C#INDEX_UNSET} if there is none.
+   *
+   * @param index The index of a sample.
+   * @return The index of the synchronization sample, or {@link C#INDEX_UNSET}.
+   */
+  public int getIndexOfEarlierOrEqualSynchronizationSample(int index) {
+    if (stss == null) {
+      return index;
+    }
+    int entryIndex = binarySearchSynchronizationSamples(index);
+    if (entryIndex < 0) {
+      entryIndex = -(entryIndex + 2);
+    }
+    return entryIndex >= 0 ? getSynchronizationSampleIndex(entryIndex) : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the index of the closest synchronization sample at or after the sample with the given
+   * index, or {@link C#INDEX_UNSET} if there is none.
+   *
+   * @param index The index of a sample.
+   * @return The index of the synchronization sample, or {@link C#INDEX_UNSET}.
+   */
+  public int getIndexOfLaterOrEqualSynchronizationSample(int index) {
+    if (stss == null) {
+      return index;
+    }
+    int entryIndex = binarySearchSynchronizationSamples(index);
+    if (entryIndex < 0) {
+      entryIndex = ~entryIndex;
+    }
+    return entryIndex < stssEntryCount ? getSynchronizationSampleIndex(entryIndex) : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the index of the smallest timestamp that is greater than (or optionally equal to) a
+   * specified value, in the same way as {@link Util#binarySearchCeil(long[], long, boolean,
+   * boolean)} would for an array of the timestamps returned by {@link #getTimestamp(int)}.
+   *
+   * @param timestamp The timestamp being searched for.
+   * @param inclusive If the timestamp is present, whether to return the corresponding index.
+   * @param stayInBounds If true, then {@code sampleCount - 1} will be returned in the case that the
+   *     timestamp is greater than the largest timestamp. If false, then {@code sampleCount} will be
+   *     returned.
+   * @return The index of the smallest timestamp that is greater than (or optionally equal to) the
+   *     specified value.
+   */
+  public int binarySearchCeilTimestamp(long timestamp, boolean inclusive, boolean stayInBounds) {
+    int low = 0;
+    int high = sampleCount - 1;
+    int index = C.INDEX_UNSET;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimestamp = getTimestamp(mid);
+      if (midTimestamp < timestamp) {
+        low = mid + 1;
+      } else if (midTimestamp > timestamp) {
+        high = mid - 1;
+      } else {
+        index = mid;
+        break;
+      }
+    }
+    if (index == C.INDEX_UNSET) {
+      index = low;
+    } else {
+      while (++index < sampleCount && getTimestamp(index) == timestamp) {}
+      if (inclusive) {
+        index--;
+      }
+    }
+    return stayInBounds ? Math.min(sampleCount - 1, index) : index;
+  }
+
+  // Internal methods.
+
+  /**
+   * Returns the decoding time of a sample, or the total duration of the samples if {@code index} is
+   * the sample count.
+   */
+  private long getDecodingTime(int index) {
+    int indexPoint =
+        Util.binarySearchFloor(
+            sttsIndexFirstSampleIndices, index, /* inclusive= */ true, /* stayInBounds= */ true);
+    int entryIndex = indexPoint * ENTRIES_PER_INDEX_POINT;
+    long entryFirstSampleIndex = sttsIndexFirstSampleIndices[indexPoint];
+    long entryFirstTime = sttsIndexFirstTimes[indexPoint];
+    while (true) {
+      int position = Atom.FULL_HEADER_SIZE + 4 + entryIndex * STTS_ENTRY_SIZE;
+      int entrySampleCount = readInt(stts, position);
+      int delta = readInt(stts, position + 4);
+      if (entryIndex == sttsEntryCount - 1 || index < entryFirstSampleIndex + entrySampleCount) {
+        return entryFirstTime + (index - entryFirstSampleIndex) * delta;
+      }
+      entryIndex++;
+      entryFirstSampleIndex += entrySampleCount;
+      entryFirstTime += (long) entrySampleCount * delta;
+    }
+  }
+
+  /** Returns the composition time offset of a sample. */
+  private int getTimeOffset(int index) {
+    if (ctts == null || cttsEntryCount == 0) {
+      return 0;
+    }
+    int indexPoint =
+        Util.binarySearchFloor(
+            cttsIndexFirstSampleIndices, index, /* inclusive= */ true, /* stayInBounds= */ true);
+    int entryIndex = indexPoint * ENTRIES_PER_INDEX_POINT;
+    long entryFirstSampleIndex = cttsIndexFirstSampleIndices[indexPoint];
+    int position = Atom.FULL_HEADER_SIZE + 4 + entryIndex * CTTS_ENTRY_SIZE;
+    while (true) {
+      int entrySampleCount = readInt(ctts, position);
+      if (entryIndex == cttsEntryCount - 1 || index < entryFirstSampleIndex + entrySampleCount) {
+        // The BMFF spec (ISO 14496-12) states that sample offsets should be unsigned integers in
+        // version 0 ctts boxes, however some streams violate the spec and use signed integers
+        // instead. It's safe to always decode sample offsets as signed integers here, because
+        // unsigned integers will still be parsed correctly (unless their top bit is set, which is
+        // never true in practice because sample offsets are always small).
+        return readInt(ctts, position + 4);
+      }
+      entryIndex++;
+      entryFirstSampleIndex += entrySampleCount;
+      position += CTTS_ENTRY_SIZE;
+    }
+  }
+
+  /** Sets the cached chunk to the one that contains the sample with the given index. */
+  private void locateChunk(int index) {
+    int indexPoint =
+        Util.binarySearchFloor(
+            stscIndexFirstSampleIndices, index, /* inclusive= */ true, /* stayInBounds= */ true);
+    int entryIndex = indexPoint * ENTRIES_PER_INDEX_POINT;
+    long entryFirstSampleIndex = stscIndexFirstSampleIndices[indexPoint];
+    int position = Atom.FULL_HEADER_SIZE + 4 + entryIndex * STSC_ENTRY_SIZE;
+    while (true) {
+      int firstChunkIndex = readInt(stsc, position) - 1;
+      int samplesPerChunk = readInt(stsc, position + 4);
+      int endChunkIndex =
+          entryIndex == stscEntryCount - 1
+              ? chunkCount
+              : readInt(stsc, position + STSC_ENTRY_SIZE) - 1;
+      long entrySampleCount = (long) (endChunkIndex - firstChunkIndex) * samplesPerChunk;
+      if (index < entryFirstSampleIndex + entrySampleCount) {
+        int chunkIndexInEntry = (int) ((index - entryFirstSampleIndex) / samplesPerChunk);
+        cachedChunkIndex = firstChunkIndex + chunkIndexInEntry;
+        cachedChunkFirstSampleIndex =
+            (int) (entryFirstSampleIndex + (long) chunkIndexInEntry * samplesPerChunk);
+        cachedChunkEndSampleIndex = cachedChunkFirstSampleIndex + samplesPerChunk;
+        return;
+      }
+      entryIndex++;
+      entryFirstSampleIndex += entrySampleCount;
+      position += STSC_ENTRY_SIZE;
+    }
+  }
+
+  private long getChunkOffset(int chunkIndex) {
+    int position = Atom.FULL_HEADER_SIZE + 4 + chunkIndex * chunkOffsetEntrySize;
+    if (chunkOffsetEntrySize == STCO_ENTRY_SIZE) {
+      return readInt(chunkOffsets, position) & 0xFFFFFFFFL;
+    }
+    long offset = ((long) readInt(chunkOffsets, position) << 32)
+        | (readInt(chunkOffsets, position + 4) & 0xFFFFFFFFL);
+    if (offset < 0) {
+      throw new IllegalStateException("Top bit not zero: " + offset);
+    }
+    return offset;
+  }
+
+  /**
+   * Searches the used entries of the sync sample box for the sample with the given index, in the
+   * same way as {@link java.util.Arrays#binarySearch(int[], int)}.
+   */
+  private int binarySearchSynchronizationSamples(int index) {
+    int low = 0;
+    int high = stssEntryCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midIndex = getSynchronizationSampleIndex(mid);
+      if (midIndex < index) {
+        low = mid + 1;
+      } else if (midIndex > index) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private int getSynchronizationSampleIndex(int entryIndex) {
+    return readInt(stss, Atom.FULL_HEADER_SIZE + 4 + entryIndex * STSS_ENTRY_SIZE) - 1;
+  }
+
+  private static int readInt(byte[] data, int position) {
+    return (data[position] & 0xFF) << 24
+        | (data[position + 1] & 0xFF) << 16
+        | (data[position + 2] & 0xFF) << 8
+        | (data[position + 3] & 0xFF);
+  }
+
+}
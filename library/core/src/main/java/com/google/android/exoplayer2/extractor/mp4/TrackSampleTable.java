@@ -16,59 +16,64 @@
 package com.google.android.exoplayer2.extractor.mp4;
 
 import com.google.android.exoplayer2.C;
-import com.google.android.exoplayer2.util.Assertions;
-import com.google.android.exoplayer2.util.Util;
 
 /**
  * Sample table for a track in an MP4 file.
  */
-/* package */ final class TrackSampleTable {
+/* package */ abstract class TrackSampleTable {
 
   /** The track corresponding to this sample table. */
   public final Track track;
   /** Number of samples. */
   public final int sampleCount;
-  /** Sample offsets in bytes. */
-  public final long[] offsets;
-  /** Sample sizes in bytes. */
-  public final int[] sizes;
-  /** Maximum sample size in {@link #sizes}. */
+  /** Maximum sample size in bytes. */
   public final int maximumSize;
-  /** Sample timestamps in microseconds. */
-  public final long[] timestampsUs;
-  /** Sample flags. */
-  public final int[] flags;
   /**
    * The duration of the track sample table in microseconds, or {@link C#TIME_UNSET} if the sample
    * table is empty.
    */
   public final long durationUs;
 
-  public TrackSampleTable(
-      Track track,
-      long[] offsets,
-      int[] sizes,
-      int maximumSize,
-      long[] timestampsUs,
-      int[] flags,
-      long durationUs) {
-    Assertions.checkArgument(sizes.length == timestampsUs.length);
-    Assertions.checkArgument(offsets.length == timestampsUs.length);
-    Assertions.checkArgument(flags.length == timestampsUs.length);
-
+  protected TrackSampleTable(Track track, int sampleCount, int maximumSize, long durationUs) {
     this.track = track;
-    this.offsets = offsets;
-    this.sizes = sizes;
+    this.sampleCount = sampleCount;
     this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
     this.durationUs = durationUs;
-    sampleCount = offsets.length;
-    if (flags.length > 0) {
-      flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
-    }
   }
 
+  /**
+   * Returns the offset of a sample in bytes.
+   *
+   * @param index The index of the sample.
+   * @return The offset of the sample in bytes.
+   */
+  public abstract long getOffset(int index);
+
+  /**
+   * Returns the size of a sample in bytes.
+   *
+   * @param index The index of the sample.
+   * @return The size of the sample in bytes.
+   */
+  public abstract int getSize(int index);
+
+  /**
+   * Returns the timestamp of a sample in microseconds.
+   *
+   * @param index The index of the sample.
+   * @return The timestamp of the sample in microseconds.
+   */
+  public abstract long getTimestampUs(int index);
+
+  /**
+   * Returns the flags of a sample. The last sample has {@link C#BUFFER_FLAG_LAST_SAMPLE} set.
+   *
+   * @param index The index of the sample.
+   * @return The flags of the sample.
+   */
+  @C.BufferFlags
+  public abstract int getFlags(int index);
+
   /**
    * Returns the sample index of the closest synchronization sample at or before the given
    * timestamp, if one is available.
@@ -79,13 +84,14 @@ import com.google.android.exoplayer2.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
-      }
+    int index = binarySearchTimestamps(timeUs);
+    if (index < 0) {
+      index = -(index + 2);
+    } else {
+      while (--index >= 0 && getTimestampUs(index) == timeUs) {}
+      index++;
     }
-    return C.INDEX_UNSET;
+    return index >= 0 ? findSynchronizationSampleAtOrBefore(index) : C.INDEX_UNSET;
   }
 
   /**
@@ -96,13 +102,68 @@ import com.google.android.exoplayer2.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    int index = binarySearchTimestamps(timeUs);
+    if (index < 0) {
+      index = ~index;
+    } else {
+      while (++index < sampleCount && getTimestampUs(index) == timeUs) {}
+      index--;
+    }
+    return index < sampleCount ? findSynchronizationSampleAtOrAfter(index) : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the index of the closest synchronization sample at or before the sample with the given
+   * index, if one is available.
+   *
+   * @param index The index of a sample.
+   * @return Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
+   */
+  protected int findSynchronizationSampleAtOrBefore(int index) {
+    for (int i = index; i >= 0; i--) {
+      if ((getFlags(i) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns the index of the closest synchronization sample at or after the sample with the given
+   * index, if one is available.
+   *
+   * @param index The index of a sample.
+   * @return Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
+   */
+  protected int findSynchronizationSampleAtOrAfter(int index) {
+    for (int i = index; i < sampleCount; i++) {
+      if ((getFlags(i) & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         return i;
       }
     }
     return C.INDEX_UNSET;
   }
 
+  /**
+   * Searches the sample timestamps for {@code timeUs} in the same way as {@link
+   * java.util.Arrays#binarySearch(long[], long)}, so that the result is well defined even if the
+   * timestamps are not sorted.
+   */
+  private int binarySearchTimestamps(long timeUs) {
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimeUs = getTimestampUs(mid);
+      if (midTimeUs < timeUs) {
+        low = mid + 1;
+      } else if (midTimeUs > timeUs) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
 }
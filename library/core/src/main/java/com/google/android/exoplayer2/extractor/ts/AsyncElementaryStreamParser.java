@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs {@link ElementaryStreamReader}s on an {@link Executor}, so that the payloads of different
+ * elementary streams can be parsed in parallel with each other, and with the demuxing of the
+ * transport stream.
+ *
+ * <p>The calls made to a reader returned by {@link #wrap(ElementaryStreamReader)} are recorded in
+ * batches, together with copies of the consumed data, and the batches of each reader are run in
+ * order on the executor. A reader's {@link com.google.android.exoplayer2.extractor.TrackOutput}s
+ * are therefore written to in the same order as if the reader were run directly, but from the
+ * executor's threads. Batches keep running after the calls that recorded them have returned, so
+ * {@link #blockUntilIdle()} or {@link #reset()} must be called before the track outputs may be
+ * accessed from the thread on which the readers are called. The number of batches that may be
+ * pending for each reader is limited, and calls to a reader block while the limit is reached.
+ *
+ * <p>The parser and its readers must be called from a single thread.
+ */
+/* package */ final class AsyncElementaryStreamParser {
+
+  /** The amount of consumed data after which a batch is run, in bytes. */
+  private static final int BATCH_SIZE = 16 * 1024;
+  /** The maximum number of batches of each reader that may be pending. */
+  private static final int MAX_PENDING_BATCHES_PER_READER = 8;
+
+  private final Executor executor;
+  private final ArrayList<AsyncReader> readers;
+
+  // Guarded by this.
+  private int pendingBatchCount;
+  @Nullable private ParserException pendingParserException;
+  @Nullable private RuntimeException pendingRuntimeException;
+
+  /** @param executor The {@link Executor} on which the readers are run. */
+  public AsyncElementaryStreamParser(Executor executor) {
+    this.executor = executor;
+    readers = new ArrayList<>();
+  }
+
+  /**
+   * Returns an {@link ElementaryStreamReader} that runs {@code reader} on the executor. {@link
+   * ElementaryStreamReader#createTracks(ExtractorOutput, TsPayloadReader.TrackIdGenerator)} is
+   * called directly, since track outputs must be created on the thread of the {@link
+   * ExtractorOutput}.
+   *
+   * @param reader The {@link ElementaryStreamReader} to run on the executor.
+   * @return The {@link ElementaryStreamReader} that runs {@code reader} on the executor.
+   */
+  public ElementaryStreamReader wrap(ElementaryStreamReader reader) {
+    AsyncReader asyncReader = new AsyncReader(reader);
+    readers.add(asyncReader);
+    return asyncReader;
+  }
+
+  /**
+   * Runs the calls made to the readers that are yet to be run, and blocks until they have been. If
+   * the thread is interrupted while blocked, it continues to block, and its interrupted status is
+   * set before the method returns, since the readers may still be running until then.
+   *
+   * @throws ParserException If a reader failed to parse the data it was passed.
+   */
+  public void blockUntilIdle() throws ParserException {
+    for (int i = 0; i < readers.size(); i++) {
+      readers.get(i).submitBatch();
+    }
+    boolean interrupted = false;
+    synchronized (this) {
+      while (pendingBatchCount > 0) {
+        interrupted |= waitForBatchRun();
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    maybeThrowError();
+  }
+
+  /**
+   * Discards the calls made to the readers that are yet to be run, and any failure of the calls
+   * that have been run, and blocks until the readers are no longer running. If the thread is
+   * interrupted while blocked, it continues to block, and its interrupted status is set before the
+   * method returns.
+   */
+  public void reset() {
+    boolean interrupted = false;
+    synchronized (this) {
+      for (int i = 0; i < readers.size(); i++) {
+        readers.get(i).discardPendingBatches();
+      }
+      while (pendingBatchCount > 0) {
+        interrupted |= waitForBatchRun();
+      }
+      for (int i = 0; i < readers.size(); i++) {
+        readers.get(i).failed = false;
+      }
+      pendingParserException = null;
+      pendingRuntimeException = null;
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Throws the failure of a reader to parse the data it was passed, if one has occurred since the
+   * last call to this method or {@link #reset()}. Doesn't block.
+   *
+   * @throws ParserException If a reader failed to parse the data it was passed.
+   */
+  public void maybeThrowError() throws ParserException {
+    ParserException parserException;
+    RuntimeException runtimeException;
+    synchronized (this) {
+      parserException = pendingParserException;
+      runtimeException = pendingRuntimeException;
+      pendingParserException = null;
+      pendingRuntimeException = null;
+    }
+    if (parserException != null) {
+      throw parserException;
+    } else if (runtimeException != null) {
+      throw runtimeException;
+    }
+  }
+
+  /**
+   * Waits until a batch has been run. Must be called with the parser's lock held.
+   *
+   * @return Whether the thread was interrupted while waiting.
+   */
+  private boolean waitForBatchRun() {
+    try {
+      wait();
+      return false;
+    } catch (InterruptedException e) {
+      return true;
+    }
+  }
+
+  private synchronized void onBatchRun(
+      @Nullable ParserException parserException, @Nullable RuntimeException runtimeException) {
+    if (pendingParserException == null && pendingRuntimeException == null) {
+      pendingParserException = parserException;
+      pendingRuntimeException = runtimeException;
+    }
+    pendingBatchCount--;
+    notifyAll();
+  }
+
+  /** Records the calls made to an {@link ElementaryStreamReader} and runs them on the executor. */
+  private final class AsyncReader implements ElementaryStreamReader, Runnable {
+
+    private final ElementaryStreamReader reader;
+    private final ParsableByteArray batchData;
+
+    // Guarded by AsyncElementaryStreamParser.this.
+    private final ArrayDeque<Batch> submittedBatches;
+    private final ArrayDeque<Batch> freeBatches;
+    private boolean running;
+    private boolean failed;
+
+    // Accessed only by the thread on which the reader is called.
+    private Batch batch;
+
+    public AsyncReader(ElementaryStreamReader reader) {
+      this.reader = reader;
+      submittedBatches = new ArrayDeque<>();
+      freeBatches = new ArrayDeque<>();
+      batchData = new ParsableByteArray();
+      batch = new Batch();
+    }
+
+    // ElementaryStreamReader implementation.
+
+    @Override
+    public void seek() {
+      batch.addCall(Batch.CALL_SEEK, /* timeUs= */ 0, /* value= */ 0);
+    }
+
+    @Override
+    public void createTracks(
+        ExtractorOutput extractorOutput, TsPayloadReader.TrackIdGenerator idGenerator) {
+      reader.createTracks(extractorOutput, idGenerator);
+    }
+
+    @Override
+    public void packetStarted(long pesTimeUs, @TsPayloadReader.Flags int flags) {
+      batch.addCall(Batch.CALL_PACKET_STARTED, pesTimeUs, flags);
+    }
+
+    @Override
+    public void consume(ParsableByteArray data) {
+      int length = data.bytesLeft();
+      batch.addData(data.data, data.getPosition(), length);
+      batch.addCall(Batch.CALL_CONSUME, /* timeUs= */ 0, length);
+      data.setPosition(data.limit());
+      if (batch.dataLength >= BATCH_SIZE) {
+        submitBatch();
+      }
+    }
+
+    @Override
+    public void packetFinished() {
+      batch.addCall(Batch.CALL_PACKET_FINISHED, /* timeUs= */ 0, /* value= */ 0);
+    }
+
+    // Runnable implementation.
+
+    @Override
+    public void run() {
+      while (true) {
+        Batch submittedBatch;
+        boolean skipBatch;
+        synchronized (AsyncElementaryStreamParser.this) {
+          submittedBatch = submittedBatches.poll();
+          if (submittedBatch == null) {
+            running = false;
+            return;
+          }
+          skipBatch = failed;
+        }
+        ParserException parserException = null;
+        RuntimeException runtimeException = null;
+        try {
+          if (!skipBatch) {
+            runBatch(submittedBatch);
+          }
+        } catch (ParserException e) {
+          parserException = e;
+        } catch (RuntimeException e) {
+          runtimeException = e;
+        } finally {
+          submittedBatch.clear();
+          synchronized (AsyncElementaryStreamParser.this) {
+            freeBatches.add(submittedBatch);
+            failed |= parserException != null || runtimeException != null;
+          }
+          onBatchRun(parserException, runtimeException);
+        }
+      }
+    }
+
+    // Internal methods.
+
+    private void submitBatch() {
+      if (batch.callCount == 0) {
+        return;
+      }
+      boolean shouldExecute;
+      boolean interrupted = false;
+      synchronized (AsyncElementaryStreamParser.this) {
+        while (submittedBatches.size() >= MAX_PENDING_BATCHES_PER_READER) {
+          interrupted |= waitForBatchRun();
+        }
+        pendingBatchCount++;
+        submittedBatches.add(batch);
+        Batch freeBatch = freeBatches.poll();
+        batch = freeBatch != null ? freeBatch : new Batch();
+        shouldExecute = !running;
+        running = true;
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (shouldExecute) {
+        executor.execute(this);
+      }
+    }
+
+    /**
+     * Discards the calls that are yet to be run. Must be called with the parser's lock held, from
+     * the thread on which the reader is called.
+     */
+    private void discardPendingBatches() {
+      batch.clear();
+      Batch submittedBatch;
+      while ((submittedBatch = submittedBatches.poll()) != null) {
+        submittedBatch.clear();
+        freeBatches.add(submittedBatch);
+        pendingBatchCount--;
+      }
+    }
+
+    private void runBatch(Batch batch) throws ParserException {
+      batchData.reset(batch.data, batch.dataLength);
+      int position = 0;
+      for (int i = 0; i < batch.callCount; i++) {
+        switch (batch.calls[i]) {
+          case Batch.CALL_SEEK:
+            reader.seek();
+            break;
+          case Batch.CALL_PACKET_STARTED:
+            reader.packetStarted(batch.timesUs[i], batch.values[i]);
+            break;
+          case Batch.CALL_CONSUME:
+            int end = position + batch.values[i];
+            batchData.setLimit(end);
+            batchData.setPosition(position);
+            reader.consume(batchData);
+            position = end;
+            break;
+          case Batch.CALL_PACKET_FINISHED:
+            reader.packetFinished();
+            break;
+          default:
+            throw new IllegalStateException();
+        }
+      }
+    }
+  }
+
+  /** The calls made to a reader, and the data they consumed. */
+  private static final class Batch {
+
+    public static final int CALL_SEEK = 0;
+    public static final int CALL_PACKET_STARTED = 1;
+    public static final int CALL_CONSUME = 2;
+    public static final int CALL_PACKET_FINISHED = 3;
+
+    private static final int INITIAL_CALL_CAPACITY = 64;
+
+    public int callCount;
+    public int[] calls;
+    /** The timestamp of each packet started call. */
+    public long[] timesUs;
+    /** The flags of each packet started call, or the length of the data of each consume call. */
+    public int[] values;
+
+    public int dataLength;
+    public byte[] data;
+
+    public Batch() {
+      calls = new int[INITIAL_CALL_CAPACITY];
+      timesUs = new long[INITIAL_CALL_CAPACITY];
+      values = new int[INITIAL_CALL_CAPACITY];
+      data = new byte[BATCH_SIZE + TsExtractor.TS_PACKET_SIZE];
+    }
+
+    public void addCall(int call, long timeUs, int value) {
+      if (callCount == calls.length) {
+        int newCapacity = callCount * 2;
+        calls = Arrays.copyOf(calls, newCapacity);
+        timesUs = Arrays.copyOf(timesUs, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+      }
+      calls[callCount] = call;
+      timesUs[callCount] = timeUs;
+      values[callCount] = value;
+      callCount++;
+    }
+
+    public void addData(byte[] source, int offset, int length) {
+      if (dataLength + length > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+      }
+      System.arraycopy(source, offset, data, dataLength, length);
+      dataLength += length;
+    }
+
+    public void clear() {
+      callCount = 0;
+      dataLength = 0;
+    }
+  }
+}
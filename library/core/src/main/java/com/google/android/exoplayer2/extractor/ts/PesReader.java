@@ -39,9 +39,10 @@ public final class PesReader implements TsPayloadReader {
   private static final int MAX_HEADER_EXTENSION_SIZE = 10;
   private static final int PES_SCRATCH_SIZE = 10; // max(HEADER_SIZE, MAX_HEADER_EXTENSION_SIZE)
 
-  private final ElementaryStreamReader reader;
   private final ParsableBitArray pesScratch;
 
+  private ElementaryStreamReader reader;
+
   private int state;
   private int bytesRead;
 
@@ -60,6 +61,18 @@ public final class PesReader implements TsPayloadReader {
     state = STATE_FINDING_HEADER;
   }
 
+  /**
+   * Makes the reader pass the payloads of PES packets to its {@link ElementaryStreamReader} through
+   * {@code parser}, so that they're parsed on the parser's executor. PES headers, and the sample
+   * timestamps they contain, are still parsed on the calling thread. Must be called before {@link
+   * #init(TimestampAdjuster, ExtractorOutput, TrackIdGenerator)}.
+   *
+   * @param parser The {@link AsyncElementaryStreamParser} through which to pass the payloads.
+   */
+  /* package */ void setAsyncParser(AsyncElementaryStreamParser parser) {
+    reader = parser.wrap(reader);
+  }
+
   @Override
   public void init(TimestampAdjuster timestampAdjuster, ExtractorOutput extractorOutput,
       TrackIdGenerator idGenerator) {
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.extractor.ts;
 import static com.google.android.exoplayer2.extractor.ts.TsPayloadReader.FLAG_PAYLOAD_UNIT_START_INDICATOR;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
@@ -47,6 +48,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Extracts data from the MPEG-2 TS container format.
@@ -106,7 +108,8 @@ public final class TsExtractor implements Extractor {
   private static final long AC4_FORMAT_IDENTIFIER = 0x41432d34;
   private static final long HEVC_FORMAT_IDENTIFIER = 0x48455643;
 
-  private static final int BUFFER_SIZE = TS_PACKET_SIZE * 50;
+  private static final int INITIAL_BUFFER_SIZE = TS_PACKET_SIZE * 50;
+  private static final int MAX_BUFFER_SIZE = TS_PACKET_SIZE * 800;
   private static final int SNIFF_TS_PACKET_COUNT = 5;
 
   private final @Mode int mode;
@@ -118,6 +121,7 @@ public final class TsExtractor implements Extractor {
   private final SparseBooleanArray trackIds;
   private final SparseBooleanArray trackPids;
   private final TsDurationReader durationReader;
+  @Nullable private final AsyncElementaryStreamParser asyncParser;
 
   // Accessed only by the loading thread.
   private TsBinarySearchSeeker tsBinarySearchSeeker;
@@ -129,6 +133,12 @@ public final class TsExtractor implements Extractor {
   private TsPayloadReader id3Reader;
   private int bytesSinceLastSync;
   private int pcrPid;
+  private boolean lastReadFilledBuffer;
+  // The payload reader of the PID of the last packet, reused while packets have the same PID.
+  // Payload readers are only added and removed when PSI is consumed, which clears the cached PID.
+  private int cachedPid;
+  @Nullable private TsPayloadReader cachedPayloadReader;
+  private boolean cachedPidIsTrackPid;
 
   public TsExtractor() {
     this(0);
@@ -165,6 +175,30 @@ public final class TsExtractor implements Extractor {
       @Mode int mode,
       TimestampAdjuster timestampAdjuster,
       TsPayloadReader.Factory payloadReaderFactory) {
+    this(mode, timestampAdjuster, payloadReaderFactory, /* payloadParsingExecutor= */ null);
+  }
+
+  /**
+   * @param mode Mode for the extractor. One of {@link #MODE_MULTI_PMT}, {@link #MODE_SINGLE_PMT}
+   *     and {@link #MODE_HLS}.
+   * @param timestampAdjuster A timestamp adjuster for offsetting and scaling sample timestamps.
+   * @param payloadReaderFactory Factory for injecting a custom set of payload readers.
+   * @param payloadParsingExecutor An {@link Executor} on which the payloads of the elementary
+   *     streams read by {@link PesReader}s are parsed, or null to parse them on the thread that
+   *     calls {@link #read(ExtractorInput, PositionHolder)}. Each elementary stream is parsed in
+   *     order, but different elementary streams may be parsed in parallel, so the {@link
+   *     TrackOutput}s of different elementary streams may be written to from different threads at
+   *     the same time. Data consumed by a call to {@link #read(ExtractorInput, PositionHolder)} may
+   *     still be being parsed when it returns. All of the consumed data has been parsed and output
+   *     when a read returns {@link #RESULT_END_OF_INPUT} or throws. Data that's yet to be parsed is
+   *     discarded by {@link #seek(long, long)} and {@link #release()}, which return once no more
+   *     data is being output, and so must be called before the {@link TrackOutput}s are reset.
+   */
+  public TsExtractor(
+      @Mode int mode,
+      TimestampAdjuster timestampAdjuster,
+      TsPayloadReader.Factory payloadReaderFactory,
+      @Nullable Executor payloadParsingExecutor) {
     this.payloadReaderFactory = Assertions.checkNotNull(payloadReaderFactory);
     this.mode = mode;
     if (mode == MODE_SINGLE_PMT || mode == MODE_HLS) {
@@ -173,13 +207,18 @@ public final class TsExtractor implements Extractor {
       timestampAdjusters = new ArrayList<>();
       timestampAdjusters.add(timestampAdjuster);
     }
-    tsPacketBuffer = new ParsableByteArray(new byte[BUFFER_SIZE], 0);
+    tsPacketBuffer = new ParsableByteArray(new byte[INITIAL_BUFFER_SIZE], 0);
     trackIds = new SparseBooleanArray();
     trackPids = new SparseBooleanArray();
     tsPayloadReaders = new SparseArray<>();
     continuityCounters = new SparseIntArray();
     durationReader = new TsDurationReader();
+    asyncParser =
+        payloadParsingExecutor != null
+            ? new AsyncElementaryStreamParser(payloadParsingExecutor)
+            : null;
     pcrPid = -1;
+    cachedPid = -1;
     resetPayloadReaders();
   }
 
@@ -214,6 +253,9 @@ public final class TsExtractor implements Extractor {
   @Override
   public void seek(long position, long timeUs) {
     Assertions.checkState(mode != MODE_HLS);
+    if (asyncParser != null) {
+      asyncParser.reset();
+    }
     int timestampAdjustersCount = timestampAdjusters.size();
     for (int i = 0; i < timestampAdjustersCount; i++) {
       TimestampAdjuster timestampAdjuster = timestampAdjusters.get(i);
@@ -244,12 +286,36 @@ public final class TsExtractor implements Extractor {
 
   @Override
   public void release() {
-    // Do nothing
+    if (asyncParser != null) {
+      asyncParser.reset();
+    }
   }
 
   @Override
   public @ReadResult int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
+    if (asyncParser == null) {
+      return readInternal(input, seekPosition);
+    }
+    asyncParser.maybeThrowError();
+    try {
+      return readInternal(input, seekPosition);
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      // Output the data consumed before the failure, as when it's parsed directly, so that none is
+      // being output once the failure is reported.
+      try {
+        asyncParser.blockUntilIdle();
+      } catch (ParserException parserException) {
+        // Report the original failure instead.
+      }
+      throw e;
+    }
+  }
+
+  // Internal methods.
+
+  private @ReadResult int readInternal(ExtractorInput input, PositionHolder seekPosition)
+      throws IOException, InterruptedException {
     long inputLength = input.getLength();
     if (tracksEnded) {
       boolean canReadDuration = inputLength != C.LENGTH_UNSET && mode != MODE_HLS;
@@ -260,6 +326,10 @@ public final class TsExtractor implements Extractor {
 
       if (pendingSeekToStart) {
         pendingSeekToStart = false;
+        if (asyncParser != null) {
+          // Output the data consumed before the tracks ended, as when it's parsed directly.
+          asyncParser.blockUntilIdle();
+        }
         seek(/* position= */ 0, /* timeUs= */ 0);
         if (input.getPosition() != 0) {
           seekPosition.position = 0;
@@ -274,23 +344,74 @@ public final class TsExtractor implements Extractor {
     }
 
     if (!fillBufferWithAtLeastOnePacket(input)) {
+      if (asyncParser != null) {
+        asyncParser.blockUntilIdle();
+      }
       return RESULT_END_OF_INPUT;
     }
 
-    int endOfPacket = findEndOfFirstTsPacketInBuffer();
+    // Consume all of the complete packets in the buffer, unless the tracks end. The next call then
+    // reads the duration and seeks to the start if needed, before any more packets are consumed.
+    boolean wereTracksEnded = tracksEnded;
     int limit = tsPacketBuffer.limit();
-    if (endOfPacket > limit) {
-      return RESULT_CONTINUE;
+    int endOfPacket = findEndOfFirstTsPacketInBuffer();
+    while (endOfPacket <= limit) {
+      consumePacket(endOfPacket, limit);
+      tsPacketBuffer.setPosition(endOfPacket);
+      if (tracksEnded != wereTracksEnded) {
+        break;
+      }
+      endOfPacket = findEndOfFirstTsPacketInBuffer();
+    }
+    if (mode != MODE_HLS && !wereTracksEnded && tracksEnded && inputLength != C.LENGTH_UNSET) {
+      // We have read all tracks from all PMTs in this non-live stream. Now seek to the beginning
+      // and read again to make sure we output all media, including any contained in packets prior
+      // to those containing the track information.
+      pendingSeekToStart = true;
+    }
+    return RESULT_CONTINUE;
+  }
+
+  // Internals.
+
+  private void maybeOutputSeekMap(long inputLength) {
+    if (!hasOutputSeekMap) {
+      hasOutputSeekMap = true;
+      if (durationReader.getDurationUs() != C.TIME_UNSET) {
+        tsBinarySearchSeeker =
+            new TsBinarySearchSeeker(
+                durationReader.getPcrTimestampAdjuster(),
+                durationReader.getDurationUs(),
+                inputLength,
+                pcrPid);
+        output.seekMap(tsBinarySearchSeeker.getSeekMap());
+      } else {
+        output.seekMap(new SeekMap.Unseekable(durationReader.getDurationUs()));
+      }
     }
+  }
+
+  /**
+   * Consumes the packet that starts at the position of the packet buffer.
+   *
+   * @param endOfPacket The position of the end of the packet in the packet buffer.
+   * @param limit The limit of the packet buffer.
+   */
+  private void consumePacket(int endOfPacket, int limit) throws ParserException {
+    byte[] data = tsPacketBuffer.data;
+    int packetStart = tsPacketBuffer.getPosition();
 
     @TsPayloadReader.Flags int packetHeaderFlags = 0;
 
-    // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
-    int tsPacketHeader = tsPacketBuffer.readInt();
+    // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format. The header is
+    // read from the array directly, rather than through the ParsableByteArray.
+    int tsPacketHeader =
+        (data[packetStart + 1] & 0xFF) << 16
+            | (data[packetStart + 2] & 0xFF) << 8
+            | (data[packetStart + 3] & 0xFF);
     if ((tsPacketHeader & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
     packetHeaderFlags |= (tsPacketHeader & 0x400000) != 0 ? FLAG_PAYLOAD_UNIT_START_INDICATOR : 0;
     // Ignoring transport_priority (tsPacketHeader & 0x200000)
@@ -298,11 +419,19 @@ public final class TsExtractor implements Extractor {
     // Ignoring transport_scrambling_control (tsPacketHeader & 0xC0)
     boolean adaptationFieldExists = (tsPacketHeader & 0x20) != 0;
     boolean payloadExists = (tsPacketHeader & 0x10) != 0;
+    if (!payloadExists) {
+      return;
+    }
 
-    TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
+    if (pid != cachedPid) {
+      cachedPid = pid;
+      cachedPayloadReader = tsPayloadReaders.get(pid);
+      cachedPidIsTrackPid = trackPids.get(pid, /* valueIfKeyNotFound= */ false);
+    }
+    TsPayloadReader payloadReader = cachedPayloadReader;
+    boolean isTrackPid = cachedPidIsTrackPid;
     if (payloadReader == null) {
-      tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
 
     // Discontinuity check.
@@ -312,8 +441,7 @@ public final class TsExtractor implements Extractor {
       continuityCounters.put(pid, continuityCounter);
       if (previousCounter == continuityCounter) {
         // Duplicate packet found.
-        tsPacketBuffer.setPosition(endOfPacket);
-        return RESULT_CONTINUE;
+        return;
       } else if (continuityCounter != ((previousCounter + 1) & 0xF)) {
         // Discontinuity found.
         payloadReader.seek();
@@ -321,50 +449,27 @@ public final class TsExtractor implements Extractor {
     }
 
     // Skip the adaptation field.
+    int payloadStart = packetStart + 4;
     if (adaptationFieldExists) {
-      int adaptationFieldLength = tsPacketBuffer.readUnsignedByte();
-      int adaptationFieldFlags = tsPacketBuffer.readUnsignedByte();
+      int adaptationFieldLength = data[payloadStart] & 0xFF;
+      int adaptationFieldFlags = data[payloadStart + 1] & 0xFF;
 
       packetHeaderFlags |=
           (adaptationFieldFlags & 0x40) != 0 // random_access_indicator.
               ? TsPayloadReader.FLAG_RANDOM_ACCESS_INDICATOR
               : 0;
-      tsPacketBuffer.skipBytes(adaptationFieldLength - 1 /* flags */);
+      payloadStart += 1 /* adaptation_field_length */ + adaptationFieldLength;
     }
 
     // Read the payload.
-    boolean wereTracksEnded = tracksEnded;
-    if (shouldConsumePacketPayload(pid)) {
+    if (mode == MODE_HLS || tracksEnded || !isTrackPid) {
+      tsPacketBuffer.setPosition(payloadStart);
       tsPacketBuffer.setLimit(endOfPacket);
       payloadReader.consume(tsPacketBuffer, packetHeaderFlags);
       tsPacketBuffer.setLimit(limit);
-    }
-    if (mode != MODE_HLS && !wereTracksEnded && tracksEnded && inputLength != C.LENGTH_UNSET) {
-      // We have read all tracks from all PMTs in this non-live stream. Now seek to the beginning
-      // and read again to make sure we output all media, including any contained in packets prior
-      // to those containing the track information.
-      pendingSeekToStart = true;
-    }
-
-    tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
-  }
-
-  // Internals.
-
-  private void maybeOutputSeekMap(long inputLength) {
-    if (!hasOutputSeekMap) {
-      hasOutputSeekMap = true;
-      if (durationReader.getDurationUs() != C.TIME_UNSET) {
-        tsBinarySearchSeeker =
-            new TsBinarySearchSeeker(
-                durationReader.getPcrTimestampAdjuster(),
-                durationReader.getDurationUs(),
-                inputLength,
-                pcrPid);
-        output.seekMap(tsBinarySearchSeeker.getSeekMap());
-      } else {
-        output.seekMap(new SeekMap.Unseekable(durationReader.getDurationUs()));
+      if (!isTrackPid) {
+        // It's a PSI packet, which may have changed the payload readers.
+        cachedPid = -1;
       }
     }
   }
@@ -372,21 +477,28 @@ public final class TsExtractor implements Extractor {
   private boolean fillBufferWithAtLeastOnePacket(ExtractorInput input)
       throws IOException, InterruptedException {
     byte[] data = tsPacketBuffer.data;
-    // Shift bytes to the start of the buffer if there isn't enough space left at the end.
-    if (BUFFER_SIZE - tsPacketBuffer.getPosition() < TS_PACKET_SIZE) {
-      int bytesLeft = tsPacketBuffer.bytesLeft();
-      if (bytesLeft > 0) {
-        System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
-      }
-      tsPacketBuffer.reset(data, bytesLeft);
+    int bytesLeft = tsPacketBuffer.bytesLeft();
+    if (bytesLeft >= TS_PACKET_SIZE) {
+      return true;
+    }
+    // Shift the remaining bytes to the start of the buffer, so that it can be filled. If the last
+    // read filled the buffer, the input is providing data faster than it's consumed, which is the
+    // case for high bitrate streams, so the buffer is enlarged to consume it in larger batches.
+    if (lastReadFilledBuffer && data.length < MAX_BUFFER_SIZE) {
+      data = new byte[Math.min(data.length * 2, MAX_BUFFER_SIZE)];
     }
+    if (bytesLeft > 0) {
+      System.arraycopy(tsPacketBuffer.data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
+    }
+    tsPacketBuffer.reset(data, bytesLeft);
     // Read more bytes until we have at least one packet.
     while (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
       int limit = tsPacketBuffer.limit();
-      int read = input.read(data, limit, BUFFER_SIZE - limit);
+      int read = input.read(data, limit, data.length - limit);
       if (read == C.RESULT_END_OF_INPUT) {
         return false;
       }
+      lastReadFilledBuffer = read == data.length - limit;
       tsPacketBuffer.setLimit(limit + read);
     }
     return true;
@@ -418,12 +530,6 @@ public final class TsExtractor implements Extractor {
     return endOfPacket;
   }
 
-  private boolean shouldConsumePacketPayload(int packetPid) {
-    return mode == MODE_HLS
-        || tracksEnded
-        || !trackPids.get(packetPid, /* valueIfKeyNotFound= */ false); // It's a PSI packet
-  }
-
   private void resetPayloadReaders() {
     trackIds.clear();
     tsPayloadReaders.clear();
@@ -437,6 +543,15 @@ public final class TsExtractor implements Extractor {
     id3Reader = null;
   }
 
+  @Nullable
+  private TsPayloadReader createPayloadReader(int streamType, EsInfo esInfo) {
+    TsPayloadReader reader = payloadReaderFactory.createPayloadReader(streamType, esInfo);
+    if (asyncParser != null && reader instanceof PesReader) {
+      ((PesReader) reader).setAsyncParser(asyncParser);
+    }
+    return reader;
+  }
+
   /**
    * Parses Program Association Table data.
    */
@@ -562,7 +677,7 @@ public final class TsExtractor implements Extractor {
         // Setup an ID3 track regardless of whether there's a corresponding entry, in case one
         // appears intermittently during playback. See [Internal: b/20261500].
         EsInfo dummyEsInfo = new EsInfo(TS_STREAM_TYPE_ID3, null, null, Util.EMPTY_BYTE_ARRAY);
-        id3Reader = payloadReaderFactory.createPayloadReader(TS_STREAM_TYPE_ID3, dummyEsInfo);
+        id3Reader = createPayloadReader(TS_STREAM_TYPE_ID3, dummyEsInfo);
         id3Reader.init(timestampAdjuster, output,
             new TrackIdGenerator(programNumber, TS_STREAM_TYPE_ID3, MAX_PID_PLUS_ONE));
       }
@@ -589,7 +704,7 @@ public final class TsExtractor implements Extractor {
         }
 
         TsPayloadReader reader = mode == MODE_HLS && streamType == TS_STREAM_TYPE_ID3 ? id3Reader
-            : payloadReaderFactory.createPayloadReader(streamType, esInfo);
+            : createPayloadReader(streamType, esInfo);
         if (mode != MODE_HLS
             || elementaryPid < trackIdToPidScratch.get(trackId, MAX_PID_PLUS_ONE)) {
           trackIdToPidScratch.put(trackId, elementaryPid);
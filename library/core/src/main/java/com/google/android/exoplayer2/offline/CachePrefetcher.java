@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.offline;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Warms a cache with the start of the media that comes next in a {@link Player}'s playlist, so that
+ * playback of it can start without waiting for the network.
+ *
+ * <p>A {@link RequestProvider} describes the media of each upcoming window as a {@link
+ * DownloadRequest}, from which a {@link Downloader} is created using a {@link DownloaderFactory}.
+ * For segmented media, the manifest, initialization data and the segments within the first {@code
+ * prefetchDurationUs} are downloaded. For progressive media, the first {@code
+ * progressivePrefetchLength} bytes are downloaded. Downloads run one at a time on a background
+ * thread, in playlist order.
+ *
+ * <p>Prefetching runs at {@link C#PRIORITY_DOWNLOAD}, which is lower than {@link
+ * C#PRIORITY_PLAYBACK}. If the {@link PriorityTaskManager} passed to the {@link
+ * DownloaderConstructorHelper} is also set on the player's {@link DefaultLoadControl}, prefetching
+ * is paused whenever the player is loading, so that it only uses bandwidth that playback doesn't
+ * need. The player's data source must read through the same cache for prefetched data to be used.
+ *
+ * <p>Segmented live streams are prefetched from their default start position near the live edge. A
+ * prefetch that fails is retried up to {@link #MAX_RETRY_COUNT} times. A retry starts on the next
+ * change of the player's playlist or position once {@link #RETRY_DELAY_MS} per failure so far has
+ * elapsed since the last failure.
+ */
+public final class CachePrefetcher implements Player.EventListener {
+
+  /** Provides {@link DownloadRequest}s describing the media of upcoming windows. */
+  public interface RequestProvider {
+
+    /**
+     * Returns a {@link DownloadRequest} describing the media of a window, or null if the window
+     * should not be prefetched.
+     *
+     * @param window The {@link Timeline.Window}, with its {@link Timeline.Window#tag} set.
+     * @return The {@link DownloadRequest}, or null if the window should not be prefetched.
+     */
+    @Nullable
+    DownloadRequest getDownloadRequest(Timeline.Window window);
+  }
+
+  /** The default duration of segmented media that's prefetched, in microseconds. */
+  public static final long DEFAULT_PREFETCH_DURATION_US = 10 * C.MICROS_PER_SECOND;
+  /** The default number of bytes of progressive media that are prefetched. */
+  public static final long DEFAULT_PROGRESSIVE_PREFETCH_LENGTH = 2 * 1024 * 1024;
+  /** The default maximum number of upcoming windows that are prefetched. */
+  public static final int DEFAULT_MAX_PREFETCH_WINDOW_COUNT = 1;
+  /** The maximum number of times that a failed prefetch is retried. */
+  public static final int MAX_RETRY_COUNT = 3;
+  /** The delay before a failed prefetch is retried, in milliseconds per failure. */
+  public static final long RETRY_DELAY_MS = 5000;
+
+  private static final String TAG = "CachePrefetcher";
+
+  private final Player player;
+  private final DownloaderFactory downloaderFactory;
+  private final RequestProvider requestProvider;
+  private final long prefetchDurationUs;
+  private final long progressivePrefetchLength;
+  private final int maxPrefetchWindowCount;
+  private final Clock clock;
+  private final Timeline.Window window;
+  private final HashMap<String, PrefetchTask> prefetchTasks;
+
+  @Nullable private ExecutorService executorService;
+
+  /**
+   * Creates an instance that prefetches the next window, using the default prefetch durations and
+   * lengths.
+   *
+   * @param player The {@link Player} whose upcoming windows should be prefetched.
+   * @param downloaderFactory A {@link DownloaderFactory} for creating the {@link Downloader}s.
+   * @param requestProvider A {@link RequestProvider} describing the media of upcoming windows.
+   */
+  public CachePrefetcher(
+      Player player, DownloaderFactory downloaderFactory, RequestProvider requestProvider) {
+    this(
+        player,
+        downloaderFactory,
+        requestProvider,
+        DEFAULT_PREFETCH_DURATION_US,
+        DEFAULT_PROGRESSIVE_PREFETCH_LENGTH,
+        DEFAULT_MAX_PREFETCH_WINDOW_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param player The {@link Player} whose upcoming windows should be prefetched.
+   * @param downloaderFactory A {@link DownloaderFactory} for creating the {@link Downloader}s.
+   * @param requestProvider A {@link RequestProvider} describing the media of upcoming windows.
+   * @param prefetchDurationUs The duration of segmented media that's prefetched, in microseconds.
+   * @param progressivePrefetchLength The number of bytes of progressive media that are prefetched.
+   * @param maxPrefetchWindowCount The maximum number of upcoming windows that are prefetched.
+   */
+  public CachePrefetcher(
+      Player player,
+      DownloaderFactory downloaderFactory,
+      RequestProvider requestProvider,
+      long prefetchDurationUs,
+      long progressivePrefetchLength,
+      int maxPrefetchWindowCount) {
+    this(
+        player,
+        downloaderFactory,
+        requestProvider,
+        prefetchDurationUs,
+        progressivePrefetchLength,
+        maxPrefetchWindowCount,
+        Clock.DEFAULT);
+  }
+
+  /* package */ CachePrefetcher(
+      Player player,
+      DownloaderFactory downloaderFactory,
+      RequestProvider requestProvider,
+      long prefetchDurationUs,
+      long progressivePrefetchLength,
+      int maxPrefetchWindowCount,
+      Clock clock) {
+    Assertions.checkArgument(prefetchDurationUs > 0);
+    Assertions.checkArgument(progressivePrefetchLength > 0);
+    Assertions.checkArgument(maxPrefetchWindowCount > 0);
+    this.player = player;
+    this.downloaderFactory = downloaderFactory;
+    this.requestProvider = requestProvider;
+    this.prefetchDurationUs = prefetchDurationUs;
+    this.progressivePrefetchLength = progressivePrefetchLength;
+    this.maxPrefetchWindowCount = maxPrefetchWindowCount;
+    this.clock = clock;
+    window = new Timeline.Window();
+    prefetchTasks = new HashMap<>();
+  }
+
+  /** Starts prefetching. Must be called from the player's application thread. */
+  public void start() {
+    if (executorService != null) {
+      return;
+    }
+    executorService = Util.newSingleThreadExecutor(TAG);
+    player.addListener(this);
+    updatePrefetchTasks();
+  }
+
+  /**
+   * Stops prefetching, canceling any prefetches that are in progress. Must be called from the
+   * player's application thread.
+   */
+  public void stop() {
+    if (executorService == null) {
+      return;
+    }
+    player.removeListener(this);
+    for (PrefetchTask prefetchTask : prefetchTasks.values()) {
+      prefetchTask.cancel();
+    }
+    prefetchTasks.clear();
+    executorService.shutdown();
+    executorService = null;
+  }
+
+  // Player.EventListener implementation.
+
+  @Override
+  public void onTimelineChanged(Timeline timeline, @Player.TimelineChangeReason int reason) {
+    updatePrefetchTasks();
+  }
+
+  @Override
+  public void onPositionDiscontinuity(@Player.DiscontinuityReason int reason) {
+    updatePrefetchTasks();
+  }
+
+  @Override
+  public void onRepeatModeChanged(@Player.RepeatMode int repeatMode) {
+    updatePrefetchTasks();
+  }
+
+  @Override
+  public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
+    updatePrefetchTasks();
+  }
+
+  // Internal methods.
+
+  private void updatePrefetchTasks() {
+    ExecutorService executorService = Assertions.checkNotNull(this.executorService);
+    LinkedHashMap<String, DownloadRequest> upcomingRequests = getUpcomingRequests();
+    // Cancel prefetches of windows that are no longer upcoming.
+    Iterator<Map.Entry<String, PrefetchTask>> iterator = prefetchTasks.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, PrefetchTask> entry = iterator.next();
+      if (!upcomingRequests.containsKey(entry.getKey())) {
+        entry.getValue().cancel();
+        iterator.remove();
+      }
+    }
+    // Start prefetches of new upcoming windows, and retry those that failed once their retry delay
+    // has elapsed.
+    for (DownloadRequest request : upcomingRequests.values()) {
+      PrefetchTask prefetchTask = prefetchTasks.get(request.id);
+      int retryCount;
+      if (prefetchTask == null) {
+        retryCount = 0;
+      } else if (shouldRetry(prefetchTask)) {
+        retryCount = prefetchTask.retryCount + 1;
+      } else {
+        continue;
+      }
+      prefetchTask = new PrefetchTask(downloaderFactory.createDownloader(request), retryCount);
+      prefetchTask.future = executorService.submit(prefetchTask);
+      prefetchTasks.put(request.id, prefetchTask);
+    }
+  }
+
+  private boolean shouldRetry(PrefetchTask prefetchTask) {
+    long failureTimeMs = prefetchTask.failureTimeMs;
+    return failureTimeMs != C.TIME_UNSET
+        && prefetchTask.retryCount < MAX_RETRY_COUNT
+        && clock.elapsedRealtime() - failureTimeMs
+            >= (prefetchTask.retryCount + 1) * RETRY_DELAY_MS;
+  }
+
+  /** Returns the requests of the upcoming windows that should be prefetched, in playlist order. */
+  private LinkedHashMap<String, DownloadRequest> getUpcomingRequests() {
+    LinkedHashMap<String, DownloadRequest> upcomingRequests = new LinkedHashMap<>();
+    Timeline timeline = player.getCurrentTimeline();
+    if (timeline.isEmpty()) {
+      return upcomingRequests;
+    }
+    int currentWindowIndex = player.getCurrentWindowIndex();
+    @Player.RepeatMode int repeatMode = player.getRepeatMode();
+    boolean shuffleModeEnabled = player.getShuffleModeEnabled();
+    int windowIndex = currentWindowIndex;
+    for (int i = 0; i < maxPrefetchWindowCount; i++) {
+      windowIndex = timeline.getNextWindowIndex(windowIndex, repeatMode, shuffleModeEnabled);
+      if (windowIndex == C.INDEX_UNSET || windowIndex == currentWindowIndex) {
+        break;
+      }
+      timeline.getWindow(windowIndex, window, /* setTag= */ true);
+      @Nullable DownloadRequest request = requestProvider.getDownloadRequest(window);
+      if (request != null) {
+        upcomingRequests.put(request.id, request);
+      }
+    }
+    return upcomingRequests;
+  }
+
+  private final class PrefetchTask implements Runnable {
+
+    private final Downloader downloader;
+
+    /** The number of earlier prefetches of the same request, all of which failed. */
+    public final int retryCount;
+
+    @Nullable public Future<?> future;
+    public volatile long failureTimeMs;
+
+    public PrefetchTask(Downloader downloader, int retryCount) {
+      this.downloader = downloader;
+      this.retryCount = retryCount;
+      failureTimeMs = C.TIME_UNSET;
+    }
+
+    public void cancel() {
+      downloader.cancel();
+      if (future != null) {
+        future.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (downloader instanceof SegmentDownloader) {
+          ((SegmentDownloader<?>) downloader).prefetch(prefetchDurationUs);
+        } else if (downloader instanceof ProgressiveDownloader) {
+          ((ProgressiveDownloader) downloader).prefetch(progressivePrefetchLength);
+        }
+        // Other downloaders can't be limited to the start of the media, so they're not prefetched.
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        Log.w(TAG, "Prefetch failed", e);
+        failureTimeMs = clock.elapsedRealtime();
+      }
+    }
+  }
+}
@@ -29,16 +29,21 @@ import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 
 /** A helper class that holds necessary parameters for {@link Downloader} construction. */
 public final class DownloaderConstructorHelper {
 
+  /** The default maximum number of segments that a segmented download fetches in parallel. */
+  public static final int DEFAULT_MAX_PARALLEL_SEGMENT_DOWNLOADS = 1;
+
   private final Cache cache;
   @Nullable private final CacheKeyFactory cacheKeyFactory;
   @Nullable private final PriorityTaskManager priorityTaskManager;
   private final CacheDataSourceFactory onlineCacheDataSourceFactory;
   private final CacheDataSourceFactory offlineCacheDataSourceFactory;
+  private final int maxParallelSegmentDownloads;
 
   /**
    * @param cache Cache instance to be used to store downloaded data.
@@ -101,6 +106,40 @@ public final class DownloaderConstructorHelper {
       @Nullable DataSink.Factory cacheWriteDataSinkFactory,
       @Nullable PriorityTaskManager priorityTaskManager,
       @Nullable CacheKeyFactory cacheKeyFactory) {
+    this(
+        cache,
+        upstreamFactory,
+        cacheReadDataSourceFactory,
+        cacheWriteDataSinkFactory,
+        priorityTaskManager,
+        cacheKeyFactory,
+        DEFAULT_MAX_PARALLEL_SEGMENT_DOWNLOADS);
+  }
+
+  /**
+   * @param cache Cache instance to be used to store downloaded data.
+   * @param upstreamFactory A {@link DataSource.Factory} for creating {@link DataSource}s for
+   *     downloading data.
+   * @param cacheReadDataSourceFactory A {@link DataSource.Factory} for creating {@link DataSource}s
+   *     for reading data from the cache. If null then a {@link FileDataSourceFactory} will be used.
+   * @param cacheWriteDataSinkFactory A {@link DataSink.Factory} for creating {@link DataSource}s
+   *     for writing data to the cache. If null then a {@link CacheDataSinkFactory} will be used.
+   * @param priorityTaskManager A {@link PriorityTaskManager} to use when downloading. If non-null,
+   *     downloaders will register as tasks with priority {@link C#PRIORITY_DOWNLOAD} whilst
+   *     downloading.
+   * @param cacheKeyFactory An optional factory for cache keys.
+   * @param maxParallelSegmentDownloads The maximum number of segments that a segmented download
+   *     may fetch and write into the cache at the same time. Must be greater than 0.
+   */
+  public DownloaderConstructorHelper(
+      Cache cache,
+      DataSource.Factory upstreamFactory,
+      @Nullable DataSource.Factory cacheReadDataSourceFactory,
+      @Nullable DataSink.Factory cacheWriteDataSinkFactory,
+      @Nullable PriorityTaskManager priorityTaskManager,
+      @Nullable CacheKeyFactory cacheKeyFactory,
+      int maxParallelSegmentDownloads) {
+    Assertions.checkArgument(maxParallelSegmentDownloads > 0);
     if (priorityTaskManager != null) {
       upstreamFactory =
           new PriorityDataSourceFactory(upstreamFactory, priorityTaskManager, C.PRIORITY_DOWNLOAD);
@@ -134,6 +173,7 @@ public final class DownloaderConstructorHelper {
     this.cache = cache;
     this.priorityTaskManager = priorityTaskManager;
     this.cacheKeyFactory = cacheKeyFactory;
+    this.maxParallelSegmentDownloads = maxParallelSegmentDownloads;
   }
 
   /** Returns the {@link Cache} instance. */
@@ -153,6 +193,14 @@ public final class DownloaderConstructorHelper {
     return priorityTaskManager != null ? priorityTaskManager : new PriorityTaskManager();
   }
 
+  /**
+   * Returns the maximum number of segments that a segmented download may fetch and write into the
+   * cache at the same time.
+   */
+  public int getMaxParallelSegmentDownloads() {
+    return maxParallelSegmentDownloads;
+  }
+
   /** Returns a new {@link CacheDataSource} instance. */
   public CacheDataSource createCacheDataSource() {
     return onlineCacheDataSourceFactory.createDataSource();
@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -84,6 +85,34 @@ public final class ProgressiveDownloader implements Downloader {
     }
   }
 
+  /**
+   * Downloads the start of the stream. Used to warm the cache so that playback of the stream can
+   * start without waiting for the network.
+   *
+   * @param length The number of bytes to download from the start of the stream.
+   * @throws InterruptedException If the thread has been interrupted.
+   * @throws IOException Thrown when there is an error downloading.
+   */
+  public void prefetch(long length) throws InterruptedException, IOException {
+    Assertions.checkArgument(length > 0);
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+    try {
+      CacheUtil.cache(
+          dataSpec.subrange(/* offset= */ 0, length),
+          cache,
+          cacheKeyFactory,
+          dataSource,
+          new byte[BUFFER_SIZE_BYTES],
+          priorityTaskManager,
+          C.PRIORITY_DOWNLOAD,
+          /* progressListener= */ null,
+          isCanceled,
+          /* enableEOFException= */ false);
+    } finally {
+      priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+    }
+  }
+
   @Override
   public void cancel() {
     isCanceled.set(true);
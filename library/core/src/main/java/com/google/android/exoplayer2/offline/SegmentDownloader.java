@@ -18,7 +18,6 @@ package com.google.android.exoplayer2.offline;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import android.util.Pair;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
@@ -26,13 +25,20 @@ import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for multi segment stream downloaders.
@@ -65,12 +71,14 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
   private static final int BUFFER_SIZE_BYTES = 128 * 1024;
 
   private final DataSpec manifestDataSpec;
+  private final DownloaderConstructorHelper constructorHelper;
   private final Cache cache;
   private final CacheDataSource dataSource;
   private final CacheDataSource offlineDataSource;
   private final CacheKeyFactory cacheKeyFactory;
   private final PriorityTaskManager priorityTaskManager;
   private final ArrayList<StreamKey> streamKeys;
+  private final int maxParallelSegmentDownloads;
   private final AtomicBoolean isCanceled;
 
   /**
@@ -83,11 +91,13 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       Uri manifestUri, List<StreamKey> streamKeys, DownloaderConstructorHelper constructorHelper) {
     this.manifestDataSpec = getCompressibleDataSpec(manifestUri);
     this.streamKeys = new ArrayList<>(streamKeys);
+    this.constructorHelper = constructorHelper;
     this.cache = constructorHelper.getCache();
     this.dataSource = constructorHelper.createCacheDataSource();
     this.offlineDataSource = constructorHelper.createOfflineCacheDataSource();
     this.cacheKeyFactory = constructorHelper.getCacheKeyFactory();
     this.priorityTaskManager = constructorHelper.getPriorityTaskManager();
+    this.maxParallelSegmentDownloads = constructorHelper.getMaxParallelSegmentDownloads();
     isCanceled = new AtomicBoolean();
   }
 
@@ -95,12 +105,40 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
    * Downloads the selected streams in the media. If multiple streams are selected, they are
    * downloaded in sync with one another.
    *
+   * <p>If {@link DownloaderConstructorHelper#getMaxParallelSegmentDownloads()} is greater than one,
+   * segments are fetched on a pool of worker threads and {@code progressListener} may be called
+   * from any of them. Calls to the listener are never made concurrently.
+   *
    * @throws IOException Thrown when there is an error downloading.
    * @throws InterruptedException If the thread has been interrupted.
    */
   @Override
   public final void download(@Nullable ProgressListener progressListener)
       throws IOException, InterruptedException {
+    download(progressListener, /* prefetchDurationUs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Downloads the manifest, initialization data and the segments needed to play {@code durationUs}
+   * of the selected streams from their default start position. Used to warm the cache so that
+   * playback of the media can start without waiting for the network.
+   *
+   * @param durationUs The duration of media to download, in microseconds.
+   * @throws IOException Thrown when there is an error downloading.
+   * @throws InterruptedException If the thread has been interrupted.
+   */
+  public final void prefetch(long durationUs) throws IOException, InterruptedException {
+    Assertions.checkArgument(durationUs != C.TIME_UNSET);
+    download(/* progressListener= */ null, durationUs);
+  }
+
+  /**
+   * Downloads the selected streams, or only the segments returned by {@link
+   * #getPrefetchSegments(DataSource, FilterableManifest, long)} if {@code prefetchDurationUs} is
+   * not {@link C#TIME_UNSET}.
+   */
+  private void download(@Nullable ProgressListener progressListener, long prefetchDurationUs)
+      throws IOException, InterruptedException {
     priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     try {
       // Get the manifest and all of the segments.
@@ -108,33 +146,44 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       if (!streamKeys.isEmpty()) {
         manifest = manifest.copy(streamKeys);
       }
-      List<Segment> segments = getSegments(dataSource, manifest, /* allowIncompleteList= */ false);
+      List<Segment> segments =
+          prefetchDurationUs == C.TIME_UNSET
+              ? getSegments(dataSource, manifest, /* allowIncompleteList= */ false)
+              : getPrefetchSegments(dataSource, manifest, prefetchDurationUs);
 
       // Scan the segments, removing any that are fully downloaded.
       int totalSegments = segments.size();
+      long[] segmentLengths = new long[totalSegments];
+      long[] segmentBytesDownloaded = new long[totalSegments];
+      List<DataSpec> segmentDataSpecs = new ArrayList<>(totalSegments);
+      for (int i = 0; i < totalSegments; i++) {
+        segmentDataSpecs.add(segments.get(i).dataSpec);
+      }
+      CacheUtil.getCached(
+          segmentDataSpecs, cache, cacheKeyFactory, segmentLengths, segmentBytesDownloaded);
       int segmentsDownloaded = 0;
       long contentLength = 0;
       long bytesDownloaded = 0;
-      for (int i = segments.size() - 1; i >= 0; i--) {
-        Segment segment = segments.get(i);
-        Pair<Long, Long> segmentLengthAndBytesDownloaded =
-            CacheUtil.getCached(segment.dataSpec, cache, cacheKeyFactory);
-        long segmentLength = segmentLengthAndBytesDownloaded.first;
-        long segmentBytesDownloaded = segmentLengthAndBytesDownloaded.second;
-        bytesDownloaded += segmentBytesDownloaded;
+      ArrayList<Segment> segmentsToDownload = new ArrayList<>(totalSegments);
+      for (int i = 0; i < totalSegments; i++) {
+        long segmentLength = segmentLengths[i];
+        bytesDownloaded += segmentBytesDownloaded[i];
         if (segmentLength != C.LENGTH_UNSET) {
-          if (segmentLength == segmentBytesDownloaded) {
+          if (segmentLength == segmentBytesDownloaded[i]) {
             // The segment is fully downloaded.
             segmentsDownloaded++;
-            segments.remove(i);
+          } else {
+            segmentsToDownload.add(segments.get(i));
           }
           if (contentLength != C.LENGTH_UNSET) {
             contentLength += segmentLength;
           }
         } else {
+          segmentsToDownload.add(segments.get(i));
           contentLength = C.LENGTH_UNSET;
         }
       }
+      segments = segmentsToDownload;
       Collections.sort(segments);
 
       // Download the segments.
@@ -148,22 +197,16 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
                 bytesDownloaded,
                 segmentsDownloaded);
       }
-      byte[] buffer = new byte[BUFFER_SIZE_BYTES];
-      for (int i = 0; i < segments.size(); i++) {
-        CacheUtil.cache(
-            segments.get(i).dataSpec,
-            cache,
-            cacheKeyFactory,
+      int parallelSegmentDownloads = Math.min(maxParallelSegmentDownloads, segments.size());
+      if (parallelSegmentDownloads <= 1) {
+        downloadSegments(
+            segments,
+            new AtomicInteger(),
+            /* isFailed= */ new AtomicBoolean(),
             dataSource,
-            buffer,
-            priorityTaskManager,
-            C.PRIORITY_DOWNLOAD,
-            progressNotifier,
-            isCanceled,
-            true);
-        if (progressNotifier != null) {
-          progressNotifier.onSegmentDownloaded();
-        }
+            progressNotifier);
+      } else {
+        downloadSegmentsInParallel(segments, parallelSegmentDownloads, progressNotifier);
       }
     } finally {
       priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
@@ -220,6 +263,151 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       DataSource dataSource, M manifest, boolean allowIncompleteList)
       throws InterruptedException, IOException;
 
+  /**
+   * Returns the {@link Segment}s downloaded by {@link #prefetch(long)}, which are those needed to
+   * play {@code durationUs} of the media from its default start position.
+   *
+   * <p>The default implementation returns the segments that start within {@code durationUs} of the
+   * earliest segment, which is where playback of on-demand media starts. Subclasses for formats
+   * that support live streams override it to start near the live edge.
+   *
+   * @param dataSource The {@link DataSource} through which to load any required data.
+   * @param manifest The manifest containing the segments.
+   * @param durationUs The duration of media to prefetch, in microseconds.
+   * @return The list of {@link Segment}s to prefetch.
+   * @throws InterruptedException Thrown if the thread was interrupted.
+   * @throws IOException Thrown if a load error occurs, or if the media is not in a form that allows
+   *     for its segments to be listed.
+   */
+  protected List<Segment> getPrefetchSegments(DataSource dataSource, M manifest, long durationUs)
+      throws InterruptedException, IOException {
+    return getLeadingSegments(
+        getSegments(dataSource, manifest, /* allowIncompleteList= */ false), durationUs);
+  }
+
+  private void downloadSegmentsInParallel(
+      List<Segment> segments,
+      int parallelSegmentDownloads,
+      @Nullable ProgressNotifier progressNotifier)
+      throws IOException, InterruptedException {
+    AtomicInteger nextSegmentIndex = new AtomicInteger();
+    AtomicBoolean isFailed = new AtomicBoolean();
+    // The calling thread acts as one of the workers, so the pool needs one thread fewer.
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            parallelSegmentDownloads - 1, runnable -> new Thread(runnable, "SegmentDownloader"));
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < parallelSegmentDownloads - 1; i++) {
+        // CacheDataSource instances are not thread-safe, so each worker needs its own.
+        CacheDataSource workerDataSource = constructorHelper.createCacheDataSource();
+        futures.add(
+            executorService.submit(
+                () -> {
+                  downloadSegments(
+                      segments, nextSegmentIndex, isFailed, workerDataSource, progressNotifier);
+                  return null;
+                }));
+      }
+      downloadSegments(segments, nextSegmentIndex, isFailed, dataSource, progressNotifier);
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          Throwable cause = Assertions.checkNotNull(e.getCause());
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IllegalStateException(cause);
+        }
+      }
+    } finally {
+      // Interrupt any workers that are still running, and wait for them to release their cache
+      // locks before returning.
+      executorService.shutdownNow();
+      boolean wasInterrupted = false;
+      while (true) {
+        try {
+          if (executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+            break;
+          }
+        } catch (InterruptedException e) {
+          wasInterrupted = true;
+        }
+      }
+      if (wasInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Downloads segments from {@code segments} until there are none left, taking the index of the
+   * next segment to download from {@code nextSegmentIndex}. May be called from several threads at
+   * once, provided each uses its own {@code dataSource}.
+   */
+  private void downloadSegments(
+      List<Segment> segments,
+      AtomicInteger nextSegmentIndex,
+      AtomicBoolean isFailed,
+      CacheDataSource dataSource,
+      @Nullable ProgressNotifier progressNotifier)
+      throws IOException, InterruptedException {
+    byte[] buffer = new byte[BUFFER_SIZE_BYTES];
+    try {
+      while (!isFailed.get()) {
+        int segmentIndex = nextSegmentIndex.getAndIncrement();
+        if (segmentIndex >= segments.size()) {
+          break;
+        }
+        CacheUtil.cache(
+            segments.get(segmentIndex).dataSpec,
+            cache,
+            cacheKeyFactory,
+            dataSource,
+            buffer,
+            priorityTaskManager,
+            C.PRIORITY_DOWNLOAD,
+            progressNotifier,
+            isCanceled,
+            true);
+        if (progressNotifier != null) {
+          progressNotifier.onSegmentDownloaded();
+        }
+      }
+    } catch (Exception e) {
+      // Stop other workers from starting new segments.
+      isFailed.set(true);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the segments that start within {@code durationUs} of the start of the earliest
+   * segment.
+   */
+  private static List<Segment> getLeadingSegments(List<Segment> segments, long durationUs) {
+    if (segments.isEmpty()) {
+      return segments;
+    }
+    long startTimeUs = Collections.min(segments).startTimeUs;
+    List<Segment> leadingSegments = new ArrayList<>();
+    for (int i = 0; i < segments.size(); i++) {
+      Segment segment = segments.get(i);
+      // Initialization segments share the start time of the first media segment they apply to.
+      if (segment.startTimeUs - startTimeUs < durationUs) {
+        leadingSegments.add(segment);
+      }
+    }
+    return leadingSegments;
+  }
+
   private void removeDataSpec(DataSpec dataSpec) {
     CacheUtil.remove(dataSpec, cache, cacheKeyFactory);
   }
@@ -257,12 +445,13 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
 
     @Override
-    public void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+    public synchronized void onProgress(
+        long requestLength, long bytesCached, long newBytesCached) {
       bytesDownloaded += newBytesCached;
       progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
     }
 
-    public void onSegmentDownloaded() {
+    public synchronized void onSegmentDownloaded() {
       segmentsDownloaded++;
       progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
     }
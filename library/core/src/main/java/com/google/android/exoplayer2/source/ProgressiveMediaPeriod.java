@@ -213,13 +213,14 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
   @Override
   public void onLoaderReleased() {
+    // Release the extractor first, since it may still be outputting to the sample queues.
+    extractorHolder.release();
     for (SampleQueue sampleQueue : sampleQueues) {
       sampleQueue.reset();
     }
     for (DecryptableSampleQueueReader reader : sampleQueueReaders) {
       reader.release();
     }
-    extractorHolder.release();
   }
 
   @Override
@@ -951,46 +952,53 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     @Override
     public void load() throws IOException, InterruptedException {
-      int result = Extractor.RESULT_CONTINUE;
-      while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
-        ExtractorInput input = null;
-        try {
-          long position = positionHolder.position;
-          dataSpec = buildDataSpec(position);
-          length = dataSource.open(dataSpec);
-          if (length != C.LENGTH_UNSET) {
-            length += position;
-          }
-          Uri uri = Assertions.checkNotNull(dataSource.getUri());
-          icyHeaders = IcyHeaders.parse(dataSource.getResponseHeaders());
-          DataSource extractorDataSource = dataSource;
-          if (icyHeaders != null && icyHeaders.metadataInterval != C.LENGTH_UNSET) {
-            extractorDataSource = new IcyDataSource(dataSource, icyHeaders.metadataInterval, this);
-            icyTrackOutput = icyTrack();
-            icyTrackOutput.format(ICY_FORMAT);
-          }
-          input = new DefaultExtractorInput(extractorDataSource, position, length);
-          Extractor extractor = extractorHolder.selectExtractor(input, extractorOutput, uri);
-          if (pendingExtractorSeek) {
-            extractor.seek(position, seekTimeUs);
-            pendingExtractorSeek = false;
-          }
-          while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
-            loadCondition.block();
-            result = extractor.read(input, positionHolder);
-            if (input.getPosition() > position + continueLoadingCheckIntervalBytes) {
-              position = input.getPosition();
-              loadCondition.close();
-              handler.post(onContinueLoadingRequestedRunnable);
+      try {
+        int result = Extractor.RESULT_CONTINUE;
+        while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
+          ExtractorInput input = null;
+          try {
+            long position = positionHolder.position;
+            dataSpec = buildDataSpec(position);
+            length = dataSource.open(dataSpec);
+            if (length != C.LENGTH_UNSET) {
+              length += position;
             }
+            Uri uri = Assertions.checkNotNull(dataSource.getUri());
+            icyHeaders = IcyHeaders.parse(dataSource.getResponseHeaders());
+            DataSource extractorDataSource = dataSource;
+            if (icyHeaders != null && icyHeaders.metadataInterval != C.LENGTH_UNSET) {
+              extractorDataSource =
+                  new IcyDataSource(dataSource, icyHeaders.metadataInterval, this);
+              icyTrackOutput = icyTrack();
+              icyTrackOutput.format(ICY_FORMAT);
+            }
+            input = new DefaultExtractorInput(extractorDataSource, position, length);
+            Extractor extractor = extractorHolder.selectExtractor(input, extractorOutput, uri);
+            if (pendingExtractorSeek) {
+              extractor.seek(position, seekTimeUs);
+              pendingExtractorSeek = false;
+            }
+            while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
+              loadCondition.block();
+              result = extractor.read(input, positionHolder);
+              if (input.getPosition() > position + continueLoadingCheckIntervalBytes) {
+                position = input.getPosition();
+                loadCondition.close();
+                handler.post(onContinueLoadingRequestedRunnable);
+              }
+            }
+          } finally {
+            if (result == Extractor.RESULT_SEEK) {
+              result = Extractor.RESULT_CONTINUE;
+            } else if (input != null) {
+              positionHolder.position = input.getPosition();
+            }
+            Util.closeQuietly(dataSource);
           }
-        } finally {
-          if (result == Extractor.RESULT_SEEK) {
-            result = Extractor.RESULT_CONTINUE;
-          } else if (input != null) {
-            positionHolder.position = input.getPosition();
-          }
-          Util.closeQuietly(dataSource);
+        }
+      } finally {
+        if (loadCanceled) {
+          extractorHolder.onLoadCanceled();
         }
       }
     }
@@ -1088,6 +1096,20 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       return extractor;
     }
 
+    /**
+     * Seeks the selected extractor, if any, once a load has been canceled. Must be called on the
+     * loading thread, before the canceled load returns.
+     */
+    public void onLoadCanceled() {
+      if (extractor != null) {
+        // The extractor may still be outputting data that it consumed before the load was
+        // canceled, for example if it parses data on other threads. Seeking it discards this data,
+        // and returns once it's no longer being output, so that the sample queues may then be
+        // reset. The next load seeks the extractor again before reading from it.
+        extractor.seek(/* position= */ 0, /* timeUs= */ 0);
+      }
+    }
+
     public void release() {
       if (extractor != null) {
         extractor.release();
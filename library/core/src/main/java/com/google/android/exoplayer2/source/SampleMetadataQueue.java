@@ -23,9 +23,26 @@ import com.google.android.exoplayer2.extractor.TrackOutput.CryptoData;
 import com.google.android.exoplayer2.source.SampleQueue.PeekResult;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A queue of metadata describing the contents of a media buffer.
+ *
+ * <p>The queue is written by a single loading thread and read by a single consuming thread, without
+ * locking. Sample metadata is held in a ring of fixed size chunks of parallel arrays, so that the
+ * queue can grow without copying metadata, and so that chunks can be pooled for reuse when the
+ * queue is reset. The loading thread writes the metadata of each sample before publishing it by
+ * atomically advancing the write index, and the consuming thread only reads the metadata of
+ * published samples. The read and write indices are held in a single atomic value, so that the
+ * loading thread can discard samples that haven't been read when splicing without racing the
+ * consuming thread as it reads them.
+ *
+ * <p>The consuming thread reads metadata optimistically, and then commits the result of each
+ * operation by atomically updating (or confirming) the indices it started from. If the loading
+ * thread discarded and replaced samples in the meantime, which it records by incrementing {@link
+ * #spliceCount}, the result is discarded and the operation is retried.
  */
 /* package */ final class SampleMetadataQueue {
 
@@ -40,46 +57,57 @@ import com.google.android.exoplayer2.util.Util;
 
   }
 
-  private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
+  /** The base two logarithm of the number of samples held by each {@link Chunk}. */
+  private static final int CHUNK_SIZE_SHIFT = 8;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SIZE_SHIFT;
+  /** The initial number of chunks held by the queue. Must be a power of two. */
+  private static final int INITIAL_CHUNK_COUNT = 4;
+  /** The maximum number of unused chunks held by {@link #chunkPool}. */
+  private static final int MAX_POOLED_CHUNK_COUNT = 64;
+
+  /** Unused chunks, shared by all queues. Guarded by itself. */
+  private static final ArrayDeque<Chunk> chunkPool = new ArrayDeque<>();
 
-  private int capacity;
-  private int[] sourceIds;
-  private long[] offsets;
-  private int[] sizes;
-  private int[] flags;
-  private long[] timesUs;
-  private CryptoData[] cryptoDatas;
-  private Format[] formats;
+  /**
+   * The absolute write index in the upper 32 bits, and the absolute read index in the lower 32
+   * bits.
+   */
+  private final AtomicLong indices;
 
-  private int length;
-  private int absoluteFirstIndex;
-  private int relativeFirstIndex;
-  private int readPosition;
+  private volatile Storage storage;
+  private volatile int absoluteFirstIndex;
+  private volatile int spliceCount;
 
-  private long largestDiscardedTimestampUs;
-  private long largestQueuedTimestampUs;
-  private boolean isLastSampleQueued;
+  private volatile long largestDiscardedTimestampUs;
+  private volatile long largestQueuedTimestampUs;
+  private volatile boolean isLastSampleQueued;
+  private volatile boolean upstreamFormatRequired;
+  private volatile Format upstreamFormat;
+  private volatile int upstreamSourceId;
+  private volatile boolean keyframeTimestampsIncreasing;
   private boolean upstreamKeyframeRequired;
-  private boolean upstreamFormatRequired;
-  private Format upstreamFormat;
+  private int upstreamKeyframeIndex;
+  private long upstreamKeyframeTimeUs;
   private Format upstreamCommittedFormat;
-  private int upstreamSourceId;
 
   public SampleMetadataQueue() {
-    capacity = SAMPLE_CAPACITY_INCREMENT;
-    sourceIds = new int[capacity];
-    offsets = new long[capacity];
-    timesUs = new long[capacity];
-    flags = new int[capacity];
-    sizes = new int[capacity];
-    cryptoDatas = new CryptoData[capacity];
-    formats = new Format[capacity];
+    indices = new AtomicLong();
+    Chunk[] chunks = new Chunk[INITIAL_CHUNK_COUNT];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = obtainChunk();
+    }
+    storage = new Storage(chunks);
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
     upstreamFormatRequired = true;
     upstreamKeyframeRequired = true;
+    upstreamKeyframeIndex = C.INDEX_UNSET;
+    upstreamKeyframeTimeUs = Long.MIN_VALUE;
+    keyframeTimestampsIncreasing = true;
   }
 
+  // Called by the consuming thread, but only when there is no loading thread.
+
   /**
    * Clears all sample metadata from the queue.
    *
@@ -89,11 +117,12 @@ import com.google.android.exoplayer2.util.Util;
    *     must be called after the reset before any more samples can be queued.
    */
   public void reset(boolean resetUpstreamFormat) {
-    length = 0;
+    indices.set(packIndices(/* writeIndex= */ 0, /* readIndex= */ 0));
     absoluteFirstIndex = 0;
-    relativeFirstIndex = 0;
-    readPosition = 0;
     upstreamKeyframeRequired = true;
+    upstreamKeyframeIndex = C.INDEX_UNSET;
+    upstreamKeyframeTimeUs = Long.MIN_VALUE;
+    keyframeTimestampsIncreasing = true;
     largestDiscardedTimestampUs = Long.MIN_VALUE;
     largestQueuedTimestampUs = Long.MIN_VALUE;
     isLastSampleQueued = false;
@@ -102,33 +131,62 @@ import com.google.android.exoplayer2.util.Util;
       upstreamFormat = null;
       upstreamFormatRequired = true;
     }
+    Chunk[] chunks = storage.chunks;
+    if (chunks.length > INITIAL_CHUNK_COUNT) {
+      // Release the chunks that were added as the queue grew, so that other queues can reuse them.
+      storage = new Storage(Arrays.copyOf(chunks, INITIAL_CHUNK_COUNT));
+      for (int i = INITIAL_CHUNK_COUNT; i < chunks.length; i++) {
+        releaseChunk(chunks[i]);
+      }
+    }
   }
 
   /**
    * Returns the current absolute write index.
    */
   public int getWriteIndex() {
-    return absoluteFirstIndex + length;
+    return unpackWriteIndex(indices.get());
   }
 
   /**
    * Discards samples from the write side of the queue.
    *
-   * @param discardFromIndex The absolute index of the first sample to be discarded.
+   * <p>May also be called by the loading thread, in which case the consuming thread may advance the
+   * read position concurrently. Samples before the read position are never discarded, so fewer
+   * samples than requested may then be discarded.
+   *
+   * @param discardFromIndex The absolute index of the first sample to be discarded. Must not be
+   *     after the write index, or before the read index if called by the consuming thread.
    * @return The reduced total number of bytes written after the samples have been discarded, or 0
    *     if the queue is now empty.
    */
   public long discardUpstreamSamples(int discardFromIndex) {
-    int discardCount = getWriteIndex() - discardFromIndex;
-    Assertions.checkArgument(0 <= discardCount && discardCount <= (length - readPosition));
-    length -= discardCount;
-    largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs, getLargestTimestamp(length));
-    isLastSampleQueued = discardCount == 0 && isLastSampleQueued;
-    if (length == 0) {
-      return 0;
-    } else {
-      int relativeLastWriteIndex = getRelativeIndex(length - 1);
-      return offsets[relativeLastWriteIndex] + sizes[relativeLastWriteIndex];
+    while (true) {
+      // The first index is read before the indices, so that it's never after the read index.
+      int firstIndex = absoluteFirstIndex;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      int writeIndex = unpackWriteIndex(indices);
+      Assertions.checkArgument(discardFromIndex <= writeIndex);
+      int retainIndex = Math.max(discardFromIndex, readIndex);
+      if (retainIndex != writeIndex) {
+        // Cleared before the samples are discarded, so that the consuming thread can't treat the
+        // discarded samples as the end of the stream.
+        isLastSampleQueued = false;
+        if (!this.indices.compareAndSet(indices, packIndices(retainIndex, readIndex))) {
+          // The consuming thread read or discarded samples concurrently, so try again.
+          continue;
+        }
+      }
+      Storage storage = this.storage;
+      onUpstreamSamplesDiscarded(storage, firstIndex, retainIndex, writeIndex - retainIndex);
+      if (retainIndex == firstIndex) {
+        return 0;
+      } else {
+        Chunk chunk = storage.getChunk(retainIndex - 1);
+        int relativeLastWriteIndex = getIndexInChunk(retainIndex - 1);
+        return chunk.offsets[relativeLastWriteIndex] + chunk.sizes[relativeLastWriteIndex];
+      }
     }
   }
 
@@ -149,7 +207,7 @@ import com.google.android.exoplayer2.util.Util;
    * Returns the current absolute read index.
    */
   public int getReadIndex() {
-    return absoluteFirstIndex + readPosition;
+    return unpackReadIndex(indices.get());
   }
 
   /**
@@ -159,21 +217,33 @@ import com.google.android.exoplayer2.util.Util;
    * @return The source id.
    */
   public int peekSourceId() {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    return hasNextSample() ? sourceIds[relativeReadIndex] : upstreamSourceId;
+    while (true) {
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      if (readIndex == unpackWriteIndex(indices)) {
+        return upstreamSourceId;
+      }
+      Storage storage = this.storage;
+      int sourceId = storage.getChunk(readIndex).sourceIds[getIndexInChunk(readIndex)];
+      if (validateRead(indices, spliceCount)) {
+        return sourceId;
+      }
+    }
   }
 
   /**
    * Returns whether a sample is available to be read.
    */
-  public synchronized boolean hasNextSample() {
-    return readPosition != length;
+  public boolean hasNextSample() {
+    long indices = this.indices.get();
+    return unpackReadIndex(indices) != unpackWriteIndex(indices);
   }
 
   /**
    * Returns the upstream {@link Format} in which samples are being queued.
    */
-  public synchronized Format getUpstreamFormat() {
+  public Format getUpstreamFormat() {
     return upstreamFormatRequired ? null : upstreamFormat;
   }
 
@@ -188,7 +258,7 @@ import com.google.android.exoplayer2.util.Util;
    * @return The largest sample timestamp that has been queued, or {@link Long#MIN_VALUE} if no
    *     samples have been queued.
    */
-  public synchronized long getLargestQueuedTimestampUs() {
+  public long getLargestQueuedTimestampUs() {
     return largestQueuedTimestampUs;
   }
 
@@ -201,20 +271,37 @@ import com.google.android.exoplayer2.util.Util;
    * considered as having been queued. Samples that were dequeued from the front of the queue are
    * considered as having been queued.
    */
-  public synchronized boolean isLastSampleQueued() {
+  public boolean isLastSampleQueued() {
     return isLastSampleQueued;
   }
 
   /** Returns the timestamp of the first sample, or {@link Long#MIN_VALUE} if the queue is empty. */
-  public synchronized long getFirstTimestampUs() {
-    return length == 0 ? Long.MIN_VALUE : timesUs[relativeFirstIndex];
+  public long getFirstTimestampUs() {
+    while (true) {
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int firstIndex = absoluteFirstIndex;
+      if (unpackWriteIndex(indices) == firstIndex) {
+        return Long.MIN_VALUE;
+      }
+      Storage storage = this.storage;
+      long timeUs = storage.getChunk(firstIndex).timesUs[getIndexInChunk(firstIndex)];
+      if (validateRead(indices, spliceCount)) {
+        return timeUs;
+      }
+    }
   }
 
   /**
    * Rewinds the read position to the first sample retained in the queue.
    */
-  public synchronized void rewind() {
-    readPosition = 0;
+  public void rewind() {
+    int firstIndex = absoluteFirstIndex;
+    long indices;
+    do {
+      indices = this.indices.get();
+    } while (!this.indices.compareAndSet(
+        indices, packIndices(unpackWriteIndex(indices), firstIndex)));
   }
 
   /**
@@ -224,17 +311,29 @@ import com.google.android.exoplayer2.util.Util;
    */
   @SuppressWarnings("ReferenceEquality")
   @PeekResult
-  public synchronized int peekNext(Format downstreamFormat) {
-    if (readPosition == length) {
-      return SampleQueue.PEEK_RESULT_NOTHING;
-    }
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (formats[relativeReadIndex] != downstreamFormat) {
-      return SampleQueue.PEEK_RESULT_FORMAT;
-    } else {
-      return (flags[relativeReadIndex] & C.BUFFER_FLAG_ENCRYPTED) != 0
-          ? SampleQueue.PEEK_RESULT_BUFFER_ENCRYPTED
-          : SampleQueue.PEEK_RESULT_BUFFER_CLEAR;
+  public int peekNext(Format downstreamFormat) {
+    while (true) {
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      if (readIndex == unpackWriteIndex(indices)) {
+        return SampleQueue.PEEK_RESULT_NOTHING;
+      }
+      Storage storage = this.storage;
+      Chunk chunk = storage.getChunk(readIndex);
+      int relativeReadIndex = getIndexInChunk(readIndex);
+      int result;
+      if (chunk.formats[relativeReadIndex] != downstreamFormat) {
+        result = SampleQueue.PEEK_RESULT_FORMAT;
+      } else {
+        result =
+            (chunk.flags[relativeReadIndex] & C.BUFFER_FLAG_ENCRYPTED) != 0
+                ? SampleQueue.PEEK_RESULT_BUFFER_ENCRYPTED
+                : SampleQueue.PEEK_RESULT_BUFFER_CLEAR;
+      }
+      if (validateRead(indices, spliceCount)) {
+        return result;
+      }
     }
   }
 
@@ -264,7 +363,7 @@ import com.google.android.exoplayer2.util.Util;
    *     {@link C#RESULT_BUFFER_READ}.
    */
   @SuppressWarnings("ReferenceEquality")
-  public synchronized int read(
+  public int read(
       FormatHolder formatHolder,
       DecoderInputBuffer buffer,
       boolean formatRequired,
@@ -272,40 +371,71 @@ import com.google.android.exoplayer2.util.Util;
       boolean loadingFinished,
       Format downstreamFormat,
       SampleExtrasHolder extrasHolder) {
-    if (!hasNextSample()) {
-      if (loadingFinished || isLastSampleQueued) {
-        buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
-        return C.RESULT_BUFFER_READ;
-      } else if (upstreamFormat != null && (formatRequired || upstreamFormat != downstreamFormat)) {
-        formatHolder.format = upstreamFormat;
-        return C.RESULT_FORMAT_READ;
-      } else {
-        return C.RESULT_NOTHING_READ;
+    while (true) {
+      // The last sample is published before isLastSampleQueued is set, so reading the flag first
+      // ensures that the indices include the last sample if the flag is set.
+      boolean lastSampleQueued = isLastSampleQueued;
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      int writeIndex = unpackWriteIndex(indices);
+      if (readIndex == writeIndex) {
+        Format upstreamFormat = this.upstreamFormat;
+        // Reading the flag again ensures that the last sample wasn't discarded by a splice.
+        if (loadingFinished || (lastSampleQueued && isLastSampleQueued)) {
+          buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+          return C.RESULT_BUFFER_READ;
+        } else if (upstreamFormat != null
+            && (formatRequired || upstreamFormat != downstreamFormat)) {
+          formatHolder.format = upstreamFormat;
+          return C.RESULT_FORMAT_READ;
+        } else {
+          return C.RESULT_NOTHING_READ;
+        }
       }
-    }
-
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (formatRequired || formats[relativeReadIndex] != downstreamFormat) {
-      formatHolder.format = formats[relativeReadIndex];
-      return C.RESULT_FORMAT_READ;
-    }
 
-    if (allowOnlyClearBuffers && (flags[relativeReadIndex] & C.BUFFER_FLAG_ENCRYPTED) != 0) {
-      return C.RESULT_NOTHING_READ;
-    }
+      Storage storage = this.storage;
+      Chunk chunk = storage.getChunk(readIndex);
+      int relativeReadIndex = getIndexInChunk(readIndex);
+      Format format = chunk.formats[relativeReadIndex];
+      if (formatRequired || format != downstreamFormat) {
+        if (validateRead(indices, spliceCount)) {
+          formatHolder.format = format;
+          return C.RESULT_FORMAT_READ;
+        }
+        continue;
+      }
 
-    buffer.setFlags(flags[relativeReadIndex]);
-    buffer.timeUs = timesUs[relativeReadIndex];
-    if (buffer.isFlagsOnly()) {
-      return C.RESULT_BUFFER_READ;
-    }
+      int flags = chunk.flags[relativeReadIndex];
+      if (allowOnlyClearBuffers && (flags & C.BUFFER_FLAG_ENCRYPTED) != 0) {
+        if (validateRead(indices, spliceCount)) {
+          return C.RESULT_NOTHING_READ;
+        }
+        continue;
+      }
 
-    extrasHolder.size = sizes[relativeReadIndex];
-    extrasHolder.offset = offsets[relativeReadIndex];
-    extrasHolder.cryptoData = cryptoDatas[relativeReadIndex];
+      long timeUs = chunk.timesUs[relativeReadIndex];
+      if (buffer.isFlagsOnly()) {
+        if (validateRead(indices, spliceCount)) {
+          buffer.setFlags(flags);
+          buffer.timeUs = timeUs;
+          return C.RESULT_BUFFER_READ;
+        }
+        continue;
+      }
 
-    readPosition++;
-    return C.RESULT_BUFFER_READ;
+      int size = chunk.sizes[relativeReadIndex];
+      long offset = chunk.offsets[relativeReadIndex];
+      CryptoData cryptoData = chunk.cryptoDatas[relativeReadIndex];
+      if (commitIndices(indices, packIndices(writeIndex, readIndex + 1), spliceCount)) {
+        buffer.setFlags(flags);
+        buffer.timeUs = timeUs;
+        extrasHolder.size = size;
+        extrasHolder.offset = offset;
+        extrasHolder.cryptoData = cryptoData;
+        return C.RESULT_BUFFER_READ;
+      }
+    }
   }
 
   /**
@@ -322,19 +452,32 @@ import com.google.android.exoplayer2.util.Util;
    *     successful advance is one in which the read position was unchanged or advanced, and is now
    *     at a sample meeting the specified criteria.
    */
-  public synchronized int advanceTo(long timeUs, boolean toKeyframe,
-      boolean allowTimeBeyondBuffer) {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (!hasNextSample() || timeUs < timesUs[relativeReadIndex]
-        || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
-      return SampleQueue.ADVANCE_FAILED;
-    }
-    int offset = findSampleBefore(relativeReadIndex, length - readPosition, timeUs, toKeyframe);
-    if (offset == -1) {
-      return SampleQueue.ADVANCE_FAILED;
+  public int advanceTo(long timeUs, boolean toKeyframe, boolean allowTimeBeyondBuffer) {
+    while (true) {
+      long largestQueuedTimestampUs = this.largestQueuedTimestampUs;
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      int writeIndex = unpackWriteIndex(indices);
+      if (readIndex == writeIndex) {
+        return SampleQueue.ADVANCE_FAILED;
+      }
+      Storage storage = this.storage;
+      int offset;
+      if (timeUs < storage.getChunk(readIndex).timesUs[getIndexInChunk(readIndex)]
+          || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
+        offset = -1;
+      } else {
+        offset = findSampleBefore(storage, readIndex, writeIndex - readIndex, timeUs, toKeyframe);
+      }
+      if (offset == -1) {
+        if (validateRead(indices, spliceCount)) {
+          return SampleQueue.ADVANCE_FAILED;
+        }
+      } else if (commitIndices(indices, packIndices(writeIndex, readIndex + offset), spliceCount)) {
+        return offset;
+      }
     }
-    readPosition += offset;
-    return offset;
   }
 
   /**
@@ -342,10 +485,14 @@ import com.google.android.exoplayer2.util.Util;
    *
    * @return The number of samples that were skipped.
    */
-  public synchronized int advanceToEnd() {
-    int skipCount = length - readPosition;
-    readPosition = length;
-    return skipCount;
+  public int advanceToEnd() {
+    long indices;
+    int writeIndex;
+    do {
+      indices = this.indices.get();
+      writeIndex = unpackWriteIndex(indices);
+    } while (!this.indices.compareAndSet(indices, packIndices(writeIndex, writeIndex)));
+    return writeIndex - unpackReadIndex(indices);
   }
 
   /**
@@ -356,12 +503,20 @@ import com.google.android.exoplayer2.util.Util;
    *     index is smaller than the index of the first sample in the queue, or larger than the index
    *     of the next sample that will be written.
    */
-  public synchronized boolean setReadPosition(int sampleIndex) {
-    if (absoluteFirstIndex <= sampleIndex && sampleIndex <= absoluteFirstIndex + length) {
-      readPosition = sampleIndex - absoluteFirstIndex;
-      return true;
+  public boolean setReadPosition(int sampleIndex) {
+    if (sampleIndex < absoluteFirstIndex) {
+      return false;
     }
-    return false;
+    long indices;
+    int writeIndex;
+    do {
+      indices = this.indices.get();
+      writeIndex = unpackWriteIndex(indices);
+      if (sampleIndex > writeIndex) {
+        return false;
+      }
+    } while (!this.indices.compareAndSet(indices, packIndices(writeIndex, sampleIndex)));
+    return true;
   }
 
   /**
@@ -376,16 +531,38 @@ import com.google.android.exoplayer2.util.Util;
    * @return The corresponding offset up to which data should be discarded, or
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
-  public synchronized long discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
-    if (length == 0 || timeUs < timesUs[relativeFirstIndex]) {
-      return C.POSITION_UNSET;
-    }
-    int searchLength = stopAtReadPosition && readPosition != length ? readPosition + 1 : length;
-    int discardCount = findSampleBefore(relativeFirstIndex, searchLength, timeUs, toKeyframe);
-    if (discardCount == -1) {
-      return C.POSITION_UNSET;
+  public long discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
+    while (true) {
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      int writeIndex = unpackWriteIndex(indices);
+      int firstIndex = absoluteFirstIndex;
+      if (writeIndex == firstIndex) {
+        return C.POSITION_UNSET;
+      }
+      Storage storage = this.storage;
+      int discardCount;
+      if (timeUs < storage.getChunk(firstIndex).timesUs[getIndexInChunk(firstIndex)]) {
+        discardCount = -1;
+      } else {
+        int searchLength =
+            stopAtReadPosition && readIndex != writeIndex
+                ? readIndex - firstIndex + 1
+                : writeIndex - firstIndex;
+        discardCount = findSampleBefore(storage, firstIndex, searchLength, timeUs, toKeyframe);
+      }
+      if (discardCount == -1) {
+        if (validateRead(indices, spliceCount)) {
+          return C.POSITION_UNSET;
+        }
+        continue;
+      }
+      long discardToOffset = getDiscardToOffset(storage, firstIndex + discardCount, writeIndex);
+      if (discardSamples(storage, indices, spliceCount, firstIndex, discardCount)) {
+        return discardToOffset;
+      }
     }
-    return discardSamples(discardCount);
   }
 
   /**
@@ -394,11 +571,21 @@ import com.google.android.exoplayer2.util.Util;
    * @return The corresponding offset up to which data should be discarded, or
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
-  public synchronized long discardToRead() {
-    if (readPosition == 0) {
-      return C.POSITION_UNSET;
+  public long discardToRead() {
+    while (true) {
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      int firstIndex = absoluteFirstIndex;
+      if (readIndex == firstIndex) {
+        return C.POSITION_UNSET;
+      }
+      Storage storage = this.storage;
+      long discardToOffset = getDiscardToOffset(storage, readIndex, unpackWriteIndex(indices));
+      if (discardSamples(storage, indices, spliceCount, firstIndex, readIndex - firstIndex)) {
+        return discardToOffset;
+      }
     }
-    return discardSamples(readPosition);
   }
 
   /**
@@ -407,39 +594,52 @@ import com.google.android.exoplayer2.util.Util;
    * @return The corresponding offset up to which data should be discarded, or
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
-  public synchronized long discardToEnd() {
-    if (length == 0) {
-      return C.POSITION_UNSET;
+  public long discardToEnd() {
+    while (true) {
+      int spliceCount = this.spliceCount;
+      long indices = this.indices.get();
+      int writeIndex = unpackWriteIndex(indices);
+      int firstIndex = absoluteFirstIndex;
+      if (writeIndex == firstIndex) {
+        return C.POSITION_UNSET;
+      }
+      Storage storage = this.storage;
+      long discardToOffset = getDiscardToOffset(storage, writeIndex, writeIndex);
+      if (discardSamples(storage, indices, spliceCount, firstIndex, writeIndex - firstIndex)) {
+        return discardToOffset;
+      }
     }
-    return discardSamples(length);
   }
 
   // Called by the loading thread.
 
-  public synchronized boolean format(Format format) {
+  public boolean format(Format format) {
     if (format == null) {
       upstreamFormatRequired = true;
       return false;
     }
-    upstreamFormatRequired = false;
+    boolean formatChanged;
     if (Util.areEqual(format, upstreamFormat)) {
       // The format is unchanged. If format and upstreamFormat are different objects, we keep the
       // current upstreamFormat so we can detect format changes in read() using cheap referential
       // equality.
-      return false;
+      formatChanged = false;
     } else if (Util.areEqual(format, upstreamCommittedFormat)) {
       // The format has changed back to the format of the last committed sample. If they are
       // different objects, we revert back to using upstreamCommittedFormat as the upstreamFormat so
       // we can detect format changes in read() using cheap referential equality.
       upstreamFormat = upstreamCommittedFormat;
-      return true;
+      formatChanged = true;
     } else {
       upstreamFormat = format;
-      return true;
+      formatChanged = true;
     }
+    // Set after upstreamFormat, so that getUpstreamFormat() never returns a stale format.
+    upstreamFormatRequired = false;
+    return formatChanged;
   }
 
-  public synchronized void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
+  public void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
       int size, CryptoData cryptoData) {
     if (upstreamKeyframeRequired) {
       if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) == 0) {
@@ -449,57 +649,38 @@ import com.google.android.exoplayer2.util.Util;
     }
     Assertions.checkState(!upstreamFormatRequired);
 
-    isLastSampleQueued = (sampleFlags & C.BUFFER_FLAG_LAST_SAMPLE) != 0;
-    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
-
-    int relativeEndIndex = getRelativeIndex(length);
-    timesUs[relativeEndIndex] = timeUs;
-    offsets[relativeEndIndex] = offset;
-    sizes[relativeEndIndex] = size;
-    flags[relativeEndIndex] = sampleFlags;
-    cryptoDatas[relativeEndIndex] = cryptoData;
-    formats[relativeEndIndex] = upstreamFormat;
-    sourceIds[relativeEndIndex] = upstreamSourceId;
+    int writeIndex = unpackWriteIndex(indices.get());
+    Storage storage = this.storage;
+    if ((writeIndex >> CHUNK_SIZE_SHIFT) - (absoluteFirstIndex >> CHUNK_SIZE_SHIFT)
+        >= storage.chunks.length) {
+      // The chunk to be written may still hold samples that haven't been discarded.
+      storage = growStorage(storage, writeIndex);
+    }
+    if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      if (timeUs < upstreamKeyframeTimeUs) {
+        // The keyframe index can't be binary searched by timestamp.
+        keyframeTimestampsIncreasing = false;
+      }
+      upstreamKeyframeIndex = writeIndex;
+      upstreamKeyframeTimeUs = timeUs;
+    }
+    Chunk chunk = storage.getChunk(writeIndex);
+    int relativeWriteIndex = getIndexInChunk(writeIndex);
+    chunk.timesUs[relativeWriteIndex] = timeUs;
+    chunk.offsets[relativeWriteIndex] = offset;
+    chunk.sizes[relativeWriteIndex] = size;
+    chunk.flags[relativeWriteIndex] = sampleFlags;
+    chunk.cryptoDatas[relativeWriteIndex] = cryptoData;
+    chunk.formats[relativeWriteIndex] = upstreamFormat;
+    chunk.sourceIds[relativeWriteIndex] = upstreamSourceId;
+    chunk.keyframeIndices[relativeWriteIndex] = upstreamKeyframeIndex;
     upstreamCommittedFormat = upstreamFormat;
 
-    length++;
-    if (length == capacity) {
-      // Increase the capacity.
-      int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-      int[] newSourceIds = new int[newCapacity];
-      long[] newOffsets = new long[newCapacity];
-      long[] newTimesUs = new long[newCapacity];
-      int[] newFlags = new int[newCapacity];
-      int[] newSizes = new int[newCapacity];
-      CryptoData[] newCryptoDatas = new CryptoData[newCapacity];
-      Format[] newFormats = new Format[newCapacity];
-      int beforeWrap = capacity - relativeFirstIndex;
-      System.arraycopy(offsets, relativeFirstIndex, newOffsets, 0, beforeWrap);
-      System.arraycopy(timesUs, relativeFirstIndex, newTimesUs, 0, beforeWrap);
-      System.arraycopy(flags, relativeFirstIndex, newFlags, 0, beforeWrap);
-      System.arraycopy(sizes, relativeFirstIndex, newSizes, 0, beforeWrap);
-      System.arraycopy(cryptoDatas, relativeFirstIndex, newCryptoDatas, 0, beforeWrap);
-      System.arraycopy(formats, relativeFirstIndex, newFormats, 0, beforeWrap);
-      System.arraycopy(sourceIds, relativeFirstIndex, newSourceIds, 0, beforeWrap);
-      int afterWrap = relativeFirstIndex;
-      System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-      System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-      System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-      System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-      System.arraycopy(cryptoDatas, 0, newCryptoDatas, beforeWrap, afterWrap);
-      System.arraycopy(formats, 0, newFormats, beforeWrap, afterWrap);
-      System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-      offsets = newOffsets;
-      timesUs = newTimesUs;
-      flags = newFlags;
-      sizes = newSizes;
-      cryptoDatas = newCryptoDatas;
-      formats = newFormats;
-      sourceIds = newSourceIds;
-      relativeFirstIndex = 0;
-      length = capacity;
-      capacity = newCapacity;
-    }
+    // Publish the sample. Only the loading thread advances the write index, so this doesn't need to
+    // be reconciled with the consuming thread advancing the read index concurrently.
+    indices.getAndAdd(1L << 32);
+    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
+    isLastSampleQueued = (sampleFlags & C.BUFFER_FLAG_LAST_SAMPLE) != 0;
   }
 
   /**
@@ -509,122 +690,371 @@ import com.google.android.exoplayer2.util.Util;
    * @param timeUs The timestamp at which the splice occurs.
    * @return Whether the splice was successful.
    */
-  public synchronized boolean attemptSplice(long timeUs) {
-    if (length == 0) {
-      return timeUs > largestDiscardedTimestampUs;
+  public boolean attemptSplice(long timeUs) {
+    while (true) {
+      // The first index is read before the indices, so that it's never after the read index.
+      int firstIndex = absoluteFirstIndex;
+      long indices = this.indices.get();
+      int readIndex = unpackReadIndex(indices);
+      int writeIndex = unpackWriteIndex(indices);
+      if (writeIndex == firstIndex) {
+        return timeUs > largestDiscardedTimestampUs;
+      }
+      Storage storage = this.storage;
+      long largestReadTimestampUs = Math.max(largestDiscardedTimestampUs,
+          getLargestTimestamp(storage, firstIndex, readIndex));
+      if (largestReadTimestampUs >= timeUs) {
+        return false;
+      }
+      int retainIndex = writeIndex;
+      while (retainIndex > readIndex
+          && storage.getChunk(retainIndex - 1).timesUs[getIndexInChunk(retainIndex - 1)]
+              >= timeUs) {
+        retainIndex--;
+      }
+      if (retainIndex == writeIndex) {
+        return true;
+      }
+      // Cleared before the samples are discarded, so that the consuming thread can't treat the
+      // discarded samples as the end of the stream.
+      isLastSampleQueued = false;
+      if (this.indices.compareAndSet(indices, packIndices(retainIndex, readIndex))) {
+        onUpstreamSamplesDiscarded(storage, firstIndex, retainIndex, writeIndex - retainIndex);
+        return true;
+      }
+      // The consuming thread read or discarded samples concurrently, so try again.
     }
-    long largestReadTimestampUs = Math.max(largestDiscardedTimestampUs,
-        getLargestTimestamp(readPosition));
-    if (largestReadTimestampUs >= timeUs) {
+  }
+
+  // Internal methods.
+
+  /**
+   * Validates metadata read by the consuming thread since {@code indices} and {@code spliceCount}
+   * were read, by confirming that neither has changed since.
+   *
+   * @param indices The indices that were read.
+   * @param spliceCount The splice count that was read, before {@code indices}.
+   * @return Whether the metadata is valid. If false, it should be read again.
+   */
+  private boolean validateRead(long indices, int spliceCount) {
+    // A compare-and-set is used rather than a volatile read, since it also prevents the preceding
+    // reads of the metadata from being reordered after the validation.
+    return commitIndices(indices, indices, spliceCount);
+  }
+
+  /**
+   * Commits an operation of the consuming thread that's based on metadata read since {@code
+   * indices} and {@code spliceCount} were read, by atomically replacing {@code indices} with
+   * {@code newIndices}. The new read index must not be before the one in {@code indices}.
+   *
+   * @param indices The indices that were read.
+   * @param newIndices The indices to replace them with.
+   * @param spliceCount The splice count that was read, before {@code indices}.
+   * @return Whether the operation was committed. If false, it should be retried.
+   */
+  private boolean commitIndices(long indices, long newIndices, int spliceCount) {
+    if (!this.indices.compareAndSet(indices, newIndices)) {
       return false;
+    } else if (this.spliceCount == spliceCount) {
+      return true;
     }
-    int retainCount = length;
-    int relativeSampleIndex = getRelativeIndex(length - 1);
-    while (retainCount > readPosition && timesUs[relativeSampleIndex] >= timeUs) {
-      retainCount--;
-      relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
+    // Samples were discarded and replaced whilst their metadata was being read, and the indices
+    // happen to have returned to their previous value. Restore the read index, which is valid
+    // because samples before the new read index can't have been discarded since.
+    int readIndex = unpackReadIndex(indices);
+    if (unpackReadIndex(newIndices) != readIndex) {
+      long currentIndices;
+      do {
+        currentIndices = this.indices.get();
+      } while (!this.indices.compareAndSet(
+          currentIndices, packIndices(unpackWriteIndex(currentIndices), readIndex)));
     }
-    discardUpstreamSamples(absoluteFirstIndex + retainCount);
+    return false;
+  }
+
+  /**
+   * Attempts to discard samples from the start of the queue, advancing the read position if it's
+   * before the first remaining sample.
+   *
+   * @param storage The storage from which the metadata was read.
+   * @param indices The indices that were read.
+   * @param spliceCount The splice count that was read, before {@code indices}.
+   * @param firstIndex The absolute index of the first sample in the queue.
+   * @param discardCount The number of samples to discard.
+   * @return Whether the samples were discarded. If false, the operation should be retried.
+   */
+  private boolean discardSamples(
+      Storage storage, long indices, int spliceCount, int firstIndex, int discardCount) {
+    int newFirstIndex = firstIndex + discardCount;
+    long largestDiscardedTimestampUs =
+        Math.max(
+            this.largestDiscardedTimestampUs,
+            getLargestTimestamp(storage, firstIndex, newFirstIndex));
+    long newIndices =
+        packIndices(
+            unpackWriteIndex(indices), Math.max(unpackReadIndex(indices), newFirstIndex));
+    if (!commitIndices(indices, newIndices, spliceCount)) {
+      return false;
+    }
+    // The loading thread reads the first index before largestDiscardedTimestampUs, so the first
+    // index is updated last.
+    this.largestDiscardedTimestampUs = largestDiscardedTimestampUs;
+    absoluteFirstIndex = newFirstIndex;
     return true;
   }
 
-  // Internal methods.
+  /**
+   * Updates the state of the queue after samples have been discarded from its write side.
+   *
+   * @param storage The storage holding the metadata.
+   * @param firstIndex The absolute index of the first sample in the queue.
+   * @param writeIndex The absolute write index after the samples were discarded.
+   * @param discardCount The number of samples that were discarded.
+   */
+  private void onUpstreamSamplesDiscarded(
+      Storage storage, int firstIndex, int writeIndex, int discardCount) {
+    if (discardCount != 0) {
+      spliceCount++;
+      isLastSampleQueued = false;
+      // Samples before the first index may be held by chunks that have since been reused, so only
+      // the metadata of samples from the first index onward is read.
+      upstreamKeyframeIndex = C.INDEX_UNSET;
+      upstreamKeyframeTimeUs = Long.MIN_VALUE;
+      if (writeIndex > firstIndex) {
+        int keyframeIndex =
+            storage.getChunk(writeIndex - 1).keyframeIndices[getIndexInChunk(writeIndex - 1)];
+        if (keyframeIndex >= firstIndex) {
+          upstreamKeyframeIndex = keyframeIndex;
+          upstreamKeyframeTimeUs =
+              storage.getChunk(keyframeIndex).timesUs[getIndexInChunk(keyframeIndex)];
+        }
+      }
+    }
+    largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs,
+        getLargestTimestamp(storage, firstIndex, writeIndex));
+  }
+
+  /**
+   * Returns the offset up to which data should be discarded when discarding the samples before
+   * the specified index.
+   *
+   * @param storage The storage holding the metadata.
+   * @param newFirstIndex The absolute index of the first sample that will remain in the queue.
+   * @param writeIndex The absolute write index.
+   * @return The offset of the first remaining sample, or the offset of the end of the last
+   *     discarded sample if the queue will be empty.
+   */
+  private static long getDiscardToOffset(Storage storage, int newFirstIndex, int writeIndex) {
+    if (newFirstIndex == writeIndex) {
+      Chunk chunk = storage.getChunk(newFirstIndex - 1);
+      int relativeLastDiscardIndex = getIndexInChunk(newFirstIndex - 1);
+      return chunk.offsets[relativeLastDiscardIndex] + chunk.sizes[relativeLastDiscardIndex];
+    } else {
+      return storage.getChunk(newFirstIndex).offsets[getIndexInChunk(newFirstIndex)];
+    }
+  }
 
   /**
    * Finds the sample in the specified range that's before or at the specified time. If
    * {@code keyframe} is {@code true} then the sample is additionally required to be a keyframe.
    *
-   * @param relativeStartIndex The relative index from which to start searching.
+   * @param storage The storage holding the metadata.
+   * @param startIndex The absolute index from which to start searching.
    * @param length The length of the range being searched.
    * @param timeUs The specified time.
    * @param keyframe Whether only keyframes should be considered.
-   * @return The offset from {@code relativeFirstIndex} to the found sample, or -1 if no matching
-   *     sample was found.
+   * @return The offset from {@code startIndex} to the found sample, or -1 if no matching sample was
+   *     found.
    */
-  private int findSampleBefore(int relativeStartIndex, int length, long timeUs, boolean keyframe) {
-    // This could be optimized to use a binary search, however in practice callers to this method
-    // normally pass times near to the start of the search region. Hence it's unclear whether
-    // switching to a binary search would yield any real benefit.
+  private int findSampleBefore(
+      Storage storage, int startIndex, int length, long timeUs, boolean keyframe) {
+    int searchStartOffset = 0;
+    if (keyframeTimestampsIncreasing) {
+      // Samples prior to a keyframe have smaller timestamps than the keyframe, so no sample before
+      // the keyframe found by the binary search can end the linear search below.
+      int keyframeIndex = findKeyframeBefore(storage, startIndex, length, timeUs);
+      if (keyframe) {
+        return keyframeIndex == C.INDEX_UNSET ? -1 : keyframeIndex - startIndex;
+      } else if (keyframeIndex != C.INDEX_UNSET) {
+        searchStartOffset = keyframeIndex - startIndex;
+      }
+    }
     int sampleCountToTarget = -1;
-    int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
-      if (!keyframe || (flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    for (int i = searchStartOffset; i < length; i++) {
+      Chunk chunk = storage.getChunk(startIndex + i);
+      int relativeIndex = getIndexInChunk(startIndex + i);
+      if (chunk.timesUs[relativeIndex] > timeUs) {
+        break;
+      }
+      if (!keyframe || (chunk.flags[relativeIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         // We've found a suitable sample.
         sampleCountToTarget = i;
       }
-      searchIndex++;
-      if (searchIndex == capacity) {
-        searchIndex = 0;
-      }
     }
     return sampleCountToTarget;
   }
 
   /**
-   * Discards the specified number of samples.
+   * Binary searches for the last keyframe in the specified range whose timestamp is before or at
+   * the specified time, using the index of the most recent keyframe that's held for each sample.
+   * Must only be called if the timestamps of the queued keyframes are increasing.
    *
-   * @param discardCount The number of samples to discard.
-   * @return The corresponding offset up to which data should be discarded.
+   * @param storage The storage holding the metadata.
+   * @param startIndex The absolute index from which to start searching.
+   * @param length The length of the range being searched.
+   * @param timeUs The specified time.
+   * @return The absolute index of the found keyframe, or {@link C#INDEX_UNSET} if no matching
+   *     keyframe was found.
    */
-  private long discardSamples(int discardCount) {
-    largestDiscardedTimestampUs = Math.max(largestDiscardedTimestampUs,
-        getLargestTimestamp(discardCount));
-    length -= discardCount;
-    absoluteFirstIndex += discardCount;
-    relativeFirstIndex += discardCount;
-    if (relativeFirstIndex >= capacity) {
-      relativeFirstIndex -= capacity;
-    }
-    readPosition -= discardCount;
-    if (readPosition < 0) {
-      readPosition = 0;
-    }
-    if (length == 0) {
-      int relativeLastDiscardIndex = (relativeFirstIndex == 0 ? capacity : relativeFirstIndex) - 1;
-      return offsets[relativeLastDiscardIndex] + sizes[relativeLastDiscardIndex];
-    } else {
-      return offsets[relativeFirstIndex];
+  private static int findKeyframeBefore(
+      Storage storage, int startIndex, int length, long timeUs) {
+    int keyframeIndex = C.INDEX_UNSET;
+    int low = startIndex;
+    int high = startIndex + length - 1;
+    while (low <= high) {
+      int index = (low + high) >>> 1;
+      int candidateIndex = storage.getChunk(index).keyframeIndices[getIndexInChunk(index)];
+      if (candidateIndex < startIndex) {
+        low = index + 1;
+      } else if (storage.getChunk(candidateIndex).timesUs[getIndexInChunk(candidateIndex)]
+          <= timeUs) {
+        keyframeIndex = candidateIndex;
+        low = index + 1;
+      } else {
+        high = index - 1;
+      }
     }
+    return keyframeIndex;
   }
 
   /**
-   * Finds the largest timestamp of any sample from the start of the queue up to the specified
-   * length, assuming that the timestamps prior to a keyframe are always less than the timestamp of
-   * the keyframe itself, and of subsequent frames.
+   * Finds the largest timestamp of any sample in the specified range, assuming that the timestamps
+   * prior to a keyframe are always less than the timestamp of the keyframe itself, and of
+   * subsequent frames.
    *
-   * @param length The length of the range being searched.
-   * @return The largest timestamp, or {@link Long#MIN_VALUE} if {@code length == 0}.
+   * @param storage The storage holding the metadata.
+   * @param startIndex The absolute index of the first sample in the range.
+   * @param endIndex The absolute index following the last sample in the range.
+   * @return The largest timestamp, or {@link Long#MIN_VALUE} if the range is empty.
    */
-  private long getLargestTimestamp(int length) {
-    if (length == 0) {
-      return Long.MIN_VALUE;
-    }
+  private static long getLargestTimestamp(Storage storage, int startIndex, int endIndex) {
     long largestTimestampUs = Long.MIN_VALUE;
-    int relativeSampleIndex = getRelativeIndex(length - 1);
-    for (int i = 0; i < length; i++) {
-      largestTimestampUs = Math.max(largestTimestampUs, timesUs[relativeSampleIndex]);
-      if ((flags[relativeSampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+    for (int index = endIndex - 1; index >= startIndex; index--) {
+      Chunk chunk = storage.getChunk(index);
+      int relativeIndex = getIndexInChunk(index);
+      largestTimestampUs = Math.max(largestTimestampUs, chunk.timesUs[relativeIndex]);
+      if ((chunk.flags[relativeIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
         break;
       }
-      relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
     }
     return largestTimestampUs;
   }
 
-   /**
-    * Returns the relative index for a given offset from the start of the queue.
-    *
-    * @param offset The offset, which must be in the range [0, length].
-    */
-  private int getRelativeIndex(int offset) {
-    int relativeIndex = relativeFirstIndex + offset;
-    return relativeIndex < capacity ? relativeIndex : relativeIndex - capacity;
+  /**
+   * Replaces the storage with one holding twice as many chunks. The chunks holding samples that
+   * haven't been discarded are moved to the new storage, rather than copied. The consuming thread
+   * may continue to read them from the old storage.
+   *
+   * @param storage The current storage.
+   * @param writeIndex The absolute write index.
+   * @return The new storage.
+   */
+  private Storage growStorage(Storage storage, int writeIndex) {
+    Chunk[] chunks = storage.chunks;
+    Chunk[] newChunks = new Chunk[chunks.length * 2];
+    int firstChunkIndex = absoluteFirstIndex >> CHUNK_SIZE_SHIFT;
+    int writeChunkIndex = writeIndex >> CHUNK_SIZE_SHIFT;
+    for (int i = firstChunkIndex; i < writeChunkIndex; i++) {
+      newChunks[i & (newChunks.length - 1)] = chunks[i & (chunks.length - 1)];
+    }
+    // Reuse any chunks whose samples have all been discarded, and add new ones.
+    int newChunkIndex = writeChunkIndex;
+    for (int i = writeChunkIndex; i < firstChunkIndex + chunks.length; i++) {
+      newChunks[newChunkIndex++ & (newChunks.length - 1)] = chunks[i & (chunks.length - 1)];
+    }
+    while (newChunkIndex < firstChunkIndex + newChunks.length) {
+      newChunks[newChunkIndex++ & (newChunks.length - 1)] = obtainChunk();
+    }
+    Storage newStorage = new Storage(newChunks);
+    this.storage = newStorage;
+    return newStorage;
+  }
+
+  private static int getIndexInChunk(int absoluteIndex) {
+    return absoluteIndex & (CHUNK_SIZE - 1);
+  }
+
+  private static Chunk obtainChunk() {
+    synchronized (chunkPool) {
+      Chunk chunk = chunkPool.poll();
+      if (chunk != null) {
+        return chunk;
+      }
+    }
+    return new Chunk();
+  }
+
+  private static void releaseChunk(Chunk chunk) {
+    Arrays.fill(chunk.cryptoDatas, null);
+    Arrays.fill(chunk.formats, null);
+    synchronized (chunkPool) {
+      if (chunkPool.size() < MAX_POOLED_CHUNK_COUNT) {
+        chunkPool.add(chunk);
+      }
+    }
+  }
+
+  private static long packIndices(int writeIndex, int readIndex) {
+    return ((long) writeIndex << 32) | (readIndex & 0xFFFFFFFFL);
+  }
+
+  private static int unpackWriteIndex(long indices) {
+    return (int) (indices >>> 32);
+  }
+
+  private static int unpackReadIndex(long indices) {
+    return (int) indices;
+  }
+
+  /** A ring of chunks holding the metadata of the queued samples. */
+  private static final class Storage {
+
+    /** The chunks. The number of chunks is a power of two. */
+    public final Chunk[] chunks;
+
+    public Storage(Chunk[] chunks) {
+      this.chunks = chunks;
+    }
+
+    /** Returns the chunk holding the sample with the specified absolute index. */
+    public Chunk getChunk(int absoluteIndex) {
+      return chunks[(absoluteIndex >> CHUNK_SIZE_SHIFT) & (chunks.length - 1)];
+    }
+  }
+
+  /** Parallel arrays holding the metadata of {@link #CHUNK_SIZE} consecutive samples. */
+  private static final class Chunk {
+
+    public final int[] sourceIds;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final CryptoData[] cryptoDatas;
+    public final Format[] formats;
+    /** The absolute index of the most recent keyframe at or before each sample. */
+    public final int[] keyframeIndices;
+
+    public Chunk() {
+      sourceIds = new int[CHUNK_SIZE];
+      offsets = new long[CHUNK_SIZE];
+      sizes = new int[CHUNK_SIZE];
+      flags = new int[CHUNK_SIZE];
+      timesUs = new long[CHUNK_SIZE];
+      cryptoDatas = new CryptoData[CHUNK_SIZE];
+      formats = new Format[CHUNK_SIZE];
+      keyframeIndices = new int[CHUNK_SIZE];
+    }
   }
 
 }
@@ -97,6 +97,8 @@ public class SampleQueue implements TrackOutput {
   private long totalBytesWritten;
   private boolean pendingSplice;
   private UpstreamFormatChangedListener upstreamFormatChangeListener;
+  private long bytesCopied;
+  private int committedSampleCount;
 
   /**
    * @param allocator An {@link Allocator} from which allocations for sample data can be obtained.
@@ -136,6 +138,8 @@ public class SampleQueue implements TrackOutput {
     readAllocationNode = firstAllocationNode;
     writeAllocationNode = firstAllocationNode;
     totalBytesWritten = 0;
+    bytesCopied = 0;
+    committedSampleCount = 0;
     allocator.trim();
   }
 
@@ -498,7 +502,12 @@ public class SampleQueue implements TrackOutput {
     while (remaining > 0) {
       int toCopy = Math.min(remaining, (int) (readAllocationNode.endPosition - absolutePosition));
       Allocation allocation = readAllocationNode.allocation;
-      target.put(allocation.data, readAllocationNode.translateOffset(absolutePosition), toCopy);
+      int offset = readAllocationNode.translateOffset(absolutePosition);
+      if (allocation.buffer != null) {
+        target.put(readAllocationNode.getReadBuffer(offset, toCopy));
+      } else {
+        target.put(allocation.data, offset, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == readAllocationNode.endPosition) {
@@ -520,8 +529,12 @@ public class SampleQueue implements TrackOutput {
     while (remaining > 0) {
       int toCopy = Math.min(remaining, (int) (readAllocationNode.endPosition - absolutePosition));
       Allocation allocation = readAllocationNode.allocation;
-      System.arraycopy(allocation.data, readAllocationNode.translateOffset(absolutePosition),
-          target, length - remaining, toCopy);
+      int offset = readAllocationNode.translateOffset(absolutePosition);
+      if (allocation.buffer != null) {
+        readAllocationNode.getReadBuffer(offset, toCopy).get(target, length - remaining, toCopy);
+      } else {
+        System.arraycopy(allocation.data, offset, target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == readAllocationNode.endPosition) {
@@ -567,6 +580,26 @@ public class SampleQueue implements TrackOutput {
 
   // Called by the loading thread.
 
+  /**
+   * Returns the number of bytes of sample data that have been written to the queue via an
+   * intermediate buffer since it was last reset, rather than being read directly into the queue's
+   * allocations. Data passed to {@link #sampleData(ParsableByteArray, int)} is always counted,
+   * since it has already been copied into the array. Data passed to {@link
+   * #sampleData(ExtractorInput, int, boolean)} is counted if the input copied it, as reported by
+   * {@link ExtractorInput#getBytesCopied()}.
+   *
+   * <p>Dividing the result by {@link #getCommittedSampleCount()} gives the average number of bytes
+   * copied per sample.
+   */
+  public long getBytesCopied() {
+    return bytesCopied;
+  }
+
+  /** Returns the number of samples that have been committed since the queue was last reset. */
+  public int getCommittedSampleCount() {
+    return committedSampleCount;
+  }
+
   /**
    * Sets a listener to be notified of changes to the upstream format.
    *
@@ -604,8 +637,16 @@ public class SampleQueue implements TrackOutput {
   public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
     length = preAppend(length);
-    int bytesAppended = input.read(writeAllocationNode.allocation.data,
-        writeAllocationNode.translateOffset(totalBytesWritten), length);
+    Allocation allocation = writeAllocationNode.allocation;
+    int offset = writeAllocationNode.translateOffset(totalBytesWritten);
+    long inputBytesCopied = input.getBytesCopied();
+    int bytesAppended;
+    if (allocation.buffer != null) {
+      bytesAppended = input.read(writeAllocationNode.getWriteBuffer(offset), length);
+    } else {
+      bytesAppended = input.read(allocation.data, offset, length);
+    }
+    bytesCopied += input.getBytesCopied() - inputBytesCopied;
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -620,9 +661,15 @@ public class SampleQueue implements TrackOutput {
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten), bytesAppended);
+      Allocation allocation = writeAllocationNode.allocation;
+      int offset = writeAllocationNode.translateOffset(totalBytesWritten);
+      if (allocation.buffer != null) {
+        buffer.readBytes(writeAllocationNode.getWriteBuffer(offset), bytesAppended);
+      } else {
+        buffer.readBytes(allocation.data, offset, bytesAppended);
+      }
       length -= bytesAppended;
+      bytesCopied += bytesAppended;
       postAppend(bytesAppended);
     }
   }
@@ -646,6 +693,7 @@ public class SampleQueue implements TrackOutput {
     }
     long absoluteOffset = totalBytesWritten - size - offset;
     metadataQueue.commitSample(timeUs, flags, absoluteOffset, size, cryptoData);
+    committedSampleCount++;
   }
 
   // Private methods.
@@ -739,6 +787,16 @@ public class SampleQueue implements TrackOutput {
      * The {@link Allocation}, or {@code null} if the node is not initialized.
      */
     @Nullable public Allocation allocation;
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#buffer} used for reading, or {@code
+     * null} if the node is not initialized or the allocation is not backed by a buffer.
+     */
+    @Nullable private ByteBuffer readBuffer;
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#buffer} used for writing, or {@code
+     * null} if the node is not initialized or the allocation is not backed by a buffer.
+     */
+    @Nullable private ByteBuffer writeBuffer;
     /**
      * The next {@link AllocationNode} in the list, or {@code null} if the node has not been
      * initialized. Remains set after {@link #clear()}.
@@ -764,12 +822,17 @@ public class SampleQueue implements TrackOutput {
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
       this.next = next;
+      if (allocation.buffer != null) {
+        // Reading and writing happen on different threads, so each needs its own view.
+        readBuffer = allocation.buffer.duplicate();
+        writeBuffer = allocation.buffer.duplicate();
+      }
       wasInitialized = true;
     }
 
     /**
-     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} that corresponds to
-     * the specified absolute position.
+     * Gets the offset into the {@link #allocation}'s {@link Allocation#data}, or into its {@link
+     * Allocation#buffer} if non-null, that corresponds to the specified absolute position.
      *
      * @param absolutePosition The absolute position.
      * @return The corresponding offset into the allocation's data.
@@ -778,6 +841,34 @@ public class SampleQueue implements TrackOutput {
       return (int) (absolutePosition - startPosition) + allocation.offset;
     }
 
+    /**
+     * Returns a view of the allocation's {@link Allocation#buffer} for reading, whose position and
+     * limit are set to the specified range.
+     *
+     * @param offset The offset into the buffer from which to read, as returned by {@link
+     *     #translateOffset(long)}.
+     * @param length The number of bytes to read.
+     * @return The view of the buffer.
+     */
+    public ByteBuffer getReadBuffer(int offset, int length) {
+      readBuffer.limit(offset + length);
+      readBuffer.position(offset);
+      return readBuffer;
+    }
+
+    /**
+     * Returns a view of the allocation's {@link Allocation#buffer} for writing, whose position is
+     * set to the specified offset.
+     *
+     * @param offset The offset into the buffer at which to write, as returned by {@link
+     *     #translateOffset(long)}.
+     * @return The view of the buffer.
+     */
+    public ByteBuffer getWriteBuffer(int offset) {
+      writeBuffer.position(offset);
+      return writeBuffer;
+    }
+
     /**
      * Clears {@link #allocation} and {@link #next}.
      *
@@ -785,6 +876,8 @@ public class SampleQueue implements TrackOutput {
      */
     public AllocationNode clear() {
       allocation = null;
+      readBuffer = null;
+      writeBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
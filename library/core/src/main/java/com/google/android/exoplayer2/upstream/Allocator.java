@@ -50,6 +50,25 @@ public interface Allocator {
    */
   void trim();
 
+  /**
+   * Sets the number of bytes that the allocator should aim to hold, including those of allocations
+   * that are in use. {@link #trim()} releases excess allocations beyond this target. Does nothing
+   * by default.
+   *
+   * @param targetBufferSize The target buffer size, in bytes.
+   */
+  default void setTargetBufferSize(int targetBufferSize) {
+    // Do nothing.
+  }
+
+  /**
+   * Resets the allocator when the player that uses it is reset, freeing memory if the allocator is
+   * configured to do so. Does nothing by default.
+   */
+  default void reset() {
+    // Do nothing.
+  }
+
   /**
    * Returns the total number of bytes currently allocated.
    */
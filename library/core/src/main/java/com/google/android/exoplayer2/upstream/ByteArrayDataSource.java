@@ -20,6 +20,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** A {@link DataSource} for reading from a byte array. */
 public final class ByteArrayDataSource extends BaseDataSource {
@@ -73,6 +74,27 @@ public final class ByteArrayDataSource extends BaseDataSource {
     return readLength;
   }
 
+  @Override
+  public boolean supportsByteBufferReads() {
+    return true;
+  }
+
+  @Override
+  public int read(ByteBuffer buffer, int readLength) {
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    readLength = Math.min(readLength, bytesRemaining);
+    buffer.put(data, readPosition, readLength);
+    readPosition += readLength;
+    bytesRemaining -= readLength;
+    bytesTransferred(readLength);
+    return readLength;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
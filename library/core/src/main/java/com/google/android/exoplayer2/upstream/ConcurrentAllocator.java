@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Allocator} for use by many threads concurrently, which doesn't acquire a shared lock
+ * when allocating or releasing {@link Allocation}s.
+ *
+ * <p>Each thread caches available {@link Allocation}s in two thread-local magazines, each holding
+ * up to a fixed number of allocations. Allocations are taken from and released to the calling
+ * thread's magazines, which are guarded by their own lock. Full magazines are exchanged with a
+ * shared lock-free pool when a thread runs out of (or accumulates too many) cached allocations,
+ * which rebalances allocations between threads that mostly allocate (e.g. loading threads) and
+ * threads that mostly release (e.g. the playback thread).
+ *
+ * <p>The magazines of every thread that has used the allocator are registered with it, so that
+ * {@link #trim()} and {@link #reset()} can discard the allocations they cache. A thread's lock is
+ * therefore only contended while the allocator is being trimmed or reset. Magazines that are empty
+ * or whose allocations are discarded are unregistered until their thread uses the allocator again,
+ * so the magazines of threads that have finished loading don't accumulate.
+ */
+public final class ConcurrentAllocator implements Allocator {
+
+  /** The default number of {@link Allocation}s held by each magazine. */
+  public static final int DEFAULT_MAGAZINE_SIZE = 16;
+
+  private final boolean trimOnReset;
+  private final int individualAllocationSize;
+  private final int magazineSize;
+  private final ThreadLocal<Magazines> threadMagazines;
+  private final ConcurrentLinkedQueue<Magazines> registeredMagazines;
+  private final ConcurrentLinkedQueue<Allocation[]> fullMagazines;
+  private final AtomicInteger fullMagazineCount;
+  private final AtomicInteger allocatedCount;
+
+  private volatile int targetBufferSize;
+
+  /**
+   * Constructs an instance with {@link #DEFAULT_MAGAZINE_SIZE} allocations per magazine.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public ConcurrentAllocator(boolean trimOnReset, int individualAllocationSize) {
+    this(trimOnReset, individualAllocationSize, DEFAULT_MAGAZINE_SIZE);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param magazineSize The number of {@link Allocation}s held by each thread-local magazine.
+   */
+  public ConcurrentAllocator(boolean trimOnReset, int individualAllocationSize, int magazineSize) {
+    Assertions.checkArgument(individualAllocationSize > 0);
+    Assertions.checkArgument(magazineSize > 0);
+    this.trimOnReset = trimOnReset;
+    this.individualAllocationSize = individualAllocationSize;
+    this.magazineSize = magazineSize;
+    threadMagazines =
+        new ThreadLocal<Magazines>() {
+          @Override
+          protected Magazines initialValue() {
+            return new Magazines(magazineSize);
+          }
+        };
+    registeredMagazines = new ConcurrentLinkedQueue<>();
+    fullMagazines = new ConcurrentLinkedQueue<>();
+    fullMagazineCount = new AtomicInteger();
+    allocatedCount = new AtomicInteger();
+  }
+
+  /**
+   * Resets the allocator. If the allocator was constructed to trim on reset, allocations cached by
+   * all threads and by the shared pool are discarded.
+   */
+  @Override
+  public void reset() {
+    if (trimOnReset) {
+      targetBufferSize = 0;
+      trim();
+    }
+  }
+
+  /**
+   * Sets the target buffer size, in bytes. Available allocations beyond the target are discarded
+   * if the target is reduced.
+   *
+   * @param targetBufferSize The target buffer size, in bytes.
+   */
+  @Override
+  public void setTargetBufferSize(int targetBufferSize) {
+    boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+    this.targetBufferSize = targetBufferSize;
+    if (targetBufferSizeReduced) {
+      trim();
+    }
+  }
+
+  @Override
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    Magazines magazines = threadMagazines.get();
+    synchronized (magazines) {
+      if (magazines.loadedCount == 0) {
+        if (magazines.previousCount > 0) {
+          magazines.swap();
+        } else {
+          Allocation[] fullMagazine = fullMagazines.poll();
+          if (fullMagazine == null) {
+            return new Allocation(new byte[individualAllocationSize], 0);
+          }
+          fullMagazineCount.decrementAndGet();
+          registerIfNeeded(magazines);
+          magazines.loaded = fullMagazine;
+          magazines.loadedCount = magazineSize;
+        }
+      }
+      Allocation allocation = magazines.loaded[--magazines.loadedCount];
+      magazines.loaded[magazines.loadedCount] = null;
+      return allocation;
+    }
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    Magazines magazines = threadMagazines.get();
+    synchronized (magazines) {
+      releaseToMagazines(magazines, allocation);
+    }
+    allocatedCount.decrementAndGet();
+  }
+
+  @Override
+  public void release(Allocation[] allocations) {
+    Magazines magazines = threadMagazines.get();
+    synchronized (magazines) {
+      for (Allocation allocation : allocations) {
+        releaseToMagazines(magazines, allocation);
+      }
+    }
+    allocatedCount.addAndGet(-allocations.length);
+  }
+
+  /**
+   * Discards available allocations beyond the target buffer size. Allocations cached by threads
+   * are retained in preference to those in the shared pool, since they're the most likely to be
+   * reused.
+   */
+  @Override
+  public synchronized void trim() {
+    int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
+    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount.get());
+    int threadAvailableCount = 0;
+    Iterator<Magazines> iterator = registeredMagazines.iterator();
+    while (iterator.hasNext()) {
+      Magazines magazines = iterator.next();
+      synchronized (magazines) {
+        int availableCount = magazines.loadedCount + magazines.previousCount;
+        if (availableCount == 0) {
+          // Unregister empty magazines, which may belong to threads that no longer exist.
+          unregister(magazines, iterator);
+        }
+        threadAvailableCount += availableCount;
+      }
+    }
+    int targetFullMagazineCount =
+        Math.max(0, targetAvailableCount - threadAvailableCount) / magazineSize;
+    while (fullMagazineCount.get() > targetFullMagazineCount && fullMagazines.poll() != null) {
+      fullMagazineCount.decrementAndGet();
+    }
+    iterator = registeredMagazines.iterator();
+    while (threadAvailableCount > targetAvailableCount && iterator.hasNext()) {
+      Magazines magazines = iterator.next();
+      synchronized (magazines) {
+        threadAvailableCount -= magazines.loadedCount + magazines.previousCount;
+        magazines.clear();
+        unregister(magazines, iterator);
+      }
+    }
+  }
+
+  /**
+   * Returns the total number of bytes of the allocations that are in use. Available allocations
+   * cached by threads or by the shared pool aren't included, and are bounded by the target buffer
+   * size whenever the allocator is trimmed.
+   */
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private void releaseToMagazines(Magazines magazines, Allocation allocation) {
+    registerIfNeeded(magazines);
+    if (magazines.loadedCount == magazineSize) {
+      if (magazines.previousCount == 0) {
+        magazines.swap();
+      } else {
+        // Both magazines are full. Hand the previous one over to the shared pool.
+        fullMagazines.offer(magazines.previous);
+        fullMagazineCount.incrementAndGet();
+        magazines.previous = magazines.loaded;
+        magazines.previousCount = magazineSize;
+        magazines.loaded = new Allocation[magazineSize];
+        magazines.loadedCount = 0;
+      }
+    }
+    magazines.loaded[magazines.loadedCount++] = allocation;
+  }
+
+  private void registerIfNeeded(Magazines magazines) {
+    if (!magazines.isRegistered) {
+      magazines.isRegistered = true;
+      registeredMagazines.add(magazines);
+    }
+  }
+
+  private static void unregister(Magazines magazines, Iterator<Magazines> iterator) {
+    magazines.isRegistered = false;
+    iterator.remove();
+  }
+
+  /**
+   * The magazines of a single thread. The loaded magazine is used for allocating and releasing.
+   * The previous magazine is always either full or empty. Must only be accessed whilst holding its
+   * lock.
+   */
+  private static final class Magazines {
+
+    public boolean isRegistered;
+    public Allocation[] loaded;
+    public int loadedCount;
+    public Allocation[] previous;
+    public int previousCount;
+
+    public Magazines(int magazineSize) {
+      loaded = new Allocation[magazineSize];
+      previous = new Allocation[magazineSize];
+    }
+
+    public void swap() {
+      Allocation[] loaded = this.loaded;
+      int loadedCount = this.loadedCount;
+      this.loaded = previous;
+      this.loadedCount = previousCount;
+      previous = loaded;
+      previousCount = loadedCount;
+    }
+
+    public void clear() {
+      Arrays.fill(loaded, null);
+      Arrays.fill(previous, null);
+      loadedCount = 0;
+      previousCount = 0;
+    }
+  }
+}
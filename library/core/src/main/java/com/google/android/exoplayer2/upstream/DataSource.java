@@ -19,6 +19,7 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +82,52 @@ public interface DataSource {
    */
   int read(byte[] buffer, int offset, int readLength) throws IOException;
 
+  /**
+   * Returns whether {@link #read(ByteBuffer, int)} reads data directly into the buffer, which
+   * allows it to be read into buffers that aren't backed by an array, such as direct buffers,
+   * without passing through an intermediate array.
+   */
+  default boolean supportsByteBufferReads() {
+    return false;
+  }
+
+  /**
+   * Reads up to {@code readLength} bytes of data and stores them into {@code buffer}, starting at
+   * its position. The position of {@code buffer} is advanced by the number of bytes read.
+   *
+   * <p>The default implementation reads using {@link #read(byte[], int, int)}, into the array that
+   * backs {@code buffer} if it has one, and into a new array otherwise. Sources that can read into
+   * the buffer directly override it, and {@link #supportsByteBufferReads()}.
+   *
+   * <p>If {@code readLength} is zero then 0 is returned. Otherwise, if no data is available because
+   * the end of the opened range has been reached, then {@link C#RESULT_END_OF_INPUT} is returned.
+   * Otherwise, the call will block until at least one byte of data has been read and the number of
+   * bytes read is returned.
+   *
+   * @param buffer The buffer into which the read data should be stored. Must have at least {@code
+   *     readLength} bytes remaining.
+   * @param readLength The maximum number of bytes to read.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if no data is available
+   *     because the end of the opened range has been reached.
+   * @throws IOException If an error occurs reading from the source.
+   */
+  default int read(ByteBuffer buffer, int readLength) throws IOException {
+    int position = buffer.position();
+    if (buffer.hasArray()) {
+      int bytesRead = read(buffer.array(), buffer.arrayOffset() + position, readLength);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        buffer.position(position + bytesRead);
+      }
+      return bytesRead;
+    }
+    byte[] data = new byte[readLength];
+    int bytesRead = read(data, /* offset= */ 0, readLength);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      buffer.put(data, /* offset= */ 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   /**
    * When the source is open, returns the {@link Uri} from which data is being read. The returned
    * {@link Uri} will be identical to the one passed {@link #open(DataSpec)} in the {@link DataSpec}
@@ -77,12 +77,14 @@ public final class DefaultAllocator implements Allocator {
     singleAllocationReleaseHolder = new Allocation[1];
   }
 
+  @Override
   public synchronized void reset() {
     if (trimOnReset) {
       setTargetBufferSize(0);
     }
   }
 
+  @Override
   public synchronized void setTargetBufferSize(int targetBufferSize) {
     boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
     this.targetBufferSize = targetBufferSize;
@@ -22,6 +22,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -183,6 +184,16 @@ public final class DefaultDataSource implements DataSource {
     return Assertions.checkNotNull(dataSource).read(buffer, offset, readLength);
   }
 
+  @Override
+  public boolean supportsByteBufferReads() {
+    return dataSource != null && dataSource.supportsByteBufferReads();
+  }
+
+  @Override
+  public int read(ByteBuffer buffer, int readLength) throws IOException {
+    return Assertions.checkNotNull(dataSource).read(buffer, readLength);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * An {@link Allocator} whose {@link Allocation}s are backed by large direct {@link ByteBuffer}
+ * slabs, rather than by byte arrays on the Java heap.
+ *
+ * <p>Buffered media held in direct memory isn't visible to the garbage collector, and can be
+ * copied into direct decoder input buffers without passing through the heap.
+ *
+ * <p>Slabs are created as needed, each holding a fixed number of allocations. Allocations are
+ * handed out from the earliest created slab that has one available, so that later slabs tend to
+ * become unused as the buffer shrinks. {@link #trim()} frees slabs none of whose allocations are in
+ * use, for as long as the allocator retains at least enough allocations to reach the target buffer
+ * size.
+ */
+public final class DirectBufferAllocator implements Allocator {
+
+  /** The default number of {@link Allocation}s in each slab. */
+  public static final int DEFAULT_ALLOCATIONS_PER_SLAB = 32;
+
+  private final boolean trimOnReset;
+  private final int individualAllocationSize;
+  private final int allocationsPerSlab;
+  private final ArrayList<Slab> slabs;
+  private final IdentityHashMap<ByteBuffer, Slab> slabsByBuffer;
+
+  private int targetBufferSize;
+  private int allocatedCount;
+  private int availableCount;
+
+  /**
+   * Constructs an instance with {@link #DEFAULT_ALLOCATIONS_PER_SLAB} allocations in each slab.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public DirectBufferAllocator(boolean trimOnReset, int individualAllocationSize) {
+    this(trimOnReset, individualAllocationSize, DEFAULT_ALLOCATIONS_PER_SLAB);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param allocationsPerSlab The number of {@link Allocation}s in each slab.
+   */
+  public DirectBufferAllocator(
+      boolean trimOnReset, int individualAllocationSize, int allocationsPerSlab) {
+    Assertions.checkArgument(individualAllocationSize > 0);
+    Assertions.checkArgument(allocationsPerSlab > 0);
+    Assertions.checkArgument(individualAllocationSize <= Integer.MAX_VALUE / allocationsPerSlab);
+    this.trimOnReset = trimOnReset;
+    this.individualAllocationSize = individualAllocationSize;
+    this.allocationsPerSlab = allocationsPerSlab;
+    slabs = new ArrayList<>();
+    slabsByBuffer = new IdentityHashMap<>();
+  }
+
+  @Override
+  public synchronized void reset() {
+    if (trimOnReset) {
+      setTargetBufferSize(0);
+    }
+  }
+
+  @Override
+  public synchronized void setTargetBufferSize(int targetBufferSize) {
+    boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+    this.targetBufferSize = targetBufferSize;
+    if (targetBufferSizeReduced) {
+      trim();
+    }
+  }
+
+  @Override
+  public synchronized Allocation allocate() {
+    allocatedCount++;
+    Slab slab = null;
+    for (int i = 0; i < slabs.size(); i++) {
+      if (slabs.get(i).availableCount > 0) {
+        slab = slabs.get(i);
+        break;
+      }
+    }
+    if (slab == null) {
+      slab = addSlab();
+    }
+    availableCount--;
+    return slab.allocate();
+  }
+
+  @Override
+  public synchronized void release(Allocation allocation) {
+    releaseInternal(allocation);
+    allocatedCount--;
+  }
+
+  @Override
+  public synchronized void release(Allocation[] allocations) {
+    for (Allocation allocation : allocations) {
+      releaseInternal(allocation);
+    }
+    allocatedCount -= allocations.length;
+  }
+
+  @Override
+  public synchronized void trim() {
+    int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
+    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount);
+    // Free unused slabs, latest created first, without going below the target.
+    for (int i = slabs.size() - 1;
+        i >= 0 && availableCount - allocationsPerSlab >= targetAvailableCount;
+        i--) {
+      Slab slab = slabs.get(i);
+      if (slab.availableCount == allocationsPerSlab) {
+        slabs.remove(i);
+        slabsByBuffer.remove(slab.buffer);
+        availableCount -= allocationsPerSlab;
+      }
+    }
+  }
+
+  @Override
+  public synchronized int getTotalBytesAllocated() {
+    return allocatedCount * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private void releaseInternal(Allocation allocation) {
+    Slab slab = slabsByBuffer.get(allocation.buffer);
+    Assertions.checkArgument(slab != null && slab.availableCount < allocationsPerSlab);
+    slab.release(allocation);
+    availableCount++;
+  }
+
+  private Slab addSlab() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(allocationsPerSlab * individualAllocationSize);
+    Slab slab = new Slab(buffer, allocationsPerSlab, individualAllocationSize);
+    slabs.add(slab);
+    slabsByBuffer.put(buffer, slab);
+    availableCount += allocationsPerSlab;
+    return slab;
+  }
+
+  /** A direct buffer holding a fixed number of allocations. */
+  private static final class Slab {
+
+    public final ByteBuffer buffer;
+
+    private final Allocation[] availableAllocations;
+
+    public int availableCount;
+
+    public Slab(ByteBuffer buffer, int allocationCount, int individualAllocationSize) {
+      this.buffer = buffer;
+      availableAllocations = new Allocation[allocationCount];
+      // Add the allocations in reverse order, so that they're handed out in order of their offsets.
+      for (int i = allocationCount - 1; i >= 0; i--) {
+        availableAllocations[availableCount++] =
+            new Allocation(buffer, /* offset= */ i * individualAllocationSize);
+      }
+    }
+
+    public Allocation allocate() {
+      Allocation allocation = availableAllocations[--availableCount];
+      availableAllocations[availableCount] = null;
+      return allocation;
+    }
+
+    public void release(Allocation allocation) {
+      availableAllocations[availableCount++] = allocation;
+    }
+  }
+}
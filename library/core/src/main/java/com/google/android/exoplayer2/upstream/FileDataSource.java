@@ -24,8 +24,19 @@ import com.google.android.exoplayer2.util.Assertions;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-/** A {@link DataSource} for reading local files. */
+/**
+ * A {@link DataSource} for reading local files.
+ *
+ * <p>If memory mapping is enabled, the file is mapped into memory and reads are served from the
+ * mapping, which avoids a system call per {@link #read(byte[], int, int)}. In this mode {@link
+ * #readBuffer(int)} also provides zero-copy access to the file's content.
+ *
+ * <p>{@link #read(ByteBuffer, int)} is supported in both modes, so that data can be read into
+ * direct buffers without passing through an intermediate array.
+ */
 public final class FileDataSource extends BaseDataSource {
 
   /**
@@ -39,13 +50,29 @@ public final class FileDataSource extends BaseDataSource {
 
   }
 
+  /** The maximum length of the region of a file that's mapped into memory at any one time. */
+  private static final int MAX_MAPPED_REGION_LENGTH = 32 * 1024 * 1024;
+
+  private final boolean useMemoryMapping;
+
   @Nullable private RandomAccessFile file;
   @Nullable private Uri uri;
+  @Nullable private ByteBuffer mappedRegion;
+  private long mappedRegionEndPosition;
   private long bytesRemaining;
   private boolean opened;
 
   public FileDataSource() {
+    this(/* useMemoryMapping= */ false);
+  }
+
+  /**
+   * @param useMemoryMapping Whether to serve reads from a memory mapping of the file, rather than
+   *     by reading from the file.
+   */
+  public FileDataSource(boolean useMemoryMapping) {
     super(/* isNetwork= */ false);
+    this.useMemoryMapping = useMemoryMapping;
   }
 
   @Override
@@ -58,7 +85,11 @@ public final class FileDataSource extends BaseDataSource {
       RandomAccessFile file = new RandomAccessFile(Assertions.checkNotNull(uri.getPath()), "r");
       this.file = file;
 
-      file.seek(dataSpec.position);
+      if (useMemoryMapping) {
+        mappedRegionEndPosition = dataSpec.position;
+      } else {
+        file.seek(dataSpec.position);
+      }
       bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? file.length() - dataSpec.position
           : dataSpec.length;
       if (bytesRemaining < 0) {
@@ -82,11 +113,66 @@ public final class FileDataSource extends BaseDataSource {
       return C.RESULT_END_OF_INPUT;
     } else {
       int bytesRead;
-      try {
-        bytesRead =
-            castNonNull(file).read(buffer, offset, (int) Math.min(bytesRemaining, readLength));
-      } catch (IOException e) {
-        throw new FileDataSourceException(e);
+      if (useMemoryMapping) {
+        ByteBuffer mappedRegion = getMappedRegion();
+        if (mappedRegion == null) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        bytesRead = Math.min(mappedRegion.remaining(), readLength);
+        mappedRegion.get(buffer, offset, bytesRead);
+      } else {
+        try {
+          bytesRead =
+              castNonNull(file).read(buffer, offset, (int) Math.min(bytesRemaining, readLength));
+        } catch (IOException e) {
+          throw new FileDataSourceException(e);
+        }
+      }
+
+      if (bytesRead > 0) {
+        bytesRemaining -= bytesRead;
+        bytesTransferred(bytesRead);
+      }
+
+      return bytesRead;
+    }
+  }
+
+  @Override
+  public boolean supportsByteBufferReads() {
+    return true;
+  }
+
+  @Override
+  public int read(ByteBuffer buffer, int readLength) throws FileDataSourceException {
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    } else {
+      int bytesRead;
+      if (useMemoryMapping) {
+        ByteBuffer mappedRegion = getMappedRegion();
+        if (mappedRegion == null) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        bytesRead = Math.min(mappedRegion.remaining(), readLength);
+        int mappedRegionLimit = mappedRegion.limit();
+        mappedRegion.limit(mappedRegion.position() + bytesRead);
+        buffer.put(mappedRegion);
+        mappedRegion.limit(mappedRegionLimit);
+      } else {
+        // Reading through the channel allows the data to be transferred directly into a direct
+        // buffer. The channel shares its position with the file.
+        int bufferLimit = buffer.limit();
+        buffer.limit(buffer.position() + (int) Math.min(bytesRemaining, readLength));
+        try {
+          bytesRead = castNonNull(file).getChannel().read(buffer);
+        } catch (IOException e) {
+          throw new FileDataSourceException(e);
+        } finally {
+          buffer.limit(bufferLimit);
+        }
       }
 
       if (bytesRead > 0) {
@@ -98,6 +184,38 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  /**
+   * Returns a read-only view of up to {@code readLength} bytes of the file, starting at the current
+   * read position, without copying them. The read position is advanced past the returned bytes.
+   * The view remains valid after the data source is closed. Must only be called if memory mapping
+   * is enabled.
+   *
+   * @param readLength The maximum number of bytes to return.
+   * @return A view whose remaining bytes are the bytes that were read, which may be fewer than
+   *     {@code readLength}, or {@code null} if the end of the input has been reached.
+   * @throws FileDataSourceException If an error occurs mapping the file.
+   */
+  @Nullable
+  public ByteBuffer readBuffer(int readLength) throws FileDataSourceException {
+    Assertions.checkState(useMemoryMapping);
+    if (bytesRemaining == 0) {
+      return null;
+    }
+    ByteBuffer mappedRegion = getMappedRegion();
+    if (mappedRegion == null) {
+      return null;
+    }
+    int bytesRead = Math.min(mappedRegion.remaining(), readLength);
+    ByteBuffer view = mappedRegion.slice();
+    view.limit(bytesRead);
+    mappedRegion.position(mappedRegion.position() + bytesRead);
+    if (bytesRead > 0) {
+      bytesRemaining -= bytesRead;
+      bytesTransferred(bytesRead);
+    }
+    return view;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -115,6 +233,7 @@ public final class FileDataSource extends BaseDataSource {
       throw new FileDataSourceException(e);
     } finally {
       file = null;
+      mappedRegion = null;
       if (opened) {
         opened = false;
         transferEnded();
@@ -122,4 +241,33 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  /**
+   * Returns the mapped region from which the next bytes should be read, mapping the next region of
+   * the file if the current one has been fully read, or {@code null} if the file ends before the
+   * read position.
+   */
+  @Nullable
+  private ByteBuffer getMappedRegion() throws FileDataSourceException {
+    if (mappedRegion != null && mappedRegion.hasRemaining()) {
+      return mappedRegion;
+    }
+    mappedRegion = null;
+    try {
+      FileChannel channel = castNonNull(file).getChannel();
+      long regionLength =
+          Math.min(
+              Math.min(bytesRemaining, MAX_MAPPED_REGION_LENGTH),
+              channel.size() - mappedRegionEndPosition);
+      if (regionLength <= 0) {
+        return null;
+      }
+      mappedRegion =
+          channel.map(FileChannel.MapMode.READ_ONLY, mappedRegionEndPosition, regionLength);
+      mappedRegionEndPosition += regionLength;
+    } catch (IOException e) {
+      throw new FileDataSourceException(e);
+    }
+    return mappedRegion;
+  }
+
 }
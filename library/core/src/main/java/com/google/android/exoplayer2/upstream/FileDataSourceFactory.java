@@ -23,18 +23,29 @@ import androidx.annotation.Nullable;
 public final class FileDataSourceFactory implements DataSource.Factory {
 
   @Nullable private final TransferListener listener;
+  private final boolean useMemoryMapping;
 
   public FileDataSourceFactory() {
     this(null);
   }
 
   public FileDataSourceFactory(@Nullable TransferListener listener) {
+    this(listener, /* useMemoryMapping= */ false);
+  }
+
+  /**
+   * @param listener An optional listener.
+   * @param useMemoryMapping Whether the created {@link FileDataSource}s serve reads from a memory
+   *     mapping of the file.
+   */
+  public FileDataSourceFactory(@Nullable TransferListener listener, boolean useMemoryMapping) {
     this.listener = listener;
+    this.useMemoryMapping = useMemoryMapping;
   }
 
   @Override
   public DataSource createDataSource() {
-    FileDataSource dataSource = new FileDataSource();
+    FileDataSource dataSource = new FileDataSource(useMemoryMapping);
     if (listener != null) {
       dataSource.addTransferListener(listener);
     }
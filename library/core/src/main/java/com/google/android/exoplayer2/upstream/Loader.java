@@ -200,6 +200,21 @@ public final class Loader implements LoaderErrorThrower {
     this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
   }
 
+  /**
+   * @param threadName A name for the loader's thread. Only used if {@code threadPool} is null.
+   * @param threadPool A {@link LoaderThreadPool} on which to load, or null to load on a thread
+   *     owned by the loader.
+   * @param priority The priority of loads on the {@code threadPool}, such as {@link
+   *     LoaderThreadPool#PRIORITY_MEDIA} or {@link LoaderThreadPool#PRIORITY_MANIFEST}. Loads with
+   *     higher priorities are started first when all of the pool's threads are busy.
+   */
+  public Loader(String threadName, @Nullable LoaderThreadPool threadPool, int priority) {
+    this.downloadExecutorService =
+        threadPool != null
+            ? threadPool.createExecutorService(priority)
+            : Util.newSingleThreadExecutor(threadName);
+  }
+
   /**
    * Creates a {@link LoadErrorAction} for retrying with the given parameters.
    *
@@ -315,7 +330,7 @@ public final class Loader implements LoaderErrorThrower {
     private IOException currentError;
     private int errorCount;
 
-    private volatile Thread executorThread;
+    @Nullable private Thread executorThread;
     private volatile boolean canceled;
     private volatile boolean released;
 
@@ -353,10 +368,15 @@ public final class Loader implements LoaderErrorThrower {
           sendEmptyMessage(MSG_CANCEL);
         }
       } else {
-        canceled = true;
-        loadable.cancelLoad();
-        if (executorThread != null) {
-          executorThread.interrupt();
+        synchronized (this) {
+          canceled = true;
+          loadable.cancelLoad();
+          // The executor thread is cleared under the same lock once the load ends, so a thread that
+          // has moved on to another task, possibly of another loader sharing a LoaderThreadPool, is
+          // never interrupted.
+          if (executorThread != null) {
+            executorThread.interrupt();
+          }
         }
       }
       if (released) {
@@ -374,8 +394,12 @@ public final class Loader implements LoaderErrorThrower {
     @Override
     public void run() {
       try {
-        executorThread = Thread.currentThread();
-        if (!canceled) {
+        boolean shouldLoad;
+        synchronized (this) {
+          shouldLoad = !canceled;
+          executorThread = Thread.currentThread();
+        }
+        if (shouldLoad) {
           TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
           try {
             loadable.load();
@@ -419,6 +443,13 @@ public final class Loader implements LoaderErrorThrower {
           obtainMessage(MSG_FATAL_ERROR, e).sendToTarget();
         }
         throw e;
+      } finally {
+        synchronized (this) {
+          executorThread = null;
+          // Clear any interrupt caused by cancellation, so that it doesn't leak into the next task
+          // run by the thread.
+          Thread.interrupted();
+        }
       }
     }
 
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads shared by {@link Loader}s, so that the number of loading threads
+ * doesn't grow with the number of tracks and playlist items being loaded.
+ *
+ * <p>Each {@link Loader} backed by the pool still runs its loads one at a time and in order. When
+ * all of the threads are busy, waiting loads are started in order of decreasing priority, and loads
+ * of the same priority in the order in which they were started. Threads are stopped when they've
+ * been idle for {@link #KEEP_ALIVE_TIME_MS}.
+ *
+ * <p>A load holds a thread for as long as it runs. Loads that block until they're allowed to
+ * continue, such as those of progressive media, would hold a thread while their data isn't needed,
+ * and so shouldn't be run on the pool. The maximum thread count should be at least the number of
+ * loads that may be in progress at the same time, or some loads will be delayed until others
+ * complete.
+ */
+public final class LoaderThreadPool {
+
+  /** The priority of loads of media data. */
+  public static final int PRIORITY_MEDIA = 0;
+  /**
+   * The priority of loads of manifests and playlists, which are small and on which the loading of
+   * media data depends.
+   */
+  public static final int PRIORITY_MANIFEST = 1;
+
+  /** The default maximum number of threads. */
+  public static final int DEFAULT_MAX_THREAD_COUNT = 4;
+  /** The time after which idle threads are stopped, in milliseconds. */
+  public static final long KEEP_ALIVE_TIME_MS = 10_000;
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:LoaderThreadPool-";
+
+  private final ThreadPoolExecutor threadPoolExecutor;
+  private final AtomicLong nextSequenceNumber;
+
+  /** Creates an instance with {@link #DEFAULT_MAX_THREAD_COUNT} threads. */
+  public LoaderThreadPool() {
+    this(DEFAULT_MAX_THREAD_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxThreadCount The maximum number of threads.
+   */
+  public LoaderThreadPool(int maxThreadCount) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    AtomicInteger threadCount = new AtomicInteger();
+    threadPoolExecutor =
+        new ThreadPoolExecutor(
+            maxThreadCount,
+            maxThreadCount,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(),
+            runnable -> new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet()));
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    nextSequenceNumber = new AtomicLong();
+  }
+
+  /** Returns the number of threads that are currently running loads. */
+  public int getActiveThreadCount() {
+    return threadPoolExecutor.getActiveCount();
+  }
+
+  /**
+   * Returns an {@link ExecutorService} that runs tasks on the pool one at a time, in the order in
+   * which they're submitted. Shutting it down doesn't affect the pool.
+   *
+   * @param priority The priority of the tasks. Tasks with higher priorities are started first.
+   */
+  /* package */ ExecutorService createExecutorService(int priority) {
+    return new SerialExecutorService(priority);
+  }
+
+  /** Runs tasks on the pool one at a time, in submission order. */
+  private final class SerialExecutorService extends AbstractExecutorService {
+
+    private final int priority;
+    private final ArrayDeque<Runnable> pendingTasks;
+
+    @Nullable private Runnable activeTask;
+    private boolean isShutdown;
+
+    public SerialExecutorService(int priority) {
+      this.priority = priority;
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(@NonNull Runnable task) {
+      if (isShutdown) {
+        throw new RejectedExecutionException();
+      }
+      pendingTasks.add(task);
+      if (activeTask == null) {
+        startNextTask();
+      }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+      isShutdown = true;
+      notifyAll();
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+      shutdown();
+      List<Runnable> tasks = new ArrayList<>(pendingTasks);
+      pendingTasks.clear();
+      return tasks;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+      return isShutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+      return isShutdown && activeTask == null && pendingTasks.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, @NonNull TimeUnit unit)
+        throws InterruptedException {
+      long deadlineMs = System.currentTimeMillis() + unit.toMillis(timeout);
+      while (!isTerminated()) {
+        long remainingMs = deadlineMs - System.currentTimeMillis();
+        if (remainingMs <= 0) {
+          return false;
+        }
+        wait(remainingMs);
+      }
+      return true;
+    }
+
+    private synchronized void onTaskFinished() {
+      activeTask = null;
+      if (!pendingTasks.isEmpty()) {
+        startNextTask();
+      } else {
+        notifyAll();
+      }
+    }
+
+    private void startNextTask() {
+      Runnable task = pendingTasks.remove();
+      activeTask = task;
+      threadPoolExecutor.execute(
+          new PrioritizedTask(priority, nextSequenceNumber.getAndIncrement()) {
+            @Override
+            public void run() {
+              try {
+                task.run();
+              } finally {
+                onTaskFinished();
+              }
+            }
+          });
+    }
+  }
+
+  /**
+   * A task queued on the pool, ordered by decreasing priority and then by increasing sequence
+   * number.
+   */
+  private abstract static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+    private final int priority;
+    private final long sequenceNumber;
+
+    public PrioritizedTask(int priority, long sequenceNumber) {
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    @Override
+    public int compareTo(@NonNull PrioritizedTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+}
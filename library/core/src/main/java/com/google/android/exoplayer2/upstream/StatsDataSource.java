@@ -20,6 +20,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -95,6 +96,20 @@ public final class StatsDataSource implements DataSource {
     return bytesRead;
   }
 
+  @Override
+  public boolean supportsByteBufferReads() {
+    return dataSource.supportsByteBufferReads();
+  }
+
+  @Override
+  public int read(ByteBuffer buffer, int readLength) throws IOException {
+    int bytesRead = dataSource.read(buffer, readLength);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      this.bytesRead += bytesRead;
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -243,6 +243,45 @@ public interface Cache {
    */
   long getCachedLength(String key, long position, long length);
 
+  /**
+   * Returns the number of bytes that are cached within each of a number of ranges of the data for
+   * a key.
+   *
+   * <p>The result is equivalent to summing the cached block lengths returned by {@link
+   * #getCachedLength(String, long, long)} over each range, but implementations may resolve all of
+   * the ranges in a single pass over the cached spans. This is significantly faster when querying
+   * many ranges.
+   *
+   * @param key The cache key for the data.
+   * @param positions The starting positions of the ranges.
+   * @param lengths The lengths of the ranges, or {@link C#LENGTH_UNSET} for ranges that extend to
+   *     the end of the data. Must have the same length as {@code positions}.
+   * @return The number of bytes that are cached within each range.
+   */
+  default long[] getCachedBytes(String key, long[] positions, long[] lengths) {
+    long[] cachedBytes = new long[positions.length];
+    for (int i = 0; i < positions.length; i++) {
+      long position = positions[i];
+      long bytesLeft = lengths[i];
+      while (bytesLeft != 0) {
+        long blockLength =
+            getCachedLength(
+                key, position, bytesLeft != C.LENGTH_UNSET ? bytesLeft : Long.MAX_VALUE);
+        if (blockLength > 0) {
+          cachedBytes[i] += blockLength;
+        } else {
+          blockLength = -blockLength;
+          if (blockLength == Long.MAX_VALUE) {
+            break;
+          }
+        }
+        position += blockLength;
+        bytesLeft -= bytesLeft == C.LENGTH_UNSET ? 0 : blockLength;
+      }
+    }
+    return cachedBytes;
+  }
+
   /**
    * Applies {@code mutations} to the {@link ContentMetadata} for the given key. A new {@link
    * CachedContent} is added if there isn't one already with the given key.
@@ -34,6 +34,8 @@ import java.io.InterruptedIOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -47,8 +49,8 @@ public final class CacheDataSource implements DataSource {
 
   /**
    * Flags controlling the CacheDataSource's behavior. Possible flag values are {@link
-   * #FLAG_BLOCK_ON_CACHE}, {@link #FLAG_IGNORE_CACHE_ON_ERROR} and {@link
-   * #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS}.
+   * #FLAG_BLOCK_ON_CACHE}, {@link #FLAG_IGNORE_CACHE_ON_ERROR}, {@link
+   * #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS} and {@link #FLAG_COALESCE_UPSTREAM_REQUESTS}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
@@ -57,7 +59,8 @@ public final class CacheDataSource implements DataSource {
       value = {
         FLAG_BLOCK_ON_CACHE,
         FLAG_IGNORE_CACHE_ON_ERROR,
-        FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS
+        FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS,
+        FLAG_COALESCE_UPSTREAM_REQUESTS
       })
   public @interface Flags {}
   /**
@@ -79,6 +82,32 @@ public final class CacheDataSource implements DataSource {
    */
   public static final int FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS = 1 << 2; // 4
 
+  /**
+   * A flag indicating that requests to upstream for data that's not cached should be coalesced.
+   * When a hole in the cache needs to be read from upstream, a single upstream request is made for
+   * it and for any further holes up to {@link #READ_AHEAD_LENGTH} bytes beyond the end of the
+   * current request, provided they're separated by no more than {@link
+   * #MAX_COALESCED_CACHED_LENGTH} bytes of cached data. Data read for the holes is written into the
+   * cache, including data beyond the end of the current request, which is read when the source is
+   * closed. Has no effect if the cache is accessed read-only, or for requests whose lengths are
+   * unset.
+   */
+  public static final int FLAG_COALESCE_UPSTREAM_REQUESTS = 1 << 3; // 8
+
+  /**
+   * The maximum number of bytes beyond the end of a request that are read into the cache if {@link
+   * #FLAG_COALESCE_UPSTREAM_REQUESTS} is set. This data is read when the source is closed, so the
+   * limit is kept small to bound how long closing can take.
+   */
+  public static final long READ_AHEAD_LENGTH = 64 * 1024;
+
+  /**
+   * The maximum length of cached data between two holes for which upstream requests are coalesced
+   * if {@link #FLAG_COALESCE_UPSTREAM_REQUESTS} is set. Cached data between coalesced holes is read
+   * from upstream again, which is cheaper than making another request when there's little of it.
+   */
+  public static final long MAX_COALESCED_CACHED_LENGTH = 64 * 1024;
+
   /**
    * Reasons the cache may be ignored. One of {@link #CACHE_IGNORED_REASON_ERROR} or {@link
    * #CACHE_IGNORED_REASON_UNSET_LENGTH}.
@@ -121,9 +150,13 @@ public final class CacheDataSource implements DataSource {
   /** Minimum number of bytes to read before checking cache for availability. */
   private static final long MIN_READ_BEFORE_CHECKING_CACHE = 100 * 1024;
 
+  /** The size of the buffer used to read data beyond the end of a request into the cache. */
+  private static final int READ_AHEAD_BUFFER_SIZE = 32 * 1024;
+
   private final Cache cache;
   private final DataSource cacheReadDataSource;
   @Nullable private final DataSource cacheWriteDataSource;
+  @Nullable private final DataSink cacheWriteDataSink;
   private final DataSource upstreamDataSource;
   private final CacheKeyFactory cacheKeyFactory;
   @Nullable private final EventListener eventListener;
@@ -131,6 +164,7 @@ public final class CacheDataSource implements DataSource {
   private final boolean blockOnCache;
   private final boolean ignoreCacheOnError;
   private final boolean ignoreCacheForUnsetLengthRequests;
+  private final boolean coalesceUpstreamRequests;
 
   @Nullable private DataSource currentDataSource;
   private boolean currentDataSpecLengthUnset;
@@ -148,6 +182,15 @@ public final class CacheDataSource implements DataSource {
   private long totalCachedBytesRead;
   private long checkCachePosition;
 
+  // Holes being read by a coalesced upstream request, sorted by position.
+  private long[] coalescedHoleStarts;
+  private long[] coalescedHoleEnds;
+  private int coalescedHoleCount;
+  private int coalescedHoleIndex;
+  private boolean coalescedHoleSinkOpen;
+  @Nullable private byte[] readAheadBuffer;
+  @Nullable private byte[] byteBufferReadScratch;
+
   /**
    * Constructs an instance with default {@link DataSource} and {@link DataSink} instances for
    * reading and writing the cache.
@@ -165,8 +208,9 @@ public final class CacheDataSource implements DataSource {
    *
    * @param cache The cache.
    * @param upstream A {@link DataSource} for reading data not in the cache.
-   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link #FLAG_IGNORE_CACHE_ON_ERROR}
-   *     and {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS}, or 0.
+   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link
+   *     #FLAG_IGNORE_CACHE_ON_ERROR}, {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS} and
+   *     {@link #FLAG_COALESCE_UPSTREAM_REQUESTS}, or 0.
    */
   public CacheDataSource(Cache cache, DataSource upstream, @Flags int flags) {
     this(
@@ -188,8 +232,9 @@ public final class CacheDataSource implements DataSource {
    * @param cacheReadDataSource A {@link DataSource} for reading data from the cache.
    * @param cacheWriteDataSink A {@link DataSink} for writing data to the cache. If null, cache is
    *     accessed read-only.
-   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link #FLAG_IGNORE_CACHE_ON_ERROR}
-   *     and {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS}, or 0.
+   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link
+   *     #FLAG_IGNORE_CACHE_ON_ERROR}, {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS} and
+   *     {@link #FLAG_COALESCE_UPSTREAM_REQUESTS}, or 0.
    * @param eventListener An optional {@link EventListener} to receive events.
    */
   public CacheDataSource(
@@ -219,8 +264,9 @@ public final class CacheDataSource implements DataSource {
    * @param cacheReadDataSource A {@link DataSource} for reading data from the cache.
    * @param cacheWriteDataSink A {@link DataSink} for writing data to the cache. If null, cache is
    *     accessed read-only.
-   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link #FLAG_IGNORE_CACHE_ON_ERROR}
-   *     and {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS}, or 0.
+   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link
+   *     #FLAG_IGNORE_CACHE_ON_ERROR}, {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS} and
+   *     {@link #FLAG_COALESCE_UPSTREAM_REQUESTS}, or 0.
    * @param eventListener An optional {@link EventListener} to receive events.
    * @param cacheKeyFactory An optional factory for cache keys.
    */
@@ -240,13 +286,17 @@ public final class CacheDataSource implements DataSource {
     this.ignoreCacheOnError = (flags & FLAG_IGNORE_CACHE_ON_ERROR) != 0;
     this.ignoreCacheForUnsetLengthRequests =
         (flags & FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS) != 0;
+    this.coalesceUpstreamRequests = (flags & FLAG_COALESCE_UPSTREAM_REQUESTS) != 0;
     this.upstreamDataSource = upstream;
+    this.cacheWriteDataSink = cacheWriteDataSink;
     if (cacheWriteDataSink != null) {
       this.cacheWriteDataSource = new TeeDataSource(upstream, cacheWriteDataSink);
     } else {
       this.cacheWriteDataSource = null;
     }
     this.eventListener = eventListener;
+    coalescedHoleStarts = new long[0];
+    coalescedHoleEnds = new long[0];
   }
 
   @Override
@@ -293,6 +343,39 @@ public final class CacheDataSource implements DataSource {
 
   @Override
   public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    return read(buffer, offset, /* byteBuffer= */ null, readLength);
+  }
+
+  /**
+   * Returns whether the source currently being read from supports {@link #read(ByteBuffer, int)},
+   * which is typically the case when reading from the cache.
+   */
+  @Override
+  public boolean supportsByteBufferReads() {
+    return currentDataSource != null
+        && !isCoalescing()
+        && currentDataSource.supportsByteBufferReads();
+  }
+
+  @Override
+  public int read(ByteBuffer buffer, int readLength) throws IOException {
+    return read(/* buffer= */ null, /* offset= */ 0, buffer, readLength);
+  }
+
+  /**
+   * Reads into either an array or a {@link ByteBuffer}.
+   *
+   * @param buffer The array into which to read, or null if reading into {@code byteBuffer}.
+   * @param offset The offset in {@code buffer} at which to start writing.
+   * @param byteBuffer The {@link ByteBuffer} into which to read, or null if reading into {@code
+   *     buffer}.
+   * @param readLength The maximum number of bytes to read.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT}.
+   * @throws IOException If an error occurs reading from the source.
+   */
+  private int read(
+      @Nullable byte[] buffer, int offset, @Nullable ByteBuffer byteBuffer, int readLength)
+      throws IOException {
     if (readLength == 0) {
       return 0;
     }
@@ -302,8 +385,16 @@ public final class CacheDataSource implements DataSource {
     try {
       if (readPosition >= checkCachePosition) {
         openNextSource(true);
+      } else if (isCoalescing() && readPosition == getCoalescedUpstreamEnd()) {
+        // The coalesced upstream request ended before the end of the current request, because the
+        // cached data that follows it is too long to be read from upstream again.
+        closeCurrentSource();
+        openNextSource(false);
       }
-      int bytesRead = currentDataSource.read(buffer, offset, readLength);
+      int bytesRead =
+          byteBuffer != null
+              ? readFromCurrentSource(byteBuffer, readLength)
+              : readFromCurrentSource(Assertions.checkNotNull(buffer), offset, readLength);
       if (bytesRead != C.RESULT_END_OF_INPUT) {
         if (isReadingFromCache()) {
           totalCachedBytesRead += bytesRead;
@@ -317,7 +408,7 @@ public final class CacheDataSource implements DataSource {
       } else if (bytesRemaining > 0 || bytesRemaining == C.LENGTH_UNSET) {
         closeCurrentSource();
         openNextSource(false);
-        return read(buffer, offset, readLength);
+        return read(buffer, offset, byteBuffer, readLength);
       }
       return bytesRead;
     } catch (IOException e) {
@@ -352,13 +443,53 @@ public final class CacheDataSource implements DataSource {
     httpBody = null;
     notifyBytesRead();
     try {
-      closeCurrentSource();
+      try {
+        if (isCoalescing() && bytesRemaining == 0) {
+          readAhead();
+        }
+      } finally {
+        closeCurrentSource();
+      }
     } catch (IOException e) {
       handleBeforeThrow(e);
       throw e;
     }
   }
 
+  private int readFromCurrentSource(byte[] buffer, int offset, int readLength)
+      throws IOException {
+    if (isCoalescing()) {
+      // The coalesced upstream request may extend beyond the end of the current request.
+      readLength = (int) Math.min(readLength, bytesRemaining);
+      return readCoalesced(readPosition, buffer, offset, readLength);
+    }
+    return currentDataSource.read(buffer, offset, readLength);
+  }
+
+  private int readFromCurrentSource(ByteBuffer byteBuffer, int readLength) throws IOException {
+    if (supportsByteBufferReads()) {
+      return currentDataSource.read(byteBuffer, readLength);
+    }
+    // The current source was opened by this read, and doesn't support reading into the buffer.
+    if (byteBuffer.hasArray()) {
+      int position = byteBuffer.position();
+      int offset = byteBuffer.arrayOffset() + position;
+      int bytesRead = readFromCurrentSource(byteBuffer.array(), offset, readLength);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        byteBuffer.position(position + bytesRead);
+      }
+      return bytesRead;
+    }
+    if (byteBufferReadScratch == null || byteBufferReadScratch.length < readLength) {
+      byteBufferReadScratch = new byte[readLength];
+    }
+    int bytesRead = readFromCurrentSource(byteBufferReadScratch, /* offset= */ 0, readLength);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      byteBuffer.put(byteBufferReadScratch, 0, bytesRead);
+    }
+    return bytesRead;
+  }
+
   /**
    * Opens the next source. If the cache contains data spanning the current read position then
    * {@link #cacheReadDataSource} is opened to read from it. Else {@link #upstreamDataSource} is
@@ -390,6 +521,7 @@ public final class CacheDataSource implements DataSource {
 
     DataSpec nextDataSpec;
     DataSource nextDataSource;
+    boolean coalesce = false;
     if (nextSpan == null) {
       // The data is locked in the cache, or we're ignoring the cache. Bypass the cache and read
       // from upstream.
@@ -420,7 +552,14 @@ public final class CacheDataSource implements DataSource {
       }
       nextDataSpec =
           new DataSpec(uri, httpMethod, httpBody, readPosition, readPosition, length, key, flags);
-      if (cacheWriteDataSource != null) {
+      if (cacheWriteDataSource != null
+          && coalesceUpstreamRequests
+          && bytesRemaining != C.LENGTH_UNSET) {
+        // Read from upstream, writing the holes into the cache in readCoalesced. The data spec is
+        // replaced once the coalesced request has been planned.
+        nextDataSource = upstreamDataSource;
+        coalesce = true;
+      } else if (cacheWriteDataSource != null) {
         nextDataSource = cacheWriteDataSource;
       } else {
         nextDataSource = upstreamDataSource;
@@ -430,12 +569,12 @@ public final class CacheDataSource implements DataSource {
     }
 
     checkCachePosition =
-        !currentRequestIgnoresCache && nextDataSource == upstreamDataSource
+        !currentRequestIgnoresCache && nextDataSource == upstreamDataSource && !coalesce
             ? readPosition + MIN_READ_BEFORE_CHECKING_CACHE
             : Long.MAX_VALUE;
     if (checkCache) {
       Assertions.checkState(isBypassingCache());
-      if (nextDataSource == upstreamDataSource) {
+      if (nextDataSource == upstreamDataSource && !coalesce) {
         // Continue reading from upstream.
         return;
       }
@@ -454,6 +593,9 @@ public final class CacheDataSource implements DataSource {
     if (nextSpan != null && nextSpan.isHoleSpan()) {
       currentHoleSpan = nextSpan;
     }
+    if (coalesce) {
+      nextDataSpec = planCoalescedRequest(nextSpan);
+    }
     currentDataSource = nextDataSource;
     currentDataSpecLengthUnset = nextDataSpec.length == C.LENGTH_UNSET;
     long resolvedLength = nextDataSource.open(nextDataSpec);
@@ -461,8 +603,11 @@ public final class CacheDataSource implements DataSource {
     // Update bytesRemaining, actualUri and (if writing to cache) the cache metadata.
     ContentMetadataMutations mutations = new ContentMetadataMutations();
     if (currentDataSpecLengthUnset && resolvedLength != C.LENGTH_UNSET) {
-      bytesRemaining = resolvedLength;
-      ContentMetadataMutations.setContentLength(mutations, readPosition + bytesRemaining);
+      if (!isCoalescing()) {
+        // The length of a coalesced request may differ from the length of the current request.
+        bytesRemaining = resolvedLength;
+      }
+      ContentMetadataMutations.setContentLength(mutations, readPosition + resolvedLength);
     }
     if (isReadingFromUpstream()) {
       actualUri = currentDataSource.getUri();
@@ -474,6 +619,158 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  /**
+   * Plans a coalesced upstream request, which starts with the hole at {@link #readPosition} and
+   * covers any further holes up to {@link #READ_AHEAD_LENGTH} bytes beyond the end of the current
+   * request, unless they're separated by more than {@link #MAX_COALESCED_CACHED_LENGTH} bytes of
+   * cached data.
+   *
+   * @param holeSpan The hole span at {@link #readPosition}.
+   * @return The {@link DataSpec} of the coalesced upstream request.
+   */
+  private DataSpec planCoalescedRequest(CacheSpan holeSpan) {
+    long requestEndPosition = readPosition + bytesRemaining;
+    long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(key));
+    long endPosition = requestEndPosition + READ_AHEAD_LENGTH;
+    if (contentLength != C.LENGTH_UNSET) {
+      endPosition = Math.max(requestEndPosition, Math.min(endPosition, contentLength));
+    }
+
+    coalescedHoleCount = 0;
+    coalescedHoleIndex = 0;
+    long firstHoleEnd =
+        holeSpan.isOpenEnded()
+            ? endPosition
+            : Math.min(holeSpan.position + holeSpan.length, endPosition);
+    addCoalescedHole(readPosition, firstHoleEnd);
+    long nextHoleStart = firstHoleEnd;
+    for (CacheSpan span : cache.getCachedSpans(key)) {
+      if (nextHoleStart >= endPosition) {
+        break;
+      }
+      if (span.position + span.length <= nextHoleStart) {
+        continue;
+      }
+      if (span.position > nextHoleStart) {
+        if (nextHoleStart - getCoalescedUpstreamEnd() > MAX_COALESCED_CACHED_LENGTH) {
+          break;
+        }
+        addCoalescedHole(nextHoleStart, Math.min(span.position, endPosition));
+      }
+      nextHoleStart = span.position + span.length;
+    }
+    if (nextHoleStart < endPosition
+        && nextHoleStart - getCoalescedUpstreamEnd() <= MAX_COALESCED_CACHED_LENGTH) {
+      addCoalescedHole(nextHoleStart, endPosition);
+    }
+
+    long upstreamEndPosition = getCoalescedUpstreamEnd();
+    // If the content length is unknown, data beyond the end of the current request may not exist.
+    // Make an unbounded request in this case, so that reading ahead stops at the end of the data.
+    long length =
+        contentLength == C.LENGTH_UNSET && upstreamEndPosition > requestEndPosition
+            ? C.LENGTH_UNSET
+            : upstreamEndPosition - readPosition;
+    return new DataSpec(uri, httpMethod, httpBody, readPosition, readPosition, length, key, flags);
+  }
+
+  private void addCoalescedHole(long start, long end) {
+    if (coalescedHoleCount == coalescedHoleStarts.length) {
+      int newLength = Math.max(4, coalescedHoleCount * 2);
+      coalescedHoleStarts = Arrays.copyOf(coalescedHoleStarts, newLength);
+      coalescedHoleEnds = Arrays.copyOf(coalescedHoleEnds, newLength);
+    }
+    coalescedHoleStarts[coalescedHoleCount] = start;
+    coalescedHoleEnds[coalescedHoleCount] = end;
+    coalescedHoleCount++;
+  }
+
+  private long getCoalescedUpstreamEnd() {
+    return coalescedHoleEnds[coalescedHoleCount - 1];
+  }
+
+  /**
+   * Reads from the coalesced upstream request, writing data that's read for a hole into the cache.
+   * Reads never cross the boundary of a hole.
+   */
+  private int readCoalesced(long position, byte[] buffer, int offset, int readLength)
+      throws IOException {
+    DataSink cacheWriteDataSink = Assertions.checkNotNull(this.cacheWriteDataSink);
+    boolean isReadingHole = coalescedHoleStarts[coalescedHoleIndex] <= position;
+    long boundaryPosition =
+        isReadingHole
+            ? coalescedHoleEnds[coalescedHoleIndex]
+            : coalescedHoleStarts[coalescedHoleIndex];
+    if (isReadingHole && !coalescedHoleSinkOpen) {
+      cacheWriteDataSink.open(
+          new DataSpec(
+              uri,
+              httpMethod,
+              httpBody,
+              position,
+              position,
+              boundaryPosition - position,
+              key,
+              flags));
+      coalescedHoleSinkOpen = true;
+    }
+    readLength = (int) Math.min(readLength, boundaryPosition - position);
+    int bytesRead = upstreamDataSource.read(buffer, offset, readLength);
+    if (bytesRead != C.RESULT_END_OF_INPUT && isReadingHole) {
+      cacheWriteDataSink.write(buffer, offset, bytesRead);
+      if (position + bytesRead == boundaryPosition) {
+        closeCoalescedHoleSink();
+        coalescedHoleIndex++;
+      }
+    }
+    return bytesRead;
+  }
+
+  /**
+   * Reads the rest of the coalesced upstream request into the cache, once the current request has
+   * been fully read. At most {@link #READ_AHEAD_LENGTH} bytes are read. Stops early if an error
+   * occurs.
+   *
+   * @throws InterruptedIOException If the thread is interrupted.
+   */
+  private void readAhead() throws InterruptedIOException {
+    byte[] buffer = readAheadBuffer;
+    if (buffer == null) {
+      buffer = new byte[READ_AHEAD_BUFFER_SIZE];
+      readAheadBuffer = buffer;
+    }
+    long position = readPosition;
+    long upstreamEndPosition = getCoalescedUpstreamEnd();
+    try {
+      while (position < upstreamEndPosition) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException();
+        }
+        int bytesRead = readCoalesced(position, buffer, /* offset= */ 0, buffer.length);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          if (currentDataSpecLengthUnset) {
+            ContentMetadataMutations mutations = new ContentMetadataMutations();
+            ContentMetadataMutations.setContentLength(mutations, position);
+            cache.applyContentMetadataMutations(key, mutations);
+          }
+          break;
+        }
+        position += bytesRead;
+      }
+    } catch (InterruptedIOException e) {
+      throw e;
+    } catch (IOException e) {
+      // Ignore the failure. The data of the current request has already been read successfully.
+    }
+  }
+
+  private void closeCoalescedHoleSink() throws IOException {
+    if (coalescedHoleSinkOpen) {
+      coalescedHoleSinkOpen = false;
+      Assertions.checkNotNull(cacheWriteDataSink).close();
+    }
+  }
+
   private void setNoBytesRemainingAndMaybeStoreLength() throws IOException {
     bytesRemaining = 0;
     if (isWritingToCache()) {
@@ -493,7 +790,7 @@ public final class CacheDataSource implements DataSource {
   }
 
   private boolean isBypassingCache() {
-    return currentDataSource == upstreamDataSource;
+    return currentDataSource == upstreamDataSource && !isCoalescing();
   }
 
   private boolean isReadingFromCache() {
@@ -501,7 +798,11 @@ public final class CacheDataSource implements DataSource {
   }
 
   private boolean isWritingToCache() {
-    return currentDataSource == cacheWriteDataSource;
+    return currentDataSource == cacheWriteDataSource || isCoalescing();
+  }
+
+  private boolean isCoalescing() {
+    return coalescedHoleCount > 0;
   }
 
   private void closeCurrentSource() throws IOException {
@@ -513,9 +814,14 @@ public final class CacheDataSource implements DataSource {
     } finally {
       currentDataSource = null;
       currentDataSpecLengthUnset = false;
-      if (currentHoleSpan != null) {
-        cache.releaseHoleSpan(currentHoleSpan);
-        currentHoleSpan = null;
+      try {
+        closeCoalescedHoleSink();
+      } finally {
+        coalescedHoleCount = 0;
+        if (currentHoleSpan != null) {
+          cache.releaseHoleSpan(currentHoleSpan);
+          currentHoleSpan = null;
+        }
       }
     }
   }
@@ -27,6 +27,10 @@ import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -100,6 +104,76 @@ public final class CacheUtil {
     return Pair.create(requestLength, bytesAlreadyCached);
   }
 
+  /**
+   * Queries the cache to obtain the request lengths and the numbers of bytes already cached for a
+   * list of {@link DataSpec}s.
+   *
+   * <p>The result is equivalent to calling {@link #getCached(DataSpec, Cache, CacheKeyFactory)} for
+   * each {@link DataSpec}, but the cache is queried once for each distinct cache key rather than
+   * once for each cached block of each {@link DataSpec}.
+   *
+   * @param dataSpecs Define the data to be checked.
+   * @param cache A {@link Cache} which has the data.
+   * @param cacheKeyFactory An optional factory for cache keys.
+   * @param requestLengths An array into which the request length of each {@link DataSpec} is
+   *     written, or {@link C#LENGTH_UNSET} if unknown. Must be at least as long as {@code
+   *     dataSpecs}.
+   * @param bytesAlreadyCached An array into which the number of bytes already cached for each
+   *     {@link DataSpec} is written. Must be at least as long as {@code dataSpecs}.
+   */
+  public static void getCached(
+      List<DataSpec> dataSpecs,
+      Cache cache,
+      @Nullable CacheKeyFactory cacheKeyFactory,
+      long[] requestLengths,
+      long[] bytesAlreadyCached) {
+    int dataSpecCount = dataSpecs.size();
+    Assertions.checkArgument(
+        requestLengths.length >= dataSpecCount && bytesAlreadyCached.length >= dataSpecCount);
+    // Group the data specs by cache key.
+    HashMap<String, List<Integer>> keyToIndices = new HashMap<>();
+    for (int i = 0; i < dataSpecCount; i++) {
+      String key = buildCacheKey(dataSpecs.get(i), cacheKeyFactory);
+      List<Integer> indices = keyToIndices.get(key);
+      if (indices == null) {
+        indices = new ArrayList<>();
+        keyToIndices.put(key, indices);
+      }
+      indices.add(i);
+    }
+    for (Map.Entry<String, List<Integer>> entry : keyToIndices.entrySet()) {
+      String key = entry.getKey();
+      List<Integer> indices = entry.getValue();
+      int rangeCount = indices.size();
+      long[] positions = new long[rangeCount];
+      long[] lengths = new long[rangeCount];
+      long contentLength = C.LENGTH_UNSET;
+      boolean contentLengthQueried = false;
+      for (int i = 0; i < rangeCount; i++) {
+        DataSpec dataSpec = dataSpecs.get(indices.get(i));
+        positions[i] = dataSpec.absoluteStreamPosition;
+        if (dataSpec.length != C.LENGTH_UNSET) {
+          lengths[i] = dataSpec.length;
+        } else {
+          if (!contentLengthQueried) {
+            contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(key));
+            contentLengthQueried = true;
+          }
+          lengths[i] =
+              contentLength == C.LENGTH_UNSET
+                  ? C.LENGTH_UNSET
+                  : contentLength - dataSpec.absoluteStreamPosition;
+        }
+      }
+      long[] cachedBytes = cache.getCachedBytes(key, positions, lengths);
+      for (int i = 0; i < rangeCount; i++) {
+        int index = indices.get(i);
+        requestLengths[index] = lengths[i];
+        bytesAlreadyCached[index] = cachedBytes[i];
+      }
+    }
+  }
+
   /**
    * Caches the data defined by {@code dataSpec}, skipping already cached data. Caching stops early
    * if the end of the input is reached.
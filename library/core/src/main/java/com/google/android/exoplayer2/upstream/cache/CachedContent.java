@@ -16,8 +16,10 @@
 package com.google.android.exoplayer2.upstream.cache;
 
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.util.TreeSet;
 
@@ -140,6 +142,54 @@ import java.util.TreeSet;
     return Math.min(currentEndPosition - position, length);
   }
 
+  /**
+   * Returns the number of bytes that are cached within each of a number of ranges.
+   *
+   * <p>The cached spans are traversed once to build cumulative span lengths, after which each range
+   * is resolved using binary searches. The cost is therefore proportional to the number of spans
+   * plus the number of ranges multiplied by the log of the number of spans.
+   *
+   * @param positions The starting positions of the ranges.
+   * @param lengths The lengths of the ranges, or {@link C#LENGTH_UNSET} for ranges that extend to
+   *     the end of the data.
+   * @return The number of bytes that are cached within each range.
+   */
+  public long[] getCachedBytes(long[] positions, long[] lengths) {
+    int spanCount = cachedSpans.size();
+    long[] spanStartPositions = new long[spanCount];
+    long[] spanEndPositions = new long[spanCount];
+    // cumulativeLengths[i] is the total length of the spans before span i.
+    long[] cumulativeLengths = new long[spanCount];
+    int spanIndex = 0;
+    long cumulativeLength = 0;
+    long previousEndPosition = 0;
+    for (SimpleCacheSpan span : cachedSpans) {
+      // Spans shouldn't overlap, but guard against it by trimming overlapping parts.
+      long startPosition = Math.max(span.position, previousEndPosition);
+      long endPosition = Math.max(span.position + span.length, startPosition);
+      spanStartPositions[spanIndex] = startPosition;
+      spanEndPositions[spanIndex] = endPosition;
+      cumulativeLengths[spanIndex] = cumulativeLength;
+      cumulativeLength += endPosition - startPosition;
+      previousEndPosition = endPosition;
+      spanIndex++;
+    }
+    long[] cachedBytes = new long[positions.length];
+    for (int i = 0; i < positions.length; i++) {
+      long position = positions[i];
+      long length = lengths[i];
+      long endPosition =
+          length == C.LENGTH_UNSET || length > Long.MAX_VALUE - position
+              ? Long.MAX_VALUE
+              : position + length;
+      cachedBytes[i] =
+          getCachedBytesBefore(endPosition, spanStartPositions, spanEndPositions, cumulativeLengths)
+              - getCachedBytesBefore(
+                  position, spanStartPositions, spanEndPositions, cumulativeLengths);
+    }
+    return cachedBytes;
+  }
+
   /**
    * Sets the given span's last touch timestamp. The passed span becomes invalid after this call.
    *
@@ -183,6 +233,20 @@ import java.util.TreeSet;
     return false;
   }
 
+  /** Returns the number of cached bytes before {@code position}. */
+  private static long getCachedBytesBefore(
+      long position, long[] spanStartPositions, long[] spanEndPositions, long[] cumulativeLengths) {
+    int spanIndex =
+        Util.binarySearchFloor(
+            spanStartPositions, position, /* inclusive= */ false, /* stayInBounds= */ false);
+    if (spanIndex < 0) {
+      return 0;
+    }
+    return cumulativeLengths[spanIndex]
+        + Math.min(spanEndPositions[spanIndex], position)
+        - spanStartPositions[spanIndex];
+  }
+
   @Override
   public int hashCode() {
     int result = id;
@@ -25,31 +25,46 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.database.DatabaseIOException;
 import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.database.VersionTable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.ReusableBufferedOutputStream;
 import com.google.android.exoplayer2.util.Util;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -61,11 +76,19 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 /** Maintains the index of cached content. */
 /* package */ class CachedContentIndex {
 
+  private static final String TAG = "CachedContentIndex";
+
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  // Shares the prefix of FILE_NAME_ATOMIC, so that isIndexFile also matches the journal files.
+  /* package */ static final String FILE_NAME_JOURNAL = FILE_NAME_ATOMIC + ".journal";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  /**
+   * Maps keys to their {@link CachedContent}. Concurrent, so that {@link #get(String)} can be
+   * called whilst another thread modifies the index.
+   */
+  private final Map<String, CachedContent> keyToContent;
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
    * have been removed from the index since it was last stored. This prevents reuse of these ids,
@@ -93,11 +116,12 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private final SparseBooleanArray newIds;
 
   private Storage storage;
-  @Nullable private Storage previousStorage;
+  /** Storages from which the index is copied if {@link #storage} doesn't exist yet. */
+  private final ArrayList<Storage> previousStorages;
 
   /** Returns whether the file is an index file. */
   public static boolean isIndexFile(String fileName) {
-    // Atomic file backups add additional suffixes to the file name.
+    // Atomic file backups and journal files add additional suffixes to the file name.
     return fileName.startsWith(FILE_NAME_ATOMIC);
   }
 
@@ -148,8 +172,44 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       @Nullable byte[] legacyStorageSecretKey,
       boolean legacyStorageEncrypt,
       boolean preferLegacyStorage) {
+    this(
+        databaseProvider,
+        legacyStorageDir,
+        legacyStorageSecretKey,
+        legacyStorageEncrypt,
+        preferLegacyStorage,
+        /* useJournalStorage= */ false);
+  }
+
+  /**
+   * Creates an instance supporting database, legacy and journal storage.
+   *
+   * @param databaseProvider Provides the database in which the index is stored, or {@code null} to
+   *     use only file based storage.
+   * @param legacyStorageDir The directory in which any legacy or journal storage is stored, or
+   *     {@code null} to use only database storage.
+   * @param legacyStorageSecretKey A 16 byte AES key for reading, and optionally writing, legacy and
+   *     journal storage.
+   * @param legacyStorageEncrypt Whether to encrypt when writing to legacy or journal storage. Must
+   *     be false if {@code legacyStorageSecretKey} is null.
+   * @param preferLegacyStorage Whether to use prefer legacy storage if both storage types are
+   *     enabled. This option is only useful for downgrading from database storage back to legacy
+   *     storage.
+   * @param useJournalStorage Whether to use journal storage, which appends changes to a journal
+   *     file in {@code legacyStorageDir} rather than rewriting the whole index. If true, {@code
+   *     legacyStorageDir} must be non-null. Existing database or legacy storage is migrated to the
+   *     journal, and an existing journal is migrated back if this is false.
+   */
+  public CachedContentIndex(
+      @Nullable DatabaseProvider databaseProvider,
+      @Nullable File legacyStorageDir,
+      @Nullable byte[] legacyStorageSecretKey,
+      boolean legacyStorageEncrypt,
+      boolean preferLegacyStorage,
+      boolean useJournalStorage) {
     Assertions.checkState(databaseProvider != null || legacyStorageDir != null);
-    keyToContent = new HashMap<>();
+    Assertions.checkState(!useJournalStorage || legacyStorageDir != null);
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
@@ -162,12 +222,35 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
                 legacyStorageSecretKey,
                 legacyStorageEncrypt)
             : null;
-    if (databaseStorage == null || (legacyStorage != null && preferLegacyStorage)) {
-      storage = legacyStorage;
-      previousStorage = databaseStorage;
+    @Nullable File journalFile =
+        legacyStorageDir != null ? new File(legacyStorageDir, FILE_NAME_JOURNAL) : null;
+    // If journal storage isn't used, it's only needed to migrate an existing journal.
+    Storage journalStorage =
+        journalFile != null && (useJournalStorage || journalFile.exists())
+            ? new JournalStorage(journalFile, legacyStorageSecretKey, legacyStorageEncrypt)
+            : null;
+    previousStorages = new ArrayList<>();
+    if (useJournalStorage) {
+      storage = journalStorage;
+      if (databaseStorage != null && !preferLegacyStorage) {
+        previousStorages.add(databaseStorage);
+      }
+      previousStorages.add(legacyStorage);
     } else {
-      storage = databaseStorage;
-      previousStorage = legacyStorage;
+      if (databaseStorage == null || (legacyStorage != null && preferLegacyStorage)) {
+        storage = legacyStorage;
+        if (databaseStorage != null) {
+          previousStorages.add(databaseStorage);
+        }
+      } else {
+        storage = databaseStorage;
+        if (legacyStorage != null) {
+          previousStorages.add(legacyStorage);
+        }
+      }
+      if (journalStorage != null) {
+        previousStorages.add(journalStorage);
+      }
     }
   }
 
@@ -179,21 +262,29 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    */
   public void initialize(long uid) throws IOException {
     storage.initialize(uid);
-    if (previousStorage != null) {
-      previousStorage.initialize(uid);
+    for (int i = 0; i < previousStorages.size(); i++) {
+      previousStorages.get(i).initialize(uid);
     }
-    if (!storage.exists() && previousStorage != null && previousStorage.exists()) {
+    @Nullable Storage existingPreviousStorage = null;
+    if (!storage.exists()) {
+      for (int i = 0; i < previousStorages.size() && existingPreviousStorage == null; i++) {
+        if (previousStorages.get(i).exists()) {
+          existingPreviousStorage = previousStorages.get(i);
+        }
+      }
+    }
+    if (existingPreviousStorage != null) {
       // Copy from previous storage into current storage.
-      previousStorage.load(keyToContent, idToKey);
+      existingPreviousStorage.load(keyToContent, idToKey);
       storage.storeFully(keyToContent);
     } else {
       // Load from the current storage.
       storage.load(keyToContent, idToKey);
     }
-    if (previousStorage != null) {
-      previousStorage.delete();
-      previousStorage = null;
+    for (int i = 0; i < previousStorages.size(); i++) {
+      previousStorages.get(i).delete();
     }
+    previousStorages.clear();
   }
 
   /**
@@ -433,7 +524,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -443,17 +534,17 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -526,7 +617,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       Assertions.checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
@@ -536,13 +627,13 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (!changed) {
         return;
       }
@@ -560,7 +651,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       if (!atomicFile.exists()) {
         return true;
       }
@@ -615,7 +706,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -712,6 +803,510 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
   }
 
+  /**
+   * {@link Storage} implementation that appends changes to a journal file, so that the cost of
+   * storing the index is proportional to the number of changes since it was last stored rather than
+   * to the size of the index. Once the journal holds many more records than there are keys, it's
+   * compacted by writing the current index to a new journal file on a background thread.
+   *
+   * <p>The journal consists of a header (version and flags) followed by records. Each record is
+   * prefixed by its payload length and a CRC32 checksum of the payload, so that a partially written
+   * record at the end of the journal can be detected and dropped when loading. If the journal is
+   * encrypted, each payload is encrypted separately with its own initialization vector.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final int VERSION = 1;
+    private static final int FLAG_ENCRYPTED_INDEX = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private static final int RECORD_TYPE_UPDATE = 0;
+    private static final int RECORD_TYPE_REMOVE = 1;
+
+    /** The minimum number of records in the journal for it to be considered for compaction. */
+    private static final int MIN_RECORD_COUNT_FOR_COMPACTION = 1024;
+    /** How long the compaction thread is kept alive whilst there's no compaction to run. */
+    private static final long COMPACTION_THREAD_KEEP_ALIVE_MS = 10_000;
+
+    /**
+     * Runs compactions for all instances. Compactions are rare, so a single thread is shared, and
+     * it's stopped whilst idle.
+     */
+    private static final ThreadPoolExecutor compactionExecutor = createCompactionExecutor();
+
+    private final File journalFile;
+    private final File compactedJournalFile;
+    private final boolean encrypt;
+    @Nullable private final SecretKeySpec secretKeySpec;
+    @Nullable private final Cipher cipher;
+    private final Random random;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
+
+    @Nullable private FileOutputStream journalOutputStream;
+    private int recordCount;
+    private boolean fullRewriteRequired;
+    @Nullable private FutureTask<Integer> compactionTask;
+    @Nullable private ByteArrayOutputStream recordsSinceCompactionSnapshot;
+    private int recordCountSinceCompactionSnapshot;
+
+    public JournalStorage(File journalFile, @Nullable byte[] secretKey, boolean encrypt) {
+      Cipher cipher = null;
+      SecretKeySpec secretKeySpec = null;
+      if (secretKey != null) {
+        Assertions.checkArgument(secretKey.length == 16);
+        try {
+          cipher = getCipher();
+          secretKeySpec = new SecretKeySpec(secretKey, "AES");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+          throw new IllegalStateException(e); // Should never happen.
+        }
+      } else {
+        Assertions.checkArgument(!encrypt);
+      }
+      this.journalFile = journalFile;
+      this.encrypt = encrypt;
+      this.cipher = cipher;
+      this.secretKeySpec = secretKeySpec;
+      compactedJournalFile = new File(journalFile.getPath() + ".new");
+      random = new Random();
+      pendingUpdates = new SparseArray<>();
+      // Records can only be appended once the journal's header has been checked by load.
+      fullRewriteRequired = true;
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses a separate file for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return journalFile.exists();
+    }
+
+    @Override
+    public void delete() {
+      cancelCompaction();
+      closeJournalOutputStream();
+      journalFile.delete();
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      Assertions.checkState(pendingUpdates.size() == 0);
+      // Delete any compacted journal left over from a compaction that didn't finish.
+      compactedJournalFile.delete();
+      if (!journalFile.exists()) {
+        return;
+      }
+      long validLength = readJournal(content, idToKey);
+      if (validLength == C.LENGTH_UNSET) {
+        // The journal is unreadable, and will remain so.
+        content.clear();
+        idToKey.clear();
+        journalFile.delete();
+      } else if (validLength < journalFile.length()) {
+        // The journal ends with a record that wasn't fully written, for example because the process
+        // was killed whilst appending it. Drop it, so that records can be appended after the last
+        // complete one.
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+          file.setLength(validLength);
+        }
+      }
+    }
+
+    @Override
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
+      cancelCompaction();
+      closeJournalOutputStream();
+      int size = content.size();
+      int[] ids = new int[size];
+      String[] keys = new String[size];
+      DefaultContentMetadata[] metadatas = new DefaultContentMetadata[size];
+      snapshot(content, ids, keys, metadatas);
+      writeJournal(compactedJournalFile, ids, keys, metadatas, cipher);
+      replaceJournal();
+      recordCount = size;
+      fullRewriteRequired = false;
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
+      if (fullRewriteRequired || !journalFile.exists()) {
+        storeFully(content);
+        return;
+      }
+      int pendingUpdateCount = pendingUpdates.size();
+      if (pendingUpdateCount > 0) {
+        ByteArrayOutputStream recordsOutputStream = new ByteArrayOutputStream();
+        DataOutputStream recordsOutput = new DataOutputStream(recordsOutputStream);
+        for (int i = 0; i < pendingUpdateCount; i++) {
+          CachedContent cachedContent = pendingUpdates.valueAt(i);
+          if (cachedContent == null) {
+            writeRecord(
+                recordsOutput, RECORD_TYPE_REMOVE, pendingUpdates.keyAt(i), null, null, cipher);
+          } else {
+            writeRecord(
+                recordsOutput,
+                RECORD_TYPE_UPDATE,
+                cachedContent.id,
+                cachedContent.key,
+                cachedContent.getMetadata(),
+                cipher);
+          }
+        }
+        byte[] records = recordsOutputStream.toByteArray();
+        appendToJournal(records);
+        recordCount += pendingUpdateCount;
+        if (recordsSinceCompactionSnapshot != null) {
+          recordsSinceCompactionSnapshot.write(records);
+          recordCountSinceCompactionSnapshot += pendingUpdateCount;
+        }
+        pendingUpdates.clear();
+      }
+      if (compactionTask != null) {
+        if (compactionTask.isDone()) {
+          finishCompaction();
+        }
+      } else if (recordCount >= MIN_RECORD_COUNT_FOR_COMPACTION
+          && recordCount > 2 * content.size()) {
+        startCompaction(content);
+      }
+    }
+
+    @Override
+    public void onUpdate(CachedContent cachedContent) {
+      pendingUpdates.put(cachedContent.id, cachedContent);
+    }
+
+    @Override
+    public void onRemove(CachedContent cachedContent, boolean neverStored) {
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
+    }
+
+    /**
+     * Reads the journal into {@code content} and {@code idToKey}.
+     *
+     * @return The length of the journal up to the end of the last complete record, or {@link
+     *     C#LENGTH_UNSET} if the journal is unreadable.
+     */
+    private long readJournal(
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      long journalLength = journalFile.length();
+      try (DataInputStream input =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+        if (journalLength < HEADER_LENGTH) {
+          return C.LENGTH_UNSET;
+        }
+        int version = input.readInt();
+        int flags = input.readInt();
+        boolean encrypted = (flags & FLAG_ENCRYPTED_INDEX) != 0;
+        if (version != VERSION || (encrypted && cipher == null)) {
+          return C.LENGTH_UNSET;
+        }
+        // Rewrite the journal if it doesn't match the requested encryption.
+        fullRewriteRequired = encrypted != encrypt;
+
+        CRC32 crc32 = new CRC32();
+        long validLength = HEADER_LENGTH;
+        recordCount = 0;
+        while (journalLength - validLength >= RECORD_HEADER_LENGTH) {
+          int payloadLength = input.readInt();
+          int checksum = input.readInt();
+          if (payloadLength < 0
+              || payloadLength > journalLength - validLength - RECORD_HEADER_LENGTH) {
+            break;
+          }
+          byte[] payload = new byte[payloadLength];
+          input.readFully(payload);
+          crc32.reset();
+          crc32.update(payload, 0, payloadLength);
+          if ((int) crc32.getValue() != checksum) {
+            break;
+          }
+          try {
+            byte[] decryptedPayload = encrypted ? decrypt(payload) : payload;
+            readRecord(
+                new DataInputStream(new ByteArrayInputStream(decryptedPayload)),
+                content,
+                idToKey);
+          } catch (IOException | GeneralSecurityException e) {
+            Log.w(TAG, "Ignoring malformed journal records from offset " + validLength, e);
+            break;
+          }
+          validLength += RECORD_HEADER_LENGTH + payloadLength;
+          recordCount++;
+        }
+        return validLength;
+      }
+    }
+
+    private byte[] decrypt(byte[] payload) throws GeneralSecurityException {
+      Cipher cipher = Assertions.checkNotNull(this.cipher);
+      if (payload.length < 16) {
+        throw new GeneralSecurityException("Missing initialization vector");
+      }
+      cipher.init(
+          Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(payload, 0, /* len= */ 16));
+      return cipher.doFinal(payload, /* inputOffset= */ 16, payload.length - 16);
+    }
+
+    private void appendToJournal(byte[] records) throws IOException {
+      try {
+        if (journalOutputStream == null) {
+          journalOutputStream = new FileOutputStream(journalFile, /* append= */ true);
+        }
+        journalOutputStream.write(records);
+        journalOutputStream.flush();
+        journalOutputStream.getFD().sync();
+      } catch (IOException e) {
+        // A partially appended record would hide any records appended after it, so rewrite the
+        // whole journal next time.
+        closeJournalOutputStream();
+        fullRewriteRequired = true;
+        throw e;
+      }
+    }
+
+    private void startCompaction(Map<String, CachedContent> content) {
+      // Take a snapshot of the index on the calling thread. Only references are copied, since ids,
+      // keys and metadata are all immutable.
+      int size = content.size();
+      int[] ids = new int[size];
+      String[] keys = new String[size];
+      DefaultContentMetadata[] metadatas = new DefaultContentMetadata[size];
+      snapshot(content, ids, keys, metadatas);
+      Cipher compactionCipher;
+      try {
+        compactionCipher = cipher != null ? getCipher() : null;
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        throw new IllegalStateException(e); // Should never happen.
+      }
+      recordsSinceCompactionSnapshot = new ByteArrayOutputStream();
+      recordCountSinceCompactionSnapshot = 0;
+      FutureTask<Integer> compactionTask =
+          new FutureTask<>(
+              () -> {
+                writeJournal(compactedJournalFile, ids, keys, metadatas, compactionCipher);
+                return size;
+              });
+      this.compactionTask = compactionTask;
+      compactionExecutor.execute(compactionTask);
+    }
+
+    /**
+     * Replaces the journal with the compacted journal, after appending the records that were
+     * appended to the journal since the compaction snapshot was taken. Must only be called once the
+     * compaction task is done.
+     */
+    private void finishCompaction() throws IOException {
+      FutureTask<Integer> compactionTask = Assertions.checkNotNull(this.compactionTask);
+      ByteArrayOutputStream recordsSinceCompactionSnapshot =
+          Assertions.checkNotNull(this.recordsSinceCompactionSnapshot);
+      this.compactionTask = null;
+      this.recordsSinceCompactionSnapshot = null;
+      int compactedRecordCount;
+      try {
+        compactedRecordCount = compactionTask.get();
+      } catch (ExecutionException | InterruptedException e) {
+        Log.w(TAG, "Journal compaction failed", e);
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        compactedJournalFile.delete();
+        return;
+      }
+      try (FileOutputStream outputStream =
+          new FileOutputStream(compactedJournalFile, /* append= */ true)) {
+        recordsSinceCompactionSnapshot.writeTo(outputStream);
+        outputStream.flush();
+        outputStream.getFD().sync();
+      }
+      replaceJournal();
+      recordCount = compactedRecordCount + recordCountSinceCompactionSnapshot;
+    }
+
+    private static ThreadPoolExecutor createCompactionExecutor() {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ 1,
+              /* maximumPoolSize= */ 1,
+              COMPACTION_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, "CachedContentIndex:Compaction"));
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+
+    /** Waits for any ongoing compaction to finish, and discards its result. */
+    private void cancelCompaction() {
+      if (compactionTask == null) {
+        return;
+      }
+      boolean wasInterrupted = false;
+      while (true) {
+        try {
+          compactionTask.get();
+          break;
+        } catch (ExecutionException e) {
+          break;
+        } catch (InterruptedException e) {
+          wasInterrupted = true;
+        }
+      }
+      if (wasInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+      compactionTask = null;
+      recordsSinceCompactionSnapshot = null;
+      compactedJournalFile.delete();
+    }
+
+    private void replaceJournal() throws IOException {
+      closeJournalOutputStream();
+      if (!compactedJournalFile.renameTo(journalFile)) {
+        throw new IOException("Failed to rename " + compactedJournalFile + " to " + journalFile);
+      }
+    }
+
+    private void closeJournalOutputStream() {
+      if (journalOutputStream != null) {
+        Util.closeQuietly(journalOutputStream);
+        journalOutputStream = null;
+      }
+    }
+
+    private static void snapshot(
+        Map<String, CachedContent> content,
+        int[] ids,
+        String[] keys,
+        DefaultContentMetadata[] metadatas) {
+      int i = 0;
+      for (CachedContent cachedContent : content.values()) {
+        ids[i] = cachedContent.id;
+        keys[i] = cachedContent.key;
+        metadatas[i] = cachedContent.getMetadata();
+        i++;
+      }
+    }
+
+    /** Writes a journal containing an update record for each of the given entries to a file. */
+    private void writeJournal(
+        File file,
+        int[] ids,
+        String[] keys,
+        DefaultContentMetadata[] metadatas,
+        @Nullable Cipher cipher)
+        throws IOException {
+      try (FileOutputStream outputStream = new FileOutputStream(file)) {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(VERSION);
+        output.writeInt(encrypt ? FLAG_ENCRYPTED_INDEX : 0);
+        for (int i = 0; i < ids.length; i++) {
+          writeRecord(output, RECORD_TYPE_UPDATE, ids[i], keys[i], metadatas[i], cipher);
+        }
+        output.flush();
+        outputStream.getFD().sync();
+      }
+    }
+
+    /**
+     * Writes a record to a {@link DataOutputStream}.
+     *
+     * @param output The output to which the record is written.
+     * @param type The type of the record.
+     * @param id The id of the {@link CachedContent}.
+     * @param key The key of the {@link CachedContent}, for update records.
+     * @param metadata The metadata of the {@link CachedContent}, for update records.
+     * @param cipher The cipher used to encrypt the payload, if the journal is encrypted.
+     * @throws IOException If an error occurs writing to the output.
+     */
+    private void writeRecord(
+        DataOutputStream output,
+        int type,
+        int id,
+        @Nullable String key,
+        @Nullable DefaultContentMetadata metadata,
+        @Nullable Cipher cipher)
+        throws IOException {
+      ByteArrayOutputStream payloadOutputStream = new ByteArrayOutputStream();
+      DataOutputStream payloadOutput = new DataOutputStream(payloadOutputStream);
+      payloadOutput.writeByte(type);
+      payloadOutput.writeInt(id);
+      if (type == RECORD_TYPE_UPDATE) {
+        payloadOutput.writeUTF(Assertions.checkNotNull(key));
+        writeContentMetadata(Assertions.checkNotNull(metadata), payloadOutput);
+      }
+      payloadOutput.flush();
+      byte[] payload = payloadOutputStream.toByteArray();
+      if (encrypt) {
+        byte[] initializationVector = new byte[16];
+        random.nextBytes(initializationVector);
+        byte[] encryptedPayload;
+        try {
+          Cipher encryptCipher = Assertions.checkNotNull(cipher);
+          encryptCipher.init(
+              Cipher.ENCRYPT_MODE, secretKeySpec, new IvParameterSpec(initializationVector));
+          encryptedPayload = encryptCipher.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+          throw new IllegalStateException(e); // Should never happen.
+        }
+        payload = new byte[initializationVector.length + encryptedPayload.length];
+        System.arraycopy(initializationVector, 0, payload, 0, initializationVector.length);
+        System.arraycopy(
+            encryptedPayload, 0, payload, initializationVector.length, encryptedPayload.length);
+      }
+      CRC32 crc32 = new CRC32();
+      crc32.update(payload, 0, payload.length);
+      output.writeInt(payload.length);
+      output.writeInt((int) crc32.getValue());
+      output.write(payload);
+    }
+
+    /** Reads a record from a {@link DataInputStream} and applies it to the index. */
+    private static void readRecord(
+        DataInputStream input,
+        Map<String, CachedContent> content,
+        SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      int type = input.readByte();
+      int id = input.readInt();
+      if (type == RECORD_TYPE_UPDATE) {
+        String key = input.readUTF();
+        DefaultContentMetadata metadata = readContentMetadata(input);
+        // Drop stale mappings, in case the id or key was previously used for another entry.
+        String previousKey = idToKey.get(id);
+        if (previousKey != null && !previousKey.equals(key)) {
+          content.remove(previousKey);
+        }
+        CachedContent previousContent = content.get(key);
+        if (previousContent != null && previousContent.id != id) {
+          idToKey.remove(previousContent.id);
+        }
+        content.put(key, new CachedContent(id, key, metadata));
+        idToKey.put(id, key);
+      } else if (type == RECORD_TYPE_REMOVE) {
+        String key = idToKey.get(id);
+        if (key != null) {
+          content.remove(key);
+          idToKey.remove(id);
+        }
+      } else {
+        throw new IOException("Unexpected record type: " + type);
+      }
+    }
+  }
+
   /** {@link Storage} implementation that uses an SQL database. */
   private static final class DatabaseStorage implements Storage {
 
@@ -776,7 +1371,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       Assertions.checkState(pendingUpdates.size() == 0);
       try {
@@ -819,7 +1414,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransaction();
@@ -839,7 +1434,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
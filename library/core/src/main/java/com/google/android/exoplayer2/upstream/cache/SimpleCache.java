@@ -42,6 +42,21 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  *
  * <p>Only one instance of SimpleCache is allowed for a given directory at a given time.
  *
+ * <p>By default all operations synchronize on the cache instance. In striped locking mode, the
+ * state of each {@link CachedContent} is guarded by one of a fixed number of key locks, and
+ * operations that only read or lock a single key ({@link #getCachedSpans}, {@link #isCached},
+ * {@link #getCachedLength}, {@link #getContentMetadata} and, if the evictor doesn't require spans
+ * to be touched, {@link #startReadWrite} and {@link #startReadWriteNonBlocking}) don't acquire the
+ * cache-wide lock. Operations that add or remove keys or spans, update the index or notify the
+ * evictor still synchronize on the cache instance.
+ *
+ * <p>Note that reading a cached span touches it if {@link CacheEvictor#requiresCacheSpanTouches()}
+ * returns true, which requires the cache-wide lock. This is the case for {@link
+ * LeastRecentlyUsedCacheEvictor}, so when it's used, {@link #startReadWrite} and {@link
+ * #startReadWriteNonBlocking} always synchronize on the cache instance and reads don't benefit from
+ * striped locking. Use an evictor that doesn't require spans to be touched, such as {@link
+ * NoOpCacheEvictor}, for reads to scale with the number of threads.
+ *
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
@@ -59,6 +74,9 @@ public final class SimpleCache implements Cache {
 
   private static final String UID_FILE_SUFFIX = ".uid";
 
+  /** The number of key locks used in striped locking mode. */
+  private static final int STRIPED_KEY_LOCK_COUNT = 32;
+
   private static final HashSet<File> lockedCacheDirs = new HashSet<>();
 
   private static boolean cacheFolderLockingDisabled;
@@ -71,11 +89,14 @@ public final class SimpleCache implements Cache {
   private final HashMap<String, ArrayList<Listener>> listeners;
   private final Random random;
   private final boolean touchCacheSpans;
+  private final boolean useStripedLocking;
+  private final KeyLock[] keyLocks;
 
   private long uid;
   private long totalSpace;
-  private boolean released;
-  private @MonotonicNonNull CacheException initializationException;
+  private volatile boolean initialized;
+  private volatile boolean released;
+  private volatile @MonotonicNonNull CacheException initializationException;
 
   /**
    * Returns whether {@code cacheFolder} is locked by a {@link SimpleCache} instance. To unlock the
@@ -251,6 +272,56 @@ public final class SimpleCache implements Cache {
       @Nullable byte[] legacyIndexSecretKey,
       boolean legacyIndexEncrypt,
       boolean preferLegacyIndex) {
+    this(
+        cacheDir,
+        evictor,
+        databaseProvider,
+        legacyIndexSecretKey,
+        legacyIndexEncrypt,
+        preferLegacyIndex,
+        /* useStripedLocking= */ false,
+        /* useJournalIndex= */ false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the cache directory.
+   * Hence the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the cache index is stored, or {@code
+   *     null} to use a legacy index. Using a database index is highly recommended for performance
+   *     reasons.
+   * @param legacyIndexSecretKey A 16 byte AES key for reading, and optionally writing, the legacy
+   *     index. Not used by the database index, however should still be provided when using the
+   *     database index in cases where upgrading from the legacy index may be necessary.
+   * @param legacyIndexEncrypt Whether to encrypt when writing to the legacy index. Must be {@code
+   *     false} if {@code legacyIndexSecretKey} is {@code null}. Not used by the database index.
+   * @param preferLegacyIndex Whether to use the legacy index even if a {@code databaseProvider} is
+   *     provided. Should be {@code false} in nearly all cases. Setting this to {@code true} is only
+   *     useful for downgrading from the database index back to the legacy index.
+   * @param useStripedLocking Whether to use per-key striped locking, so that reads and writes for
+   *     different keys contend less when the cache is shared between many threads. Reads still
+   *     acquire the cache-wide lock if the {@code evictor} requires spans to be touched. See the
+   *     class documentation for details.
+   * @param useJournalIndex Whether to store the cache index in an append-only journal in the cache
+   *     directory, rather than in the database or legacy index. Storing the journal index costs
+   *     time proportional to the number of changes since it was last stored, rather than to the
+   *     number of keys in the cache, which makes it preferable for caches with very many keys.
+   *     {@code legacyIndexSecretKey} and {@code legacyIndexEncrypt} also apply to the journal
+   *     index. An existing database or legacy index is migrated to the journal index, and vice
+   *     versa.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      @Nullable DatabaseProvider databaseProvider,
+      @Nullable byte[] legacyIndexSecretKey,
+      boolean legacyIndexEncrypt,
+      boolean preferLegacyIndex,
+      boolean useStripedLocking,
+      boolean useJournalIndex) {
     this(
         cacheDir,
         evictor,
@@ -259,10 +330,12 @@ public final class SimpleCache implements Cache {
             cacheDir,
             legacyIndexSecretKey,
             legacyIndexEncrypt,
-            preferLegacyIndex),
+            preferLegacyIndex,
+            useJournalIndex),
         databaseProvider != null && !preferLegacyIndex
             ? new CacheFileMetadataIndex(databaseProvider)
-            : null);
+            : null,
+        useStripedLocking);
   }
 
   /* package */ SimpleCache(
@@ -270,6 +343,15 @@ public final class SimpleCache implements Cache {
       CacheEvictor evictor,
       CachedContentIndex contentIndex,
       @Nullable CacheFileMetadataIndex fileIndex) {
+    this(cacheDir, evictor, contentIndex, fileIndex, /* useStripedLocking= */ false);
+  }
+
+  /* package */ SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      CachedContentIndex contentIndex,
+      @Nullable CacheFileMetadataIndex fileIndex,
+      boolean useStripedLocking) {
     if (!lockFolder(cacheDir)) {
       throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
     }
@@ -281,6 +363,12 @@ public final class SimpleCache implements Cache {
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    this.useStripedLocking = useStripedLocking;
+    // Without striped locking every operation holds the cache-wide lock, so one key lock suffices.
+    keyLocks = new KeyLock[useStripedLocking ? STRIPED_KEY_LOCK_COUNT : 1];
+    for (int i = 0; i < keyLocks.length; i++) {
+      keyLocks[i] = new KeyLock();
+    }
     uid = UID_UNSET;
 
     // Start cache initialization.
@@ -292,6 +380,7 @@ public final class SimpleCache implements Cache {
           conditionVariable.open();
           initialize();
           SimpleCache.this.evictor.onCacheInitialized();
+          initialized = true;
         }
       }
     }.start();
@@ -303,7 +392,7 @@ public final class SimpleCache implements Cache {
    *
    * @throws CacheException If an error occurred during initialization.
    */
-  public synchronized void checkInitialization() throws CacheException {
+  public void checkInitialization() throws CacheException {
     if (!cacheInitializationExceptionsDisabled && initializationException != null) {
       throw initializationException;
     }
@@ -359,12 +448,13 @@ public final class SimpleCache implements Cache {
 
   @NonNull
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    if (!isStripedLockingActive()) {
+      synchronized (this) {
+        return getCachedSpansInternal(key);
+      }
+    }
+    return getCachedSpansInternal(key);
   }
 
   @Override
@@ -380,49 +470,90 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position)
+  public CacheSpan startReadWrite(String key, long position)
       throws InterruptedException, CacheException {
+    if (!isStripedLockingActive()) {
+      synchronized (this) {
+        Assertions.checkState(!released);
+        checkInitialization();
+        while (true) {
+          CacheSpan span = startReadWriteNonBlocking(key, position);
+          if (span != null) {
+            return span;
+          } else {
+            // Lock not available. We'll be woken up when a span is added, or when a locked span is
+            // released. We'll be able to make progress when either:
+            // 1. A span is added for the requested key that covers the requested position, in
+            //    which case a read can be started.
+            // 2. The lock for the requested key is released, in which case a write can be
+            //    started.
+            wait();
+          }
+        }
+      }
+    }
+
     Assertions.checkState(!released);
     checkInitialization();
-
+    KeyLock keyLock = getKeyLock(key);
     while (true) {
+      int releaseCount;
+      synchronized (keyLock) {
+        releaseCount = keyLock.releaseCount;
+      }
       CacheSpan span = startReadWriteNonBlocking(key, position);
       if (span != null) {
         return span;
-      } else {
-        // Lock not available. We'll be woken up when a span is added, or when a locked span is
-        // released. We'll be able to make progress when either:
-        // 1. A span is added for the requested key that covers the requested position, in which
-        //    case a read can be started.
-        // 2. The lock for the requested key is released, in which case a write can be started.
-        wait();
+      }
+      // Lock not available. Wait until a span is added or a locked span is released for a key
+      // guarded by the same key lock. Checking the release count guards against missing a release
+      // that happened since the attempt above.
+      synchronized (keyLock) {
+        while (keyLock.releaseCount == releaseCount) {
+          keyLock.wait();
+        }
       }
     }
   }
 
   @Override
   @Nullable
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position)
-      throws CacheException {
+  public CacheSpan startReadWriteNonBlocking(String key, long position) throws CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
-    SimpleCacheSpan span = getSpan(key, position);
-
-    if (span.isCached) {
-      // Read case.
-      return touchSpan(key, span);
+    if (isStripedLockingActive() && !touchCacheSpans) {
+      // Try to start the read or write holding only the key lock. This is possible if there's
+      // already a CachedContent for the key, and the span doesn't need to be touched.
+      CachedContent cachedContent = contentIndex.get(key);
+      if (cachedContent != null) {
+        synchronized (getKeyLock(key)) {
+          // Check the CachedContent wasn't removed from the index whilst we weren't holding a lock.
+          if (contentIndex.get(key) == cachedContent) {
+            SimpleCacheSpan span = cachedContent.getSpan(position);
+            if (span.isCached) {
+              if (span.file.exists()) {
+                // Read case.
+                return span;
+              }
+              // The file has been deleted from under us. Fall through to the global path, which
+              // removes stale spans.
+            } else if (!cachedContent.isLocked()) {
+              // Write case.
+              cachedContent.setLocked(true);
+              return span;
+            } else {
+              // Lock not available.
+              return null;
+            }
+          }
+        }
+      }
     }
 
-    CachedContent cachedContent = contentIndex.getOrAdd(key);
-    if (!cachedContent.isLocked()) {
-      // Write case.
-      cachedContent.setLocked(true);
-      return span;
+    synchronized (this) {
+      return startReadWriteNonBlockingInternal(key, position);
     }
-
-    // Lock not available.
-    return null;
   }
 
   @Override
@@ -432,7 +563,9 @@ public final class SimpleCache implements Cache {
 
     CachedContent cachedContent = contentIndex.get(key);
     Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isLocked());
+    synchronized (getKeyLock(key)) {
+      Assertions.checkState(cachedContent.isLocked());
+    }
     if (!cacheDir.exists()) {
       // For some reason the cache directory doesn't exist. Make a best effort to create it.
       cacheDir.mkdirs();
@@ -462,12 +595,15 @@ public final class SimpleCache implements Cache {
     SimpleCacheSpan span =
         Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
     CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
-    Assertions.checkState(cachedContent.isLocked());
-
-    // Check if the span conflicts with the set content length
-    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
-    if (contentLength != C.LENGTH_UNSET) {
-      Assertions.checkState((span.position + span.length) <= contentLength);
+    KeyLock keyLock = getKeyLock(span.key);
+    synchronized (keyLock) {
+      Assertions.checkState(cachedContent.isLocked());
+
+      // Check if the span conflicts with the set content length
+      long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+      if (contentLength != C.LENGTH_UNSET) {
+        Assertions.checkState((span.position + span.length) <= contentLength);
+      }
     }
 
     if (fileIndex != null) {
@@ -479,6 +615,8 @@ public final class SimpleCache implements Cache {
       }
     }
     addSpan(span);
+    // Wake up threads that may be waiting for the added span.
+    notifyKeyLockReleased(keyLock);
     try {
       contentIndex.store();
     } catch (IOException e) {
@@ -492,9 +630,13 @@ public final class SimpleCache implements Cache {
     Assertions.checkState(!released);
     CachedContent cachedContent = contentIndex.get(holeSpan.key);
     Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isLocked());
-    cachedContent.setLocked(false);
-    contentIndex.maybeRemove(cachedContent.key);
+    KeyLock keyLock = getKeyLock(holeSpan.key);
+    synchronized (keyLock) {
+      Assertions.checkState(cachedContent.isLocked());
+      cachedContent.setLocked(false);
+      contentIndex.maybeRemove(cachedContent.key);
+      notifyKeyLockReleased(keyLock);
+    }
     notifyAll();
   }
 
@@ -505,17 +647,34 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+  public boolean isCached(String key, long position, long length) {
+    if (!isStripedLockingActive()) {
+      synchronized (this) {
+        return getCachedLengthInternal(key, position, length) >= length;
+      }
+    }
+    return getCachedLengthInternal(key, position, length) >= length;
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
-    Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+  public long getCachedLength(String key, long position, long length) {
+    if (!isStripedLockingActive()) {
+      synchronized (this) {
+        return getCachedLengthInternal(key, position, length);
+      }
+    }
+    return getCachedLengthInternal(key, position, length);
+  }
+
+  @Override
+  public long[] getCachedBytes(String key, long[] positions, long[] lengths) {
+    Assertions.checkArgument(positions.length == lengths.length);
+    if (!isStripedLockingActive()) {
+      synchronized (this) {
+        return getCachedBytesInternal(key, positions, lengths);
+      }
+    }
+    return getCachedBytesInternal(key, positions, lengths);
   }
 
   @Override
@@ -524,7 +683,9 @@ public final class SimpleCache implements Cache {
     Assertions.checkState(!released);
     checkInitialization();
 
-    contentIndex.applyContentMetadataMutations(key, mutations);
+    synchronized (getKeyLock(key)) {
+      contentIndex.applyContentMetadataMutations(key, mutations);
+    }
     try {
       contentIndex.store();
     } catch (IOException e) {
@@ -533,9 +694,97 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
+  public ContentMetadata getContentMetadata(String key) {
+    if (!isStripedLockingActive()) {
+      synchronized (this) {
+        return getContentMetadataInternal(key);
+      }
+    }
+    return getContentMetadataInternal(key);
+  }
+
+  /**
+   * Returns whether methods that only touch a single key may skip acquiring the cache-wide lock.
+   * This is only the case in striped locking mode, once the cache has been initialized.
+   */
+  private boolean isStripedLockingActive() {
+    return useStripedLocking && initialized;
+  }
+
+  /** Returns the {@link KeyLock} guarding the {@link CachedContent} with the given key. */
+  private KeyLock getKeyLock(String key) {
+    return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % keyLocks.length];
+  }
+
+  private static void notifyKeyLockReleased(KeyLock keyLock) {
+    synchronized (keyLock) {
+      keyLock.releaseCount++;
+      keyLock.notifyAll();
+    }
+  }
+
+  private NavigableSet<CacheSpan> getCachedSpansInternal(String key) {
+    Assertions.checkState(!released);
+    CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return new TreeSet<>();
+    }
+    synchronized (getKeyLock(key)) {
+      return cachedContent.isEmpty()
+          ? new TreeSet<>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    }
+  }
+
+  private long getCachedLengthInternal(String key, long position, long length) {
+    Assertions.checkState(!released);
+    CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return -length;
+    }
+    synchronized (getKeyLock(key)) {
+      return cachedContent.getCachedBytesLength(position, length);
+    }
+  }
+
+  private long[] getCachedBytesInternal(String key, long[] positions, long[] lengths) {
     Assertions.checkState(!released);
-    return contentIndex.getContentMetadata(key);
+    CachedContent cachedContent = contentIndex.get(key);
+    if (cachedContent == null) {
+      return new long[positions.length];
+    }
+    synchronized (getKeyLock(key)) {
+      return cachedContent.getCachedBytes(positions, lengths);
+    }
+  }
+
+  private ContentMetadata getContentMetadataInternal(String key) {
+    Assertions.checkState(!released);
+    synchronized (getKeyLock(key)) {
+      return contentIndex.getContentMetadata(key);
+    }
+  }
+
+  @Nullable
+  private CacheSpan startReadWriteNonBlockingInternal(String key, long position) {
+    SimpleCacheSpan span = getSpan(key, position);
+
+    if (span.isCached) {
+      // Read case.
+      return touchSpan(key, span);
+    }
+
+    CachedContent cachedContent = contentIndex.getOrAdd(key);
+    synchronized (getKeyLock(key)) {
+      if (!cachedContent.isLocked()) {
+        // Write case.
+        cachedContent.setLocked(true);
+        return span;
+      }
+    }
+
+    // Lock not available.
+    return null;
   }
 
   /** Ensures that the cache's in-memory representation has been initialized. */
@@ -673,8 +922,10 @@ public final class SimpleCache implements Cache {
       // updating the file index. Hence we only update the file if we don't have a file index.
       updateFile = true;
     }
-    SimpleCacheSpan newSpan =
-        contentIndex.get(key).setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+    SimpleCacheSpan newSpan;
+    synchronized (getKeyLock(key)) {
+      newSpan = contentIndex.get(key).setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+    }
     notifySpanTouched(span, newSpan);
     return newSpan;
   }
@@ -696,7 +947,10 @@ public final class SimpleCache implements Cache {
       return SimpleCacheSpan.createOpenHole(key, position);
     }
     while (true) {
-      SimpleCacheSpan span = cachedContent.getSpan(position);
+      SimpleCacheSpan span;
+      synchronized (getKeyLock(key)) {
+        span = cachedContent.getSpan(position);
+      }
       if (span.isCached && !span.file.exists()) {
         // The file has been deleted from under us. It's likely that other files will have been
         // deleted too, so scan the whole in-memory representation.
@@ -713,16 +967,25 @@ public final class SimpleCache implements Cache {
    * @param span The span to be added.
    */
   private void addSpan(SimpleCacheSpan span) {
-    contentIndex.getOrAdd(span.key).addSpan(span);
+    CachedContent cachedContent = contentIndex.getOrAdd(span.key);
+    synchronized (getKeyLock(span.key)) {
+      cachedContent.addSpan(span);
+    }
     totalSpace += span.length;
     notifySpanAdded(span);
   }
 
   private void removeSpanInternal(CacheSpan span) {
     CachedContent cachedContent = contentIndex.get(span.key);
-    if (cachedContent == null || !cachedContent.removeSpan(span)) {
+    if (cachedContent == null) {
       return;
     }
+    synchronized (getKeyLock(span.key)) {
+      if (!cachedContent.removeSpan(span)) {
+        return;
+      }
+      contentIndex.maybeRemove(cachedContent.key);
+    }
     totalSpace -= span.length;
     if (fileIndex != null) {
       String fileName = span.file.getName();
@@ -734,7 +997,6 @@ public final class SimpleCache implements Cache {
         Log.w(TAG, "Failed to remove file index entry for: " + fileName);
       }
     }
-    contentIndex.maybeRemove(cachedContent.key);
     notifySpanRemoved(span);
   }
 
@@ -745,9 +1007,11 @@ public final class SimpleCache implements Cache {
   private void removeStaleSpans() {
     ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
     for (CachedContent cachedContent : contentIndex.getAll()) {
-      for (CacheSpan span : cachedContent.getSpans()) {
-        if (!span.file.exists()) {
-          spansToBeRemoved.add(span);
+      synchronized (getKeyLock(cachedContent.key)) {
+        for (CacheSpan span : cachedContent.getSpans()) {
+          if (!span.file.exists()) {
+            spansToBeRemoved.add(span);
+          }
         }
       }
     }
@@ -839,4 +1103,17 @@ public final class SimpleCache implements Cache {
       lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
     }
   }
+
+  /**
+   * Guards the state of the {@link CachedContent}s whose keys map to it. Threads waiting for a
+   * locked key to be released wait on the corresponding key lock.
+   */
+  private static final class KeyLock {
+
+    /**
+     * Incremented whenever a span is added, or a locked span is released, for one of the guarded
+     * keys.
+     */
+    public int releaseCount;
+  }
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts cache files using a size-aware variant of the W-TinyLFU policy, which takes both the
+ * recency and the frequency of accesses into account.
+ *
+ * <p>The cache is split into a small window region and a main region. Newly added spans enter the
+ * window, which is evicted in least recently used order. Spans evicted from the window are
+ * candidates for admission into the main region. A candidate is only admitted if it has been
+ * accessed more frequently than the spans that would need to be evicted from the main region to
+ * make room for it. Otherwise the candidate itself is evicted. This protects frequently accessed
+ * spans, such as initialization segments and the first segments of popular content, from being
+ * flushed out by long scans through content that's only accessed once.
+ *
+ * <p>The main region is a segmented LRU. Spans are admitted into its probation segment, and are
+ * promoted into its protected segment when they're accessed again.
+ *
+ * <p>Access frequencies are estimated using a count-min sketch of 4-bit counters, which are halved
+ * periodically so that the estimates adapt to changes in popularity.
+ */
+public final class WindowTinyLfuCacheEvictor implements CacheEvictor {
+
+  /** The default percentage of the maximum cache size that's used for the window region. */
+  public static final int DEFAULT_WINDOW_PERCENTAGE = 1;
+  /** The default expected maximum number of spans in the cache, used to size the sketch. */
+  public static final int DEFAULT_EXPECTED_SPAN_COUNT = 4096;
+
+  /** The percentage of the main region that's used for the protected segment. */
+  private static final int PROTECTED_PERCENTAGE = 80;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final long maxMainBytes;
+  private final long maxProtectedBytes;
+  private final FrequencySketch frequencySketch;
+  private final LinkedHashSet<CacheSpan> window;
+  private final LinkedHashSet<CacheSpan> probation;
+  private final LinkedHashSet<CacheSpan> protectedSpans;
+
+  private long windowBytes;
+  private long probationBytes;
+  private long protectedBytes;
+  private boolean initialized;
+
+  /**
+   * Creates an instance with a {@link #DEFAULT_WINDOW_PERCENTAGE} window, sized for {@link
+   * #DEFAULT_EXPECTED_SPAN_COUNT} spans.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public WindowTinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_PERCENTAGE, DEFAULT_EXPECTED_SPAN_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param windowPercentage The percentage of {@code maxBytes} that's used for the window region.
+   * @param expectedSpanCount The expected maximum number of spans in the cache. Used to size the
+   *     frequency sketch.
+   */
+  public WindowTinyLfuCacheEvictor(long maxBytes, int windowPercentage, int expectedSpanCount) {
+    Assertions.checkArgument(windowPercentage >= 0 && windowPercentage <= 100);
+    Assertions.checkArgument(expectedSpanCount > 0);
+    this.maxBytes = maxBytes;
+    maxWindowBytes = maxBytes / 100 * windowPercentage;
+    maxMainBytes = maxBytes - maxWindowBytes;
+    maxProtectedBytes = maxMainBytes / 100 * PROTECTED_PERCENTAGE;
+    frequencySketch = new FrequencySketch(expectedSpanCount);
+    window = new LinkedHashSet<>();
+    probation = new LinkedHashSet<>();
+    protectedSpans = new LinkedHashSet<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    initialized = true;
+    // Spans that were loaded during initialization were added to the probation segment directly.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length == C.LENGTH_UNSET) {
+      return;
+    }
+    // The span being written will enter the window. Make room in the window for it, and then in the
+    // cache as a whole.
+    while (windowBytes + length > maxWindowBytes && !window.isEmpty()) {
+      evictFromWindow(cache);
+    }
+    evictCache(cache, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    if (!initialized) {
+      probation.add(span);
+      probationBytes += span.length;
+      return;
+    }
+    frequencySketch.increment(span);
+    window.add(span);
+    windowBytes += span.length;
+    // Always keep the most recently added span in the window, even if it exceeds the window size.
+    while (windowBytes > maxWindowBytes && window.size() > 1) {
+      evictFromWindow(cache);
+    }
+    evictCache(cache, /* requiredSpace= */ 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (window.remove(span)) {
+      windowBytes -= span.length;
+    } else if (probation.remove(span)) {
+      probationBytes -= span.length;
+    } else if (protectedSpans.remove(span)) {
+      protectedBytes -= span.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    frequencySketch.increment(newSpan);
+    if (window.remove(oldSpan)) {
+      // Move to the most recently used position in the window.
+      window.add(newSpan);
+    } else if (probation.remove(oldSpan)) {
+      // Promote to the protected segment, demoting the least recently used protected spans to the
+      // probation segment if the protected segment becomes too large.
+      probationBytes -= oldSpan.length;
+      protectedSpans.add(newSpan);
+      protectedBytes += newSpan.length;
+      while (protectedBytes > maxProtectedBytes && protectedSpans.size() > 1) {
+        CacheSpan demotedSpan = removeFirst(protectedSpans);
+        protectedBytes -= demotedSpan.length;
+        probation.add(demotedSpan);
+        probationBytes += demotedSpan.length;
+      }
+    } else if (protectedSpans.remove(oldSpan)) {
+      // Move to the most recently used position in the protected segment.
+      protectedSpans.add(newSpan);
+    } else {
+      window.add(newSpan);
+      windowBytes += newSpan.length;
+    }
+  }
+
+  /**
+   * Removes the least recently used span from the window, and either admits it into the main region
+   * or evicts it depending on its estimated access frequency.
+   */
+  private void evictFromWindow(Cache cache) {
+    CacheSpan candidate = window.iterator().next();
+    while (probationBytes + protectedBytes + candidate.length > maxMainBytes) {
+      CacheSpan victim = getMainVictim();
+      if (victim == null) {
+        break;
+      }
+      if (frequencySketch.getFrequency(candidate) <= frequencySketch.getFrequency(victim)) {
+        // The candidate isn't accessed more frequently than the victim, so reject it.
+        removeSpan(cache, candidate);
+        return;
+      }
+      removeSpan(cache, victim);
+    }
+    window.remove(candidate);
+    windowBytes -= candidate.length;
+    probation.add(candidate);
+    probationBytes += candidate.length;
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (windowBytes + probationBytes + protectedBytes + requiredSpace > maxBytes) {
+      CacheSpan victim = getMainVictim();
+      if (victim == null) {
+        if (window.isEmpty()) {
+          return;
+        }
+        victim = window.iterator().next();
+      }
+      removeSpan(cache, victim);
+    }
+  }
+
+  /** Returns the span that should be evicted next from the main region, if it's not empty. */
+  @Nullable
+  private CacheSpan getMainVictim() {
+    if (!probation.isEmpty()) {
+      return probation.iterator().next();
+    } else if (!protectedSpans.isEmpty()) {
+      return protectedSpans.iterator().next();
+    }
+    return null;
+  }
+
+  private void removeSpan(Cache cache, CacheSpan span) {
+    try {
+      cache.removeSpan(span);
+    } catch (CacheException e) {
+      // Do nothing.
+    }
+    // Make sure the span is forgotten, even if the cache didn't report its removal, so that
+    // eviction always makes progress.
+    onSpanRemoved(cache, span);
+  }
+
+  private static CacheSpan removeFirst(LinkedHashSet<CacheSpan> spans) {
+    Iterator<CacheSpan> iterator = spans.iterator();
+    CacheSpan span = iterator.next();
+    iterator.remove();
+    return span;
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters estimating how frequently each span has been accessed.
+   * Spans are identified by their key and position, which remain the same when they're touched.
+   *
+   * <p>Each row has a counter for every expected span, rounded up to a power of two, and two
+   * counters are packed into each byte. The sketch therefore takes up to four bytes per expected
+   * span.
+   */
+  private static final class FrequencySketch {
+
+    private static final int ROW_COUNT = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] ROW_SEEDS =
+        new int[] {0x97CB3127, 0xC2B2AE35, 0x85EBCA6B, 0x27D4EB2F};
+
+    private final byte[][] counters;
+    private final int indexMask;
+    private final int resetSampleCount;
+
+    private int sampleCount;
+
+    public FrequencySketch(int expectedSpanCount) {
+      int width = Integer.highestOneBit(Math.max(expectedSpanCount, 16) - 1) << 1;
+      counters = new byte[ROW_COUNT][width / 2];
+      indexMask = width - 1;
+      resetSampleCount = 10 * width;
+    }
+
+    /** Increments the estimated access frequency of a span. */
+    public void increment(CacheSpan span) {
+      int hash = hash(span);
+      for (int row = 0; row < ROW_COUNT; row++) {
+        int index = indexOf(hash, row);
+        if (getCount(row, index) < MAX_COUNT) {
+          counters[row][index >> 1] += 1 << getShift(index);
+        }
+      }
+      if (++sampleCount >= resetSampleCount) {
+        reset();
+      }
+    }
+
+    /** Returns the estimated access frequency of a span. */
+    public int getFrequency(CacheSpan span) {
+      int hash = hash(span);
+      int frequency = MAX_COUNT;
+      for (int row = 0; row < ROW_COUNT; row++) {
+        frequency = Math.min(frequency, getCount(row, indexOf(hash, row)));
+      }
+      return frequency;
+    }
+
+    /** Halves all counters, so that old accesses count for less than recent ones. */
+    private void reset() {
+      for (byte[] rowCounters : counters) {
+        for (int i = 0; i < rowCounters.length; i++) {
+          // Shift both counters of the byte, and clear the bit shifted into the lower counter.
+          rowCounters[i] = (byte) ((rowCounters[i] >> 1) & 0x77);
+        }
+      }
+      sampleCount /= 2;
+    }
+
+    private int getCount(int row, int index) {
+      return (counters[row][index >> 1] >> getShift(index)) & MAX_COUNT;
+    }
+
+    private int indexOf(int hash, int row) {
+      int rowHash = hash * ROW_SEEDS[row];
+      rowHash ^= rowHash >>> 16;
+      return rowHash & indexMask;
+    }
+
+    /** Returns the shift of the counter with a given index within its byte. */
+    private static int getShift(int index) {
+      return (index & 1) << 2;
+    }
+
+    private static int hash(CacheSpan span) {
+      int hash = span.key.hashCode() * 31 + (int) (span.position ^ (span.position >>> 32));
+      // Spread the bits, so that spans of the same key at nearby positions are well distributed.
+      hash *= 0x9E3779B9;
+      return hash ^ (hash >>> 15);
+    }
+  }
+}
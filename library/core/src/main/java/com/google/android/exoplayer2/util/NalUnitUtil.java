@@ -447,20 +447,26 @@ public final class NalUnitUtil {
 
     int limit = endOffset - 1;
     // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
-    // the third byte.
+    // the third byte. As in a Boyer-Moore search, the value of the byte at i determines how far the
+    // index can be advanced. Only a 0 can be the first or second byte of a prefix, so the index can
+    // be advanced by three unless the byte is 0.
     for (int i = startOffset + 2; i < limit; i += 3) {
-      if ((data[i] & 0xFE) != 0) {
+      byte value = data[i];
+      if ((value & 0xFE) != 0) {
         // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
         // loop advance the index by three.
-      } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
+      } else if (value == 0) {
+        // There isn't a NAL prefix here, but there might be at the next position. We should
+        // only skip forward by one. The loop will skip forward by three, so subtract two here.
+        i -= 2;
+      } else if (data[i - 2] == 0 && data[i - 1] == 0) {
         if (prefixFlags != null) {
           clearPrefixFlags(prefixFlags);
         }
         return i - 2;
       } else {
-        // There isn't a NAL prefix here, but there might be at the next position. We should
-        // only skip forward by one. The loop will skip forward by three, so subtract two here.
-        i -= 2;
+        // The byte is a 1 that isn't preceded by two 0s, so there isn't a NAL prefix here, or at
+        // the next two positions. Do nothing and let the loop advance the index by three.
       }
     }
 
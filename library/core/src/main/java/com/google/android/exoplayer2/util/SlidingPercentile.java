@@ -15,10 +15,6 @@
  */
 package com.google.android.exoplayer2.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-
 /**
  * Calculate any percentile over a sliding window of weighted values. A maximum weight is
  * configured. Once the total weight of the values reaches the maximum weight, the oldest value is
@@ -28,47 +24,52 @@ import java.util.Comparator;
  * This class can be used for bandwidth estimation based on a sliding window of past transfer rate
  * observations. This is an alternative to sliding mean and exponential averaging which suffer from
  * susceptibility to outliers and slow adaptation to step functions.
+ * <p>
+ * Values are held in a ring of parallel arrays in the order in which they were added, and are also
+ * the nodes of a treap ordered by value, in which each node holds the total weight of its subtree.
+ * Adding a value and computing a percentile both take logarithmic time, and don't allocate once
+ * the arrays have grown to hold the number of values in the window.
  *
  * @see <a href="http://en.wikipedia.org/wiki/Moving_average">Wiki: Moving average</a>
  * @see <a href="http://en.wikipedia.org/wiki/Selection_algorithm">Wiki: Selection algorithm</a>
+ * @see <a href="http://en.wikipedia.org/wiki/Treap">Wiki: Treap</a>
  */
 public class SlidingPercentile {
 
-  // Orderings.
-  private static final Comparator<Sample> INDEX_COMPARATOR = (a, b) -> a.index - b.index;
-  private static final Comparator<Sample> VALUE_COMPARATOR =
-      (a, b) -> Float.compare(a.value, b.value);
-
-  private static final int SORT_ORDER_NONE = -1;
-  private static final int SORT_ORDER_BY_VALUE = 0;
-  private static final int SORT_ORDER_BY_INDEX = 1;
-
-  private static final int MAX_RECYCLED_SAMPLES = 5;
+  /** The initial number of values that can be held. Must be a power of two. */
+  private static final int INITIAL_CAPACITY = 16;
+  /** Denotes the absence of a node. */
+  private static final int NO_NODE = -1;
 
   private final int maxWeight;
-  private final ArrayList<Sample> samples;
 
-  private final Sample[] recycledSamples;
+  // The node of the value with a given index is at index & (capacity - 1).
+  private int[] indices;
+  private float[] values;
+  private int[] weights;
+  private int[] priorities;
+  private int[] subtreeWeights;
+  private int[] leftChildren;
+  private int[] rightChildren;
 
-  private int currentSortOrder;
+  private int rootNode;
+  private int oldestSampleIndex;
   private int nextSampleIndex;
   private int totalWeight;
-  private int recycledSampleCount;
 
   /**
    * @param maxWeight The maximum weight.
    */
   public SlidingPercentile(int maxWeight) {
     this.maxWeight = maxWeight;
-    recycledSamples = new Sample[MAX_RECYCLED_SAMPLES];
-    samples = new ArrayList<>();
-    currentSortOrder = SORT_ORDER_NONE;
+    allocateArrays(INITIAL_CAPACITY);
+    rootNode = NO_NODE;
   }
 
   /** Resets the sliding percentile. */
   public void reset() {
-    samples.clear();
-    currentSortOrder = SORT_ORDER_NONE;
+    rootNode = NO_NODE;
+    oldestSampleIndex = 0;
     nextSampleIndex = 0;
     totalWeight = 0;
   }
@@ -80,27 +81,30 @@ public class SlidingPercentile {
    * @param value The value of the new observation.
    */
   public void addSample(int weight, float value) {
-    ensureSortedByIndex();
-
-    Sample newSample = recycledSampleCount > 0 ? recycledSamples[--recycledSampleCount]
-        : new Sample();
-    newSample.index = nextSampleIndex++;
-    newSample.weight = weight;
-    newSample.value = value;
-    samples.add(newSample);
+    if (nextSampleIndex - oldestSampleIndex == values.length) {
+      growArrays();
+    }
+    int index = nextSampleIndex++;
+    int newNode = getNode(index);
+    indices[newNode] = index;
+    values[newNode] = value;
+    weights[newNode] = weight;
+    priorities[newNode] = getPriority(index);
+    subtreeWeights[newNode] = weight;
+    leftChildren[newNode] = NO_NODE;
+    rightChildren[newNode] = NO_NODE;
+    rootNode = insert(rootNode, newNode);
     totalWeight += weight;
 
     while (totalWeight > maxWeight) {
       int excessWeight = totalWeight - maxWeight;
-      Sample oldestSample = samples.get(0);
-      if (oldestSample.weight <= excessWeight) {
-        totalWeight -= oldestSample.weight;
-        samples.remove(0);
-        if (recycledSampleCount < MAX_RECYCLED_SAMPLES) {
-          recycledSamples[recycledSampleCount++] = oldestSample;
-        }
+      int oldestNode = getNode(oldestSampleIndex);
+      if (weights[oldestNode] <= excessWeight) {
+        totalWeight -= weights[oldestNode];
+        rootNode = remove(rootNode, oldestNode);
+        oldestSampleIndex++;
       } else {
-        oldestSample.weight -= excessWeight;
+        reduceWeight(oldestNode, excessWeight);
         totalWeight -= excessWeight;
       }
     }
@@ -113,46 +117,198 @@ public class SlidingPercentile {
    * @return The requested percentile value or {@link Float#NaN} if no samples have been added.
    */
   public float getPercentile(float percentile) {
-    ensureSortedByValue();
+    if (rootNode == NO_NODE) {
+      return Float.NaN;
+    }
     float desiredWeight = percentile * totalWeight;
     int accumulatedWeight = 0;
-    for (int i = 0; i < samples.size(); i++) {
-      Sample currentSample = samples.get(i);
-      accumulatedWeight += currentSample.weight;
+    int node = rootNode;
+    int largestPrecedingNode = NO_NODE;
+    while (node != NO_NODE) {
+      int leftChild = leftChildren[node];
+      if (leftChild != NO_NODE && accumulatedWeight + subtreeWeights[leftChild] >= desiredWeight) {
+        node = leftChild;
+        continue;
+      }
+      if (leftChild != NO_NODE) {
+        accumulatedWeight += subtreeWeights[leftChild];
+      }
+      accumulatedWeight += weights[node];
       if (accumulatedWeight >= desiredWeight) {
-        return currentSample.value;
+        return values[node];
       }
+      largestPrecedingNode = node;
+      node = rightChildren[node];
     }
-    // Clamp to maximum value or NaN if no values.
-    return samples.isEmpty() ? Float.NaN : samples.get(samples.size() - 1).value;
+    // Clamp to maximum value.
+    return values[largestPrecedingNode];
   }
 
   /**
-   * Sorts the samples by index.
+   * Inserts a node into a subtree.
+   *
+   * @param node The root node of the subtree, or {@link #NO_NODE} if it's empty.
+   * @param newNode The node to insert.
+   * @return The root node of the subtree after the insertion.
    */
-  private void ensureSortedByIndex() {
-    if (currentSortOrder != SORT_ORDER_BY_INDEX) {
-      Collections.sort(samples, INDEX_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_INDEX;
+  private int insert(int node, int newNode) {
+    if (node == NO_NODE) {
+      return newNode;
+    }
+    subtreeWeights[node] += weights[newNode];
+    if (compare(newNode, node) < 0) {
+      leftChildren[node] = insert(leftChildren[node], newNode);
+      if (priorities[leftChildren[node]] > priorities[node]) {
+        node = rotateRight(node);
+      }
+    } else {
+      rightChildren[node] = insert(rightChildren[node], newNode);
+      if (priorities[rightChildren[node]] > priorities[node]) {
+        node = rotateLeft(node);
+      }
     }
+    return node;
   }
 
   /**
-   * Sorts the samples by value.
+   * Removes a node from a subtree.
+   *
+   * @param node The root node of the subtree, which must contain {@code removedNode}.
+   * @param removedNode The node to remove.
+   * @return The root node of the subtree after the removal, or {@link #NO_NODE} if it's empty.
    */
-  private void ensureSortedByValue() {
-    if (currentSortOrder != SORT_ORDER_BY_VALUE) {
-      Collections.sort(samples, VALUE_COMPARATOR);
-      currentSortOrder = SORT_ORDER_BY_VALUE;
+  private int remove(int node, int removedNode) {
+    if (node == removedNode) {
+      return merge(leftChildren[node], rightChildren[node]);
     }
+    subtreeWeights[node] -= weights[removedNode];
+    if (compare(removedNode, node) < 0) {
+      leftChildren[node] = remove(leftChildren[node], removedNode);
+    } else {
+      rightChildren[node] = remove(rightChildren[node], removedNode);
+    }
+    return node;
   }
 
-  private static class Sample {
+  /**
+   * Merges two subtrees, where all the values in the first precede those in the second.
+   *
+   * @return The root node of the merged subtree, or {@link #NO_NODE} if it's empty.
+   */
+  private int merge(int firstNode, int secondNode) {
+    if (firstNode == NO_NODE) {
+      return secondNode;
+    } else if (secondNode == NO_NODE) {
+      return firstNode;
+    } else if (priorities[firstNode] > priorities[secondNode]) {
+      subtreeWeights[firstNode] += subtreeWeights[secondNode];
+      rightChildren[firstNode] = merge(rightChildren[firstNode], secondNode);
+      return firstNode;
+    } else {
+      subtreeWeights[secondNode] += subtreeWeights[firstNode];
+      leftChildren[secondNode] = merge(firstNode, leftChildren[secondNode]);
+      return secondNode;
+    }
+  }
 
-    public int index;
-    public int weight;
-    public float value;
+  /** Reduces the weight of a node, updating the weights of the subtrees that contain it. */
+  private void reduceWeight(int reducedNode, int weightReduction) {
+    int node = rootNode;
+    while (node != reducedNode) {
+      subtreeWeights[node] -= weightReduction;
+      node = compare(reducedNode, node) < 0 ? leftChildren[node] : rightChildren[node];
+    }
+    subtreeWeights[reducedNode] -= weightReduction;
+    weights[reducedNode] -= weightReduction;
+  }
+
+  private int rotateRight(int node) {
+    int leftChild = leftChildren[node];
+    leftChildren[node] = rightChildren[leftChild];
+    rightChildren[leftChild] = node;
+    subtreeWeights[leftChild] = subtreeWeights[node];
+    updateSubtreeWeight(node);
+    return leftChild;
+  }
+
+  private int rotateLeft(int node) {
+    int rightChild = rightChildren[node];
+    rightChildren[node] = leftChildren[rightChild];
+    leftChildren[rightChild] = node;
+    subtreeWeights[rightChild] = subtreeWeights[node];
+    updateSubtreeWeight(node);
+    return rightChild;
+  }
+
+  private void updateSubtreeWeight(int node) {
+    int subtreeWeight = weights[node];
+    if (leftChildren[node] != NO_NODE) {
+      subtreeWeight += subtreeWeights[leftChildren[node]];
+    }
+    if (rightChildren[node] != NO_NODE) {
+      subtreeWeight += subtreeWeights[rightChildren[node]];
+    }
+    subtreeWeights[node] = subtreeWeight;
+  }
+
+  /** Orders nodes by value, and then by the order in which they were added. */
+  private int compare(int node, int otherNode) {
+    int result = Float.compare(values[node], values[otherNode]);
+    return result != 0 ? result : indices[node] - indices[otherNode];
+  }
+
+  private int getNode(int index) {
+    return index & (values.length - 1);
+  }
+
+  /** Doubles the number of values that can be held. */
+  private void growArrays() {
+    int[] oldIndices = indices;
+    float[] oldValues = values;
+    int[] oldWeights = weights;
+    int[] oldPriorities = priorities;
+    int[] oldSubtreeWeights = subtreeWeights;
+    int[] oldLeftChildren = leftChildren;
+    int[] oldRightChildren = rightChildren;
+    allocateArrays(oldValues.length * 2);
+    for (int index = oldestSampleIndex; index != nextSampleIndex; index++) {
+      int oldNode = index & (oldValues.length - 1);
+      int node = getNode(index);
+      indices[node] = index;
+      values[node] = oldValues[oldNode];
+      weights[node] = oldWeights[oldNode];
+      priorities[node] = oldPriorities[oldNode];
+      subtreeWeights[node] = oldSubtreeWeights[oldNode];
+      int oldLeftChild = oldLeftChildren[oldNode];
+      leftChildren[node] = oldLeftChild == NO_NODE ? NO_NODE : getNode(oldIndices[oldLeftChild]);
+      int oldRightChild = oldRightChildren[oldNode];
+      rightChildren[node] = oldRightChild == NO_NODE ? NO_NODE : getNode(oldIndices[oldRightChild]);
+    }
+    if (rootNode != NO_NODE) {
+      rootNode = getNode(oldIndices[rootNode]);
+    }
+  }
+
+  private void allocateArrays(int capacity) {
+    indices = new int[capacity];
+    values = new float[capacity];
+    weights = new int[capacity];
+    priorities = new int[capacity];
+    subtreeWeights = new int[capacity];
+    leftChildren = new int[capacity];
+    rightChildren = new int[capacity];
+  }
 
+  /** Returns a pseudo-random node priority for the value with the specified index. */
+  private static int getPriority(int index) {
+    // The finalization step of MurmurHash3.
+    int hash = index;
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    hash *= 0xC2B2AE35;
+    hash ^= hash >>> 16;
+    return hash;
   }
 
 }
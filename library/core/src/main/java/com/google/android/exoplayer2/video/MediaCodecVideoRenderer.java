@@ -91,6 +91,11 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
    * playbacks. See {@link #getCodecMaxValues(MediaCodecInfo, Format, Format[])}.
    */
   private static final float INITIAL_FORMAT_MAX_INPUT_SIZE_SCALE_FACTOR = 1.5f;
+  /**
+   * How early in microseconds an output buffer can be released. From API level 21 the release is
+   * timed by the framework. Before that it's timed by sleeping in {@link #processOutputBuffer}.
+   */
+  private static final long EARLY_RELEASE_THRESHOLD_US = Util.SDK_INT >= 21 ? 50000 : 30000;
 
   /** A {@link DecoderException} with additional surface information. */
   public static final class VideoDecoderException extends DecoderException {
@@ -136,6 +141,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   private int consecutiveDroppedFrameCount;
   private int buffersInCodecCount;
   private long lastRenderTimeUs;
+  private long nextFrameReleaseTimeNs;
 
   private int pendingRotationDegrees;
   private float pendingPixelWidthHeightRatio;
@@ -299,6 +305,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     outputStreamOffsetUs = C.TIME_UNSET;
     lastInputTimeUs = C.TIME_UNSET;
     joiningDeadlineMs = C.TIME_UNSET;
+    nextFrameReleaseTimeNs = C.TIME_UNSET;
     currentWidth = Format.NO_VALUE;
     currentHeight = Format.NO_VALUE;
     currentPixelWidthHeightRatio = Format.NO_VALUE;
@@ -455,6 +462,23 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
   }
 
+  @Override
+  public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    nextFrameReleaseTimeNs = C.TIME_UNSET;
+    super.render(positionUs, elapsedRealtimeUs);
+  }
+
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (nextFrameReleaseTimeNs == C.TIME_UNSET) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The held frame can't be released until it's early by less than the release threshold, and no
+    // further output can be processed until it's been released.
+    long earlyUs = (nextFrameReleaseTimeNs - System.nanoTime()) / 1000;
+    return Math.max(0, earlyUs - EARLY_RELEASE_THRESHOLD_US);
+  }
+
   @Override
   public boolean isReady() {
     if (super.isReady() && (renderedFirstFrame || (dummySurface != null && surface == dummySurface)
@@ -802,14 +826,14 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
 
     if (Util.SDK_INT >= 21) {
       // Let the underlying framework time the release.
-      if (earlyUs < 50000) {
+      if (earlyUs < EARLY_RELEASE_THRESHOLD_US) {
         notifyFrameMetadataListener(presentationTimeUs, adjustedReleaseTimeNs, format);
         renderOutputBufferV21(codec, bufferIndex, presentationTimeUs, adjustedReleaseTimeNs);
         return true;
       }
     } else {
       // We need to time the release ourselves.
-      if (earlyUs < 30000) {
+      if (earlyUs < EARLY_RELEASE_THRESHOLD_US) {
         if (earlyUs > 11000) {
           // We're a little too early to render the frame. Sleep until the frame can be rendered.
           // Note: The 11ms threshold was chosen fairly arbitrarily.
@@ -828,6 +852,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
 
     // We're either not playing, or it's not time to render the frame yet.
+    nextFrameReleaseTimeNs = adjustedReleaseTimeNs;
     return false;
   }
 
@@ -253,6 +253,58 @@ public final class ExoPlayerTest {
     assertThat(audioRenderer.isEnded).isTrue();
   }
 
+  /**
+   * Tests that the playback loop runs less often when the renderers report that they won't be able
+   * to make progress for a while, rather than polling them at a fixed interval.
+   */
+  @Test
+  public void testRenderingIntervalFollowsRendererDurationToProgress() throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    long playbackDurationSeconds =
+        TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / C.MICROS_PER_SECOND;
+    RenderCountingRenderer pollingRenderer =
+        new RenderCountingRenderer(Renderer.DEFAULT_DURATION_TO_PROGRESS_US);
+    RenderCountingRenderer schedulingRenderer =
+        new RenderCountingRenderer(/* durationToProgressUs= */ 50_000);
+
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(pollingRenderer)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(schedulingRenderer)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+
+    // The loop runs every 10ms when polling, and every 50ms when scheduled by the renderer.
+    assertThat(pollingRenderer.renderCount / playbackDurationSeconds).isAtLeast(90);
+    assertThat(schedulingRenderer.renderCount / playbackDurationSeconds).isAtMost(25);
+  }
+
+  @Test
+  public void testRenderingIntervalIsBoundedWhenRendererCannotProgressForLongTime()
+      throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    long playbackDurationSeconds =
+        TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US / C.MICROS_PER_SECOND;
+    RenderCountingRenderer renderer =
+        new RenderCountingRenderer(/* durationToProgressUs= */ C.MICROS_PER_SECOND);
+
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(renderer)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+
+    // The loop still runs at least every 100ms, to keep the playback state up to date.
+    assertThat(renderer.renderCount / playbackDurationSeconds).isAtLeast(10);
+  }
+
   @Test
   public void testRepreparationGivesFreshSourceInfo() throws Exception {
     FakeRenderer renderer = new FakeRenderer(Builder.VIDEO_FORMAT);
@@ -2810,4 +2862,40 @@ public final class ExoPlayerTest {
       messageCount++;
     }
   }
+
+  /**
+   * {@link FakeRenderer} that counts calls to {@link #render(long, long)}, and reports a fixed
+   * duration until it can make progress. The renderer doesn't end until the playback position
+   * reaches the end of the default window, so that it's rendered throughout playback.
+   */
+  private static final class RenderCountingRenderer extends FakeRenderer {
+
+    private final long durationToProgressUs;
+
+    private long positionUs;
+
+    public int renderCount;
+
+    public RenderCountingRenderer(long durationToProgressUs) {
+      super(Builder.VIDEO_FORMAT);
+      this.durationToProgressUs = durationToProgressUs;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+      this.positionUs = positionUs;
+      renderCount++;
+      super.render(positionUs, elapsedRealtimeUs);
+    }
+
+    @Override
+    public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+      return durationToProgressUs;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return super.isEnded() && positionUs >= TimelineWindowDefinition.DEFAULT_WINDOW_DURATION_US;
+    }
+  }
 }
@@ -25,9 +25,11 @@ import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -95,6 +97,72 @@ public class DefaultExtractorInputTest {
     assertThat(Arrays.equals(TEST_DATA, target)).isTrue();
   }
 
+  @Test
+  public void testReadToByteBuffer() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    ByteBuffer target = ByteBuffer.allocateDirect(TEST_DATA.length);
+    // We expect to perform three reads of three bytes, as setup in buildTestDataSource.
+    assertThat(input.read(target, TEST_DATA.length)).isEqualTo(3);
+    assertThat(input.read(target, TEST_DATA.length - 3)).isEqualTo(3);
+    assertThat(input.read(target, TEST_DATA.length - 6)).isEqualTo(3);
+    assertThat(input.getPosition()).isEqualTo(TEST_DATA.length);
+    // Check the read data is correct.
+    byte[] readData = new byte[TEST_DATA.length];
+    target.flip();
+    target.get(readData);
+    assertThat(readData).isEqualTo(TEST_DATA);
+    // Check we're now indicated that the end of input is reached.
+    target.clear();
+    assertThat(input.read(target, TEST_DATA.length)).isEqualTo(RESULT_END_OF_INPUT);
+    // The data source doesn't support reads into byte buffers, so the data was copied.
+    assertThat(input.getBytesCopied()).isEqualTo(TEST_DATA.length);
+  }
+
+  @Test
+  public void testReadToByteBufferFromByteBufferDataSource() throws Exception {
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(TEST_DATA);
+    dataSource.open(new DataSpec(Uri.parse(TEST_URI)));
+    DefaultExtractorInput input = new DefaultExtractorInput(dataSource, 0, TEST_DATA.length);
+    ByteBuffer target = ByteBuffer.allocateDirect(TEST_DATA.length);
+
+    assertThat(input.read(target, TEST_DATA.length)).isEqualTo(TEST_DATA.length);
+
+    byte[] readData = new byte[TEST_DATA.length];
+    target.flip();
+    target.get(readData);
+    assertThat(readData).isEqualTo(TEST_DATA);
+    assertThat(input.getBytesCopied()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReadPeekedToByteBuffer() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    ByteBuffer target = ByteBuffer.allocate(TEST_DATA.length);
+
+    input.advancePeekPosition(5);
+
+    assertThat(input.read(target, TEST_DATA.length)).isEqualTo(5);
+    assertThat(input.read(target, TEST_DATA.length - 5)).isEqualTo(1);
+    assertThat(input.read(target, TEST_DATA.length - 6)).isEqualTo(3);
+    assertThat(target.array()).isEqualTo(TEST_DATA);
+  }
+
+  @Test
+  public void testBytesCopied() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    byte[] target = new byte[TEST_DATA.length];
+
+    // Data read directly from the data source isn't copied.
+    input.readFully(target, 0, 3);
+    assertThat(input.getBytesCopied()).isEqualTo(0);
+    // Peeked data is copied from the peek buffer when it's read, but not when it's skipped.
+    input.advancePeekPosition(6);
+    input.readFully(target, 3, 2);
+    input.skipFully(1);
+    input.readFully(target, 6, 3);
+    assertThat(input.getBytesCopied()).isEqualTo(5);
+  }
+
   @Test
   public void testReadFullyOnce() throws Exception {
     DefaultExtractorInput input = createDefaultExtractorInput();
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link SampleTableDecoder}. */
+@RunWith(AndroidJUnit4.class)
+public final class SampleTableDecoderTest {
+
+  private static final String ATOM_HEADER = "000000000000000000000000";
+  private static final int ATOM_HEADER_SIZE = 12;
+
+  // Seven samples with sizes 1 to 7.
+  private static final String STSZ =
+      ATOM_HEADER
+          + "00000000"
+          + "00000007"
+          + "00000001000000020000000300000004000000050000000600000007";
+  // Three chunks at offsets 1000, 2000 and 3000.
+  private static final String STCO = ATOM_HEADER + "00000003" + "000003E8000007D000000BB8";
+  // Three samples in the first chunk, and two in each of the others.
+  private static final String STSC =
+      ATOM_HEADER + "00000002" + "000000010000000300000001" + "000000020000000200000001";
+  // Three samples with a duration of 10, followed by four with a duration of 20.
+  private static final String STTS =
+      ATOM_HEADER + "00000002" + "000000030000000A" + "0000000400000014";
+  // Two samples with an offset of 5, a run of no samples, and five samples with an offset of 1.
+  private static final String CTTS =
+      ATOM_HEADER + "00000003" + "0000000200000005" + "0000000000000064" + "0000000500000001";
+  // The first and fifth samples are sync samples.
+  private static final String STSS = ATOM_HEADER + "00000002" + "0000000100000005";
+
+  @Test
+  public void testDecodeSamples() {
+    SampleTableDecoder decoder = createDecoder(/* hasCtts= */ true, /* hasStss= */ true);
+
+    assertThat(decoder.sampleCount).isEqualTo(7);
+    assertThat(decoder.maximumSize).isEqualTo(7);
+    assertThat(decoder.duration).isEqualTo(111);
+    long[] expectedOffsets = new long[] {1000, 1001, 1003, 2000, 2004, 3000, 3006};
+    long[] expectedTimestamps = new long[] {5, 15, 21, 31, 51, 71, 91};
+    for (int i = 0; i < decoder.sampleCount; i++) {
+      assertThat(decoder.getOffset(i)).isEqualTo(expectedOffsets[i]);
+      assertThat(decoder.getSize(i)).isEqualTo(i + 1);
+      assertThat(decoder.getTimestamp(i)).isEqualTo(expectedTimestamps[i]);
+      assertThat(decoder.isSynchronizationSample(i)).isEqualTo(i == 0 || i == 4);
+    }
+  }
+
+  @Test
+  public void testDecodeSamplesOutOfOrder() {
+    SampleTableDecoder decoder = createDecoder(/* hasCtts= */ true, /* hasStss= */ true);
+
+    assertThat(decoder.getOffset(6)).isEqualTo(3006);
+    assertThat(decoder.getOffset(2)).isEqualTo(1003);
+    assertThat(decoder.getOffset(0)).isEqualTo(1000);
+    assertThat(decoder.getOffset(1)).isEqualTo(1001);
+    assertThat(decoder.getOffset(4)).isEqualTo(2004);
+    assertThat(decoder.getOffset(5)).isEqualTo(3000);
+    assertThat(decoder.getOffset(3)).isEqualTo(2000);
+  }
+
+  @Test
+  public void testDecodeSamplesWithoutCttsOrStss() {
+    SampleTableDecoder decoder = createDecoder(/* hasCtts= */ false, /* hasStss= */ false);
+
+    assertThat(decoder.duration).isEqualTo(110);
+    long[] expectedTimestamps = new long[] {0, 10, 20, 30, 50, 70, 90};
+    for (int i = 0; i < decoder.sampleCount; i++) {
+      assertThat(decoder.getTimestamp(i)).isEqualTo(expectedTimestamps[i]);
+      assertThat(decoder.isSynchronizationSample(i)).isTrue();
+      assertThat(decoder.getIndexOfEarlierOrEqualSynchronizationSample(i)).isEqualTo(i);
+      assertThat(decoder.getIndexOfLaterOrEqualSynchronizationSample(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testSynchronizationSampleLookups() {
+    SampleTableDecoder decoder = createDecoder(/* hasCtts= */ true, /* hasStss= */ true);
+
+    assertThat(decoder.getIndexOfEarlierOrEqualSynchronizationSample(0)).isEqualTo(0);
+    assertThat(decoder.getIndexOfEarlierOrEqualSynchronizationSample(3)).isEqualTo(0);
+    assertThat(decoder.getIndexOfEarlierOrEqualSynchronizationSample(4)).isEqualTo(4);
+    assertThat(decoder.getIndexOfEarlierOrEqualSynchronizationSample(6)).isEqualTo(4);
+    assertThat(decoder.getIndexOfLaterOrEqualSynchronizationSample(1)).isEqualTo(4);
+    assertThat(decoder.getIndexOfLaterOrEqualSynchronizationSample(4)).isEqualTo(4);
+    assertThat(decoder.getIndexOfLaterOrEqualSynchronizationSample(5)).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void testBinarySearchCeilTimestamp() {
+    SampleTableDecoder decoder = createDecoder(/* hasCtts= */ true, /* hasStss= */ true);
+
+    assertThat(decoder.binarySearchCeilTimestamp(21, /* inclusive= */ true, false)).isEqualTo(2);
+    assertThat(decoder.binarySearchCeilTimestamp(21, /* inclusive= */ false, false)).isEqualTo(3);
+    assertThat(decoder.binarySearchCeilTimestamp(22, /* inclusive= */ true, false)).isEqualTo(3);
+    assertThat(decoder.binarySearchCeilTimestamp(0, /* inclusive= */ true, false)).isEqualTo(0);
+    assertThat(decoder.binarySearchCeilTimestamp(100, true, /* stayInBounds= */ false))
+        .isEqualTo(7);
+    assertThat(decoder.binarySearchCeilTimestamp(100, true, /* stayInBounds= */ true))
+        .isEqualTo(6);
+  }
+
+  @Test
+  public void testDecodeManyRuns() {
+    // Chunk i holds (i % 3) + 1 samples of size (j % 5) + 1, where j is the sample index, and
+    // sample j has a duration of (j % 4) + 1. The first sample of each chunk is a sync sample.
+    // Every run based box has an entry per chunk or sample, so that samples are resolved through
+    // the index of every box.
+    int chunkCount = 100;
+    int sampleCount = 0;
+    for (int i = 0; i < chunkCount; i++) {
+      sampleCount += (i % 3) + 1;
+    }
+    ByteBuffer stsz = createBox(8 + 4 * sampleCount).putInt(0).putInt(sampleCount);
+    ByteBuffer stco = createBox(4 + 4 * chunkCount).putInt(chunkCount);
+    ByteBuffer stsc = createBox(4 + 12 * chunkCount).putInt(chunkCount);
+    ByteBuffer stts = createBox(4 + 8 * sampleCount).putInt(sampleCount);
+    ByteBuffer stss = createBox(4 + 4 * chunkCount).putInt(chunkCount);
+    long[] expectedOffsets = new long[sampleCount];
+    long[] expectedTimestamps = new long[sampleCount];
+    boolean[] expectedSynchronizationSamples = new boolean[sampleCount];
+    int sampleIndex = 0;
+    long timestamp = 0;
+    for (int i = 0; i < chunkCount; i++) {
+      int chunkOffset = 10_000 * i;
+      stco.putInt(chunkOffset);
+      stsc.putInt(i + 1).putInt((i % 3) + 1).putInt(1);
+      stss.putInt(sampleIndex + 1);
+      expectedSynchronizationSamples[sampleIndex] = true;
+      for (int j = 0; j < (i % 3) + 1; j++) {
+        int size = (sampleIndex % 5) + 1;
+        int duration = (sampleIndex % 4) + 1;
+        stsz.putInt(size);
+        stts.putInt(1).putInt(duration);
+        expectedOffsets[sampleIndex] = chunkOffset;
+        expectedTimestamps[sampleIndex] = timestamp;
+        chunkOffset += size;
+        timestamp += duration;
+        sampleIndex++;
+      }
+    }
+    SampleTableDecoder decoder =
+        new SampleTableDecoder(
+            createTrack(),
+            new AtomParsers.StszSampleSizeBox(new Atom.LeafAtom(Atom.TYPE_stsz, wrap(stsz))),
+            wrap(stco),
+            /* chunkOffsetsAreLongs= */ false,
+            wrap(stsc),
+            wrap(stts),
+            /* ctts= */ null,
+            wrap(stss));
+
+    assertThat(decoder.sampleCount).isEqualTo(sampleCount);
+    assertThat(decoder.duration).isEqualTo(timestamp);
+    for (int i = sampleCount - 1; i >= 0; i--) {
+      assertThat(decoder.getOffset(i)).isEqualTo(expectedOffsets[i]);
+      assertThat(decoder.getTimestamp(i)).isEqualTo(expectedTimestamps[i]);
+      assertThat(decoder.isSynchronizationSample(i)).isEqualTo(expectedSynchronizationSamples[i]);
+    }
+    for (int i = 0; i < sampleCount; i++) {
+      assertThat(decoder.getOffset(i)).isEqualTo(expectedOffsets[i]);
+    }
+  }
+
+  private static SampleTableDecoder createDecoder(boolean hasCtts, boolean hasStss) {
+    return new SampleTableDecoder(
+        createTrack(),
+        new AtomParsers.StszSampleSizeBox(new Atom.LeafAtom(Atom.TYPE_stsz, fromHex(STSZ))),
+        fromHex(STCO),
+        /* chunkOffsetsAreLongs= */ false,
+        fromHex(STSC),
+        fromHex(STTS),
+        hasCtts ? fromHex(CTTS) : null,
+        hasStss ? fromHex(STSS) : null);
+  }
+
+  private static Track createTrack() {
+    Format format =
+        Format.createVideoSampleFormat(
+            /* id= */ null,
+            MimeTypes.VIDEO_H264,
+            /* codecs= */ null,
+            /* bitrate= */ Format.NO_VALUE,
+            /* maxInputSize= */ Format.NO_VALUE,
+            /* width= */ 320,
+            /* height= */ 240,
+            /* frameRate= */ Format.NO_VALUE,
+            /* initializationData= */ null,
+            /* drmInitData= */ null);
+    return new Track(
+        /* id= */ 1,
+        C.TRACK_TYPE_VIDEO,
+        /* timescale= */ 1000,
+        /* movieTimescale= */ 1000,
+        /* durationUs= */ C.TIME_UNSET,
+        format,
+        Track.TRANSFORMATION_NONE,
+        /* sampleDescriptionEncryptionBoxes= */ null,
+        /* nalUnitLengthFieldLength= */ 4,
+        /* editListDurations= */ null,
+        /* editListMediaTimes= */ null);
+  }
+
+  private static ParsableByteArray fromHex(String hexString) {
+    return new ParsableByteArray(Util.getBytesFromHexString(hexString));
+  }
+
+  private static ByteBuffer createBox(int payloadSize) {
+    ByteBuffer box = ByteBuffer.allocate(ATOM_HEADER_SIZE + payloadSize);
+    box.position(ATOM_HEADER_SIZE);
+    return box;
+  }
+
+  private static ParsableByteArray wrap(ByteBuffer box) {
+    return new ParsableByteArray(box.array());
+  }
+}
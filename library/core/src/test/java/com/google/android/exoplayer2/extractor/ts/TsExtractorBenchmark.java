@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Log;
+import java.util.Locale;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link TsExtractor} on the transport stream test assets.
+ *
+ * <p>Each asset is extracted a number of times to warm up, and then a number of measured times,
+ * in each of the extractor's modes. The output of every measured extraction is checked against
+ * that of the first. Results are logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class TsExtractorBenchmark {
+
+  private static final String TAG = "TsExtractorBenchmark";
+
+  private static final String[] ASSETS =
+      new String[] {"ts/sample.ts", "ts/sample_with_sdt.ts", "ts/bbb_2500ms.ts"};
+  private static final int[] MODES =
+      new int[] {TsExtractor.MODE_MULTI_PMT, TsExtractor.MODE_SINGLE_PMT, TsExtractor.MODE_HLS};
+  private static final int WARMUP_ITERATIONS = 10;
+  private static final int MEASURED_ITERATIONS = 20;
+
+  @Test
+  public void benchmarkAssets() throws Exception {
+    for (String asset : ASSETS) {
+      byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), asset);
+      for (int mode : MODES) {
+        benchmark(asset, mode, data);
+      }
+    }
+  }
+
+  private static void benchmark(String asset, int mode, byte[] data) throws Exception {
+    FakeExtractorOutput expectedOutput = extract(mode, data);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      extract(mode, data);
+    }
+    long durationNs = 0;
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      long startTimeNs = System.nanoTime();
+      FakeExtractorOutput output = extract(mode, data);
+      durationNs += System.nanoTime() - startTimeNs;
+
+      assertThat(output.numberOfTracks).isEqualTo(expectedOutput.numberOfTracks);
+      for (int j = 0; j < output.numberOfTracks; j++) {
+        output.trackOutputs.valueAt(j).assertEquals(expectedOutput.trackOutputs.valueAt(j));
+      }
+    }
+    double durationMs = durationNs / 1e6 / MEASURED_ITERATIONS;
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Extracting %s of %d bytes in mode %d: %.2f ms/op, %.1f MB/s",
+            asset,
+            data.length,
+            mode,
+            durationMs,
+            data.length / 1e3 / durationMs));
+  }
+
+  private static FakeExtractorOutput extract(int mode, byte[] data) throws Exception {
+    TsExtractor tsExtractor = new TsExtractor(mode, /* defaultTsPayloadReaderFlags= */ 0);
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(data)
+            .setSimulateIOErrors(false)
+            .setSimulateUnknownLength(false)
+            .setSimulatePartialReads(false)
+            .build();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    tsExtractor.init(output);
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = tsExtractor.read(input, seekPositionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+      }
+    }
+    return output;
+  }
+}
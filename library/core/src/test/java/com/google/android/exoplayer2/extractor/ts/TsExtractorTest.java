@@ -36,7 +36,12 @@ import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -52,6 +57,60 @@ public final class TsExtractorTest {
     ExtractorAsserts.assertBehavior(TsExtractor::new, "ts/sample.ts");
   }
 
+  @Test
+  public void testSampleWithPayloadParsingExecutor() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(/* nThreads= */ 2);
+    try {
+      ExtractorAsserts.assertBehavior(
+          () ->
+              new TsExtractor(
+                  TsExtractor.MODE_SINGLE_PMT,
+                  new TimestampAdjuster(0),
+                  new DefaultTsPayloadReaderFactory(),
+                  executor),
+          "ts/sample.ts");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSeekWithPayloadParsingQueuedDiscardsQueuedPayloads() throws Exception {
+    QueuingExecutor executor = new QueuingExecutor();
+    TsExtractor tsExtractor = createTsExtractorWithPayloadParsingExecutor(executor);
+    FakeExtractorInput input = createSampleInput();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    tsExtractor.init(output);
+    readUntilPayloadParsingIsQueued(tsExtractor, input, executor);
+    // The reads didn't wait for the payloads they consumed to be parsed.
+    assertThat(getSampleCount(output)).isEqualTo(0);
+
+    tsExtractor.seek(/* position= */ 0, /* timeUs= */ 0);
+    output.clearTrackOutputs();
+    input.reset();
+    executor.runQueuedTasksAndStopQueuing();
+    // The payloads consumed before the seek were discarded.
+    assertThat(getSampleCount(output)).isEqualTo(0);
+
+    readToEnd(tsExtractor, input);
+    output.assertOutput(ApplicationProvider.getApplicationContext(), "ts/sample.ts.0.dump");
+  }
+
+  @Test
+  public void testReleaseWithPayloadParsingQueuedDiscardsQueuedPayloads() throws Exception {
+    QueuingExecutor executor = new QueuingExecutor();
+    TsExtractor tsExtractor = createTsExtractorWithPayloadParsingExecutor(executor);
+    FakeExtractorInput input = createSampleInput();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    tsExtractor.init(output);
+    readUntilPayloadParsingIsQueued(tsExtractor, input, executor);
+
+    tsExtractor.release();
+    executor.runQueuedTasksAndStopQueuing();
+
+    assertThat(getSampleCount(output)).isEqualTo(0);
+  }
+
   @Test
   public void testStreamWithJunkData() throws Exception {
     Random random = new Random(0);
@@ -135,6 +194,56 @@ public final class TsExtractorTest {
     assertThat(factory.sdtReader.consumedSdts).isEqualTo(2);
   }
 
+  private static TsExtractor createTsExtractorWithPayloadParsingExecutor(Executor executor) {
+    return new TsExtractor(
+        TsExtractor.MODE_SINGLE_PMT,
+        new TimestampAdjuster(0),
+        new DefaultTsPayloadReaderFactory(),
+        executor);
+  }
+
+  private static FakeExtractorInput createSampleInput() throws IOException {
+    return new FakeExtractorInput.Builder()
+        .setData(TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "ts/sample.ts"))
+        .setSimulateIOErrors(false)
+        .setSimulateUnknownLength(false)
+        .setSimulatePartialReads(false)
+        .build();
+  }
+
+  private static void readUntilPayloadParsingIsQueued(
+      TsExtractor tsExtractor, FakeExtractorInput input, QueuingExecutor executor)
+      throws Exception {
+    PositionHolder seekPositionHolder = new PositionHolder();
+    while (!executor.hasQueuedTasks()) {
+      int readResult = tsExtractor.read(input, seekPositionHolder);
+      assertThat(readResult).isNotEqualTo(Extractor.RESULT_END_OF_INPUT);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+      }
+    }
+  }
+
+  private static void readToEnd(TsExtractor tsExtractor, FakeExtractorInput input)
+      throws Exception {
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = tsExtractor.read(input, seekPositionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+      }
+    }
+  }
+
+  private static int getSampleCount(FakeExtractorOutput output) {
+    int sampleCount = 0;
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      sampleCount += output.trackOutputs.valueAt(i).getSampleCount();
+    }
+    return sampleCount;
+  }
+
   private static void writeJunkData(ByteArrayOutputStream out, int length) {
     for (int i = 0; i < length; i++) {
       if (((byte) i) == TS_SYNC_BYTE) {
@@ -145,6 +254,39 @@ public final class TsExtractorTest {
     }
   }
 
+  /** An {@link Executor} that queues tasks until they're run by the test. */
+  private static final class QueuingExecutor implements Executor {
+
+    private final ArrayDeque<Runnable> queuedTasks;
+    private boolean queuing;
+
+    public QueuingExecutor() {
+      queuedTasks = new ArrayDeque<>();
+      queuing = true;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      if (queuing) {
+        queuedTasks.add(task);
+      } else {
+        task.run();
+      }
+    }
+
+    public boolean hasQueuedTasks() {
+      return !queuedTasks.isEmpty();
+    }
+
+    /** Runs the queued tasks, and runs any further tasks as soon as they're executed. */
+    public void runQueuedTasksAndStopQueuing() {
+      queuing = false;
+      while (!queuedTasks.isEmpty()) {
+        queuedTasks.remove().run();
+      }
+    }
+  }
+
   private static final class CustomTsPayloadReaderFactory implements TsPayloadReader.Factory {
 
     private final boolean provideSdtReader;
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.offline;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import com.google.android.exoplayer2.testutil.StubExoPlayer;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CachePrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class CachePrefetcherTest {
+
+  private static final int WINDOW_COUNT = 3;
+  private static final int TEST_DATA_LENGTH = 100;
+  private static final int TIMEOUT_MS = 10_000;
+  private static final int ASSERT_FALSE_TIME_MS = 100;
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private FakeDataSet fakeDataSet;
+  private FakeClock clock;
+  private FakePlayer player;
+  private List<String> createdDownloaderIds;
+  private CachePrefetcher cachePrefetcher;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache = new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getTestDatabaseProvider());
+    fakeDataSet = new FakeDataSet();
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    TimelineWindowDefinition[] windowDefinitions = new TimelineWindowDefinition[WINDOW_COUNT];
+    for (int i = 0; i < WINDOW_COUNT; i++) {
+      windowDefinitions[i] = new TimelineWindowDefinition(/* periodCount= */ 1, getId(i));
+    }
+    player = new FakePlayer(new FakeTimeline(windowDefinitions));
+    createdDownloaderIds = new ArrayList<>();
+    DownloaderFactory defaultDownloaderFactory =
+        new DefaultDownloaderFactory(
+            new DownloaderConstructorHelper(
+                cache, new FakeDataSource.Factory().setFakeDataSet(fakeDataSet)));
+    cachePrefetcher =
+        new CachePrefetcher(
+            player,
+            request -> {
+              createdDownloaderIds.add(request.id);
+              return defaultDownloaderFactory.createDownloader(request);
+            },
+            window -> {
+              String id = (String) window.tag;
+              return new DownloadRequest(
+                  id,
+                  DownloadRequest.TYPE_PROGRESSIVE,
+                  Uri.parse(id),
+                  /* streamKeys= */ Collections.emptyList(),
+                  /* customCacheKey= */ null,
+                  /* data= */ null);
+            },
+            CachePrefetcher.DEFAULT_PREFETCH_DURATION_US,
+            CachePrefetcher.DEFAULT_PROGRESSIVE_PREFETCH_LENGTH,
+            CachePrefetcher.DEFAULT_MAX_PREFETCH_WINDOW_COUNT,
+            clock);
+  }
+
+  @After
+  public void tearDown() {
+    cachePrefetcher.stop();
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void testPrefetchesNextWindow() throws Exception {
+    for (int i = 0; i < WINDOW_COUNT; i++) {
+      fakeDataSet.setRandomData(getId(i), TEST_DATA_LENGTH);
+    }
+
+    cachePrefetcher.start();
+
+    assertThat(createdDownloaderIds).containsExactly(getId(1));
+    long timeoutMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (cache.getCachedLength(getId(1), /* position= */ 0, TEST_DATA_LENGTH)
+        < TEST_DATA_LENGTH) {
+      assertThat(System.currentTimeMillis()).isLessThan(timeoutMs);
+      Thread.sleep(10);
+    }
+    assertThat(cache.getCachedLength(getId(2), /* position= */ 0, TEST_DATA_LENGTH))
+        .isEqualTo(-TEST_DATA_LENGTH);
+  }
+
+  @Test
+  public void testRestartsPrefetchOfWindowThatBecomesUpcomingAgain() {
+    cachePrefetcher.start();
+    player.currentWindowIndex = 1;
+    cachePrefetcher.onPositionDiscontinuity(Player.DISCONTINUITY_REASON_SEEK);
+    player.currentWindowIndex = 0;
+    cachePrefetcher.onPositionDiscontinuity(Player.DISCONTINUITY_REASON_SEEK);
+
+    assertThat(createdDownloaderIds).containsExactly(getId(1), getId(2), getId(1)).inOrder();
+  }
+
+  @Test
+  public void testFailedPrefetchIsRetriedWithBackoffUpToMaxRetryCount() throws Exception {
+    // The fake data set has no data, so every prefetch fails.
+    cachePrefetcher.start();
+    for (int i = 1; i <= CachePrefetcher.MAX_RETRY_COUNT; i++) {
+      // Wait for the prefetch to fail, and check that it isn't retried before the retry delay.
+      Thread.sleep(ASSERT_FALSE_TIME_MS);
+      clock.advanceTime(i * CachePrefetcher.RETRY_DELAY_MS - 1);
+      onTimelineChanged();
+      assertThat(createdDownloaderIds).hasSize(i);
+
+      clock.advanceTime(1);
+      onTimelineChanged();
+      assertThat(createdDownloaderIds).hasSize(i + 1);
+    }
+
+    Thread.sleep(ASSERT_FALSE_TIME_MS);
+    clock.advanceTime(TIMEOUT_MS * CachePrefetcher.RETRY_DELAY_MS);
+    onTimelineChanged();
+    assertThat(createdDownloaderIds).hasSize(CachePrefetcher.MAX_RETRY_COUNT + 1);
+  }
+
+  private void onTimelineChanged() {
+    cachePrefetcher.onTimelineChanged(
+        player.getCurrentTimeline(), Player.TIMELINE_CHANGE_REASON_DYNAMIC);
+  }
+
+  private static String getId(int windowIndex) {
+    return "window_" + windowIndex;
+  }
+
+  private static final class FakePlayer extends StubExoPlayer {
+
+    private final Timeline timeline;
+
+    public int currentWindowIndex;
+
+    public FakePlayer(Timeline timeline) {
+      this.timeline = timeline;
+    }
+
+    @Override
+    public void addListener(Player.EventListener listener) {
+      // Do nothing. The test calls the listener directly.
+    }
+
+    @Override
+    public void removeListener(Player.EventListener listener) {
+      // Do nothing.
+    }
+
+    @Override
+    public Timeline getCurrentTimeline() {
+      return timeline;
+    }
+
+    @Override
+    public int getCurrentWindowIndex() {
+      return currentWindowIndex;
+    }
+
+    @Override
+    public int getRepeatMode() {
+      return Player.REPEAT_MODE_OFF;
+    }
+
+    @Override
+    public boolean getShuffleModeEnabled() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.extractor.ts.DefaultTsPayloadReaderFactory;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.LoadEventInfo;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.MediaLoadData;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.TimestampAdjuster;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit tests for {@link ProgressiveMediaPeriod}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class ProgressiveMediaPeriodTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final int CONTINUE_LOADING_CHECK_INTERVAL_BYTES = 32 * 1024;
+
+  private HandlerThread playbackThread;
+  private Handler handler;
+  private ProgressiveMediaPeriod mediaPeriod;
+  private SampleStream[] streams;
+
+  @Before
+  public void setUp() {
+    playbackThread = new HandlerThread("ProgressiveMediaPeriodTest");
+    playbackThread.start();
+    handler = new Handler(playbackThread.getLooper());
+  }
+
+  @After
+  public void tearDown() {
+    playbackThread.quit();
+  }
+
+  @Test
+  public void testCancelLoadWithAsyncPayloadParsingDiscardsPendingOutput() throws Exception {
+    byte[] data =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "ts/bbb_2500ms.ts");
+    HoldingExecutor executor = new HoldingExecutor();
+    OutputCheckingExtractor extractor =
+        new OutputCheckingExtractor(
+            new TsExtractor(
+                TsExtractor.MODE_SINGLE_PMT,
+                new TimestampAdjuster(0),
+                new DefaultTsPayloadReaderFactory(),
+                executor));
+    ConditionVariable prepared = new ConditionVariable();
+    ConditionVariable loadingPaused = new ConditionVariable();
+    ConditionVariable loadCanceled = new ConditionVariable();
+    AtomicBoolean continueLoading = new AtomicBoolean(true);
+
+    // Prepare the period, running the payload parsing on the loading thread.
+    handler.post(
+        () -> {
+          EventDispatcher eventDispatcher =
+              new EventDispatcher()
+                  .withParameters(
+                      /* windowIndex= */ 0,
+                      new MediaPeriodId(/* periodUid= */ new Object()),
+                      /* mediaTimeOffsetMs= */ 0);
+          eventDispatcher.addEventListener(
+              handler,
+              new DefaultMediaSourceEventListener() {
+                @Override
+                public void onLoadCanceled(
+                    int windowIndex,
+                    @Nullable MediaPeriodId mediaPeriodId,
+                    LoadEventInfo loadEventInfo,
+                    MediaLoadData mediaLoadData) {
+                  extractor.canceled = true;
+                  loadCanceled.open();
+                }
+              });
+          mediaPeriod =
+              new ProgressiveMediaPeriod(
+                  Uri.EMPTY,
+                  new ByteArrayDataSource(data),
+                  new Extractor[] {extractor},
+                  DrmSessionManager.getDummyDrmSessionManager(),
+                  new DefaultLoadErrorHandlingPolicy(),
+                  eventDispatcher,
+                  (durationUs, isSeekable) -> {},
+                  new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+                  /* customCacheKey= */ null,
+                  CONTINUE_LOADING_CHECK_INTERVAL_BYTES);
+          mediaPeriod.prepare(
+              new MediaPeriod.Callback() {
+                @Override
+                public void onPrepared(MediaPeriod source) {
+                  prepared.open();
+                }
+
+                @Override
+                public void onContinueLoadingRequested(MediaPeriod source) {
+                  if (continueLoading.get() || executor.getHeldTaskCount() == 0) {
+                    source.continueLoading(/* positionUs= */ 0);
+                  } else {
+                    loadingPaused.open();
+                  }
+                }
+              },
+              /* positionUs= */ 0);
+        });
+    assertThat(prepared.block(TIMEOUT_MS)).isTrue();
+
+    // Enable the tracks and wait for the load to pause, holding back the payload parsing so that
+    // there's output pending when the load is canceled.
+    handler.post(
+        () -> {
+          TrackGroupArray trackGroups = mediaPeriod.getTrackGroups();
+          streams = new SampleStream[trackGroups.length];
+          TrackSelection[] selections = new TrackSelection[trackGroups.length];
+          for (int i = 0; i < selections.length; i++) {
+            selections[i] = new FixedTrackSelection(trackGroups.get(i), /* track= */ 0);
+          }
+          mediaPeriod.selectTracks(
+              selections,
+              new boolean[streams.length],
+              streams,
+              new boolean[streams.length],
+              /* positionUs= */ 0);
+          executor.setHolding(true);
+          continueLoading.set(false);
+          mediaPeriod.continueLoading(/* positionUs= */ 0);
+        });
+    assertThat(loadingPaused.block(TIMEOUT_MS)).isTrue();
+    assertThat(executor.getHeldTaskCount()).isGreaterThan(0);
+
+    // Cancel the load by disabling the tracks.
+    handler.post(
+        () ->
+            mediaPeriod.selectTracks(
+                new TrackSelection[streams.length],
+                new boolean[streams.length],
+                streams,
+                new boolean[streams.length],
+                /* positionUs= */ 0));
+    assertThat(loadCanceled.block(TIMEOUT_MS)).isTrue();
+
+    executor.runHeldTasks();
+    assertThat(extractor.outputAfterCanceled).isFalse();
+    handler.post(() -> mediaPeriod.release());
+  }
+
+  /**
+   * An {@link Executor} that runs tasks directly, or holds them to be run later by {@link
+   * #runHeldTasks()}.
+   */
+  private static final class HoldingExecutor implements Executor {
+
+    private final ArrayDeque<Runnable> heldTasks;
+    private boolean holding;
+
+    public HoldingExecutor() {
+      heldTasks = new ArrayDeque<>();
+    }
+
+    public synchronized void setHolding(boolean holding) {
+      this.holding = holding;
+    }
+
+    public synchronized int getHeldTaskCount() {
+      return heldTasks.size();
+    }
+
+    public void runHeldTasks() {
+      Runnable task;
+      while ((task = pollHeldTask()) != null) {
+        task.run();
+      }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      synchronized (this) {
+        if (holding) {
+          heldTasks.add(task);
+          return;
+        }
+      }
+      task.run();
+    }
+
+    private synchronized Runnable pollHeldTask() {
+      return heldTasks.poll();
+    }
+  }
+
+  /** An {@link Extractor} that records whether its output is written to once it's canceled. */
+  private static final class OutputCheckingExtractor implements Extractor, ExtractorOutput {
+
+    private final Extractor extractor;
+
+    public volatile boolean canceled;
+    public volatile boolean outputAfterCanceled;
+
+    private ExtractorOutput output;
+
+    public OutputCheckingExtractor(Extractor extractor) {
+      this.extractor = extractor;
+    }
+
+    // Extractor implementation.
+
+    @Override
+    public boolean sniff(ExtractorInput input) throws IOException, InterruptedException {
+      return extractor.sniff(input);
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      this.output = output;
+      extractor.init(this);
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition)
+        throws IOException, InterruptedException {
+      return extractor.read(input, seekPosition);
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+      extractor.seek(position, timeUs);
+    }
+
+    @Override
+    public void release() {
+      extractor.release();
+    }
+
+    // ExtractorOutput implementation.
+
+    @Override
+    public TrackOutput track(int id, int type) {
+      TrackOutput trackOutput = output.track(id, type);
+      return new TrackOutput() {
+        @Override
+        public void format(Format format) {
+          onOutput();
+          trackOutput.format(format);
+        }
+
+        @Override
+        public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+            throws IOException, InterruptedException {
+          onOutput();
+          return trackOutput.sampleData(input, length, allowEndOfInput);
+        }
+
+        @Override
+        public void sampleData(ParsableByteArray data, int length) {
+          onOutput();
+          trackOutput.sampleData(data, length);
+        }
+
+        @Override
+        public void sampleMetadata(
+            long timeUs,
+            @C.BufferFlags int flags,
+            int size,
+            int offset,
+            @Nullable CryptoData cryptoData) {
+          onOutput();
+          trackOutput.sampleMetadata(timeUs, flags, size, offset, cryptoData);
+        }
+      };
+    }
+
+    @Override
+    public void endTracks() {
+      output.endTracks();
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      output.seekMap(seekMap);
+    }
+
+    private void onOutput() {
+      if (canceled) {
+        outputAfterCanceled = true;
+      }
+    }
+  }
+}
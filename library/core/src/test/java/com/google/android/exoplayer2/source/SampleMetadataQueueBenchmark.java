@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.source.SampleMetadataQueue.SampleExtrasHolder;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link SampleMetadataQueue} when samples are committed by a loading
+ * thread while they're read by a playback thread, and when they're committed and read by the same
+ * thread without contention.
+ *
+ * <p>The test thread simulates the playback thread, which peeks and reads the queued samples and
+ * periodically discards the samples it has read. Results are logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class SampleMetadataQueueBenchmark {
+
+  private static final String TAG = "SampleMetadataQueueBenchmark";
+
+  private static final int SAMPLE_COUNT = 200_000;
+  private static final int SAMPLES_PER_DISCARD = 64;
+  private static final long SAMPLE_DURATION_US = 10_000;
+  private static final int SAMPLE_SIZE = 1024;
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int MEASURED_ITERATIONS = 5;
+  private static final Format FORMAT =
+      Format.createSampleFormat(/* id= */ null, MimeTypes.VIDEO_H264, /* subsampleOffsetUs= */ 0);
+
+  @Test
+  public void benchmarkConcurrentLoading() throws Exception {
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      runBenchmark("Concurrent loading", executorService);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void benchmarkLoadingThenReading() throws Exception {
+    runBenchmark("Loading then reading", /* executorService= */ null);
+  }
+
+  /**
+   * Runs the benchmark, committing samples on {@code executorService}, or on the test thread
+   * before they're read if {@code executorService} is null.
+   */
+  private static void runBenchmark(String name, ExecutorService executorService)
+      throws Exception {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      runIteration(executorService);
+    }
+    long totalDurationNs = 0;
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      totalDurationNs += runIteration(executorService);
+    }
+    long sampleCount = (long) MEASURED_ITERATIONS * SAMPLE_COUNT;
+    Log.i(
+        TAG,
+        name
+            + ": "
+            + (sampleCount * 1_000_000_000L / totalDurationNs)
+            + " samples committed and read per second");
+  }
+
+  /** Runs a single iteration, returning its duration in nanoseconds. */
+  private static long runIteration(ExecutorService executorService) throws Exception {
+    SampleMetadataQueue sampleMetadataQueue = new SampleMetadataQueue();
+    long startTimeNs = System.nanoTime();
+    Future<?> loadFuture = null;
+    if (executorService != null) {
+      loadFuture = executorService.submit(() -> commitSamples(sampleMetadataQueue));
+    } else {
+      commitSamples(sampleMetadataQueue);
+    }
+
+    FormatHolder formatHolder = new FormatHolder();
+    DecoderInputBuffer buffer =
+        new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+    SampleExtrasHolder extrasHolder = new SampleExtrasHolder();
+    Format downstreamFormat = null;
+    long lastTimeUs = C.TIME_UNSET;
+    int readCount = 0;
+    while (true) {
+      sampleMetadataQueue.peekNext(downstreamFormat);
+      buffer.clear();
+      int result =
+          sampleMetadataQueue.read(
+              formatHolder,
+              buffer,
+              /* formatRequired= */ false,
+              /* allowOnlyClearBuffers= */ false,
+              /* loadingFinished= */ false,
+              downstreamFormat,
+              extrasHolder);
+      if (result == C.RESULT_FORMAT_READ) {
+        downstreamFormat = formatHolder.format;
+      } else if (result == C.RESULT_BUFFER_READ) {
+        if (buffer.isEndOfStream()) {
+          break;
+        }
+        assertThat(buffer.timeUs).isGreaterThan(lastTimeUs);
+        lastTimeUs = buffer.timeUs;
+        if (++readCount % SAMPLES_PER_DISCARD == 0) {
+          sampleMetadataQueue.discardToRead();
+        }
+      }
+    }
+    long durationNs = System.nanoTime() - startTimeNs;
+    if (loadFuture != null) {
+      loadFuture.get();
+    }
+    assertThat(readCount).isEqualTo(SAMPLE_COUNT);
+    return durationNs;
+  }
+
+  private static Void commitSamples(SampleMetadataQueue sampleMetadataQueue) {
+    sampleMetadataQueue.format(FORMAT);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      int flags = C.BUFFER_FLAG_KEY_FRAME;
+      if (i == SAMPLE_COUNT - 1) {
+        flags |= C.BUFFER_FLAG_LAST_SAMPLE;
+      }
+      sampleMetadataQueue.commitSample(
+          /* timeUs= */ i * SAMPLE_DURATION_US,
+          flags,
+          /* offset= */ (long) i * SAMPLE_SIZE,
+          SAMPLE_SIZE,
+          /* cryptoData= */ null);
+    }
+    return null;
+  }
+}
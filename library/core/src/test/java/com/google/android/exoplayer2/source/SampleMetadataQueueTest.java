@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.source.SampleMetadataQueue.SampleExtrasHolder;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SampleMetadataQueue}. */
+@RunWith(AndroidJUnit4.class)
+public final class SampleMetadataQueueTest {
+
+  private static final long TIMEOUT_MS = 60_000;
+  private static final int COMMIT_COUNT = 500_000;
+  private static final long SAMPLE_DURATION_US = 10_000;
+  private static final int SAMPLES_PER_KEYFRAME = 4;
+  private static final int MAX_UNREAD_SAMPLE_COUNT = 16;
+  private static final Format FORMAT =
+      Format.createSampleFormat(/* id= */ null, MimeTypes.VIDEO_H264, /* subsampleOffsetUs= */ 0);
+
+  /**
+   * Commits, splices and discards upstream samples on a loading thread while the test thread
+   * reads, advances and discards them, and checks that each sample is consumed once, in order, and
+   * is the sample that the loading thread left at its index.
+   */
+  @Test
+  public void testConcurrentLoadingAndReading() throws Exception {
+    SampleMetadataQueue queue = new SampleMetadataQueue();
+    // The absolute index of each sample is at most the number of samples committed before it.
+    int maxSampleCount = COMMIT_COUNT + 1;
+    long[] committedSampleIds = new long[maxSampleCount];
+    long[] readSampleIds = new long[maxSampleCount];
+    long[] readTimesUs = new long[maxSampleCount];
+    Arrays.fill(readSampleIds, C.INDEX_UNSET);
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> loading =
+          executorService.submit(() -> load(queue, new Random(/* seed= */ 0), committedSampleIds));
+
+      Random random = new Random(/* seed= */ 1);
+      FormatHolder formatHolder = new FormatHolder();
+      DecoderInputBuffer buffer =
+          new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+      SampleExtrasHolder extrasHolder = new SampleExtrasHolder();
+      Format downstreamFormat = null;
+      // Sample timestamps start from 0.
+      long lastReadTimeUs = -1;
+      long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+      while (true) {
+        assertThat(System.currentTimeMillis()).isLessThan(deadlineMs);
+        // Only this thread moves the read index, so it's stable between the calls below.
+        int readIndex = queue.getReadIndex();
+        long timeUs = lastReadTimeUs + (random.nextInt(8) - 2) * SAMPLE_DURATION_US;
+        int operation = random.nextInt(10);
+        if (operation == 0) {
+          int skipCount =
+              queue.advanceTo(
+                  timeUs,
+                  /* toKeyframe= */ random.nextBoolean(),
+                  /* allowTimeBeyondBuffer= */ false);
+          int expectedSkipCount = skipCount == SampleQueue.ADVANCE_FAILED ? 0 : skipCount;
+          assertThat(queue.getReadIndex()).isEqualTo(readIndex + expectedSkipCount);
+        } else if (operation == 1) {
+          queue.discardTo(timeUs, /* toKeyframe= */ random.nextBoolean(), random.nextBoolean());
+          assertThat(queue.getFirstIndex()).isAtMost(queue.getReadIndex());
+        } else if (operation == 2) {
+          queue.discardToRead();
+          assertThat(queue.getFirstIndex()).isAtMost(queue.getReadIndex());
+        } else {
+          buffer.clear();
+          int result =
+              queue.read(
+                  formatHolder,
+                  buffer,
+                  /* formatRequired= */ false,
+                  /* allowOnlyClearBuffers= */ false,
+                  /* loadingFinished= */ false,
+                  downstreamFormat,
+                  extrasHolder);
+          if (result == C.RESULT_FORMAT_READ) {
+            downstreamFormat = formatHolder.format;
+          } else if (result == C.RESULT_BUFFER_READ) {
+            if (buffer.isEndOfStream()) {
+              break;
+            }
+            assertThat(queue.getReadIndex()).isEqualTo(readIndex + 1);
+            assertThat(readSampleIds[readIndex]).isEqualTo(C.INDEX_UNSET);
+            assertThat(buffer.timeUs).isGreaterThan(lastReadTimeUs);
+            readSampleIds[readIndex] = extrasHolder.offset;
+            readTimesUs[readIndex] = buffer.timeUs;
+            lastReadTimeUs = buffer.timeUs;
+          } else {
+            Thread.yield();
+          }
+        }
+      }
+      loading.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } finally {
+      executorService.shutdown();
+    }
+
+    // Samples before the read index can't be discarded by the loading thread, so every sample that
+    // was read must still be the one committed at its index.
+    int writeIndex = queue.getWriteIndex();
+    assertThat(queue.getReadIndex()).isEqualTo(writeIndex);
+    int readCount = 0;
+    for (int i = 0; i < writeIndex; i++) {
+      if (readSampleIds[i] != C.INDEX_UNSET) {
+        assertWithMessage("Sample " + i).that(readSampleIds[i]).isEqualTo(committedSampleIds[i]);
+        assertWithMessage("Sample " + i)
+            .that(readTimesUs[i])
+            .isEqualTo(getSampleTimeUs(committedSampleIds[i]));
+        readCount++;
+      }
+    }
+    assertThat(readCount).isGreaterThan(0);
+  }
+
+  /**
+   * Commits {@link #COMMIT_COUNT} samples to {@code queue}, randomly splicing and discarding
+   * upstream samples, and then commits the last sample.
+   *
+   * @param queue The queue.
+   * @param random The source of randomness.
+   * @param committedSampleIds Populated with the id of the sample that was last committed at each
+   *     absolute index. A sample's id identifies both the commit and its position in the stream.
+   */
+  private static void load(SampleMetadataQueue queue, Random random, long[] committedSampleIds) {
+    queue.format(FORMAT);
+    // The position in the stream of the next sample to be committed.
+    int position = 0;
+    for (int commitCount = 0; commitCount < COMMIT_COUNT; commitCount++) {
+      // Stay close to the read position, so that splices and discards race with the reads.
+      while (queue.getWriteIndex() - queue.getReadIndex() >= MAX_UNREAD_SAMPLE_COUNT) {
+        Thread.yield();
+      }
+      int operation = random.nextInt(4);
+      if (operation == 0) {
+        int splicePosition = Math.max(0, position - random.nextInt(MAX_UNREAD_SAMPLE_COUNT));
+        if (queue.attemptSplice(splicePosition * SAMPLE_DURATION_US)) {
+          position = splicePosition;
+        }
+      } else if (operation == 1) {
+        int writeIndex = queue.getWriteIndex();
+        queue.discardUpstreamSamples(
+            Math.max(queue.getFirstIndex(), writeIndex - random.nextInt(MAX_UNREAD_SAMPLE_COUNT)));
+        int newWriteIndex = queue.getWriteIndex();
+        if (newWriteIndex != writeIndex) {
+          // Continue from the sample after the last one retained.
+          position =
+              newWriteIndex == 0 ? 0 : getSamplePosition(committedSampleIds[newWriteIndex - 1]) + 1;
+        }
+      }
+      commitSample(queue, commitCount, position, /* isLastSample= */ false, committedSampleIds);
+      position++;
+    }
+    commitSample(queue, COMMIT_COUNT, position, /* isLastSample= */ true, committedSampleIds);
+  }
+
+  private static void commitSample(
+      SampleMetadataQueue queue,
+      int commitCount,
+      int position,
+      boolean isLastSample,
+      long[] committedSampleIds) {
+    long sampleId = getSampleId(commitCount, position);
+    int flags = position % SAMPLES_PER_KEYFRAME == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    if (isLastSample) {
+      flags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    committedSampleIds[queue.getWriteIndex()] = sampleId;
+    // The sample id is committed as the sample's offset, so that the consuming thread can read it.
+    queue.commitSample(
+        getSampleTimeUs(sampleId), flags, /* offset= */ sampleId, /* size= */ 1, null);
+  }
+
+  private static long getSampleId(int commitCount, int position) {
+    return ((long) commitCount << 32) | position;
+  }
+
+  private static int getSamplePosition(long sampleId) {
+    return (int) sampleId;
+  }
+
+  private static long getSampleTimeUs(long sampleId) {
+    return getSamplePosition(sampleId) * SAMPLE_DURATION_US;
+  }
+}
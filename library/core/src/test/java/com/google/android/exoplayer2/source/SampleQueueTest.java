@@ -23,16 +23,22 @@ import static com.google.common.truth.Truth.assertThat;
 import static java.lang.Long.MIN_VALUE;
 import static java.util.Arrays.copyOfRange;
 
+import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
 import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DirectBufferAllocator;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import java.util.Arrays;
 import org.junit.After;
@@ -585,6 +591,67 @@ public final class SampleQueueTest {
     assertResult(RESULT_NOTHING_READ, /* allowOnlyClearBuffers= */ false);
   }
 
+  @Test
+  public void testAllowOnlyClearBuffersWithDirectBufferAllocator() {
+    useDirectBufferAllocator();
+    testAllowOnlyClearBuffers();
+  }
+
+  @Test
+  public void testReadMultiSamplesWithDirectBufferAllocator() {
+    useDirectBufferAllocator();
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void testReadMultiSamplesFromExtractorInputWithDirectBufferAllocator() throws Exception {
+    useDirectBufferAllocator();
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder().setData(DATA).setSimulatePartialReads(true).build();
+    int bytesRemaining = DATA.length;
+    while (bytesRemaining > 0) {
+      bytesRemaining -= sampleQueue.sampleData(input, bytesRemaining, /* allowEndOfInput= */ false);
+    }
+    writeTestMetadata(
+        SAMPLE_SIZES, SAMPLE_OFFSETS, SAMPLE_TIMESTAMPS, SAMPLE_FORMATS, SAMPLE_FLAGS);
+
+    assertAllocationCount(10);
+    assertReadTestData();
+  }
+
+  @Test
+  public void testBytesCopiedFromParsableByteArray() {
+    useDirectBufferAllocator();
+    writeTestData();
+
+    assertThat(sampleQueue.getBytesCopied()).isEqualTo(DATA.length);
+    assertThat(sampleQueue.getCommittedSampleCount()).isEqualTo(SAMPLE_SIZES.length);
+  }
+
+  @Test
+  public void testBytesCopiedFromExtractorInputWithDirectBufferAllocator() throws Exception {
+    useDirectBufferAllocator();
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(DATA);
+    dataSource.open(new DataSpec(Uri.EMPTY));
+    DefaultExtractorInput input = new DefaultExtractorInput(dataSource, 0, DATA.length);
+    // Peeked data has to be copied from the input's peek buffer.
+    input.advancePeekPosition(ALLOCATION_SIZE + 1);
+    int bytesRemaining = DATA.length;
+    while (bytesRemaining > 0) {
+      bytesRemaining -= sampleQueue.sampleData(input, bytesRemaining, /* allowEndOfInput= */ false);
+    }
+    writeTestMetadata(
+        SAMPLE_SIZES, SAMPLE_OFFSETS, SAMPLE_TIMESTAMPS, SAMPLE_FORMATS, SAMPLE_FLAGS);
+
+    assertThat(sampleQueue.getBytesCopied()).isEqualTo(ALLOCATION_SIZE + 1);
+    assertThat(sampleQueue.getCommittedSampleCount()).isEqualTo(SAMPLE_SIZES.length);
+    assertReadTestData();
+  }
+
   @Test
   public void testLargestQueuedTimestampWithRead() {
     writeTestData();
@@ -653,6 +720,88 @@ public final class SampleQueueTest {
     assertReadEndOfStream(false);
   }
 
+  @Test
+  public void testReadManySamplesAfterDiscardAndReset() {
+    byte[] sampleData = new byte[] {1};
+    // Write and read enough samples for the metadata queue to grow whilst it's wrapped around.
+    for (int i = 0; i < 1000; i++) {
+      writeSample(sampleData, /* timestampUs= */ i, FORMAT_1, C.BUFFER_FLAG_KEY_FRAME);
+    }
+    assertReadFormat(false, FORMAT_1);
+    for (int i = 0; i < 600; i++) {
+      assertReadSample(/* timeUs= */ i, true, sampleData, 0, 1);
+    }
+    sampleQueue.discardToRead();
+    for (int i = 1000; i < 3000; i++) {
+      writeSample(sampleData, /* timestampUs= */ i, FORMAT_1, C.BUFFER_FLAG_KEY_FRAME);
+    }
+    for (int i = 600; i < 3000; i++) {
+      assertReadSample(/* timeUs= */ i, true, sampleData, 0, 1);
+    }
+    assertNoSamplesToRead(FORMAT_1);
+
+    sampleQueue.reset();
+    for (int i = 0; i < 2000; i++) {
+      writeSample(sampleData, /* timestampUs= */ i, FORMAT_2, C.BUFFER_FLAG_KEY_FRAME);
+    }
+    assertReadFormat(false, FORMAT_2);
+    for (int i = 0; i < 2000; i++) {
+      assertReadSample(/* timeUs= */ i, true, sampleData, 0, 1);
+    }
+    assertNoSamplesToRead(FORMAT_2);
+  }
+
+  @Test
+  public void testAdvanceToAndDiscardToWithManyKeyframes() {
+    byte[] sampleData = new byte[] {1};
+    // Write 100 groups of 30 samples, each starting with a keyframe.
+    for (int i = 0; i < 3000; i++) {
+      int flags = i % 30 == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+      writeSample(sampleData, /* timestampUs= */ i * 1000, FORMAT_1, flags);
+    }
+    assertReadFormat(false, FORMAT_1);
+
+    // Should skip to the keyframe at or before the specified time.
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 1234567, true, false)).isEqualTo(1230);
+    assertReadSample(/* timeUs= */ 1230000, true, sampleData, 0, 1);
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 1500000, true, false)).isEqualTo(269);
+    assertReadSample(/* timeUs= */ 1500000, true, sampleData, 0, 1);
+    // Should fail if there's no keyframe after the read position and before the specified time.
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 1510000, true, false)).isEqualTo(ADVANCE_FAILED);
+    // Should skip to the sample at or before the specified time.
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 1510500, false, false)).isEqualTo(9);
+    assertReadSample(/* timeUs= */ 1510000, false, sampleData, 0, 1);
+
+    // Should discard up to the keyframe before the read position.
+    sampleQueue.discardTo(/* timeUs= */ 2000000, true, true);
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(1500);
+    // Should discard up to the sample at the read position.
+    sampleQueue.discardTo(/* timeUs= */ 2000000, false, true);
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(1511);
+    // Should discard up to the keyframe at or before the specified time.
+    sampleQueue.discardTo(/* timeUs= */ 2345678, true, false);
+    assertThat(sampleQueue.getFirstIndex()).isEqualTo(2340);
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(2340);
+    assertReadSample(/* timeUs= */ 2340000, true, sampleData, 0, 1);
+  }
+
+  @Test
+  public void testAdvanceToWithDecreasingKeyframeTimestamps() {
+    byte[] sampleData = new byte[] {1};
+    long[] timestampsUs = new long[] {0, 3000, 1000, 2000, 4000};
+    for (long timestampUs : timestampsUs) {
+      writeSample(sampleData, timestampUs, FORMAT_1, C.BUFFER_FLAG_KEY_FRAME);
+    }
+    assertReadFormat(false, FORMAT_1);
+
+    // Should stop searching at the first sample after the specified time, as for increasing
+    // timestamps, rather than skipping to a later keyframe.
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 2500, true, false)).isEqualTo(0);
+    assertReadSample(/* timeUs= */ 0, true, sampleData, 0, 1);
+    assertThat(sampleQueue.advanceTo(/* timeUs= */ 3500, true, false)).isEqualTo(2);
+    assertReadSample(/* timeUs= */ 2000, true, sampleData, 0, 1);
+  }
+
   // Internal methods.
 
   /**
@@ -666,10 +815,16 @@ public final class SampleQueueTest {
   /**
    * Writes the specified test data to {@code sampleQueue}.
    */
-  @SuppressWarnings("ReferenceEquality")
   private void writeTestData(byte[] data, int[] sampleSizes, int[] sampleOffsets,
       long[] sampleTimestamps, Format[] sampleFormats, int[] sampleFlags) {
     sampleQueue.sampleData(new ParsableByteArray(data), data.length);
+    writeTestMetadata(sampleSizes, sampleOffsets, sampleTimestamps, sampleFormats, sampleFlags);
+  }
+
+  /** Writes the specified sample metadata to {@code sampleQueue}. */
+  @SuppressWarnings("ReferenceEquality")
+  private void writeTestMetadata(int[] sampleSizes, int[] sampleOffsets, long[] sampleTimestamps,
+      Format[] sampleFormats, int[] sampleFlags) {
     Format format = null;
     for (int i = 0; i < sampleTimestamps.length; i++) {
       if (sampleFormats[i] != format) {
@@ -685,6 +840,16 @@ public final class SampleQueueTest {
     }
   }
 
+  /**
+   * Replaces {@code sampleQueue} with one that uses a {@link DirectBufferAllocator}, and {@code
+   * inputBuffer} with one that uses direct buffers.
+   */
+  private void useDirectBufferAllocator() {
+    allocator = new DirectBufferAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE);
+    sampleQueue = new SampleQueue(allocator);
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+  }
+
   /** Writes a single sample to {@code sampleQueue}. */
   private void writeSample(byte[] data, long timestampUs, Format format, int sampleFlags) {
     sampleQueue.format(format);
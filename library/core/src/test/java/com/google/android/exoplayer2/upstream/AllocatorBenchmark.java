@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the cost of {@link Allocator#allocate()} and {@link Allocator#release(Allocation)} for
+ * {@link DefaultAllocator} and {@link ConcurrentAllocator} when several loading threads allocate
+ * concurrently, and a playback thread releases the allocations.
+ *
+ * <p>Each round, every loading thread allocates a batch of allocations, as when a track is loaded
+ * into its sample queue, while the playback thread releases the batches allocated in the previous
+ * round. Only the allocate and release calls are timed, by the threads that make them. Batches are
+ * handed over between rounds, so no time is spent waiting for another thread while timing.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class AllocatorBenchmark {
+
+  private static final String TAG = "AllocatorBenchmark";
+
+  private static final int TRACK_COUNT = 4;
+  private static final int BATCH_SIZE = 256;
+  private static final int ROUNDS = 200;
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int MEASURED_ITERATIONS = 5;
+
+  @Test
+  public void benchmarkDefaultAllocator() throws Exception {
+    runBenchmark(
+        "DefaultAllocator",
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE));
+  }
+
+  @Test
+  public void benchmarkConcurrentAllocator() throws Exception {
+    runBenchmark(
+        "ConcurrentAllocator",
+        new ConcurrentAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE));
+  }
+
+  private static void runBenchmark(String name, Allocator allocator) throws Exception {
+    // One thread per loading thread, and one for the playback thread.
+    ExecutorService executorService = Executors.newFixedThreadPool(TRACK_COUNT + 1);
+    long[] durationsNs = new long[2];
+    try {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        runIteration(allocator, executorService, new long[2]);
+      }
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        runIteration(allocator, executorService, durationsNs);
+      }
+    } finally {
+      executorService.shutdown();
+    }
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    long allocationCount = (long) MEASURED_ITERATIONS * ROUNDS * TRACK_COUNT * BATCH_SIZE;
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "%s with %d loading threads: %.1f ns per allocate, %.1f ns per release",
+            name,
+            TRACK_COUNT,
+            (double) durationsNs[0] / allocationCount,
+            (double) durationsNs[1] / allocationCount));
+  }
+
+  /**
+   * Runs a single iteration.
+   *
+   * @param allocator The allocator.
+   * @param executorService The executor on which loading and playback threads are simulated.
+   * @param durationsNs Array to whose elements the total time spent allocating and releasing, in
+   *     nanoseconds, are added.
+   */
+  private static void runIteration(
+      Allocator allocator, ExecutorService executorService, long[] durationsNs) throws Exception {
+    Allocation[][] releasableBatches = new Allocation[TRACK_COUNT][];
+    for (int round = 0; round <= ROUNDS; round++) {
+      Allocation[][] allocatedBatches = new Allocation[TRACK_COUNT][];
+      CountDownLatch startLatch = new CountDownLatch(1);
+      List<Future<Long>> allocateFutures = new ArrayList<>();
+      if (round < ROUNDS) {
+        for (int i = 0; i < TRACK_COUNT; i++) {
+          Allocation[] batch = new Allocation[BATCH_SIZE];
+          allocatedBatches[i] = batch;
+          allocateFutures.add(
+              executorService.submit(
+                  () -> {
+                    startLatch.await();
+                    long startTimeNs = System.nanoTime();
+                    for (int j = 0; j < BATCH_SIZE; j++) {
+                      batch[j] = allocator.allocate();
+                    }
+                    return System.nanoTime() - startTimeNs;
+                  }));
+        }
+      }
+      Allocation[][] batchesToRelease = releasableBatches;
+      Future<Long> releaseFuture =
+          executorService.submit(
+              () -> {
+                startLatch.await();
+                long durationNs = 0;
+                for (Allocation[] batch : batchesToRelease) {
+                  if (batch != null) {
+                    long startTimeNs = System.nanoTime();
+                    for (Allocation allocation : batch) {
+                      allocator.release(allocation);
+                    }
+                    durationNs += System.nanoTime() - startTimeNs;
+                  }
+                }
+                return durationNs;
+              });
+      startLatch.countDown();
+      for (Future<Long> allocateFuture : allocateFutures) {
+        durationsNs[0] += allocateFuture.get();
+      }
+      durationsNs[1] += releaseFuture.get();
+      releasableBatches = allocatedBatches;
+    }
+  }
+}
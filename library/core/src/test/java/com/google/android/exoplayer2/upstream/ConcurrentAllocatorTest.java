@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ConcurrentAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class ConcurrentAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int MAGAZINE_SIZE = 4;
+
+  @Test
+  public void testAllocateAndRelease() {
+    ConcurrentAllocator allocator = newAllocator();
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.data).hasLength(ALLOCATION_SIZE);
+    assertThat(allocation2).isNotSameAs(allocation1);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+    allocator.release(new Allocation[] {allocation1, allocation2});
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReleasedAllocationsAreReused() {
+    ConcurrentAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, 3 * MAGAZINE_SIZE);
+    allocator.release(allocations);
+
+    Allocation[] reusedAllocations = allocate(allocator, 3 * MAGAZINE_SIZE);
+
+    assertThat(reusedAllocations).asList().containsExactlyElementsIn(allocations);
+  }
+
+  @Test
+  public void testAllocationsReleasedOnOtherThreadAreReused() throws Exception {
+    ConcurrentAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, 3 * MAGAZINE_SIZE);
+    // Releasing three magazines worth of allocations fills both of this thread's magazines, and
+    // hands the magazine that was filled first over to the shared pool.
+    allocator.release(allocations);
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    Allocation[] reusedAllocations;
+    try {
+      reusedAllocations = executorService.submit(() -> allocate(allocator, MAGAZINE_SIZE)).get();
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(reusedAllocations)
+        .asList()
+        .containsExactlyElementsIn(Arrays.copyOf(allocations, MAGAZINE_SIZE));
+  }
+
+  @Test
+  public void testTrimDiscardsCachedAllocations() {
+    ConcurrentAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    allocator.release(allocations);
+
+    allocator.trim();
+
+    Allocation[] newAllocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    assertThat(newAllocations).asList().containsNoneIn(allocations);
+  }
+
+  @Test
+  public void testTrimRetainsAllocationsCachedByThreadsBeforePooledAllocations() {
+    ConcurrentAllocator allocator = newAllocator();
+    allocator.setTargetBufferSize(2 * MAGAZINE_SIZE * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    allocator.release(allocations);
+
+    allocator.trim();
+
+    // The thread's two magazines are retained, but the magazines in the shared pool are discarded.
+    Allocation[] newAllocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    int reusedCount = 0;
+    for (Allocation allocation : newAllocations) {
+      for (Allocation oldAllocation : allocations) {
+        if (allocation == oldAllocation) {
+          reusedCount++;
+        }
+      }
+    }
+    assertThat(reusedCount).isEqualTo(2 * MAGAZINE_SIZE);
+  }
+
+  @Test
+  public void testTrimDiscardsAllocationsCachedByOtherThreads() throws Exception {
+    ConcurrentAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, 2 * MAGAZINE_SIZE);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    Allocation[] newAllocations;
+    try {
+      // Releasing two magazines worth of allocations fills both of the other thread's magazines.
+      executorService.submit(() -> allocator.release(allocations)).get();
+
+      allocator.trim();
+
+      newAllocations =
+          executorService.submit(() -> allocate(allocator, 2 * MAGAZINE_SIZE)).get();
+    } finally {
+      executorService.shutdown();
+    }
+    assertThat(newAllocations).asList().containsNoneIn(allocations);
+  }
+
+  @Test
+  public void testTrimRetainsTargetBufferSize() {
+    ConcurrentAllocator allocator = newAllocator();
+    allocator.setTargetBufferSize(4 * MAGAZINE_SIZE * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    allocator.release(allocations);
+
+    allocator.trim();
+
+    Allocation[] reusedAllocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    assertThat(reusedAllocations).asList().containsExactlyElementsIn(allocations);
+  }
+
+  @Test
+  public void testResetDiscardsCachedAllocations() {
+    ConcurrentAllocator allocator = newAllocator();
+    allocator.setTargetBufferSize(4 * MAGAZINE_SIZE * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    allocator.release(allocations);
+
+    allocator.reset();
+
+    Allocation[] newAllocations = allocate(allocator, 4 * MAGAZINE_SIZE);
+    assertThat(newAllocations).asList().containsNoneIn(allocations);
+  }
+
+  @Test
+  public void testConcurrentAllocateAndRelease() throws Exception {
+    ConcurrentAllocator allocator = newAllocator();
+    int loaderCount = 4;
+    int allocationsPerLoader = 1000;
+    BlockingQueue<Allocation> loadedAllocations = new ArrayBlockingQueue<>(32);
+    ExecutorService executorService = Executors.newFixedThreadPool(loaderCount);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < loaderCount; i++) {
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int j = 0; j < allocationsPerLoader; j++) {
+                    loadedAllocations.put(allocator.allocate());
+                  }
+                  return null;
+                }));
+      }
+      for (int i = 0; i < loaderCount * allocationsPerLoader; i++) {
+        allocator.release(loadedAllocations.take());
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  private static ConcurrentAllocator newAllocator() {
+    return new ConcurrentAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, MAGAZINE_SIZE);
+  }
+
+  private static Allocation[] allocate(Allocator allocator, int count) {
+    Allocation[] allocations = new Allocation[count];
+    for (int i = 0; i < count; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    return allocations;
+  }
+}
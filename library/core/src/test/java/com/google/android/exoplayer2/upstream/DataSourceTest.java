@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for the default methods of {@link DataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class DataSourceTest {
+
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(16);
+
+  @Test
+  public void testReadIntoArrayBackedByteBuffer() throws IOException {
+    DataSource dataSource = buildTestDataSource();
+    ByteBuffer buffer = ByteBuffer.allocate(TEST_DATA.length + 4);
+    buffer.position(2);
+    // Slice the buffer, so that its array offset isn't 0.
+    buffer = buffer.slice();
+
+    assertThat(dataSource.supportsByteBufferReads()).isFalse();
+    assertReadAll(dataSource, buffer);
+  }
+
+  @Test
+  public void testReadIntoDirectByteBuffer() throws IOException {
+    DataSource dataSource = buildTestDataSource();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(TEST_DATA.length);
+
+    assertReadAll(dataSource, buffer);
+  }
+
+  private static void assertReadAll(DataSource dataSource, ByteBuffer buffer) throws IOException {
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, buffer.remaining())) != C.RESULT_END_OF_INPUT) {
+      assertThat(bytesRead).isGreaterThan(0);
+    }
+    assertThat(buffer.position()).isEqualTo(TEST_DATA.length);
+    byte[] readData = new byte[TEST_DATA.length];
+    buffer.flip();
+    buffer.get(readData);
+    assertThat(readData).isEqualTo(TEST_DATA);
+    dataSource.close();
+  }
+
+  private static DataSource buildTestDataSource() throws IOException {
+    FakeDataSource fakeDataSource = new FakeDataSource();
+    fakeDataSource
+        .getDataSet()
+        .newDefaultData()
+        .appendReadData(Arrays.copyOfRange(TEST_DATA, 0, 5))
+        .appendReadData(Arrays.copyOfRange(TEST_DATA, 5, TEST_DATA.length));
+    fakeDataSource.open(new DataSpec(Uri.EMPTY));
+    return fakeDataSource;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DirectBufferAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DirectBufferAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int ALLOCATIONS_PER_SLAB = 4;
+
+  @Test
+  public void testAllocationsShareDirectSlab() {
+    DirectBufferAllocator allocator = newAllocator();
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.buffer.isDirect()).isTrue();
+    assertThat(allocation1.buffer.capacity()).isEqualTo(ALLOCATIONS_PER_SLAB * ALLOCATION_SIZE);
+    assertThat(allocation1.data).isEmpty();
+    assertThat(allocation2.buffer).isSameAs(allocation1.buffer);
+    assertThat(allocation1.offset).isEqualTo(0);
+    assertThat(allocation2.offset).isEqualTo(ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void testNewSlabCreatedWhenExhausted() {
+    DirectBufferAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, ALLOCATIONS_PER_SLAB + 1);
+
+    assertThat(allocations[ALLOCATIONS_PER_SLAB].buffer).isNotSameAs(allocations[0].buffer);
+    assertThat(allocations[ALLOCATIONS_PER_SLAB].offset).isEqualTo(0);
+    assertThat(allocator.getTotalBytesAllocated())
+        .isEqualTo((ALLOCATIONS_PER_SLAB + 1) * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void testReleasedAllocationsAreReused() {
+    DirectBufferAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, 2 * ALLOCATIONS_PER_SLAB);
+    allocator.release(allocations);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+
+    Allocation[] reusedAllocations = allocate(allocator, 2 * ALLOCATIONS_PER_SLAB);
+
+    assertThat(reusedAllocations).asList().containsExactlyElementsIn(allocations);
+  }
+
+  @Test
+  public void testTrimDiscardsAllocationsBeyondTarget() {
+    DirectBufferAllocator allocator = newAllocator();
+    allocator.setTargetBufferSize(ALLOCATIONS_PER_SLAB * ALLOCATION_SIZE);
+    Allocation[] allocations = allocate(allocator, 2 * ALLOCATIONS_PER_SLAB);
+    allocator.release(allocations);
+
+    allocator.trim();
+
+    Allocation[] newAllocations = allocate(allocator, 2 * ALLOCATIONS_PER_SLAB);
+    int reusedCount = 0;
+    for (Allocation allocation : newAllocations) {
+      for (Allocation oldAllocation : allocations) {
+        if (allocation == oldAllocation) {
+          reusedCount++;
+        }
+      }
+    }
+    assertThat(reusedCount).isEqualTo(ALLOCATIONS_PER_SLAB);
+  }
+
+  @Test
+  public void testTrimFreesUnusedSlabsAndKeepsSlabsInUse() {
+    DirectBufferAllocator allocator = newAllocator();
+    Allocation[] allocations = allocate(allocator, 2 * ALLOCATIONS_PER_SLAB);
+    // Release all of the second slab's allocations and all but one of the first slab's.
+    for (int i = 1; i < allocations.length; i++) {
+      allocator.release(allocations[i]);
+    }
+
+    allocator.trim();
+
+    // The available allocations of the first slab are still handed out.
+    Allocation[] newAllocations = allocate(allocator, ALLOCATIONS_PER_SLAB - 1);
+    for (Allocation allocation : newAllocations) {
+      assertThat(allocation.buffer).isSameAs(allocations[0].buffer);
+    }
+    // The second slab was freed, so a new slab is created once the first is exhausted.
+    Allocation allocation = allocator.allocate();
+    assertThat(allocation.buffer).isNotSameAs(allocations[0].buffer);
+    assertThat(allocation.buffer).isNotSameAs(allocations[ALLOCATIONS_PER_SLAB].buffer);
+  }
+
+  private static DirectBufferAllocator newAllocator() {
+    return new DirectBufferAllocator(
+        /* trimOnReset= */ true, ALLOCATION_SIZE, ALLOCATIONS_PER_SLAB);
+  }
+
+  private static Allocation[] allocate(Allocator allocator, int count) {
+    Allocation[] allocations = new Allocation[count];
+    for (int i = 0; i < count; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    return allocations;
+  }
+}
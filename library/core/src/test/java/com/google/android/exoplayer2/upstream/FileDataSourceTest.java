@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FileDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class FileDataSourceTest {
+
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(10000);
+
+  private File file;
+  private Uri uri;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Util.createTempFile(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(TEST_DATA);
+    }
+    uri = Uri.fromFile(file);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testReadFully() throws Exception {
+    DataSourceAsserts.assertDataSourceContent(
+        new FileDataSource(), new DataSpec(uri), TEST_DATA);
+  }
+
+  @Test
+  public void testReadRange() throws Exception {
+    DataSourceAsserts.assertDataSourceContent(
+        new FileDataSource(),
+        new DataSpec(uri, /* absoluteStreamPosition= */ 100, /* length= */ 1000, /* key= */ null),
+        Arrays.copyOfRange(TEST_DATA, 100, 1100));
+  }
+
+  @Test
+  public void testReadFullyWithMemoryMapping() throws Exception {
+    DataSourceAsserts.assertDataSourceContent(
+        new FileDataSource(/* useMemoryMapping= */ true), new DataSpec(uri), TEST_DATA);
+  }
+
+  @Test
+  public void testReadRangeWithMemoryMapping() throws Exception {
+    DataSourceAsserts.assertDataSourceContent(
+        new FileDataSource(/* useMemoryMapping= */ true),
+        new DataSpec(uri, /* absoluteStreamPosition= */ 100, /* length= */ 1000, /* key= */ null),
+        Arrays.copyOfRange(TEST_DATA, 100, 1100));
+  }
+
+  @Test
+  public void testReadBeyondEndOfFileWithMemoryMapping() throws Exception {
+    FileDataSource dataSource = new FileDataSource(/* useMemoryMapping= */ true);
+    dataSource.open(
+        new DataSpec(
+            uri, /* absoluteStreamPosition= */ 9000, /* length= */ 2000, /* key= */ null));
+    try {
+      assertThat(TestUtil.readToEnd(dataSource))
+          .isEqualTo(Arrays.copyOfRange(TEST_DATA, 9000, TEST_DATA.length));
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void testReadBuffer() throws Exception {
+    FileDataSource dataSource = new FileDataSource(/* useMemoryMapping= */ true);
+    dataSource.open(
+        new DataSpec(uri, /* absoluteStreamPosition= */ 100, /* length= */ 1000, /* key= */ null));
+    try {
+      ByteBuffer buffer = dataSource.readBuffer(/* readLength= */ 600);
+      assertThat(buffer.remaining()).isEqualTo(600);
+      assertThat(buffer.get(0)).isEqualTo(TEST_DATA[100]);
+
+      // Reads through the byte array and buffer APIs should be interleaved correctly.
+      byte[] data = new byte[100];
+      assertThat(dataSource.read(data, /* offset= */ 0, data.length)).isEqualTo(100);
+      assertThat(data).isEqualTo(Arrays.copyOfRange(TEST_DATA, 700, 800));
+
+      buffer = dataSource.readBuffer(/* readLength= */ 600);
+      assertThat(buffer.remaining()).isEqualTo(300);
+      byte[] bufferData = new byte[300];
+      buffer.get(bufferData);
+      assertThat(bufferData).isEqualTo(Arrays.copyOfRange(TEST_DATA, 800, 1100));
+
+      assertThat(dataSource.readBuffer(/* readLength= */ 600)).isNull();
+      assertThat(dataSource.read(data, /* offset= */ 0, data.length))
+          .isEqualTo(C.RESULT_END_OF_INPUT);
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void testReadToDirectBuffer() throws Exception {
+    assertReadRangeToDirectBuffer(new FileDataSource());
+  }
+
+  @Test
+  public void testReadToDirectBufferWithMemoryMapping() throws Exception {
+    assertReadRangeToDirectBuffer(new FileDataSource(/* useMemoryMapping= */ true));
+  }
+
+  private void assertReadRangeToDirectBuffer(FileDataSource dataSource) throws Exception {
+    assertThat(dataSource.supportsByteBufferReads()).isTrue();
+    dataSource.open(
+        new DataSpec(uri, /* absoluteStreamPosition= */ 100, /* length= */ 1000, /* key= */ null));
+    try {
+      // The buffer has more space than the range, so the length of the range must be respected.
+      ByteBuffer buffer = ByteBuffer.allocateDirect(2000);
+      buffer.position(10);
+      int bytesRead = 0;
+      while (bytesRead < 1000) {
+        int result = dataSource.read(buffer, /* readLength= */ 600);
+        assertThat(result).isGreaterThan(0);
+        bytesRead += result;
+      }
+      assertThat(dataSource.read(buffer, /* readLength= */ 600)).isEqualTo(C.RESULT_END_OF_INPUT);
+      assertThat(buffer.position()).isEqualTo(1010);
+      assertThat(buffer.limit()).isEqualTo(2000);
+
+      byte[] data = new byte[1000];
+      buffer.position(10);
+      buffer.get(data);
+      assertThat(data).isEqualTo(Arrays.copyOfRange(TEST_DATA, 100, 1100));
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit tests for {@link Loader}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class LoaderTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private HandlerThread loaderThread;
+  private Handler handler;
+
+  @Before
+  public void setUp() {
+    loaderThread = new HandlerThread("LoaderTest");
+    loaderThread.start();
+    handler = new Handler(loaderThread.getLooper());
+  }
+
+  @After
+  public void tearDown() {
+    loaderThread.quit();
+  }
+
+  @Test
+  public void testCancelAfterLoadEndsDoesNotInterruptLoadOfOtherLoaderSharingThreadPool()
+      throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    Loader firstLoader = new Loader("first", threadPool, LoaderThreadPool.PRIORITY_MEDIA);
+    Loader secondLoader = new Loader("second", threadPool, LoaderThreadPool.PRIORITY_MEDIA);
+    BlockingLoadable firstLoadable = new BlockingLoadable(/* unblocked= */ true);
+    BlockingLoadable secondLoadable = new BlockingLoadable(/* unblocked= */ false);
+    CountDownLatch canceled = new CountDownLatch(1);
+
+    handler.post(
+        () -> {
+          firstLoader.startLoading(
+              firstLoadable, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+          secondLoader.startLoading(
+              secondLoadable, new NoOpCallback(), /* defaultMinRetryCount= */ 0);
+          // The pool has a single thread, so once the second load has started the first load's
+          // run() has returned. Its end message can't have been handled yet, because it's queued
+          // behind this runnable, so the first loader still considers itself to be loading.
+          try {
+            assertThat(secondLoadable.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+          firstLoader.cancelLoading();
+          canceled.countDown();
+        });
+    assertThat(canceled.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    secondLoadable.unblock.countDown();
+
+    assertThat(secondLoadable.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(secondLoadable.interrupted.get()).isFalse();
+    firstLoader.release();
+    secondLoader.release();
+  }
+
+  private static final class BlockingLoadable implements Loadable {
+
+    public final CountDownLatch started;
+    public final CountDownLatch unblock;
+    public final CountDownLatch finished;
+    public final AtomicBoolean interrupted;
+
+    public BlockingLoadable(boolean unblocked) {
+      started = new CountDownLatch(1);
+      unblock = new CountDownLatch(unblocked ? 0 : 1);
+      finished = new CountDownLatch(1);
+      interrupted = new AtomicBoolean();
+    }
+
+    @Override
+    public void cancelLoad() {
+      // Do nothing.
+    }
+
+    @Override
+    public void load() {
+      started.countDown();
+      try {
+        unblock.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        interrupted.set(true);
+      }
+      finished.countDown();
+    }
+  }
+
+  private static final class NoOpCallback implements Loader.Callback<BlockingLoadable> {
+
+    @Override
+    public void onLoadCompleted(
+        BlockingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onLoadCanceled(
+        BlockingLoadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public Loader.LoadErrorAction onLoadError(
+        BlockingLoadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      return Loader.DONT_RETRY;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LoaderThreadPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoaderThreadPoolTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Test
+  public void testTasksOfExecutorServiceRunOneAtATimeInOrder() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(/* maxThreadCount= */ 4);
+    ExecutorService executorService =
+        threadPool.createExecutorService(LoaderThreadPool.PRIORITY_MEDIA);
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger runningCount = new AtomicInteger();
+    AtomicInteger maxRunningCount = new AtomicInteger();
+
+    for (int i = 0; i < 10; i++) {
+      int index = i;
+      executorService.execute(
+          () -> {
+            maxRunningCount.set(Math.max(maxRunningCount.get(), runningCount.incrementAndGet()));
+            order.add(index);
+            runningCount.decrementAndGet();
+          });
+    }
+    executorService.shutdown();
+
+    assertThat(executorService.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(order).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9).inOrder();
+    assertThat(maxRunningCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testHigherPriorityTasksStartFirst() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    ExecutorService blockingExecutorService =
+        threadPool.createExecutorService(LoaderThreadPool.PRIORITY_MEDIA);
+    ExecutorService mediaExecutorService =
+        threadPool.createExecutorService(LoaderThreadPool.PRIORITY_MEDIA);
+    ExecutorService manifestExecutorService =
+        threadPool.createExecutorService(LoaderThreadPool.PRIORITY_MANIFEST);
+    CountDownLatch blockingTaskStarted = new CountDownLatch(1);
+    CountDownLatch unblock = new CountDownLatch(1);
+    CountDownLatch tasksFinished = new CountDownLatch(3);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    // Occupy the only thread, so that the following tasks have to wait.
+    blockingExecutorService.execute(
+        () -> {
+          blockingTaskStarted.countDown();
+          try {
+            unblock.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    assertThat(blockingTaskStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    mediaExecutorService.execute(
+        () -> {
+          order.add("media1");
+          tasksFinished.countDown();
+        });
+    mediaExecutorService.execute(
+        () -> {
+          order.add("media2");
+          tasksFinished.countDown();
+        });
+    manifestExecutorService.execute(
+        () -> {
+          order.add("manifest");
+          tasksFinished.countDown();
+        });
+    unblock.countDown();
+
+    assertThat(tasksFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(order).containsExactly("manifest", "media1", "media2").inOrder();
+  }
+
+  @Test
+  public void testThreadCountIsBounded() throws Exception {
+    int maxThreadCount = 2;
+    int executorServiceCount = 6;
+    LoaderThreadPool threadPool = new LoaderThreadPool(maxThreadCount);
+    AtomicInteger runningCount = new AtomicInteger();
+    AtomicInteger maxRunningCount = new AtomicInteger();
+    CountDownLatch tasksFinished = new CountDownLatch(executorServiceCount);
+
+    for (int i = 0; i < executorServiceCount; i++) {
+      threadPool
+          .createExecutorService(LoaderThreadPool.PRIORITY_MEDIA)
+          .execute(
+              () -> {
+                int count = runningCount.incrementAndGet();
+                synchronized (maxRunningCount) {
+                  maxRunningCount.set(Math.max(maxRunningCount.get(), count));
+                }
+                try {
+                  Thread.sleep(20);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                runningCount.decrementAndGet();
+                tasksFinished.countDown();
+              });
+    }
+
+    assertThat(tasksFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(maxRunningCount.get()).isEqualTo(maxThreadCount);
+  }
+
+  @Test
+  public void testShutdownDoesNotAffectOtherExecutorServices() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(/* maxThreadCount= */ 1);
+    ExecutorService executorService1 =
+        threadPool.createExecutorService(LoaderThreadPool.PRIORITY_MEDIA);
+    ExecutorService executorService2 =
+        threadPool.createExecutorService(LoaderThreadPool.PRIORITY_MEDIA);
+    CountDownLatch taskFinished = new CountDownLatch(1);
+
+    executorService1.shutdown();
+    executorService2.execute(taskFinished::countDown);
+
+    assertThat(executorService1.isTerminated()).isTrue();
+    assertThat(taskFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+}
@@ -33,6 +33,8 @@ import com.google.android.exoplayer2.upstream.FileDataSource;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.NavigableSet;
 import org.junit.After;
@@ -477,6 +479,163 @@ public final class CacheDataSourceTest {
     cacheDataSource.close();
   }
 
+  @Test
+  public void testCoalesceUpstreamRequestsFillsHolesWithSingleRequest() throws Exception {
+    FakeDataSource upstream = new FakeDataSource();
+    upstream.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    // Cache [2, 4) and [6, 8), leaving holes at [0, 2), [4, 6) and [8, 10).
+    CacheUtil.cache(
+        buildDataSpec(/* position= */ 2, /* length= */ 2),
+        cache,
+        /* cacheKeyFactory= */ null,
+        upstream,
+        /* progressListener= */ null,
+        /* isCanceled= */ null);
+    CacheUtil.cache(
+        buildDataSpec(/* position= */ 6, /* length= */ 2),
+        cache,
+        /* cacheKeyFactory= */ null,
+        upstream,
+        /* progressListener= */ null,
+        /* isCanceled= */ null);
+    upstream.getAndClearOpenedDataSpecs();
+    CacheDataSource cacheDataSource =
+        new CacheDataSource(
+            cache,
+            upstream,
+            new FileDataSource(),
+            new CacheDataSink(cache, CACHE_FRAGMENT_SIZE),
+            CacheDataSource.FLAG_COALESCE_UPSTREAM_REQUESTS,
+            /* eventListener= */ null);
+
+    cacheDataSource.open(boundedDataSpec);
+    byte[] data = TestUtil.readToEnd(cacheDataSource);
+    cacheDataSource.close();
+
+    assertThat(data).isEqualTo(TEST_DATA);
+    DataSpec[] openedDataSpecs = upstream.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].position).isEqualTo(0);
+    assertThat(cache.getCachedLength(defaultCacheKey, /* position= */ 0, TEST_DATA.length))
+        .isEqualTo(TEST_DATA.length);
+  }
+
+  @Test
+  public void testCoalesceUpstreamRequestsReadsAhead() throws Exception {
+    FakeDataSource upstream = new FakeDataSource();
+    upstream.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    CacheDataSource cacheDataSource =
+        new CacheDataSource(
+            cache,
+            upstream,
+            new FileDataSource(),
+            new CacheDataSink(cache, CACHE_FRAGMENT_SIZE),
+            CacheDataSource.FLAG_COALESCE_UPSTREAM_REQUESTS,
+            /* eventListener= */ null);
+
+    cacheDataSource.open(buildDataSpec(/* position= */ 0, /* length= */ 4));
+    assertThat(TestUtil.readToEnd(cacheDataSource))
+        .isEqualTo(Arrays.copyOfRange(TEST_DATA, 0, 4));
+    cacheDataSource.close();
+
+    // The rest of the data should have been read ahead into the cache, and the content length
+    // determined when the end of the data was reached.
+    assertThat(cache.getCachedLength(defaultCacheKey, /* position= */ 0, TEST_DATA.length))
+        .isEqualTo(TEST_DATA.length);
+    assertThat(ContentMetadata.getContentLength(cache.getContentMetadata(defaultCacheKey)))
+        .isEqualTo(TEST_DATA.length);
+    upstream.getAndClearOpenedDataSpecs();
+    cacheDataSource.open(buildDataSpec(/* position= */ 4, /* length= */ 6));
+    assertThat(TestUtil.readToEnd(cacheDataSource))
+        .isEqualTo(Arrays.copyOfRange(TEST_DATA, 4, TEST_DATA.length));
+    cacheDataSource.close();
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void testCoalesceUpstreamRequestsReadAheadIsBounded() throws Exception {
+    int dataLength = 2 * (int) CacheDataSource.READ_AHEAD_LENGTH;
+    FakeDataSource upstream = new FakeDataSource();
+    upstream.getDataSet().newDefaultData().appendReadData(TestUtil.buildTestData(dataLength));
+    CacheDataSource cacheDataSource =
+        new CacheDataSource(
+            cache,
+            upstream,
+            new FileDataSource(),
+            new CacheDataSink(cache, CACHE_FRAGMENT_SIZE),
+            CacheDataSource.FLAG_COALESCE_UPSTREAM_REQUESTS,
+            /* eventListener= */ null);
+
+    cacheDataSource.open(buildDataSpec(/* position= */ 0, /* length= */ 4));
+    TestUtil.readToEnd(cacheDataSource);
+    cacheDataSource.close();
+
+    assertThat(cache.getCachedLength(defaultCacheKey, /* position= */ 0, dataLength))
+        .isEqualTo(4 + CacheDataSource.READ_AHEAD_LENGTH);
+  }
+
+  @Test
+  public void testCoalesceUpstreamRequestsReadAheadStopsWhenInterrupted() throws Exception {
+    FakeDataSource upstream = new FakeDataSource();
+    upstream.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    CacheDataSource cacheDataSource =
+        new CacheDataSource(
+            cache,
+            upstream,
+            new FileDataSource(),
+            new CacheDataSink(cache, CACHE_FRAGMENT_SIZE),
+            CacheDataSource.FLAG_COALESCE_UPSTREAM_REQUESTS,
+            /* eventListener= */ null);
+
+    cacheDataSource.open(buildDataSpec(/* position= */ 0, /* length= */ 4));
+    TestUtil.readToEnd(cacheDataSource);
+    Thread.currentThread().interrupt();
+    try {
+      cacheDataSource.close();
+      fail();
+    } catch (InterruptedIOException e) {
+      // Expected.
+    } finally {
+      Thread.interrupted();
+    }
+
+    // Nothing beyond the end of the request should have been read ahead, and the source should
+    // have been closed so that the rest of the data can be requested again.
+    assertThat(cache.getCachedLength(defaultCacheKey, /* position= */ 0, TEST_DATA.length))
+        .isEqualTo(4);
+    upstream.getAndClearOpenedDataSpecs();
+    cacheDataSource.open(buildDataSpec(/* position= */ 4, /* length= */ 6));
+    assertThat(TestUtil.readToEnd(cacheDataSource))
+        .isEqualTo(Arrays.copyOfRange(TEST_DATA, 4, TEST_DATA.length));
+    cacheDataSource.close();
+    assertThat(upstream.getAndClearOpenedDataSpecs()).hasLength(1);
+  }
+
+  @Test
+  public void testReadIntoDirectByteBufferFromCacheAndUpstream() throws Exception {
+    FakeDataSource upstream = new FakeDataSource();
+    upstream.getDataSet().newDefaultData().appendReadData(TEST_DATA);
+    CacheDataSource cacheDataSource = new CacheDataSource(cache, upstream, /* flags= */ 0);
+    // Cache the start of the data.
+    cacheDataSource.open(buildDataSpec(/* position= */ 0, /* length= */ 4));
+    TestUtil.readToEnd(cacheDataSource);
+    cacheDataSource.close();
+
+    cacheDataSource.open(buildDataSpec(/* position= */ 0, TEST_DATA.length));
+    // The cached data is read from a FileDataSource, which supports reading into buffers.
+    assertThat(cacheDataSource.supportsByteBufferReads()).isTrue();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(TEST_DATA.length);
+    while (cacheDataSource.read(buffer, /* readLength= */ 2) != C.RESULT_END_OF_INPUT) {
+      // Do nothing.
+    }
+    cacheDataSource.close();
+
+    byte[] data = new byte[buffer.position()];
+    buffer.flip();
+    buffer.get(data);
+    assertThat(data).isEqualTo(TEST_DATA);
+  }
+
   private void assertCacheAndRead(DataSpec dataSpec, boolean unknownLength) throws IOException {
     assertCacheAndRead(dataSpec, unknownLength, /* cacheKeyFactory= */ null);
   }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Log;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the hit ratios of {@link LeastRecentlyUsedCacheEvictor} and {@link
+ * WindowTinyLfuCacheEvictor} by replaying a synthetic access trace.
+ *
+ * <p>The trace consists of playback sessions of titles chosen from a Zipf distribution. Each
+ * session reads the title's initialization segment followed by a few media segments. A fraction
+ * of the sessions instead read through a long run of media segments, as happens when content is
+ * watched to the end or downloaded. Results are logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class CacheEvictorBenchmark {
+
+  private static final String TAG = "CacheEvictorBenchmark";
+
+  private static final long MAX_BYTES = 100 * 1024 * 1024;
+  private static final int TITLE_COUNT = 200;
+  private static final int SESSION_COUNT = 5000;
+  private static final int INITIALIZATION_SEGMENT_LENGTH = 20_000;
+  private static final int MEDIA_SEGMENT_LENGTH = 500_000;
+  private static final int MAX_SHORT_SESSION_SEGMENT_COUNT = 4;
+  private static final int SCAN_SEGMENT_COUNT = 300;
+  private static final long SEED = 1;
+
+  @Test
+  public void benchmarkWithoutScans() throws Exception {
+    runBenchmark(/* zipfExponent= */ 1, /* scanProbability= */ 0);
+  }
+
+  @Test
+  public void benchmarkWithScans() throws Exception {
+    runBenchmark(/* zipfExponent= */ 1, /* scanProbability= */ 0.1);
+  }
+
+  private static void runBenchmark(double zipfExponent, double scanProbability)
+      throws Exception {
+    double lruHitRatio =
+        replay(new LeastRecentlyUsedCacheEvictor(MAX_BYTES), zipfExponent, scanProbability);
+    double windowTinyLfuHitRatio =
+        replay(new WindowTinyLfuCacheEvictor(MAX_BYTES), zipfExponent, scanProbability);
+    Log.i(
+        TAG,
+        "Zipf exponent "
+            + zipfExponent
+            + ", scan probability "
+            + scanProbability
+            + ": LeastRecentlyUsedCacheEvictor hit ratio "
+            + lruHitRatio
+            + ", WindowTinyLfuCacheEvictor hit ratio "
+            + windowTinyLfuHitRatio);
+    assertThat(windowTinyLfuHitRatio).isGreaterThan(lruHitRatio);
+  }
+
+  /** Replays the access trace against an evictor, returning the resulting hit ratio. */
+  private static double replay(CacheEvictor evictor, double zipfExponent, double scanProbability)
+      throws Exception {
+    Map<String, CacheSpan> cachedSpans = new HashMap<>();
+    Cache cache = mock(Cache.class);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              if (cachedSpans.remove(getId(span.key, span.position)) != null) {
+                evictor.onSpanRemoved(cache, span);
+              }
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    evictor.onCacheInitialized();
+
+    double[] titleCdf = new double[TITLE_COUNT];
+    double totalWeight = 0;
+    for (int i = 0; i < TITLE_COUNT; i++) {
+      totalWeight += 1 / Math.pow(i + 1, zipfExponent);
+      titleCdf[i] = totalWeight;
+    }
+
+    Random random = new Random(SEED);
+    File file = new File("");
+    long lastTouchTimestamp = 0;
+    long hitCount = 0;
+    long requestCount = 0;
+    for (int i = 0; i < SESSION_COUNT; i++) {
+      double titleWeight = random.nextDouble() * totalWeight;
+      int title = 0;
+      while (titleCdf[title] < titleWeight) {
+        title++;
+      }
+      int segmentCount =
+          random.nextDouble() < scanProbability
+              ? SCAN_SEGMENT_COUNT
+              : 1 + random.nextInt(MAX_SHORT_SESSION_SEGMENT_COUNT);
+      String key = "title" + title;
+      // Segment -1 is the initialization segment.
+      for (int segment = -1; segment < segmentCount; segment++) {
+        long position =
+            segment < 0 ? 0 : INITIALIZATION_SEGMENT_LENGTH + (long) segment * MEDIA_SEGMENT_LENGTH;
+        long length = segment < 0 ? INITIALIZATION_SEGMENT_LENGTH : MEDIA_SEGMENT_LENGTH;
+        String id = getId(key, position);
+        CacheSpan span = cachedSpans.get(id);
+        CacheSpan newSpan = new CacheSpan(key, position, length, ++lastTouchTimestamp, file);
+        requestCount++;
+        if (span != null) {
+          hitCount++;
+          cachedSpans.put(id, newSpan);
+          evictor.onSpanTouched(cache, span, newSpan);
+        } else {
+          evictor.onStartFile(cache, key, position, length);
+          cachedSpans.put(id, newSpan);
+          evictor.onSpanAdded(cache, newSpan);
+        }
+      }
+    }
+    return (double) hitCount / requestCount;
+  }
+
+  private static String getId(String key, long position) {
+    return key + "@" + position;
+  }
+}
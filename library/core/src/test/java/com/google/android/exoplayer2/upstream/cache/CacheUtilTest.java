@@ -34,6 +34,8 @@ import com.google.android.exoplayer2.upstream.FileDataSource;
 import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -198,6 +200,81 @@ public final class CacheUtilTest {
     assertThat(contentLengthAndBytesCached.second).isEqualTo(200);
   }
 
+  @Test
+  public void testGetCachedMultipleDataSpecs() {
+    mockCache.contentLength = 1000;
+    mockCache.spansAndGaps = new int[] {100, 100, 200};
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    dataSpecs.add(new DataSpec(Uri.parse("test")));
+    dataSpecs.add(
+        new DataSpec(
+            Uri.parse("test"),
+            /* absoluteStreamPosition= */ 100,
+            /* length= */ C.LENGTH_UNSET,
+            /* key= */ null));
+    dataSpecs.add(
+        new DataSpec(
+            Uri.parse("test"),
+            /* absoluteStreamPosition= */ 50,
+            /* length= */ 200,
+            /* key= */ null));
+    long[] requestLengths = new long[dataSpecs.size()];
+    long[] bytesAlreadyCached = new long[dataSpecs.size()];
+
+    CacheUtil.getCached(
+        dataSpecs, mockCache, /* cacheKeyFactory= */ null, requestLengths, bytesAlreadyCached);
+
+    assertThat(requestLengths).isEqualTo(new long[] {1000, 900, 200});
+    assertThat(bytesAlreadyCached).isEqualTo(new long[] {300, 200, 100});
+  }
+
+  @Test
+  public void testGetCachedMultipleDataSpecsMatchesSingleQueries() throws Exception {
+    FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
+    FakeDataSource dataSource = new FakeDataSource(fakeDataSet);
+    CacheUtil.cache(
+        new DataSpec(
+            Uri.parse("test_data"),
+            /* absoluteStreamPosition= */ 10,
+            /* length= */ 20,
+            /* key= */ null),
+        cache,
+        /* cacheKeyFactory= */ null,
+        dataSource,
+        /* progressListener= */ null,
+        /* isCanceled= */ null);
+    CacheUtil.cache(
+        new DataSpec(
+            Uri.parse("test_data"),
+            /* absoluteStreamPosition= */ 50,
+            /* length= */ 30,
+            /* key= */ null),
+        cache,
+        /* cacheKeyFactory= */ null,
+        dataSource,
+        /* progressListener= */ null,
+        /* isCanceled= */ null);
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    for (int position = 0; position < 100; position += 5) {
+      dataSpecs.add(
+          new DataSpec(Uri.parse("test_data"), position, /* length= */ 15, /* key= */ null));
+      dataSpecs.add(
+          new DataSpec(Uri.parse("other_data"), position, /* length= */ 15, /* key= */ null));
+    }
+    long[] requestLengths = new long[dataSpecs.size()];
+    long[] bytesAlreadyCached = new long[dataSpecs.size()];
+
+    CacheUtil.getCached(
+        dataSpecs, cache, /* cacheKeyFactory= */ null, requestLengths, bytesAlreadyCached);
+
+    for (int i = 0; i < dataSpecs.size(); i++) {
+      Pair<Long, Long> requestLengthAndBytesCached =
+          CacheUtil.getCached(dataSpecs.get(i), cache, /* cacheKeyFactory= */ null);
+      assertThat(requestLengths[i]).isEqualTo(requestLengthAndBytesCached.first);
+      assertThat(bytesAlreadyCached[i]).isEqualTo(requestLengthAndBytesCached.second);
+    }
+  }
+
   @Test
   public void testCache() throws Exception {
     FakeDataSet fakeDataSet = new FakeDataSet().setRandomData("test_data", 100);
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Collection;
 import java.util.Set;
 import org.junit.After;
@@ -271,6 +272,127 @@ public class CachedContentIndexTest {
     assertStoredAndLoadedEqual(index, newLegacyInstance(key));
   }
 
+  @Test
+  public void testJournalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void testJournalStoreIncrementalAndLoad() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.getOrAdd("key2");
+    index.store();
+    long journalLength = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL).length();
+
+    index.maybeRemove("key1");
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 100);
+    index.applyContentMetadataMutations("key2", mutations);
+    index.getOrAdd("key3");
+    index.store();
+
+    // The changes should have been appended to the journal.
+    assertThat(new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL).length())
+        .isGreaterThan(journalLength);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key2", "key3");
+    assertThat(index2.get("key2")).isEqualTo(index.get("key2"));
+    assertThat(index2.get("key3")).isEqualTo(index.get("key3"));
+  }
+
+  @Test
+  public void testJournalDropsPartiallyWrittenRecord() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long journalLength = journalFile.length();
+    index.getOrAdd("key2");
+    index.store();
+
+    // Simulate the process being killed whilst appending the second record.
+    try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+      file.setLength(journalFile.length() - 1);
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key1");
+    assertThat(journalFile.length()).isEqualTo(journalLength);
+    // Records appended after dropping the partial record should be readable.
+    index2.getOrAdd("key3");
+    index2.store();
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+    assertThat(index3.getKeys()).containsExactly("key1", "key3");
+  }
+
+  @Test
+  public void testJournalCompaction() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key");
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    // Add and remove many keys, so that the journal becomes eligible for compaction. Compactions
+    // may complete during the loop, so track the longest the journal gets.
+    long maxJournalLength = 0;
+    for (int i = 0; i < 3000; i++) {
+      index.getOrAdd("removed" + i);
+      index.store();
+      index.maybeRemove("removed" + i);
+      index.store();
+      maxJournalLength = Math.max(maxJournalLength, journalFile.length());
+    }
+    // Compaction happens in the background, and completes during a subsequent store.
+    long timeoutMs = System.currentTimeMillis() + 10_000;
+    while (journalFile.length() >= maxJournalLength && System.currentTimeMillis() < timeoutMs) {
+      index.store();
+      Thread.sleep(10);
+    }
+
+    assertThat(journalFile.length()).isLessThan(maxJournalLength);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key");
+  }
+
+  @Test
+  public void testJournalEncryption() throws Exception {
+    byte[] key = Util.getUtf8Bytes("Bar12345Bar12345"); // 128 bit key
+    byte[] key2 = Util.getUtf8Bytes("Foo12345Foo12345"); // 128 bit key
+
+    assertStoredAndLoadedEqual(newJournalInstance(key), newJournalInstance(key));
+
+    boolean threw = false;
+    try {
+      assertStoredAndLoadedEqual(newJournalInstance(key), newJournalInstance(key2));
+    } catch (AssertionError e) {
+      threw = true;
+    }
+    assertWithMessage("Encrypted journal can not be read with different encryption key")
+        .that(threw)
+        .isTrue();
+
+    // Non encrypted journal can be read even when encryption key provided.
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance(key));
+  }
+
+  @Test
+  public void testMigrateLegacyToJournalAndBack() throws Exception {
+    CachedContentIndex legacyIndex = newLegacyInstance();
+    assertStoredAndLoadedEqual(legacyIndex, newJournalInstance());
+    assertThat(new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC).exists()).isFalse();
+
+    CachedContentIndex legacyIndex2 = newLegacyInstance();
+    legacyIndex2.initialize(/* uid= */ 0);
+    assertThat(legacyIndex2.getKeys()).isEqualTo(legacyIndex.getKeys());
+    assertThat(new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL).exists()).isFalse();
+  }
+
   @Test
   public void testRemoveEmptyNotLockedCachedContent() {
     CachedContentIndex index = newInstance();
@@ -337,6 +459,20 @@ public class CachedContentIndexTest {
     return new CachedContentIndex(TestUtil.getTestDatabaseProvider());
   }
 
+  private CachedContentIndex newJournalInstance() {
+    return newJournalInstance(null);
+  }
+
+  private CachedContentIndex newJournalInstance(@Nullable byte[] key) {
+    return new CachedContentIndex(
+        /* databaseProvider= */ null,
+        cacheDir,
+        /* legacyStorageSecretKey= */ key,
+        /* legacyStorageEncrypt= */ key != null,
+        /* preferLegacyStorage= */ false,
+        /* useJournalStorage= */ true);
+  }
+
   private CachedContentIndex newLegacyInstance() {
     return newLegacyInstance(null);
   }
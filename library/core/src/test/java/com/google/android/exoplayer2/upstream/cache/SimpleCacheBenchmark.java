@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of reads from a {@link SimpleCache} shared between several threads, each
+ * of which reads its own key, with and without striped locking.
+ *
+ * <p>Each read looks up the span at a position in the key and checks how much of the key is cached
+ * from there, as {@link CacheDataSource} does when it opens a source. With striped locking and an
+ * evictor that doesn't require spans to be touched, reads of different keys don't acquire the
+ * cache-wide lock, so their throughput should scale with the number of threads, up to the number
+ * of cores. Results are logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class SimpleCacheBenchmark {
+
+  private static final String TAG = "SimpleCacheBenchmark";
+
+  private static final int[] THREAD_COUNTS = new int[] {1, 2, 4, 8};
+  private static final int SPAN_COUNT = 100;
+  private static final int SPAN_LENGTH = 10;
+  private static final int WARMUP_READ_COUNT = 100_000;
+  private static final int MEASURED_READ_COUNT = 1_000_000;
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = Util.createTempFile(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    // Delete the file. SimpleCache initialization should create a directory with the same name.
+    assertThat(cacheDir.delete()).isTrue();
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void benchmarkReads() throws Exception {
+    SimpleCache simpleCache = createSimpleCache(/* useStripedLocking= */ false);
+    benchmarkReads(simpleCache, "Default locking");
+    simpleCache.release();
+    simpleCache = createSimpleCache(/* useStripedLocking= */ true);
+    benchmarkReads(simpleCache, "Striped locking");
+    simpleCache.release();
+  }
+
+  private SimpleCache createSimpleCache(boolean useStripedLocking) throws Exception {
+    Util.recursiveDelete(cacheDir);
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new NoOpCacheEvictor(),
+            TestUtil.getTestDatabaseProvider(),
+            /* legacyIndexSecretKey= */ null,
+            /* legacyIndexEncrypt= */ false,
+            /* preferLegacyIndex= */ false,
+            useStripedLocking,
+            /* useJournalIndex= */ false);
+    for (int i = 0; i < THREAD_COUNTS[THREAD_COUNTS.length - 1]; i++) {
+      String key = getKey(i);
+      for (int j = 0; j < SPAN_COUNT; j++) {
+        CacheSpan holeSpan = simpleCache.startReadWrite(key, j * SPAN_LENGTH);
+        File file = simpleCache.startFile(key, j * SPAN_LENGTH, SPAN_LENGTH);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+          outputStream.write(new byte[SPAN_LENGTH]);
+        }
+        simpleCache.commitFile(file, SPAN_LENGTH);
+        simpleCache.releaseHoleSpan(holeSpan);
+      }
+    }
+    return simpleCache;
+  }
+
+  private static void benchmarkReads(SimpleCache simpleCache, String name) throws Exception {
+    for (int threadCount : THREAD_COUNTS) {
+      readConcurrently(simpleCache, threadCount, WARMUP_READ_COUNT);
+      long durationNs = readConcurrently(simpleCache, threadCount, MEASURED_READ_COUNT);
+      Log.i(
+          TAG,
+          String.format(
+              Locale.US,
+              "%s, %d threads: %.0f reads/ms",
+              name,
+              threadCount,
+              (double) threadCount * MEASURED_READ_COUNT / (durationNs / 1e6)));
+    }
+  }
+
+  /**
+   * Reads from the cache on the given number of threads, each of which reads its own key the given
+   * number of times, and returns the time taken in nanoseconds.
+   */
+  private static long readConcurrently(SimpleCache simpleCache, int threadCount, int readCount)
+      throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      String key = getKey(i);
+      futures.add(
+          executorService.submit(
+              () -> {
+                startLatch.await();
+                long keyLength = (long) SPAN_COUNT * SPAN_LENGTH;
+                for (int j = 0; j < readCount; j++) {
+                  long position = (j * 31L) % keyLength;
+                  CacheSpan span = simpleCache.startReadWrite(key, position);
+                  Assertions.checkState(span.isCached);
+                  simpleCache.getCachedLength(key, position, keyLength - position);
+                }
+                return null;
+              }));
+    }
+    long startTimeNs = System.nanoTime();
+    startLatch.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    long durationNs = System.nanoTime() - startTimeNs;
+    executorService.shutdown();
+    return durationNs;
+  }
+
+  private static String getKey(int index) {
+    return "key" + index;
+  }
+}
@@ -21,18 +21,26 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
 import static org.mockito.Mockito.doAnswer;
 
+import android.net.Uri;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -46,6 +54,7 @@ public class SimpleCacheTest {
 
   private static final String KEY_1 = "key1";
   private static final String KEY_2 = "key2";
+  private static final long TIMEOUT_MS = 10_000;
 
   private File cacheDir;
 
@@ -318,6 +327,38 @@ public class SimpleCacheTest {
     simpleCache.releaseHoleSpan(cacheSpan);
   }
 
+  @Test
+  public void testGetCachedBytes() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    long[] positions = new long[] {0, 10, 55, 60, 0, 65};
+    long[] lengths = new long[] {100, 10, 10, 5, LENGTH_UNSET, LENGTH_UNSET};
+
+    // No cached bytes.
+    assertThat(simpleCache.getCachedBytes(KEY_1, positions, lengths))
+        .isEqualTo(new long[] {0, 0, 0, 0, 0, 0});
+
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 35);
+    addCache(simpleCache, KEY_1, 60, 10);
+    simpleCache.releaseHoleSpan(cacheSpan);
+
+    assertThat(simpleCache.getCachedBytes(KEY_1, positions, lengths))
+        .isEqualTo(new long[] {60, 10, 5, 5, 60, 5});
+    // The result should match querying block by block.
+    long[] expectedCachedBytes = new long[positions.length];
+    for (int i = 0; i < positions.length; i++) {
+      expectedCachedBytes[i] =
+          CacheUtil.getCached(
+                  new DataSpec(Uri.parse("test"), positions[i], lengths[i], KEY_1),
+                  simpleCache,
+                  /* cacheKeyFactory= */ null)
+              .second;
+    }
+    assertThat(simpleCache.getCachedBytes(KEY_1, positions, lengths))
+        .isEqualTo(expectedCachedBytes);
+  }
+
   /* Tests https://github.com/google/ExoPlayer/issues/3260 case. */
   @Test
   public void testExceptionDuringEvictionByLeastRecentlyUsedCacheEvictorNotHang() throws Exception {
@@ -356,6 +397,87 @@ public class SimpleCacheTest {
     assertThat(cachedSpans.pollFirst().position).isEqualTo(15);
   }
 
+  @Test
+  public void testConcurrentReadWrite() throws Exception {
+    assertConcurrentReadWrite(getSimpleCache());
+  }
+
+  @Test
+  public void testConcurrentReadWriteWithStripedLocking() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new NoOpCacheEvictor(),
+            TestUtil.getTestDatabaseProvider(),
+            /* legacyIndexSecretKey= */ null,
+            /* legacyIndexEncrypt= */ false,
+            /* preferLegacyIndex= */ false,
+            /* useStripedLocking= */ true,
+            /* useJournalIndex= */ false);
+    assertConcurrentReadWrite(simpleCache);
+  }
+
+  @Test
+  public void testConcurrentReadWriteWithStripedLockingAndSpanTouches() throws Exception {
+    // LeastRecentlyUsedCacheEvictor requires spans to be touched, so reads take the global lock.
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ Long.MAX_VALUE),
+            TestUtil.getTestDatabaseProvider(),
+            /* legacyIndexSecretKey= */ null,
+            /* legacyIndexEncrypt= */ false,
+            /* preferLegacyIndex= */ false,
+            /* useStripedLocking= */ true,
+            /* useJournalIndex= */ false);
+    assertConcurrentReadWrite(simpleCache);
+  }
+
+  @Test
+  public void testStripedLockingReadsDontAcquireCacheLock() throws Exception {
+    SimpleCache simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new NoOpCacheEvictor(),
+            TestUtil.getTestDatabaseProvider(),
+            /* legacyIndexSecretKey= */ null,
+            /* legacyIndexEncrypt= */ false,
+            /* preferLegacyIndex= */ false,
+            /* useStripedLocking= */ true,
+            /* useJournalIndex= */ false);
+    for (String key : new String[] {KEY_1, KEY_2}) {
+      CacheSpan holeSpan = simpleCache.startReadWrite(key, 0);
+      addCache(simpleCache, key, 0, 15);
+      simpleCache.releaseHoleSpan(holeSpan);
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      // Hold the cache-wide lock, as a thread adding a span to another key would, whilst reading
+      // each key on its own thread. The reads should neither block nor block each other.
+      synchronized (simpleCache) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (String key : new String[] {KEY_1, KEY_2}) {
+          futures.add(
+              executorService.submit(
+                  () -> {
+                    assertThat(simpleCache.getCachedSpans(key)).hasSize(1);
+                    assertThat(simpleCache.isCached(key, 0, 15)).isTrue();
+                    assertThat(simpleCache.getCachedLength(key, 0, 15)).isEqualTo(15);
+                    assertThat(simpleCache.getContentMetadata(key)).isNotNull();
+                    assertCachedDataReadCorrect(simpleCache.startReadWrite(key, 0));
+                    assertCachedDataReadCorrect(simpleCache.startReadWriteNonBlocking(key, 0));
+                    return null;
+                  }));
+        }
+        for (Future<?> future : futures) {
+          future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
   @Test
   public void testUsingReleasedSimpleCacheThrowsException() throws Exception {
     SimpleCache simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
@@ -390,6 +512,52 @@ public class SimpleCacheTest {
     new SimpleCache(cacheDir, new NoOpCacheEvictor());
   }
 
+  /**
+   * Writes and reads several keys from several threads at once, with two writer threads per key so
+   * that writers also contend for the same key, and checks the resulting cache content. This checks
+   * correctness under contention only. It doesn't measure how reads scale with the number of
+   * threads.
+   */
+  private static void assertConcurrentReadWrite(SimpleCache simpleCache) throws Exception {
+    int keyCount = 4;
+    int writersPerKey = 2;
+    int spansPerWriter = 25;
+    int spanLength = 10;
+    ExecutorService executorService = Executors.newFixedThreadPool(keyCount * writersPerKey);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < keyCount * writersPerKey; i++) {
+      String key = "key" + (i % keyCount);
+      int firstSpanIndex = (i / keyCount) * spansPerWriter;
+      futures.add(
+          executorService.submit(
+              () -> {
+                for (int j = 0; j < spansPerWriter; j++) {
+                  int position = (firstSpanIndex + j) * spanLength;
+                  CacheSpan holeSpan = simpleCache.startReadWrite(key, position);
+                  assertThat(holeSpan.isCached).isFalse();
+                  addCache(simpleCache, key, position, spanLength);
+                  simpleCache.releaseHoleSpan(holeSpan);
+                  assertThat(simpleCache.isCached(key, position, spanLength)).isTrue();
+                  assertCachedDataReadCorrect(simpleCache.startReadWrite(key, position));
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executorService.shutdown();
+
+    long keyLength = writersPerKey * spansPerWriter * spanLength;
+    assertThat(simpleCache.getKeys()).hasSize(keyCount);
+    for (int i = 0; i < keyCount; i++) {
+      String key = "key" + i;
+      assertThat(simpleCache.getCachedLength(key, 0, keyLength)).isEqualTo(keyLength);
+      assertThat(simpleCache.getCachedSpans(key)).hasSize(writersPerKey * spansPerWriter);
+    }
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(keyCount * keyLength);
+  }
+
   private SimpleCache getSimpleCache() {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor());
   }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/** Unit tests for {@link WindowTinyLfuCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public final class WindowTinyLfuCacheEvictorTest {
+
+  private static final int MAX_BYTES = 100;
+  private static final int SPAN_LENGTH = 10;
+
+  @Mock private Cache cache;
+  private WindowTinyLfuCacheEvictor evictor;
+  private Map<String, CacheSpan> cachedSpans;
+  private long lastTouchTimestamp;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    evictor =
+        new WindowTinyLfuCacheEvictor(
+            MAX_BYTES, /* windowPercentage= */ 10, /* expectedSpanCount= */ 64);
+    cachedSpans = new HashMap<>();
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              if (cachedSpans.remove(getId(span.key, span.position)) != null) {
+                evictor.onSpanRemoved(cache, span);
+              }
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    evictor.onCacheInitialized();
+  }
+
+  @Test
+  public void testContentBiggerThanMaxSizeDoesNotThrowException() {
+    evictor.onStartFile(cache, "key", 0, MAX_BYTES + 1);
+    addSpan("key", 0, MAX_BYTES + 1);
+  }
+
+  @Test
+  public void testEvictsToMaxBytes() {
+    for (int i = 0; i < 50; i++) {
+      access("key", i * SPAN_LENGTH);
+    }
+
+    assertThat(getCachedBytes()).isAtMost(MAX_BYTES);
+    // The most recently added span should always be retained.
+    assertThat(cachedSpans).containsKey(getId("key", 49 * SPAN_LENGTH));
+  }
+
+  @Test
+  public void testFillsCacheBeforeEvicting() {
+    for (int i = 0; i < MAX_BYTES / SPAN_LENGTH; i++) {
+      access("key", i * SPAN_LENGTH);
+    }
+
+    assertThat(cachedSpans).hasSize(MAX_BYTES / SPAN_LENGTH);
+  }
+
+  @Test
+  public void testFrequentlyAccessedSpansSurviveScan() {
+    for (int i = 0; i < 3; i++) {
+      access("hot1", 0);
+      access("hot2", 0);
+    }
+
+    // Scan through content that's bigger than the cache.
+    for (int i = 0; i < 3 * MAX_BYTES / SPAN_LENGTH; i++) {
+      access("scan", i * SPAN_LENGTH);
+    }
+
+    assertThat(cachedSpans).containsKey(getId("hot1", 0));
+    assertThat(cachedSpans).containsKey(getId("hot2", 0));
+    assertThat(getCachedBytes()).isAtMost(MAX_BYTES);
+  }
+
+  @Test
+  public void testSpansLoadedDuringInitializationAreRetained() {
+    evictor =
+        new WindowTinyLfuCacheEvictor(
+            MAX_BYTES, /* windowPercentage= */ 10, /* expectedSpanCount= */ 64);
+    for (int i = 0; i < 5; i++) {
+      addSpan("key", i * SPAN_LENGTH, SPAN_LENGTH);
+    }
+    evictor.onCacheInitialized();
+
+    for (int i = 0; i < 5; i++) {
+      access("other", i * SPAN_LENGTH);
+    }
+
+    assertThat(cachedSpans).hasSize(10);
+  }
+
+  /** Reads a span, touching it if it's cached or writing it otherwise. */
+  private void access(String key, long position) {
+    CacheSpan span = cachedSpans.get(getId(key, position));
+    if (span != null) {
+      CacheSpan touchedSpan = createSpan(key, position, span.length);
+      cachedSpans.put(getId(key, position), touchedSpan);
+      evictor.onSpanTouched(cache, span, touchedSpan);
+    } else {
+      evictor.onStartFile(cache, key, position, SPAN_LENGTH);
+      addSpan(key, position, SPAN_LENGTH);
+    }
+  }
+
+  private void addSpan(String key, long position, long length) {
+    CacheSpan span = createSpan(key, position, length);
+    cachedSpans.put(getId(key, position), span);
+    evictor.onSpanAdded(cache, span);
+  }
+
+  private CacheSpan createSpan(String key, long position, long length) {
+    return new CacheSpan(key, position, length, ++lastTouchTimestamp, new File(key));
+  }
+
+  private long getCachedBytes() {
+    long cachedBytes = 0;
+    for (CacheSpan span : cachedSpans.values()) {
+      cachedBytes += span.length;
+    }
+    return cachedBytes;
+  }
+
+  private static String getId(String key, long position) {
+    return key + "@" + position;
+  }
+}
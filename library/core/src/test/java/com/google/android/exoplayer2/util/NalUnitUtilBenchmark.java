@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link NalUnitUtil#findNalUnit(byte[], int, int, boolean[])} on the
+ * video streams of the test assets.
+ *
+ * <p>Each stream is scanned in chunks of the size of a transport stream packet payload, which is
+ * how H.264 and H.262 streams are commonly passed to the method by the elementary stream readers.
+ * Each stream is scanned a number of times to warm up, and then a number of measured times. The
+ * number of NAL units found by every scan is checked against a byte by byte search. Results are
+ * logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class NalUnitUtilBenchmark {
+
+  private static final String TAG = "NalUnitUtilBenchmark";
+
+  private static final int CHUNK_SIZE = 184;
+  private static final int WARMUP_ITERATIONS = 100;
+  private static final int MEASURED_ITERATIONS = 200;
+
+  @Test
+  public void benchmarkH264() throws Exception {
+    benchmark("H.264", extractVideoStream(new Mp4Extractor(), "mp4/sample.mp4"));
+  }
+
+  @Test
+  public void benchmarkH262() throws Exception {
+    benchmark("H.262", extractVideoStream(new TsExtractor(), "ts/bbb_2500ms.ts"));
+  }
+
+  private static void benchmark(String name, byte[] stream) {
+    int expectedNalUnitCount = countNalUnitsByteByByte(stream);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      countNalUnits(stream);
+    }
+    long durationNs = 0;
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      long startTimeNs = System.nanoTime();
+      int nalUnitCount = countNalUnits(stream);
+      durationNs += System.nanoTime() - startTimeNs;
+
+      assertThat(nalUnitCount).isEqualTo(expectedNalUnitCount);
+    }
+    double durationMs = durationNs / 1e6 / MEASURED_ITERATIONS;
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Scanning %s stream of %d bytes with %d NAL units: %.3f ms/op, %.1f MB/s",
+            name,
+            stream.length,
+            expectedNalUnitCount,
+            durationMs,
+            stream.length / 1e3 / durationMs));
+  }
+
+  /** Counts the NAL units in a stream in the way the elementary stream readers find them. */
+  private static int countNalUnits(byte[] stream) {
+    boolean[] prefixFlags = new boolean[3];
+    int nalUnitCount = 0;
+    for (int chunkOffset = 0; chunkOffset < stream.length; chunkOffset += CHUNK_SIZE) {
+      int limit = Math.min(chunkOffset + CHUNK_SIZE, stream.length);
+      int offset = chunkOffset;
+      while (true) {
+        int nalUnitOffset = NalUnitUtil.findNalUnit(stream, offset, limit, prefixFlags);
+        if (nalUnitOffset == limit) {
+          break;
+        }
+        nalUnitCount++;
+        offset = nalUnitOffset + 3;
+      }
+    }
+    return nalUnitCount;
+  }
+
+  private static int countNalUnitsByteByByte(byte[] stream) {
+    int nalUnitCount = 0;
+    for (int i = 2; i < stream.length; i++) {
+      if (stream[i - 2] == 0 && stream[i - 1] == 0 && stream[i] == 1) {
+        nalUnitCount++;
+      }
+    }
+    return nalUnitCount;
+  }
+
+  private static byte[] extractVideoStream(Extractor extractor, String fileName)
+      throws Exception {
+    FakeExtractorOutput output =
+        TestUtil.extractAllSamplesFromFile(
+            extractor, ApplicationProvider.getApplicationContext(), fileName);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (int i = 0; i < output.numberOfTracks; i++) {
+      FakeTrackOutput trackOutput = output.trackOutputs.valueAt(i);
+      if (trackOutput.format != null && MimeTypes.isVideo(trackOutput.format.sampleMimeType)) {
+        for (int j = 0; j < trackOutput.getSampleCount(); j++) {
+          stream.write(trackOutput.getSampleData(j));
+        }
+      }
+    }
+    return stream.toByteArray();
+  }
+}
@@ -20,7 +20,10 @@ import static com.google.common.truth.Truth.assertThat;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -120,6 +123,32 @@ public final class NalUnitUtilTest {
     assertPrefixFlagsCleared(prefixFlags);
   }
 
+  @Test
+  public void testFindNalUnitMatchesByteByByteSearch() {
+    Random random = new Random(/* seed= */ 0);
+    for (int i = 0; i < 10000; i++) {
+      // Mostly 0s and 1s, so that there are many NAL unit start codes and partial start codes.
+      byte[] data = new byte[random.nextInt(64)];
+      for (int j = 0; j < data.length; j++) {
+        data[j] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : random.nextInt(2));
+      }
+      int splitPosition = random.nextInt(data.length + 1);
+
+      List<Integer> expectedNalUnitPositions = new ArrayList<>();
+      // A start code that ends at the last byte isn't found until more data is passed.
+      for (int j = 0; j + 3 < data.length; j++) {
+        if (data[j] == 0 && data[j + 1] == 0 && data[j + 2] == 1) {
+          expectedNalUnitPositions.add(j);
+        }
+      }
+      List<Integer> nalUnitPositions = new ArrayList<>();
+      boolean[] prefixFlags = new boolean[3];
+      findNalUnits(data, 0, splitPosition, prefixFlags, nalUnitPositions);
+      findNalUnits(data, splitPosition, data.length, prefixFlags, nalUnitPositions);
+      assertThat(nalUnitPositions).isEqualTo(expectedNalUnitPositions);
+    }
+  }
+
   @Test
   public void testParseSpsNalUnit() {
     NalUnitUtil.SpsData data = NalUnitUtil.parseSpsNalUnit(SPS_TEST_DATA, SPS_TEST_DATA_OFFSET,
@@ -183,6 +212,22 @@ public final class NalUnitUtilTest {
     return data;
   }
 
+  private static void findNalUnits(
+      byte[] data, int offset, int limit, boolean[] prefixFlags, List<Integer> nalUnitPositions) {
+    // Split the data at offset, so that start codes before it can only be found using prefixFlags.
+    byte[] dataAfterOffset = Arrays.copyOfRange(data, offset, limit);
+    int position = 0;
+    while (true) {
+      int nalUnitPosition =
+          NalUnitUtil.findNalUnit(dataAfterOffset, position, dataAfterOffset.length, prefixFlags);
+      if (nalUnitPosition == dataAfterOffset.length) {
+        return;
+      }
+      nalUnitPositions.add(offset + nalUnitPosition);
+      position = nalUnitPosition + 3;
+    }
+  }
+
   private static void assertPrefixFlagsCleared(boolean[] flags) {
     assertThat(flags[0] || flags[1] || flags[2]).isEqualTo(false);
   }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link SlidingPercentile} when used in the way {@link
+ * DefaultBandwidthMeter} uses it at the end of each transfer, by adding a sample weighted by the
+ * square root of the number of bytes transferred and then computing the median.
+ *
+ * <p>Transfers of small chunks, as in low latency live streaming, are simulated with the default
+ * sliding window, and with a larger window that holds more samples. Results are logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class SlidingPercentileBenchmark {
+
+  private static final String TAG = "SlidingPercentileBenchmark";
+
+  private static final int TRANSFER_COUNT = 1_000_000;
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int MEASURED_ITERATIONS = 5;
+  private static final float MIN_BITRATE = 1_000_000;
+  private static final float MAX_BITRATE = 10_000_000;
+
+  @Test
+  public void benchmarkDefaultWindow() {
+    benchmark(
+        /* maxWeight= */ DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT,
+        /* maxTransferBytes= */ 4096);
+  }
+
+  @Test
+  public void benchmarkLargeWindow() {
+    benchmark(
+        /* maxWeight= */ DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT * 50,
+        /* maxTransferBytes= */ 4096);
+  }
+
+  private static void benchmark(int maxWeight, int maxTransferBytes) {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(maxWeight);
+    Random random = new Random(/* seed= */ 0);
+    int[] weights = new int[TRANSFER_COUNT];
+    float[] bitrates = new float[TRANSFER_COUNT];
+    for (int i = 0; i < TRANSFER_COUNT; i++) {
+      weights[i] = (int) Math.sqrt(1 + random.nextInt(maxTransferBytes));
+      bitrates[i] = MIN_BITRATE + random.nextFloat() * (MAX_BITRATE - MIN_BITRATE);
+    }
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      runIteration(slidingPercentile, weights, bitrates);
+    }
+    long durationNs = 0;
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      durationNs += runIteration(slidingPercentile, weights, bitrates);
+    }
+    double durationNsPerTransfer = (double) durationNs / MEASURED_ITERATIONS / TRANSFER_COUNT;
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Max weight %d: %.1f ns per transfer",
+            maxWeight,
+            durationNsPerTransfer));
+  }
+
+  /** Runs a single iteration, returning its duration in nanoseconds. */
+  private static long runIteration(
+      SlidingPercentile slidingPercentile, int[] weights, float[] bitrates) {
+    slidingPercentile.reset();
+    long startTimeNs = System.nanoTime();
+    float bitrateEstimate = 0;
+    for (int i = 0; i < weights.length; i++) {
+      slidingPercentile.addSample(weights[i], bitrates[i]);
+      bitrateEstimate = slidingPercentile.getPercentile(0.5f);
+    }
+    long durationNs = System.nanoTime() - startTimeNs;
+    assertThat(bitrateEstimate).isAtLeast(MIN_BITRATE);
+    assertThat(bitrateEstimate).isAtMost(MAX_BITRATE);
+    return durationNs;
+  }
+}
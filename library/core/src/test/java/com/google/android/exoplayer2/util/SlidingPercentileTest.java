@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link SlidingPercentile}. */
+@RunWith(AndroidJUnit4.class)
+public class SlidingPercentileTest {
+
+  @Test
+  public void testGetPercentileWithoutSamples() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 10);
+    assertThat(slidingPercentile.getPercentile(0.5f)).isNaN();
+  }
+
+  @Test
+  public void testGetPercentileIntegratesWeights() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 10);
+    slidingPercentile.addSample(/* weight= */ 2, /* value= */ 30);
+    slidingPercentile.addSample(/* weight= */ 5, /* value= */ 10);
+    slidingPercentile.addSample(/* weight= */ 3, /* value= */ 20);
+
+    assertThat(slidingPercentile.getPercentile(0.1f)).isEqualTo(10f);
+    assertThat(slidingPercentile.getPercentile(0.5f)).isEqualTo(10f);
+    assertThat(slidingPercentile.getPercentile(0.6f)).isEqualTo(20f);
+    assertThat(slidingPercentile.getPercentile(0.7f)).isEqualTo(20f);
+    assertThat(slidingPercentile.getPercentile(0.9f)).isEqualTo(30f);
+    assertThat(slidingPercentile.getPercentile(1f)).isEqualTo(30f);
+  }
+
+  @Test
+  public void testAddSampleReducesWeightOfOldestSamples() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 10);
+    slidingPercentile.addSample(/* weight= */ 5, /* value= */ 10);
+    slidingPercentile.addSample(/* weight= */ 5, /* value= */ 20);
+    // Removes the first sample and reduces the weight of the second sample to 2.
+    slidingPercentile.addSample(/* weight= */ 8, /* value= */ 30);
+
+    assertThat(slidingPercentile.getPercentile(0.1f)).isEqualTo(20f);
+    assertThat(slidingPercentile.getPercentile(0.3f)).isEqualTo(30f);
+  }
+
+  @Test
+  public void testManySamplesInWindow() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 1000);
+    // Add the values 0 to 1999 in an order that's unrelated to their values.
+    for (int i = 0; i < 2000; i++) {
+      slidingPercentile.addSample(/* weight= */ 1, /* value= */ (i * 7919) % 2000);
+    }
+    // The window holds the 1000 most recently added values.
+    float[] expectedValues = new float[1000];
+    for (int i = 0; i < 1000; i++) {
+      expectedValues[i] = ((1000 + i) * 7919) % 2000;
+    }
+    Arrays.sort(expectedValues);
+    assertThat(slidingPercentile.getPercentile(0.001f)).isEqualTo(expectedValues[0]);
+    assertThat(slidingPercentile.getPercentile(0.5f)).isEqualTo(expectedValues[499]);
+    assertThat(slidingPercentile.getPercentile(1f)).isEqualTo(expectedValues[999]);
+  }
+
+  @Test
+  public void testReset() {
+    SlidingPercentile slidingPercentile = new SlidingPercentile(/* maxWeight= */ 10);
+    slidingPercentile.addSample(/* weight= */ 5, /* value= */ 10);
+    slidingPercentile.reset();
+
+    assertThat(slidingPercentile.getPercentile(0.5f)).isNaN();
+    slidingPercentile.addSample(/* weight= */ 5, /* value= */ 20);
+    assertThat(slidingPercentile.getPercentile(0.5f)).isEqualTo(20f);
+  }
+}
@@ -50,6 +50,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
@@ -88,6 +89,7 @@ public final class DashMediaSource extends BaseMediaSource {
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long livePresentationDelayMs;
     private boolean livePresentationDelayOverridesManifest;
+    @Nullable private LoaderThreadPool loaderThreadPool;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -250,6 +252,20 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets a {@link LoaderThreadPool} on which manifests and media are loaded. The default value is
+     * null, in which case each {@link Loader} loads on a thread of its own.
+     *
+     * @param loaderThreadPool A {@link LoaderThreadPool}, or null.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderThreadPool = loaderThreadPool;
+      return this;
+    }
+
     /**
      * Returns a new {@link DashMediaSource} using the current parameters and the specified
      * sideloaded manifest.
@@ -275,6 +291,7 @@ public final class DashMediaSource extends BaseMediaSource {
           loadErrorHandlingPolicy,
           livePresentationDelayMs,
           livePresentationDelayOverridesManifest,
+          loaderThreadPool,
           tag);
     }
 
@@ -336,6 +353,7 @@ public final class DashMediaSource extends BaseMediaSource {
           loadErrorHandlingPolicy,
           livePresentationDelayMs,
           livePresentationDelayOverridesManifest,
+          loaderThreadPool,
           tag);
     }
 
@@ -394,6 +412,7 @@ public final class DashMediaSource extends BaseMediaSource {
   private final Runnable simulateManifestRefreshRunnable;
   private final PlayerEmsgCallback playerEmsgCallback;
   private final LoaderErrorThrower manifestLoadErrorThrower;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
   @Nullable private final Object tag;
 
   private DataSource dataSource;
@@ -468,6 +487,7 @@ public final class DashMediaSource extends BaseMediaSource {
         new DefaultLoadErrorHandlingPolicy(minLoadableRetryCount),
         DEFAULT_LIVE_PRESENTATION_DELAY_MS,
         /* livePresentationDelayOverridesManifest= */ false,
+        /* loaderThreadPool= */ null,
         /* tag= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
@@ -584,6 +604,7 @@ public final class DashMediaSource extends BaseMediaSource {
             ? DEFAULT_LIVE_PRESENTATION_DELAY_MS
             : livePresentationDelayMs,
         livePresentationDelayMs != DEFAULT_LIVE_PRESENTATION_DELAY_PREFER_MANIFEST_MS,
+        /* loaderThreadPool= */ null,
         /* tag= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
@@ -601,6 +622,7 @@ public final class DashMediaSource extends BaseMediaSource {
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       long livePresentationDelayMs,
       boolean livePresentationDelayOverridesManifest,
+      @Nullable LoaderThreadPool loaderThreadPool,
       @Nullable Object tag) {
     this.initialManifestUri = manifestUri;
     this.manifest = manifest;
@@ -613,6 +635,7 @@ public final class DashMediaSource extends BaseMediaSource {
     this.livePresentationDelayMs = livePresentationDelayMs;
     this.livePresentationDelayOverridesManifest = livePresentationDelayOverridesManifest;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderThreadPool = loaderThreadPool;
     this.tag = tag;
     sideloadedManifest = manifest != null;
     manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
@@ -661,7 +684,9 @@ public final class DashMediaSource extends BaseMediaSource {
       processManifest(false);
     } else {
       dataSource = manifestDataSourceFactory.createDataSource();
-      loader = new Loader("Loader:DashMediaSource");
+      loader =
+          new Loader(
+              "Loader:DashMediaSource", loaderThreadPool, LoaderThreadPool.PRIORITY_MANIFEST);
       handler = new Handler();
       startLoadingManifest();
     }
@@ -692,7 +717,8 @@ public final class DashMediaSource extends BaseMediaSource {
             manifestLoadErrorThrower,
             allocator,
             compositeSequenceableLoaderFactory,
-            playerEmsgCallback);
+            playerEmsgCallback,
+            loaderThreadPool);
     periodsById.put(mediaPeriod.id, mediaPeriod);
     return mediaPeriod;
   }
@@ -664,6 +664,11 @@ public class DefaultDashChunkSource implements DashChunkSource {
     /* package */ RepresentationHolder copyWithNewRepresentation(
         long newPeriodDurationUs, Representation newRepresentation)
         throws BehindLiveWindowException {
+      if (newRepresentation == representation && newPeriodDurationUs == periodDurationUs) {
+        // The representation is unchanged, which is common if the manifest parser reuses
+        // unchanged elements of the previous manifest.
+        return this;
+      }
       DashSegmentIndex oldIndex = representation.getIndex();
       DashSegmentIndex newIndex = newRepresentation.getIndex();
 
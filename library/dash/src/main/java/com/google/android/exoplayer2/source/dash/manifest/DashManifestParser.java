@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
 import com.google.android.exoplayer2.extractor.mp4.PsshAtomUtil;
 import com.google.android.exoplayer2.metadata.emsg.EventMessage;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.MultiSegmentBase;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentList;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
 import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
@@ -43,6 +44,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
@@ -57,6 +59,11 @@ import org.xmlpull.v1.XmlSerializer;
 
 /**
  * A parser of media presentation description files.
+ *
+ * <p>A parser can optionally reuse the elements of the previously parsed manifest that haven't
+ * changed. This is useful for live streams whose manifests are refreshed frequently, and whose
+ * segment timelines contain thousands of entries of which only a few change between refreshes.
+ * See {@link #DashManifestParser(boolean)}.
  */
 public class DashManifestParser extends DefaultHandler
     implements ParsingLoadable.Parser<DashManifest> {
@@ -70,8 +77,35 @@ public class DashManifestParser extends DefaultHandler
       Pattern.compile("([1-9]|[1-5][0-9]|6[0-3])=.*");
 
   private final XmlPullParserFactory xmlParserFactory;
+  private final boolean reuseUnchangedElements;
+
+  // The elements of the manifest being parsed on each thread, if reuseUnchangedElements is true.
+  private final ThreadLocal<ReusableElements> parsingElements;
+  @Nullable private volatile ReusableElements previousElements;
 
   public DashManifestParser() {
+    this(/* reuseUnchangedElements= */ false);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * <p>If {@code reuseUnchangedElements} is true, the {@link Period}s, {@link AdaptationSet}s,
+   * {@link Representation}s, {@link SegmentBase}s and segment timeline entries of the previously
+   * parsed manifest are returned in place of newly parsed ones that are equal to them. Refreshing a
+   * live manifest then only allocates the segment timeline entries that have been added since the
+   * previous refresh, and the elements that haven't changed at all are returned as the same
+   * instances. Since elements are only reused if they're equal, parsing unrelated manifests is
+   * still correct, but such a parser should be used for successive versions of a single manifest.
+   * Manifests may be parsed concurrently, in which case each reuses the elements of the manifest
+   * whose parse completed last.
+   *
+   * @param reuseUnchangedElements Whether to reuse unchanged elements of the previously parsed
+   *     manifest.
+   */
+  public DashManifestParser(boolean reuseUnchangedElements) {
+    this.reuseUnchangedElements = reuseUnchangedElements;
+    parsingElements = new ThreadLocal<>();
     try {
       xmlParserFactory = XmlPullParserFactory.newInstance();
     } catch (XmlPullParserException e) {
@@ -83,6 +117,22 @@ public class DashManifestParser extends DefaultHandler
 
   @Override
   public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+    if (!reuseUnchangedElements) {
+      return parseInternal(uri, inputStream);
+    }
+    ReusableElements elements = new ReusableElements(previousElements);
+    parsingElements.set(elements);
+    try {
+      DashManifest manifest = parseInternal(uri, inputStream);
+      elements.previous = null;
+      previousElements = elements;
+      return manifest;
+    } finally {
+      parsingElements.remove();
+    }
+  }
+
+  private DashManifest parseInternal(Uri uri, InputStream inputStream) throws IOException {
     try {
       XmlPullParser xpp = xmlParserFactory.newPullParser();
       xpp.setInput(inputStream, null);
@@ -256,7 +306,7 @@ public class DashManifestParser extends DefaultHandler
 
   protected Period buildPeriod(String id, long startMs, List<AdaptationSet> adaptationSets,
       List<EventStream> eventStreams) {
-    return new Period(id, startMs, adaptationSets, eventStreams);
+    return reusePeriod(new Period(id, startMs, adaptationSets, eventStreams));
   }
 
   // AdaptationSet parsing.
@@ -361,8 +411,9 @@ public class DashManifestParser extends DefaultHandler
   protected AdaptationSet buildAdaptationSet(int id, int contentType,
       List<Representation> representations, List<Descriptor> accessibilityDescriptors,
       List<Descriptor> supplementalProperties) {
-    return new AdaptationSet(id, contentType, representations, accessibilityDescriptors,
-        supplementalProperties);
+    return reuseAdaptationSet(
+        new AdaptationSet(
+            id, contentType, representations, accessibilityDescriptors, supplementalProperties));
   }
 
   protected int parseContentType(XmlPullParser xpp) {
@@ -668,12 +719,14 @@ public class DashManifestParser extends DefaultHandler
     }
     ArrayList<Descriptor> inbandEventStreams = representationInfo.inbandEventStreams;
     inbandEventStreams.addAll(extraInbandEventStreams);
-    return Representation.newInstance(
-        representationInfo.revisionId,
-        format,
-        representationInfo.baseUrl,
-        representationInfo.segmentBase,
-        inbandEventStreams);
+    Representation representation =
+        Representation.newInstance(
+            representationInfo.revisionId,
+            format,
+            representationInfo.baseUrl,
+            representationInfo.segmentBase,
+            inbandEventStreams);
+    return reuseRepresentation(representation, representationInfo.segmentBase);
   }
 
   // SegmentBase, SegmentList and SegmentTemplate parsing.
@@ -711,8 +764,9 @@ public class DashManifestParser extends DefaultHandler
 
   protected SingleSegmentBase buildSingleSegmentBase(RangedUri initialization, long timescale,
       long presentationTimeOffset, long indexStart, long indexLength) {
-    return new SingleSegmentBase(initialization, timescale, presentationTimeOffset, indexStart,
-        indexLength);
+    return reuseSegmentBase(
+        new SingleSegmentBase(
+            initialization, timescale, presentationTimeOffset, indexStart, indexLength));
   }
 
   protected SegmentList parseSegmentList(XmlPullParser xpp, @Nullable SegmentList parent)
@@ -762,8 +816,15 @@ public class DashManifestParser extends DefaultHandler
       long duration,
       @Nullable List<SegmentTimelineElement> timeline,
       @Nullable List<RangedUri> segments) {
-    return new SegmentList(initialization, timescale, presentationTimeOffset,
-        startNumber, duration, timeline, segments);
+    return reuseSegmentBase(
+        new SegmentList(
+            initialization,
+            timescale,
+            presentationTimeOffset,
+            startNumber,
+            duration,
+            timeline,
+            segments));
   }
 
   protected SegmentTemplate parseSegmentTemplate(
@@ -825,16 +886,17 @@ public class DashManifestParser extends DefaultHandler
       List<SegmentTimelineElement> timeline,
       @Nullable UrlTemplate initializationTemplate,
       @Nullable UrlTemplate mediaTemplate) {
-    return new SegmentTemplate(
-        initialization,
-        timescale,
-        presentationTimeOffset,
-        startNumber,
-        endNumber,
-        duration,
-        timeline,
-        initializationTemplate,
-        mediaTemplate);
+    return reuseSegmentBase(
+        new SegmentTemplate(
+            initialization,
+            timescale,
+            presentationTimeOffset,
+            startNumber,
+            endNumber,
+            duration,
+            timeline,
+            initializationTemplate,
+            mediaTemplate));
   }
 
   /**
@@ -989,7 +1051,13 @@ public class DashManifestParser extends DefaultHandler
 
   protected List<SegmentTimelineElement> parseSegmentTimeline(XmlPullParser xpp)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    SegmentTimeline.Builder builder = new SegmentTimeline.Builder();
+    // A previously parsed timeline whose runs are reused for as long as they match, starting from
+    // the segment at previousIndex.
+    @Nullable SegmentTimeline previousSegmentTimeline = null;
+    int previousIndex = 0;
+    int reusedCount = 0;
+    boolean searchedPrevious = false;
     long elapsedTime = 0;
     do {
       xpp.next();
@@ -997,17 +1065,70 @@ public class DashManifestParser extends DefaultHandler
         elapsedTime = parseLong(xpp, "t", elapsedTime);
         long duration = parseLong(xpp, "d", C.TIME_UNSET);
         int count = 1 + parseInt(xpp, "r", 0);
+        if (count > 0 && !searchedPrevious) {
+          searchedPrevious = true;
+          previousSegmentTimeline = findPreviousSegmentTimeline(elapsedTime, duration);
+          if (previousSegmentTimeline != null) {
+            previousIndex = previousSegmentTimeline.indexOfStartTime(elapsedTime);
+          }
+        }
+        while (count > 0 && previousSegmentTimeline != null) {
+          if (previousIndex == previousSegmentTimeline.size()) {
+            // The remaining segments are new.
+            previousSegmentTimeline = null;
+            break;
+          }
+          int runIndex = previousSegmentTimeline.getRunIndex(previousIndex);
+          if (previousSegmentTimeline.getStartTime(runIndex, previousIndex) != elapsedTime
+              || previousSegmentTimeline.getRunDuration(runIndex) != duration) {
+            // The timelines diverge, so there's nothing more to reuse.
+            previousSegmentTimeline = null;
+            break;
+          }
+          int matchingCount =
+              Math.min(count, previousSegmentTimeline.getRunEndIndex(runIndex) - previousIndex);
+          builder.add(elapsedTime, duration, matchingCount);
+          elapsedTime += matchingCount * duration;
+          count -= matchingCount;
+          previousIndex += matchingCount;
+          reusedCount += matchingCount;
+        }
         for (int i = 0; i < count; i++) {
-          segmentTimeline.add(buildSegmentTimelineElement(elapsedTime, duration));
+          SegmentTimelineElement element = buildSegmentTimelineElement(elapsedTime, duration);
+          builder.add(element.startTime, element.duration, /* count= */ 1);
           elapsedTime += duration;
         }
       } else {
         maybeSkipTag(xpp);
       }
     } while (!XmlPullParserUtil.isEndTag(xpp, "SegmentTimeline"));
+    @Nullable ReusableElements elements = parsingElements.get();
+    if (elements == null) {
+      return builder.build();
+    }
+    SegmentTimeline segmentTimeline;
+    if (previousSegmentTimeline != null && reusedCount == previousSegmentTimeline.size()) {
+      // Every segment matched the previous timeline, from its start to its end, so the timeline is
+      // unchanged.
+      segmentTimeline = previousSegmentTimeline;
+    } else {
+      segmentTimeline = builder.build();
+    }
+    elements.segmentTimelines.add(segmentTimeline);
     return segmentTimeline;
   }
 
+  /**
+   * Builds a {@link SegmentTimelineElement} for a segment that isn't in the previously parsed
+   * manifest. Segments that are in the previous manifest are reused without calling this method.
+   *
+   * <p>Only the start time and duration of the returned element are retained, since the parsed
+   * timeline stores runs of segments rather than individual elements.
+   *
+   * @param elapsedTime The start time of the segment.
+   * @param duration The duration of the segment.
+   * @return The {@link SegmentTimelineElement}.
+   */
   protected SegmentTimelineElement buildSegmentTimelineElement(long elapsedTime, long duration) {
     return new SegmentTimelineElement(elapsedTime, duration);
   }
@@ -1488,6 +1609,214 @@ public class DashManifestParser extends DefaultHandler
     return C.INDEX_UNSET;
   }
 
+  // Reuse of unchanged elements.
+
+  private Period reusePeriod(Period period) {
+    @Nullable ReusableElements elements = parsingElements.get();
+    if (elements == null) {
+      return period;
+    }
+    @Nullable ReusableElements previousElements = elements.previous;
+    if (previousElements != null) {
+      for (Period previousPeriod : previousElements.periods) {
+        if (Util.areEqual(period.id, previousPeriod.id)
+            && period.startMs == previousPeriod.startMs
+            && areSameElements(period.adaptationSets, previousPeriod.adaptationSets)
+            && areEqualEventStreams(period.eventStreams, previousPeriod.eventStreams)) {
+          period = previousPeriod;
+          break;
+        }
+      }
+    }
+    elements.periods.add(period);
+    return period;
+  }
+
+  private AdaptationSet reuseAdaptationSet(AdaptationSet adaptationSet) {
+    @Nullable ReusableElements elements = parsingElements.get();
+    if (elements == null) {
+      return adaptationSet;
+    }
+    @Nullable ReusableElements previousElements = elements.previous;
+    if (previousElements != null) {
+      for (AdaptationSet previousAdaptationSet : previousElements.adaptationSets) {
+        if (adaptationSet.id == previousAdaptationSet.id
+            && adaptationSet.type == previousAdaptationSet.type
+            && areSameElements(
+                adaptationSet.representations, previousAdaptationSet.representations)
+            && adaptationSet.accessibilityDescriptors.equals(
+                previousAdaptationSet.accessibilityDescriptors)
+            && adaptationSet.supplementalProperties.equals(
+                previousAdaptationSet.supplementalProperties)) {
+          adaptationSet = previousAdaptationSet;
+          break;
+        }
+      }
+    }
+    elements.adaptationSets.add(adaptationSet);
+    return adaptationSet;
+  }
+
+  private Representation reuseRepresentation(
+      Representation representation, SegmentBase segmentBase) {
+    @Nullable ReusableElements elements = parsingElements.get();
+    if (elements == null) {
+      return representation;
+    }
+    @Nullable ReusableElements previousElements = elements.previous;
+    if (previousElements != null) {
+      List<Representation> previousRepresentations = previousElements.representations;
+      for (int i = 0; i < previousRepresentations.size(); i++) {
+        Representation previousRepresentation = previousRepresentations.get(i);
+        // Segment bases are reused too, so unchanged ones are the same instance.
+        if (segmentBase == previousElements.representationSegmentBases.get(i)
+            && representation.getClass() == previousRepresentation.getClass()
+            && representation.revisionId == previousRepresentation.revisionId
+            && representation.baseUrl.equals(previousRepresentation.baseUrl)
+            && representation.format.equals(previousRepresentation.format)
+            && representation.inbandEventStreams.equals(
+                previousRepresentation.inbandEventStreams)) {
+          representation = previousRepresentation;
+          break;
+        }
+      }
+    }
+    elements.representations.add(representation);
+    elements.representationSegmentBases.add(segmentBase);
+    return representation;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends SegmentBase> T reuseSegmentBase(T segmentBase) {
+    @Nullable ReusableElements elements = parsingElements.get();
+    if (elements == null) {
+      return segmentBase;
+    }
+    @Nullable ReusableElements previousElements = elements.previous;
+    if (previousElements != null) {
+      for (SegmentBase previousSegmentBase : previousElements.segmentBases) {
+        if (areEqualSegmentBases(segmentBase, previousSegmentBase)) {
+          // The classes of equal segment bases are the same.
+          segmentBase = (T) previousSegmentBase;
+          break;
+        }
+      }
+    }
+    elements.segmentBases.add(segmentBase);
+    return segmentBase;
+  }
+
+  /**
+   * Returns whether two segment bases are equal. Segment timelines are compared by identity, since
+   * unchanged timelines are reused.
+   */
+  private static boolean areEqualSegmentBases(SegmentBase segmentBase, SegmentBase other) {
+    if (segmentBase.getClass() != other.getClass()
+        || !Util.areEqual(segmentBase.initialization, other.initialization)
+        || segmentBase.timescale != other.timescale
+        || segmentBase.presentationTimeOffset != other.presentationTimeOffset) {
+      return false;
+    }
+    if (segmentBase instanceof SingleSegmentBase) {
+      SingleSegmentBase singleSegmentBase = (SingleSegmentBase) segmentBase;
+      SingleSegmentBase otherSingleSegmentBase = (SingleSegmentBase) other;
+      return singleSegmentBase.indexStart == otherSingleSegmentBase.indexStart
+          && singleSegmentBase.indexLength == otherSingleSegmentBase.indexLength;
+    }
+    MultiSegmentBase multiSegmentBase = (MultiSegmentBase) segmentBase;
+    MultiSegmentBase otherMultiSegmentBase = (MultiSegmentBase) other;
+    if (multiSegmentBase.startNumber != otherMultiSegmentBase.startNumber
+        || multiSegmentBase.duration != otherMultiSegmentBase.duration
+        || multiSegmentBase.segmentTimeline != otherMultiSegmentBase.segmentTimeline) {
+      return false;
+    }
+    if (segmentBase instanceof SegmentList) {
+      return Util.areEqual(
+          ((SegmentList) segmentBase).mediaSegments, ((SegmentList) other).mediaSegments);
+    }
+    SegmentTemplate segmentTemplate = (SegmentTemplate) segmentBase;
+    SegmentTemplate otherSegmentTemplate = (SegmentTemplate) other;
+    return segmentTemplate.endNumber == otherSegmentTemplate.endNumber
+        && Util.areEqual(
+            segmentTemplate.initializationTemplate, otherSegmentTemplate.initializationTemplate)
+        && Util.areEqual(segmentTemplate.mediaTemplate, otherSegmentTemplate.mediaTemplate);
+  }
+
+  private static boolean areEqualEventStreams(
+      List<EventStream> eventStreams, List<EventStream> otherEventStreams) {
+    if (eventStreams.size() != otherEventStreams.size()) {
+      return false;
+    }
+    for (int i = 0; i < eventStreams.size(); i++) {
+      EventStream eventStream = eventStreams.get(i);
+      EventStream otherEventStream = otherEventStreams.get(i);
+      if (!eventStream.schemeIdUri.equals(otherEventStream.schemeIdUri)
+          || !eventStream.value.equals(otherEventStream.value)
+          || eventStream.timescale != otherEventStream.timescale
+          || !Arrays.equals(eventStream.presentationTimesUs, otherEventStream.presentationTimesUs)
+          || !Arrays.equals(eventStream.events, otherEventStream.events)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static <T> boolean areSameElements(List<T> list, List<T> otherList) {
+    if (list.size() != otherList.size()) {
+      return false;
+    }
+    for (int i = 0; i < list.size(); i++) {
+      if (list.get(i) != otherList.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a segment timeline of the previously parsed manifest that contains a segment with the
+   * given start time and duration, or null if there's no such timeline.
+   */
+  @Nullable
+  private SegmentTimeline findPreviousSegmentTimeline(long startTime, long duration) {
+    @Nullable ReusableElements elements = parsingElements.get();
+    @Nullable ReusableElements previousElements = elements != null ? elements.previous : null;
+    if (previousElements == null) {
+      return null;
+    }
+    for (SegmentTimeline timeline : previousElements.segmentTimelines) {
+      int index = timeline.indexOfStartTime(startTime);
+      if (index >= 0 && timeline.getDuration(index) == duration) {
+        return timeline;
+      }
+    }
+    return null;
+  }
+
+  /** The elements of a parsed manifest, which may be reused when parsing a later version of it. */
+  private static final class ReusableElements {
+
+    public final List<SegmentTimeline> segmentTimelines;
+    public final List<SegmentBase> segmentBases;
+    public final List<Representation> representations;
+    /** The segment bases from which {@link #representations} were built, at the same indices. */
+    public final List<SegmentBase> representationSegmentBases;
+    public final List<AdaptationSet> adaptationSets;
+    public final List<Period> periods;
+    /** The elements of the previously parsed manifest, or null once the parse has completed. */
+    @Nullable public ReusableElements previous;
+
+    public ReusableElements(@Nullable ReusableElements previous) {
+      this.previous = previous;
+      segmentTimelines = new ArrayList<>();
+      segmentBases = new ArrayList<>();
+      representations = new ArrayList<>();
+      representationSegmentBases = new ArrayList<>();
+      adaptationSets = new ArrayList<>();
+      periods = new ArrayList<>();
+    }
+  }
+
   /** A parsed Representation element. */
   protected static final class RepresentationInfo {
 
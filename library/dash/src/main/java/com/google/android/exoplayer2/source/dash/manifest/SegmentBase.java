@@ -116,7 +116,7 @@ public abstract class SegmentBase {
 
     /* package */ final long startNumber;
     /* package */ final long duration;
-    /* package */ @Nullable final List<SegmentTimelineElement> segmentTimeline;
+    /* package */ @Nullable final SegmentTimeline segmentTimeline;
 
     /**
      * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
@@ -130,7 +130,7 @@ public abstract class SegmentBase {
      *     segmentTimeline} is non-null then this parameter is ignored.
      * @param segmentTimeline A segment timeline corresponding to the segments. If null, then
      *     segments are assumed to be of fixed duration as specified by the {@code duration}
-     *     parameter.
+     *     parameter. If it's not a {@link SegmentTimeline} then it's copied into one.
      */
     public MultiSegmentBase(
         @Nullable RangedUri initialization,
@@ -142,7 +142,8 @@ public abstract class SegmentBase {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
-      this.segmentTimeline = segmentTimeline;
+      this.segmentTimeline =
+          segmentTimeline == null ? null : SegmentTimeline.copyOf(segmentTimeline);
     }
 
     /** @see DashSegmentIndex#getSegmentNum(long, long) */
@@ -161,28 +162,50 @@ public abstract class SegmentBase {
             : segmentCount == DashSegmentIndex.INDEX_UNBOUNDED ? segmentNum
             : Math.min(segmentNum, firstSegmentNum + segmentCount - 1);
       } else {
-        // The index cannot be unbounded. Identify the segment using binary search.
-        long lowIndex = firstSegmentNum;
-        long highIndex = firstSegmentNum + segmentCount - 1;
+        // The index cannot be unbounded. Identify the segment using binary search, first over the
+        // runs of segments of equal duration and then over the segments of the identified run.
+        int firstIndex = (int) (firstSegmentNum - startNumber);
+        int lastIndex = (int) (firstIndex + segmentCount - 1);
+        int firstRunIndex = segmentTimeline.getRunIndex(firstIndex);
+        int lowRunIndex = firstRunIndex;
+        int highRunIndex = segmentTimeline.getRunIndex(lastIndex);
+        while (lowRunIndex <= highRunIndex) {
+          int midRunIndex = (lowRunIndex + highRunIndex) >>> 1;
+          int midIndex = segmentTimeline.getRunFirstIndex(midRunIndex);
+          if (getTimelineTimeUs(midRunIndex, midIndex) <= timeUs) {
+            lowRunIndex = midRunIndex + 1;
+          } else {
+            highRunIndex = midRunIndex - 1;
+          }
+        }
+        if (highRunIndex < firstRunIndex) {
+          return firstSegmentNum;
+        }
+        int runIndex = highRunIndex;
+        int lowIndex = Math.max(segmentTimeline.getRunFirstIndex(runIndex), firstIndex);
+        int highIndex =
+            runIndex + 1 < segmentTimeline.getRunCount()
+                ? Math.min(segmentTimeline.getRunFirstIndex(runIndex + 1) - 1, lastIndex)
+                : lastIndex;
         while (lowIndex <= highIndex) {
-          long midIndex = lowIndex + (highIndex - lowIndex) / 2;
-          long midTimeUs = getSegmentTimeUs(midIndex);
+          int midIndex = (lowIndex + highIndex) >>> 1;
+          long midTimeUs = getTimelineTimeUs(runIndex, midIndex);
           if (midTimeUs < timeUs) {
             lowIndex = midIndex + 1;
           } else if (midTimeUs > timeUs) {
             highIndex = midIndex - 1;
           } else {
-            return midIndex;
+            return startNumber + midIndex;
           }
         }
-        return lowIndex == firstSegmentNum ? lowIndex : highIndex;
+        return Math.max(startNumber + highIndex, firstSegmentNum);
       }
     }
 
     /** @see DashSegmentIndex#getDurationUs(long, long) */
     public final long getSegmentDurationUs(long sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get((int) (sequenceNumber - startNumber)).duration;
+        long duration = segmentTimeline.getDuration((int) (sequenceNumber - startNumber));
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         int segmentCount = getSegmentCount(periodDurationUs);
@@ -198,7 +221,7 @@ public abstract class SegmentBase {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
         unscaledSegmentTime =
-            segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime
+            segmentTimeline.getStartTime((int) (sequenceNumber - startNumber))
                 - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -206,6 +229,12 @@ public abstract class SegmentBase {
       return Util.scaleLargeTimestamp(unscaledSegmentTime, C.MICROS_PER_SECOND, timescale);
     }
 
+    private long getTimelineTimeUs(int runIndex, int index) {
+      long unscaledSegmentTime =
+          segmentTimeline.getStartTime(runIndex, index) - presentationTimeOffset;
+      return Util.scaleLargeTimestamp(unscaledSegmentTime, C.MICROS_PER_SECOND, timescale);
+    }
+
     /**
      * Returns a {@link RangedUri} defining the location of a segment for the given index in the
      * given representation.
@@ -354,7 +383,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, long sequenceNumber) {
       long time;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get((int) (sequenceNumber - startNumber)).startTime;
+        time = segmentTimeline.getStartTime((int) (sequenceNumber - startNumber));
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
@@ -397,6 +426,26 @@ public abstract class SegmentBase {
       this.duration = duration;
     }
 
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      SegmentTimelineElement other = (SegmentTimelineElement) obj;
+      return startTime == other.startTime && duration == other.duration;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode(startTime, duration);
+    }
+
+    /* package */ static int hashCode(long startTime, long duration) {
+      return 31 * (int) startTime + (int) duration;
+    }
   }
 
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable representation of a SegmentTimeline manifest element.
+ *
+ * <p>Consecutive segments of equal duration, each starting where the previous one ends, are stored
+ * as a single run in primitive arrays, rather than as one {@link SegmentTimelineElement} per
+ * segment. A timeline of segments of constant duration therefore takes constant space, however many
+ * segments it has. {@link #get(int)} creates a new {@link SegmentTimelineElement} for each call, so
+ * {@link #getStartTime(int)} and {@link #getDuration(int)} should be preferred.
+ */
+public final class SegmentTimeline extends AbstractList<SegmentTimelineElement>
+    implements RandomAccess {
+
+  /** Builds {@link SegmentTimeline}s. */
+  public static final class Builder {
+
+    private static final int INITIAL_RUN_CAPACITY = 4;
+
+    private int size;
+    private int runCount;
+    private int[] runFirstIndices;
+    private long[] runStartTimes;
+    private long[] runDurations;
+
+    /** Creates a builder for an empty timeline. */
+    public Builder() {
+      runFirstIndices = new int[INITIAL_RUN_CAPACITY];
+      runStartTimes = new long[INITIAL_RUN_CAPACITY];
+      runDurations = new long[INITIAL_RUN_CAPACITY];
+    }
+
+    /**
+     * Appends consecutive segments of equal duration, as defined by an S element.
+     *
+     * @param startTime The start time of the first segment.
+     * @param duration The duration of each segment.
+     * @param count The number of segments.
+     * @return This builder.
+     */
+    public Builder add(long startTime, long duration, int count) {
+      if (count <= 0) {
+        return this;
+      }
+      int lastRun = runCount - 1;
+      if (lastRun < 0
+          || runDurations[lastRun] != duration
+          || runStartTimes[lastRun] + (size - runFirstIndices[lastRun]) * duration != startTime) {
+        if (runCount == runFirstIndices.length) {
+          int newCapacity = runCount * 2;
+          runFirstIndices = Arrays.copyOf(runFirstIndices, newCapacity);
+          runStartTimes = Arrays.copyOf(runStartTimes, newCapacity);
+          runDurations = Arrays.copyOf(runDurations, newCapacity);
+        }
+        runFirstIndices[runCount] = size;
+        runStartTimes[runCount] = startTime;
+        runDurations[runCount] = duration;
+        runCount++;
+      }
+      size += count;
+      return this;
+    }
+
+    /** Returns a {@link SegmentTimeline} of the segments that have been added. */
+    public SegmentTimeline build() {
+      return new SegmentTimeline(
+          size,
+          Arrays.copyOf(runFirstIndices, runCount),
+          Arrays.copyOf(runStartTimes, runCount),
+          Arrays.copyOf(runDurations, runCount));
+    }
+  }
+
+  private final int size;
+  /** The index of the first segment of each run. */
+  private final int[] runFirstIndices;
+  /** The start time of the first segment of each run. */
+  private final long[] runStartTimes;
+  /** The duration of each of the segments of each run. */
+  private final long[] runDurations;
+
+  private int hashCode;
+
+  /**
+   * Returns a {@link SegmentTimeline} of the given segments. If {@code elements} is already a
+   * {@link SegmentTimeline} then it's returned as is.
+   *
+   * @param elements The segments.
+   * @return The {@link SegmentTimeline}.
+   */
+  public static SegmentTimeline copyOf(List<SegmentTimelineElement> elements) {
+    if (elements instanceof SegmentTimeline) {
+      return (SegmentTimeline) elements;
+    }
+    Builder builder = new Builder();
+    for (int i = 0; i < elements.size(); i++) {
+      SegmentTimelineElement element = elements.get(i);
+      builder.add(element.startTime, element.duration, /* count= */ 1);
+    }
+    return builder.build();
+  }
+
+  private SegmentTimeline(
+      int size, int[] runFirstIndices, long[] runStartTimes, long[] runDurations) {
+    this.size = size;
+    this.runFirstIndices = runFirstIndices;
+    this.runStartTimes = runStartTimes;
+    this.runDurations = runDurations;
+  }
+
+  /**
+   * Returns the start time of a segment. The value in seconds is the division of this value and
+   * the {@code timescale} of the enclosing element.
+   *
+   * @param index The index of the segment.
+   */
+  public long getStartTime(int index) {
+    return getStartTime(getRunIndex(index), index);
+  }
+
+  /**
+   * Returns the duration of a segment. The value in seconds is the division of this value and the
+   * {@code timescale} of the enclosing element.
+   *
+   * @param index The index of the segment.
+   */
+  public long getDuration(int index) {
+    return runDurations[getRunIndex(index)];
+  }
+
+  @Override
+  public SegmentTimelineElement get(int index) {
+    int runIndex = getRunIndex(index);
+    return new SegmentTimelineElement(getStartTime(runIndex, index), runDurations[runIndex]);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Returns the number of runs of consecutive segments of equal duration. */
+  /* package */ int getRunCount() {
+    return runFirstIndices.length;
+  }
+
+  /** Returns the index of the first segment of a run. */
+  /* package */ int getRunFirstIndex(int runIndex) {
+    return runFirstIndices[runIndex];
+  }
+
+  /** Returns the duration of each of the segments of a run. */
+  /* package */ long getRunDuration(int runIndex) {
+    return runDurations[runIndex];
+  }
+
+  /** Returns the index after the last segment of a run. */
+  /* package */ int getRunEndIndex(int runIndex) {
+    return runIndex + 1 < runFirstIndices.length ? runFirstIndices[runIndex + 1] : size;
+  }
+
+  /**
+   * Returns the index of the segment with the given start time, or -1 if there's no such segment.
+   */
+  /* package */ int indexOfStartTime(long startTime) {
+    int runIndex = Arrays.binarySearch(runStartTimes, startTime);
+    if (runIndex >= 0) {
+      return runFirstIndices[runIndex];
+    }
+    runIndex = -runIndex - 2;
+    if (runIndex < 0 || runDurations[runIndex] <= 0) {
+      return -1;
+    }
+    long offset = startTime - runStartTimes[runIndex];
+    if (offset % runDurations[runIndex] != 0) {
+      return -1;
+    }
+    long index = runFirstIndices[runIndex] + offset / runDurations[runIndex];
+    return index < getRunEndIndex(runIndex) ? (int) index : -1;
+  }
+
+  /** Returns the index of the run that contains a segment. */
+  /* package */ int getRunIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int runIndex = Arrays.binarySearch(runFirstIndices, index);
+    return runIndex >= 0 ? runIndex : -runIndex - 2;
+  }
+
+  /** Returns the start time of a segment, given the index of the run that contains it. */
+  /* package */ long getStartTime(int runIndex, int index) {
+    return runStartTimes[runIndex] + (index - runFirstIndices[runIndex]) * runDurations[runIndex];
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof SegmentTimeline)) {
+      return super.equals(obj);
+    }
+    SegmentTimeline other = (SegmentTimeline) obj;
+    // The builder merges segments into runs in the same way for any given sequence of segments, so
+    // equal timelines have equal runs.
+    return size == other.size
+        && Arrays.equals(runFirstIndices, other.runFirstIndices)
+        && Arrays.equals(runStartTimes, other.runStartTimes)
+        && Arrays.equals(runDurations, other.runDurations);
+  }
+
+  @Override
+  public int hashCode() {
+    if (hashCode == 0) {
+      // Equal to the hash code defined by List, without creating an element for each segment.
+      int result = 1;
+      int runIndex = 0;
+      for (int i = 0; i < size; i++) {
+        if (runIndex + 1 < runFirstIndices.length && runFirstIndices[runIndex + 1] == i) {
+          runIndex++;
+        }
+        long startTime = getStartTime(runIndex, i);
+        result = 31 * result + SegmentTimelineElement.hashCode(startTime, runDurations[runIndex]);
+      }
+      hashCode = result;
+    }
+    return hashCode;
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer2.source.dash.manifest;
 
+import androidx.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Locale;
 
 /**
@@ -98,6 +100,30 @@ public final class UrlTemplate {
     return builder.toString();
   }
 
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    UrlTemplate other = (UrlTemplate) obj;
+    return identifierCount == other.identifierCount
+        && Arrays.equals(urlPieces, other.urlPieces)
+        && Arrays.equals(identifiers, other.identifiers)
+        && Arrays.equals(identifierFormatTags, other.identifierFormatTags);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = identifierCount;
+    result = 31 * result + Arrays.hashCode(urlPieces);
+    result = 31 * result + Arrays.hashCode(identifiers);
+    result = 31 * result + Arrays.hashCode(identifierFormatTags);
+    return result;
+  }
+
   /**
    * Parses {@code template}, placing the decomposed components into the provided arrays.
    * <p>
@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.offline.DownloadException;
 import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
 import com.google.android.exoplayer2.offline.SegmentDownloader;
 import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
 import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
 import com.google.android.exoplayer2.source.dash.DashUtil;
 import com.google.android.exoplayer2.source.dash.DashWrappingSegmentIndex;
@@ -97,18 +98,52 @@ public final class DashDownloader extends SegmentDownloader<DashManifest> {
             periodStartUs,
             periodDurationUs,
             allowIncompleteList,
+            /* prefetchDurationUs= */ C.TIME_UNSET,
+            /* livePresentationDelayUs= */ C.TIME_UNSET,
             segments);
       }
     }
     return segments;
   }
 
+  @Override
+  protected List<Segment> getPrefetchSegments(
+      DataSource dataSource, DashManifest manifest, long durationUs)
+      throws InterruptedException, IOException {
+    if (!manifest.dynamic || manifest.getPeriodCount() == 0) {
+      return super.getPrefetchSegments(dataSource, manifest, durationUs);
+    }
+    // Playback of a live stream starts in its last period, a presentation delay behind the end of
+    // the available segments.
+    long livePresentationDelayMs =
+        manifest.suggestedPresentationDelayMs != C.TIME_UNSET
+            ? manifest.suggestedPresentationDelayMs
+            : DashMediaSource.DEFAULT_LIVE_PRESENTATION_DELAY_MS;
+    int periodIndex = manifest.getPeriodCount() - 1;
+    Period period = manifest.getPeriod(periodIndex);
+    ArrayList<Segment> segments = new ArrayList<>();
+    for (int i = 0; i < period.adaptationSets.size(); i++) {
+      addSegmentsForAdaptationSet(
+          dataSource,
+          period.adaptationSets.get(i),
+          C.msToUs(period.startMs),
+          manifest.getPeriodDurationUs(periodIndex),
+          /* allowIncompleteList= */ false,
+          durationUs,
+          C.msToUs(livePresentationDelayMs),
+          segments);
+    }
+    return segments;
+  }
+
   private static void addSegmentsForAdaptationSet(
       DataSource dataSource,
       AdaptationSet adaptationSet,
       long periodStartUs,
       long periodDurationUs,
       boolean allowIncompleteList,
+      long prefetchDurationUs,
+      long livePresentationDelayUs,
       ArrayList<Segment> out)
       throws IOException, InterruptedException {
     for (int i = 0; i < adaptationSet.representations.size(); i++) {
@@ -144,6 +179,17 @@ public final class DashDownloader extends SegmentDownloader<DashManifest> {
       }
       long firstSegmentNum = index.getFirstSegmentNum();
       long lastSegmentNum = firstSegmentNum + segmentCount - 1;
+      if (prefetchDurationUs != C.TIME_UNSET && segmentCount > 0) {
+        // Only include the segments that start within the prefetch duration of the segment that
+        // contains the live start position.
+        long endTimeUs =
+            index.getTimeUs(lastSegmentNum) + index.getDurationUs(lastSegmentNum, periodDurationUs);
+        firstSegmentNum =
+            index.getSegmentNum(endTimeUs - livePresentationDelayUs, periodDurationUs);
+        lastSegmentNum =
+            index.getSegmentNum(
+                index.getTimeUs(firstSegmentNum) + prefetchDurationUs - 1, periodDurationUs);
+      }
       for (long j = firstSegmentNum; j <= lastSegmentNum; j++) {
         addSegment(periodStartUs + index.getTimeUs(j), baseUrl, index.getSegmentUrl(j), out);
       }
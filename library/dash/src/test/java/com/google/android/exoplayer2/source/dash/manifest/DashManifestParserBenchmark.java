@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares parsing successive refreshes of a large live manifest with and without reuse of the
+ * unchanged elements of the previous manifest.
+ *
+ * <p>The manifest resembles that of a live stream with a six hour DVR window and two second
+ * segments. It has a video adaptation set with several representations and an audio adaptation
+ * set, each with its own segment timeline of one S element per segment. Each refresh moves the
+ * window on by one segment. Results are logged.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class DashManifestParserBenchmark {
+
+  private static final String TAG = "DashManifestParserBenchmark";
+
+  private static final int SEGMENT_COUNT = 6 * 60 * 60 / 2;
+  private static final int REFRESH_COUNT = 20;
+  private static final int VIDEO_REPRESENTATION_COUNT = 5;
+  private static final long VIDEO_TIMESCALE = 90_000;
+  private static final long VIDEO_SEGMENT_DURATION = 2 * VIDEO_TIMESCALE;
+  private static final long AUDIO_TIMESCALE = 48_000;
+  private static final long AUDIO_SEGMENT_DURATION = 2 * AUDIO_TIMESCALE;
+
+  @Test
+  public void benchmarkRefreshes() throws IOException {
+    byte[][] manifests = new byte[REFRESH_COUNT + 1][];
+    for (int i = 0; i < manifests.length; i++) {
+      manifests[i] = Util.getUtf8Bytes(createManifest(/* firstSegmentIndex= */ i));
+    }
+    // Warm up, so that the first of the measured runs isn't penalized.
+    parseAll(new DashManifestParser(/* reuseUnchangedElements= */ false), manifests);
+    parseAll(new DashManifestParser(/* reuseUnchangedElements= */ true), manifests);
+
+    long startTimeNs = System.nanoTime();
+    DashManifest[] results =
+        parseAll(new DashManifestParser(/* reuseUnchangedElements= */ false), manifests);
+    long durationMs = (System.nanoTime() - startTimeNs) / 1_000_000;
+
+    startTimeNs = System.nanoTime();
+    DashManifest[] reusingResults =
+        parseAll(new DashManifestParser(/* reuseUnchangedElements= */ true), manifests);
+    long reusingDurationMs = (System.nanoTime() - startTimeNs) / 1_000_000;
+
+    Log.i(
+        TAG,
+        "Parsing "
+            + manifests.length
+            + " manifests of "
+            + manifests[0].length
+            + " bytes: without reuse "
+            + durationMs
+            + " ms, with reuse "
+            + reusingDurationMs
+            + " ms");
+
+    for (int i = 0; i < results.length; i++) {
+      assertSameSegments(results[i], reusingResults[i]);
+    }
+  }
+
+  private static DashManifest[] parseAll(DashManifestParser parser, byte[][] manifests)
+      throws IOException {
+    Uri uri = Uri.parse("https://example.com/test.mpd");
+    DashManifest[] results = new DashManifest[manifests.length];
+    for (int i = 0; i < manifests.length; i++) {
+      results[i] = parser.parse(uri, new ByteArrayInputStream(manifests[i]));
+    }
+    return results;
+  }
+
+  private static void assertSameSegments(DashManifest manifest, DashManifest otherManifest) {
+    Period period = manifest.getPeriod(0);
+    Period otherPeriod = otherManifest.getPeriod(0);
+    assertThat(otherPeriod.adaptationSets).hasSize(period.adaptationSets.size());
+    for (int i = 0; i < period.adaptationSets.size(); i++) {
+      AdaptationSet adaptationSet = period.adaptationSets.get(i);
+      AdaptationSet otherAdaptationSet = otherPeriod.adaptationSets.get(i);
+      assertThat(otherAdaptationSet.representations).hasSize(adaptationSet.representations.size());
+      for (int j = 0; j < adaptationSet.representations.size(); j++) {
+        Representation representation = adaptationSet.representations.get(j);
+        Representation otherRepresentation = otherAdaptationSet.representations.get(j);
+        assertThat(otherRepresentation.format).isEqualTo(representation.format);
+        DashSegmentIndex index = representation.getIndex();
+        DashSegmentIndex otherIndex = otherRepresentation.getIndex();
+        int segmentCount = index.getSegmentCount(C.TIME_UNSET);
+        assertThat(otherIndex.getSegmentCount(C.TIME_UNSET)).isEqualTo(segmentCount);
+        long firstSegmentNum = index.getFirstSegmentNum();
+        assertThat(otherIndex.getFirstSegmentNum()).isEqualTo(firstSegmentNum);
+        for (long segmentNum = firstSegmentNum;
+            segmentNum < firstSegmentNum + segmentCount;
+            segmentNum++) {
+          assertThat(otherIndex.getTimeUs(segmentNum)).isEqualTo(index.getTimeUs(segmentNum));
+          assertThat(otherIndex.getDurationUs(segmentNum, C.TIME_UNSET))
+              .isEqualTo(index.getDurationUs(segmentNum, C.TIME_UNSET));
+        }
+      }
+    }
+  }
+
+  private static String createManifest(int firstSegmentIndex) {
+    StringBuilder manifest = new StringBuilder();
+    manifest.append(
+        "<MPD type=\"dynamic\" availabilityStartTime=\"2019-01-01T00:00:00Z\""
+            + " timeShiftBufferDepth=\"PT6H\" minimumUpdatePeriod=\"PT2S\">"
+            + "<Period id=\"0\" start=\"PT0S\">"
+            + "<AdaptationSet id=\"0\" mimeType=\"video/mp4\">");
+    appendSegmentTemplate(manifest, firstSegmentIndex, VIDEO_TIMESCALE, VIDEO_SEGMENT_DURATION);
+    for (int i = 0; i < VIDEO_REPRESENTATION_COUNT; i++) {
+      manifest
+          .append("<Representation id=\"video")
+          .append(i)
+          .append("\" codecs=\"avc1.4d401f\" width=\"")
+          .append(256 << i)
+          .append("\" bandwidth=\"")
+          .append(250_000 << i)
+          .append("\"/>");
+    }
+    manifest.append("</AdaptationSet><AdaptationSet id=\"1\" mimeType=\"audio/mp4\" lang=\"en\">");
+    appendSegmentTemplate(manifest, firstSegmentIndex, AUDIO_TIMESCALE, AUDIO_SEGMENT_DURATION);
+    manifest.append(
+        "<Representation id=\"audio\" codecs=\"mp4a.40.2\" bandwidth=\"128000\"/>"
+            + "</AdaptationSet>"
+            + "</Period>"
+            + "</MPD>");
+    return manifest.toString();
+  }
+
+  private static void appendSegmentTemplate(
+      StringBuilder manifest, int firstSegmentIndex, long timescale, long segmentDuration) {
+    manifest
+        .append("<SegmentTemplate timescale=\"")
+        .append(timescale)
+        .append("\" startNumber=\"")
+        .append(firstSegmentIndex)
+        .append("\" media=\"$RepresentationID$/$Time$.m4s\"")
+        .append(" initialization=\"$RepresentationID$/init.mp4\"><SegmentTimeline>");
+    for (int i = firstSegmentIndex; i < firstSegmentIndex + SEGMENT_COUNT; i++) {
+      manifest
+          .append("<S t=\"")
+          .append(i * segmentDuration)
+          .append("\" d=\"")
+          .append(segmentDuration)
+          .append("\"/>");
+    }
+    manifest.append("</SegmentTimeline></SegmentTemplate>");
+  }
+}
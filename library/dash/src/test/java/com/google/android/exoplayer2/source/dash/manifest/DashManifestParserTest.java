@@ -23,12 +23,21 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.metadata.emsg.EventMessage;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -41,6 +50,10 @@ public class DashManifestParserTest {
   private static final String SAMPLE_MPD_3_SEGMENT_TEMPLATE = "sample_mpd_3_segment_template";
   private static final String SAMPLE_MPD_4_EVENT_STREAM = "sample_mpd_4_event_stream";
 
+  private static final int LIVE_SEGMENT_COUNT = 10;
+  private static final long LIVE_SEGMENT_DURATION_MS = 2000;
+  private static final int TIMEOUT_MS = 10_000;
+
   /** Simple test to ensure the sample manifests parse without any exceptions being thrown. */
   @Test
   public void testParseMediaPresentationDescription() throws IOException {
@@ -169,6 +182,122 @@ public class DashManifestParserTest {
     assertThat(mpd.programInformation).isEqualTo(expectedProgramInformation);
   }
 
+  @Test
+  public void testParseWithReuseOfUnchangedElementsReturnsSameInstancesIfUnchanged()
+      throws IOException {
+    DashManifestParser parser = new DashManifestParser(/* reuseUnchangedElements= */ true);
+    DashManifest mpd1 =
+        parser.parse(
+            Uri.parse("https://example.com/test.mpd"),
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_3_SEGMENT_TEMPLATE));
+    DashManifest mpd2 =
+        parser.parse(
+            Uri.parse("https://example.com/test.mpd"),
+            TestUtil.getInputStream(
+                ApplicationProvider.getApplicationContext(), SAMPLE_MPD_3_SEGMENT_TEMPLATE));
+
+    assertThat(mpd2).isNotSameInstanceAs(mpd1);
+    assertThat(mpd2.getPeriod(0)).isSameInstanceAs(mpd1.getPeriod(0));
+  }
+
+  @Test
+  public void testParseWithReuseOfUnchangedElementsOnlyBuildsNewSegmentTimelineEntries()
+      throws IOException {
+    CountingDashManifestParser parser =
+        new CountingDashManifestParser(/* reuseUnchangedElements= */ true);
+    DashManifest mpd1 =
+        parseLiveManifest(parser, /* firstSegmentIndex= */ 0, /* videoBandwidth= */ 1000000);
+    assertThat(parser.segmentTimelineElementCount).isEqualTo(LIVE_SEGMENT_COUNT);
+
+    parser.segmentTimelineElementCount = 0;
+    DashManifest mpd2 =
+        parseLiveManifest(parser, /* firstSegmentIndex= */ 2, /* videoBandwidth= */ 1000000);
+
+    assertThat(parser.segmentTimelineElementCount).isEqualTo(2);
+    assertThat(mpd2.getPeriod(0)).isNotSameInstanceAs(mpd1.getPeriod(0));
+    DashSegmentIndex index =
+        mpd2.getPeriod(0).adaptationSets.get(0).representations.get(0).getIndex();
+    assertThat(index.getFirstSegmentNum()).isEqualTo(2);
+    assertThat(index.getSegmentCount(C.TIME_UNSET)).isEqualTo(LIVE_SEGMENT_COUNT);
+    for (int i = 0; i < LIVE_SEGMENT_COUNT; i++) {
+      assertThat(index.getTimeUs(/* segmentNum= */ i + 2))
+          .isEqualTo((i + 2) * LIVE_SEGMENT_DURATION_MS * 1000);
+    }
+  }
+
+  @Test
+  public void testParseWithReuseOfUnchangedElementsOnlyReusesUnchangedElements()
+      throws IOException {
+    DashManifestParser parser = new DashManifestParser(/* reuseUnchangedElements= */ true);
+    DashManifest mpd1 =
+        parseLiveManifest(parser, /* firstSegmentIndex= */ 0, /* videoBandwidth= */ 1000000);
+    DashManifest mpd2 =
+        parseLiveManifest(parser, /* firstSegmentIndex= */ 0, /* videoBandwidth= */ 2000000);
+
+    AdaptationSet videoAdaptationSet1 = mpd1.getPeriod(0).adaptationSets.get(0);
+    AdaptationSet videoAdaptationSet2 = mpd2.getPeriod(0).adaptationSets.get(0);
+    assertThat(videoAdaptationSet2).isNotSameInstanceAs(videoAdaptationSet1);
+    assertThat(videoAdaptationSet2.representations.get(0).format.bitrate).isEqualTo(2000000);
+    assertThat(videoAdaptationSet2.representations.get(1))
+        .isSameInstanceAs(videoAdaptationSet1.representations.get(1));
+    assertThat(mpd2.getPeriod(0).adaptationSets.get(1))
+        .isSameInstanceAs(mpd1.getPeriod(0).adaptationSets.get(1));
+  }
+
+  @Test
+  public void testParseWithReuseOfUnchangedElementsDoesNotBlockConcurrentParses()
+      throws Exception {
+    DashManifestParser parser = new DashManifestParser(/* reuseUnchangedElements= */ true);
+    CountDownLatch readStartedLatch = new CountDownLatch(1);
+    CountDownLatch readAllowedLatch = new CountDownLatch(1);
+    InputStream blockingInputStream =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            readStartedLatch.countDown();
+            try {
+              readAllowedLatch.await();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            return -1;
+          }
+        };
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try {
+      executorService.submit(
+          () -> parser.parse(Uri.parse("https://example.com/test.mpd"), blockingInputStream));
+      assertThat(readStartedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+      // The parse completes while the other one is still reading its input.
+      Future<DashManifest> manifestFuture =
+          executorService.submit(
+              () ->
+                  parseLiveManifest(
+                      parser, /* firstSegmentIndex= */ 0, /* videoBandwidth= */ 1000000));
+      DashManifest mpd = manifestFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+      assertThat(mpd.getPeriodCount()).isEqualTo(1);
+    } finally {
+      readAllowedLatch.countDown();
+      executorService.shutdown();
+    }
+  }
+
+  @Test
+  public void testParseWithoutReuseOfUnchangedElementsReturnsNewInstances() throws IOException {
+    CountingDashManifestParser parser =
+        new CountingDashManifestParser(/* reuseUnchangedElements= */ false);
+    DashManifest mpd1 =
+        parseLiveManifest(parser, /* firstSegmentIndex= */ 0, /* videoBandwidth= */ 1000000);
+    DashManifest mpd2 =
+        parseLiveManifest(parser, /* firstSegmentIndex= */ 0, /* videoBandwidth= */ 1000000);
+
+    assertThat(parser.segmentTimelineElementCount).isEqualTo(2 * LIVE_SEGMENT_COUNT);
+    assertThat(mpd2.getPeriod(0)).isNotSameInstanceAs(mpd1.getPeriod(0));
+  }
+
   @Test
   public void testParseCea608AccessibilityChannel() {
     assertThat(
@@ -255,6 +384,46 @@ public class DashManifestParserTest {
         .isEqualTo(Format.NO_VALUE);
   }
 
+  private static DashManifest parseLiveManifest(
+      DashManifestParser parser, int firstSegmentIndex, int videoBandwidth) throws IOException {
+    StringBuilder segmentTimeline = new StringBuilder();
+    for (int i = 0; i < LIVE_SEGMENT_COUNT; i++) {
+      segmentTimeline
+          .append("<S t=\"")
+          .append((firstSegmentIndex + i) * LIVE_SEGMENT_DURATION_MS)
+          .append("\" d=\"")
+          .append(LIVE_SEGMENT_DURATION_MS)
+          .append("\"/>");
+    }
+    String segmentTemplate =
+        "<SegmentTemplate timescale=\"1000\" startNumber=\""
+            + firstSegmentIndex
+            + "\" media=\"$RepresentationID$/$Number$.m4s\">"
+            + "<SegmentTimeline>"
+            + segmentTimeline
+            + "</SegmentTimeline>"
+            + "</SegmentTemplate>";
+    String manifest =
+        "<MPD type=\"dynamic\" availabilityStartTime=\"2019-01-01T00:00:00Z\">"
+            + "<Period id=\"0\" start=\"PT0S\">"
+            + "<AdaptationSet id=\"0\" mimeType=\"video/mp4\">"
+            + segmentTemplate
+            + "<Representation id=\"video1\" codecs=\"avc1.4d401f\" bandwidth=\""
+            + videoBandwidth
+            + "\"/>"
+            + "<Representation id=\"video2\" codecs=\"avc1.4d401e\" bandwidth=\"500000\"/>"
+            + "</AdaptationSet>"
+            + "<AdaptationSet id=\"1\" mimeType=\"audio/mp4\" lang=\"en\">"
+            + "<SegmentTemplate timescale=\"1000\" media=\"$RepresentationID$/$Number$.m4s\"/>"
+            + "<Representation id=\"audio\" codecs=\"mp4a.40.2\" bandwidth=\"128000\"/>"
+            + "</AdaptationSet>"
+            + "</Period>"
+            + "</MPD>";
+    return parser.parse(
+        Uri.parse("https://example.com/test.mpd"),
+        new ByteArrayInputStream(Util.getUtf8Bytes(manifest)));
+  }
+
   private static List<Descriptor> buildCea608AccessibilityDescriptors(String value) {
     return Collections.singletonList(new Descriptor("urn:scte:dash:cc:cea-608:2015", value, null));
   }
@@ -262,4 +431,21 @@ public class DashManifestParserTest {
   private static List<Descriptor> buildCea708AccessibilityDescriptors(String value) {
     return Collections.singletonList(new Descriptor("urn:scte:dash:cc:cea-708:2015", value, null));
   }
+
+  /** A {@link DashManifestParser} that counts the segment timeline entries that it builds. */
+  private static final class CountingDashManifestParser extends DashManifestParser {
+
+    public int segmentTimelineElementCount;
+
+    public CountingDashManifestParser(boolean reuseUnchangedElements) {
+      super(reuseUnchangedElements);
+    }
+
+    @Override
+    protected SegmentTimelineElement buildSegmentTimelineElement(
+        long elapsedTime, long duration) {
+      segmentTimelineElementCount++;
+      return super.buildSegmentTimelineElement(elapsedTime, duration);
+    }
+  }
 }
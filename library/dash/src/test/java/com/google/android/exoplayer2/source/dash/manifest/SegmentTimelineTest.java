@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer2.source.dash.manifest.SegmentBase.SegmentTimelineElement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SegmentTimeline}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentTimelineTest {
+
+  @Test
+  public void testConsecutiveSegmentsOfEqualDurationAreStoredAsOneRun() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .add(/* startTime= */ 1000, /* duration= */ 100, /* count= */ 3)
+            .add(/* startTime= */ 1300, /* duration= */ 100, /* count= */ 1)
+            .add(/* startTime= */ 1400, /* duration= */ 100, /* count= */ 2)
+            .build();
+
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(1);
+    assertThat(segmentTimeline).hasSize(6);
+    for (int i = 0; i < 6; i++) {
+      assertThat(segmentTimeline.getStartTime(i)).isEqualTo(1000 + 100 * i);
+      assertThat(segmentTimeline.getDuration(i)).isEqualTo(100);
+    }
+  }
+
+  @Test
+  public void testChangedDurationOrDiscontinuityStartsNewRun() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .add(/* startTime= */ 0, /* duration= */ 100, /* count= */ 2)
+            .add(/* startTime= */ 200, /* duration= */ 50, /* count= */ 2)
+            .add(/* startTime= */ 400, /* duration= */ 50, /* count= */ 1)
+            .add(/* startTime= */ 450, /* duration= */ 50, /* count= */ 0)
+            .build();
+
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(3);
+    assertThat(segmentTimeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 100),
+            new SegmentTimelineElement(/* startTime= */ 100, /* duration= */ 100),
+            new SegmentTimelineElement(/* startTime= */ 200, /* duration= */ 50),
+            new SegmentTimelineElement(/* startTime= */ 250, /* duration= */ 50),
+            new SegmentTimelineElement(/* startTime= */ 400, /* duration= */ 50))
+        .inOrder();
+  }
+
+  @Test
+  public void testIndexOfStartTime() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .add(/* startTime= */ 0, /* duration= */ 100, /* count= */ 2)
+            .add(/* startTime= */ 200, /* duration= */ 50, /* count= */ 2)
+            .add(/* startTime= */ 400, /* duration= */ 50, /* count= */ 1)
+            .build();
+
+    assertThat(segmentTimeline.indexOfStartTime(0)).isEqualTo(0);
+    assertThat(segmentTimeline.indexOfStartTime(100)).isEqualTo(1);
+    assertThat(segmentTimeline.indexOfStartTime(250)).isEqualTo(3);
+    assertThat(segmentTimeline.indexOfStartTime(400)).isEqualTo(4);
+    assertThat(segmentTimeline.indexOfStartTime(-100)).isEqualTo(-1);
+    assertThat(segmentTimeline.indexOfStartTime(150)).isEqualTo(-1);
+    assertThat(segmentTimeline.indexOfStartTime(300)).isEqualTo(-1);
+    assertThat(segmentTimeline.indexOfStartTime(450)).isEqualTo(-1);
+  }
+
+  @Test
+  public void testCopyOfEqualsCopiedList() {
+    List<SegmentTimelineElement> elements = new ArrayList<>();
+    elements.add(new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 100));
+    elements.add(new SegmentTimelineElement(/* startTime= */ 100, /* duration= */ 100));
+    elements.add(new SegmentTimelineElement(/* startTime= */ 200, /* duration= */ 90));
+
+    SegmentTimeline segmentTimeline = SegmentTimeline.copyOf(elements);
+
+    assertThat(segmentTimeline.getRunCount()).isEqualTo(2);
+    assertThat(segmentTimeline).isEqualTo(elements);
+    assertThat(segmentTimeline.hashCode()).isEqualTo(elements.hashCode());
+    assertThat(SegmentTimeline.copyOf(segmentTimeline)).isSameInstanceAs(segmentTimeline);
+  }
+
+  @Test
+  public void testGetSegmentNum() {
+    SegmentTimeline segmentTimeline =
+        new SegmentTimeline.Builder()
+            .add(/* startTime= */ 0, /* duration= */ 1000, /* count= */ 3)
+            .add(/* startTime= */ 3000, /* duration= */ 500, /* count= */ 4)
+            .add(/* startTime= */ 6000, /* duration= */ 1000, /* count= */ 2)
+            .build();
+    SegmentTemplate segmentTemplate =
+        new SegmentTemplate(
+            /* initialization= */ null,
+            /* timescale= */ 1000,
+            /* presentationTimeOffset= */ 0,
+            /* startNumber= */ 10,
+            /* endNumber= */ C.INDEX_UNSET,
+            /* duration= */ 0,
+            segmentTimeline,
+            /* initializationTemplate= */ null,
+            /* mediaTemplate= */ null);
+
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 0, C.TIME_UNSET)).isEqualTo(10);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 2_999_999, C.TIME_UNSET))
+        .isEqualTo(12);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 3_000_000, C.TIME_UNSET))
+        .isEqualTo(13);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 4_700_000, C.TIME_UNSET))
+        .isEqualTo(16);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 5_500_000, C.TIME_UNSET))
+        .isEqualTo(16);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 6_000_000, C.TIME_UNSET))
+        .isEqualTo(17);
+    assertThat(segmentTemplate.getSegmentNum(/* timeUs= */ 100_000_000, C.TIME_UNSET))
+        .isEqualTo(18);
+    assertThat(segmentTemplate.getSegmentTimeUs(/* sequenceNumber= */ 15)).isEqualTo(4_000_000);
+    assertThat(segmentTemplate.getSegmentDurationUs(/* sequenceNumber= */ 15, C.TIME_UNSET))
+        .isEqualTo(500_000);
+  }
+}
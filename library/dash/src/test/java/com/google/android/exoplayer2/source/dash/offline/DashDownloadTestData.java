@@ -89,6 +89,33 @@ import java.nio.charset.Charset;
               + "</MPD>")
           .getBytes(Charset.forName(C.UTF8_NAME));
 
+  byte[] TEST_MPD_LIVE =
+      ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+              + "<MPD xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" type=\"dynamic\" "
+              + "    suggestedPresentationDelay=\"PT12S\">\n"
+              + "    <Period start=\"PT0S\">\n"
+              + "        <AdaptationSet>\n"
+              + "            <SegmentList>\n"
+              + "                <SegmentTimeline>\n"
+              + "                    <S d=\"5\" r=\"4\" />\n"
+              + "                </SegmentTimeline>\n"
+              + "            </SegmentList>\n"
+              + "            <Representation>\n"
+              + "                <SegmentList>\n"
+              + "                    <Initialization\n"
+              + "                        range=\"0-9\" sourceURL=\"audio_init_data\" />\n"
+              + "                    <SegmentURL media=\"audio_segment_1\" />\n"
+              + "                    <SegmentURL media=\"audio_segment_2\" />\n"
+              + "                    <SegmentURL media=\"audio_segment_3\" />\n"
+              + "                    <SegmentURL media=\"audio_segment_4\" />\n"
+              + "                    <SegmentURL media=\"audio_segment_5\" />\n"
+              + "                </SegmentList>\n"
+              + "            </Representation>\n"
+              + "        </AdaptationSet>\n"
+              + "    </Period>\n"
+              + "</MPD>")
+          .getBytes(Charset.forName(C.UTF8_NAME));
+
   byte[] TEST_MPD_NO_INDEX =
       ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
               + "<MPD xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" type=\"dynamic\">\n"
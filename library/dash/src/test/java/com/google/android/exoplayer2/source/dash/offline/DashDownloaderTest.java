@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.source.dash.offline;
 
 import static com.google.android.exoplayer2.source.dash.offline.DashDownloadTestData.TEST_MPD;
+import static com.google.android.exoplayer2.source.dash.offline.DashDownloadTestData.TEST_MPD_LIVE;
 import static com.google.android.exoplayer2.source.dash.offline.DashDownloadTestData.TEST_MPD_NO_INDEX;
 import static com.google.android.exoplayer2.source.dash.offline.DashDownloadTestData.TEST_MPD_URI;
 import static com.google.android.exoplayer2.testutil.CacheAsserts.assertCacheEmpty;
@@ -28,6 +29,7 @@ import static org.mockito.Mockito.when;
 import android.net.Uri;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.offline.DefaultDownloaderFactory;
 import com.google.android.exoplayer2.offline.DownloadException;
 import com.google.android.exoplayer2.offline.DownloadRequest;
@@ -171,6 +173,39 @@ public class DashDownloaderTest {
     assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
   }
 
+  @Test
+  public void testDownloadAllRepresentationsInParallel() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("text_segment_1", 1)
+            .setRandomData("text_segment_2", 2)
+            .setRandomData("text_segment_3", 3)
+            .setRandomData("period_2_segment_1", 1)
+            .setRandomData("period_2_segment_2", 2)
+            .setRandomData("period_2_segment_3", 3);
+
+    DashDownloader dashDownloader =
+        new DashDownloader(
+            TEST_MPD_URI,
+            keysList(),
+            new DownloaderConstructorHelper(
+                cache,
+                new Factory().setFakeDataSet(fakeDataSet),
+                /* cacheReadDataSourceFactory= */ null,
+                /* cacheWriteDataSinkFactory= */ null,
+                /* priorityTaskManager= */ null,
+                /* cacheKeyFactory= */ null,
+                /* maxParallelSegmentDownloads= */ 4));
+    dashDownloader.download(progressListener);
+    assertCachedData(cache, new RequestSet(fakeDataSet).useBoundedDataSpecFor("audio_init_data"));
+    progressListener.assertBytesDownloaded(10 + 4 + 5 + 6 + 1 + 2 + 3 + 1 + 2 + 3);
+  }
+
   @Test
   public void testProgressiveDownload() throws Exception {
     FakeDataSet fakeDataSet =
@@ -203,6 +238,58 @@ public class DashDownloaderTest {
     assertThat(openedDataSpecs[7].uri.getPath()).isEqualTo("text_segment_3");
   }
 
+  @Test
+  public void testPrefetch() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6);
+    FakeDataSource fakeDataSource = new FakeDataSource(fakeDataSet);
+    Factory factory = mock(Factory.class);
+    when(factory.createDataSource()).thenReturn(fakeDataSource);
+
+    DashDownloader dashDownloader = getDashDownloader(factory, new StreamKey(0, 0, 0));
+    // Each segment is 5 seconds long, so the third segment starts outside of the prefetch duration.
+    dashDownloader.prefetch(/* durationUs= */ 10 * C.MICROS_PER_SECOND);
+
+    DataSpec[] openedDataSpecs = fakeDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs.length).isEqualTo(4);
+    assertThat(openedDataSpecs[0].uri).isEqualTo(TEST_MPD_URI);
+    assertThat(openedDataSpecs[1].uri.getPath()).isEqualTo("audio_init_data");
+    assertThat(openedDataSpecs[2].uri.getPath()).isEqualTo("audio_segment_1");
+    assertThat(openedDataSpecs[3].uri.getPath()).isEqualTo("audio_segment_2");
+  }
+
+  @Test
+  public void testPrefetchLive() throws Exception {
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(TEST_MPD_URI, TEST_MPD_LIVE)
+            .setRandomData("audio_init_data", 10)
+            .setRandomData("audio_segment_1", 4)
+            .setRandomData("audio_segment_2", 5)
+            .setRandomData("audio_segment_3", 6)
+            .setRandomData("audio_segment_4", 7)
+            .setRandomData("audio_segment_5", 8);
+    FakeDataSource fakeDataSource = new FakeDataSource(fakeDataSet);
+    Factory factory = mock(Factory.class);
+    when(factory.createDataSource()).thenReturn(fakeDataSource);
+
+    DashDownloader dashDownloader = getDashDownloader(factory, new StreamKey(0, 0, 0));
+    // The live stream ends at 25 seconds, so playback starts 12 seconds before that, in the third
+    // segment. Only that segment starts within the prefetch duration.
+    dashDownloader.prefetch(/* durationUs= */ 5 * C.MICROS_PER_SECOND);
+
+    DataSpec[] openedDataSpecs = fakeDataSource.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs.length).isEqualTo(3);
+    assertThat(openedDataSpecs[0].uri).isEqualTo(TEST_MPD_URI);
+    assertThat(openedDataSpecs[1].uri.getPath()).isEqualTo("audio_init_data");
+    assertThat(openedDataSpecs[2].uri.getPath()).isEqualTo("audio_segment_3");
+  }
+
   @Test
   public void testProgressiveDownloadSeparatePeriods() throws Exception {
     FakeDataSet fakeDataSet =
@@ -41,6 +41,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -75,6 +76,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
   private final boolean allowChunklessPreparation;
   private final boolean useSessionKeys;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
 
   @Nullable private Callback callback;
   private int pendingPrepareCount;
@@ -104,6 +106,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
    *     SequenceableLoader}s for when this media source loads data from multiple streams.
    * @param allowChunklessPreparation Whether chunkless preparation is allowed.
    * @param useSessionKeys Whether to use #EXT-X-SESSION-KEY tags.
+   * @param loaderThreadPool A {@link LoaderThreadPool} on which to load chunks, or null to load
+   *     them on threads owned by the period.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -116,7 +120,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
       Allocator allocator,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       boolean allowChunklessPreparation,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.dataSourceFactory = dataSourceFactory;
@@ -128,6 +133,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.useSessionKeys = useSessionKeys;
+    this.loaderThreadPool = loaderThreadPool;
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader();
     streamWrapperIndices = new IdentityHashMap<>();
@@ -749,7 +755,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
         muxedAudioFormat,
         drmSessionManager,
         loadErrorHandlingPolicy,
-        eventDispatcher);
+        eventDispatcher,
+        loaderThreadPool);
   }
 
   private static Map<String, DrmInitData> deriveOverridingDrmInitData(
@@ -44,6 +44,8 @@ import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.Loader;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
@@ -71,6 +73,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private boolean allowChunklessPreparation;
     private boolean useSessionKeys;
+    @Nullable private LoaderThreadPool loaderThreadPool;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -256,6 +259,21 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets a {@link LoaderThreadPool} on which media is loaded. If the {@link HlsPlaylistTracker}
+     * factory is {@link DefaultHlsPlaylistTracker#FACTORY}, playlists are also loaded on the pool.
+     * The default value is null, in which case each {@link Loader} loads on a thread of its own.
+     *
+     * @param loaderThreadPool A {@link LoaderThreadPool}, or null.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderThreadPool = loaderThreadPool;
+      return this;
+    }
+
     /**
      * @deprecated Use {@link #createMediaSource(Uri)} and {@link #addEventListener(Handler,
      *     MediaSourceEventListener)} instead.
@@ -284,6 +302,20 @@ public final class HlsMediaSource extends BaseMediaSource
         playlistParserFactory =
             new FilteringHlsPlaylistParserFactory(playlistParserFactory, streamKeys);
       }
+      HlsPlaylistTracker playlistTracker;
+      if (loaderThreadPool != null && playlistTrackerFactory == DefaultHlsPlaylistTracker.FACTORY) {
+        playlistTracker =
+            new DefaultHlsPlaylistTracker(
+                hlsDataSourceFactory,
+                loadErrorHandlingPolicy,
+                playlistParserFactory,
+                DefaultHlsPlaylistTracker.DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+                loaderThreadPool);
+      } else {
+        playlistTracker =
+            playlistTrackerFactory.createTracker(
+                hlsDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory);
+      }
       return new HlsMediaSource(
           playlistUri,
           hlsDataSourceFactory,
@@ -291,10 +323,10 @@ public final class HlsMediaSource extends BaseMediaSource
           compositeSequenceableLoaderFactory,
           drmSessionManager,
           loadErrorHandlingPolicy,
-          playlistTrackerFactory.createTracker(
-              hlsDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory),
+          playlistTracker,
           allowChunklessPreparation,
           useSessionKeys,
+          loaderThreadPool,
           tag);
     }
 
@@ -321,6 +353,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final boolean useSessionKeys;
   private final HlsPlaylistTracker playlistTracker;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
   @Nullable private final Object tag;
 
   @Nullable private TransferListener mediaTransferListener;
@@ -335,6 +368,7 @@ public final class HlsMediaSource extends BaseMediaSource
       HlsPlaylistTracker playlistTracker,
       boolean allowChunklessPreparation,
       boolean useSessionKeys,
+      @Nullable LoaderThreadPool loaderThreadPool,
       @Nullable Object tag) {
     this.manifestUri = manifestUri;
     this.dataSourceFactory = dataSourceFactory;
@@ -345,6 +379,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.playlistTracker = playlistTracker;
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.useSessionKeys = useSessionKeys;
+    this.loaderThreadPool = loaderThreadPool;
     this.tag = tag;
   }
 
@@ -380,7 +415,8 @@ public final class HlsMediaSource extends BaseMediaSource
         allocator,
         compositeSequenceableLoaderFactory,
         allowChunklessPreparation,
-        useSessionKeys);
+        useSessionKeys,
+        loaderThreadPool);
   }
 
   @Override
@@ -46,6 +46,7 @@ import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -163,6 +164,8 @@ import java.util.Set;
    *     DrmSessions} with.
    * @param loadErrorHandlingPolicy A {@link LoadErrorHandlingPolicy}.
    * @param eventDispatcher A dispatcher to notify of events.
+   * @param loaderThreadPool A {@link LoaderThreadPool} on which to load chunks, or null to load
+   *     them on a thread owned by the wrapper.
    */
   public HlsSampleStreamWrapper(
       int trackType,
@@ -174,7 +177,8 @@ import java.util.Set;
       Format muxedAudioFormat,
       DrmSessionManager<?> drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
-      EventDispatcher eventDispatcher) {
+      EventDispatcher eventDispatcher,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.trackType = trackType;
     this.callback = callback;
     this.chunkSource = chunkSource;
@@ -184,7 +188,9 @@ import java.util.Set;
     this.drmSessionManager = drmSessionManager;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.eventDispatcher = eventDispatcher;
-    loader = new Loader("Loader:HlsSampleStreamWrapper");
+    loader =
+        new Loader(
+            "Loader:HlsSampleStreamWrapper", loaderThreadPool, LoaderThreadPool.PRIORITY_MEDIA);
     nextChunkHolder = new HlsChunkSource.HlsChunkHolder();
     sampleQueueTrackIds = new int[0];
     audioSampleQueueIndex = C.INDEX_UNSET;
@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.UriUtil;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -77,6 +78,27 @@ public final class HlsDownloader extends SegmentDownloader<HlsPlaylist> {
   @Override
   protected List<Segment> getSegments(
       DataSource dataSource, HlsPlaylist playlist, boolean allowIncompleteList) throws IOException {
+    return getSegments(
+        dataSource, playlist, allowIncompleteList, /* prefetchDurationUs= */ C.TIME_UNSET);
+  }
+
+  @Override
+  protected List<Segment> getPrefetchSegments(
+      DataSource dataSource, HlsPlaylist playlist, long durationUs) throws IOException {
+    return getSegments(dataSource, playlist, /* allowIncompleteList= */ false, durationUs);
+  }
+
+  /**
+   * Returns the segments of the playlist, or only those needed to play {@code prefetchDurationUs}
+   * of each media playlist from its default start position if {@code prefetchDurationUs} is not
+   * {@link C#TIME_UNSET}.
+   */
+  private List<Segment> getSegments(
+      DataSource dataSource,
+      HlsPlaylist playlist,
+      boolean allowIncompleteList,
+      long prefetchDurationUs)
+      throws IOException {
     ArrayList<DataSpec> mediaPlaylistDataSpecs = new ArrayList<>();
     if (playlist instanceof HlsMasterPlaylist) {
       HlsMasterPlaylist masterPlaylist = (HlsMasterPlaylist) playlist;
@@ -102,8 +124,24 @@ public final class HlsDownloader extends SegmentDownloader<HlsPlaylist> {
       }
       HlsMediaPlaylist.Segment lastInitSegment = null;
       List<HlsMediaPlaylist.Segment> hlsSegments = mediaPlaylist.segments;
-      for (int i = 0; i < hlsSegments.size(); i++) {
+      int firstSegmentIndex = 0;
+      long endTimeUs = Long.MAX_VALUE;
+      if (prefetchDurationUs != C.TIME_UNSET && !hlsSegments.isEmpty()) {
+        // Only include the segments that start within the prefetch duration of the segment that
+        // contains the default start position.
+        firstSegmentIndex =
+            Util.binarySearchFloor(
+                hlsSegments,
+                /* value= */ getDefaultStartPositionUs(mediaPlaylist),
+                /* inclusive= */ true,
+                /* stayInBounds= */ true);
+        endTimeUs = hlsSegments.get(firstSegmentIndex).relativeStartTimeUs + prefetchDurationUs;
+      }
+      for (int i = firstSegmentIndex; i < hlsSegments.size(); i++) {
         HlsMediaPlaylist.Segment segment = hlsSegments.get(i);
+        if (segment.relativeStartTimeUs >= endTimeUs) {
+          break;
+        }
         HlsMediaPlaylist.Segment initSegment = segment.initializationSegment;
         if (initSegment != null && initSegment != lastInitSegment) {
           lastInitSegment = initSegment;
@@ -121,6 +159,21 @@ public final class HlsDownloader extends SegmentDownloader<HlsPlaylist> {
     }
   }
 
+  /**
+   * Returns the position in the media playlist from which playback starts by default, which is
+   * near the live edge of a live stream. Matches the default start position of {@link
+   * com.google.android.exoplayer2.source.hls.HlsMediaSource}.
+   */
+  private static long getDefaultStartPositionUs(HlsMediaPlaylist mediaPlaylist) {
+    if (mediaPlaylist.startOffsetUs != C.TIME_UNSET) {
+      return mediaPlaylist.startOffsetUs;
+    } else if (mediaPlaylist.hasEndTag) {
+      return 0;
+    }
+    List<HlsMediaPlaylist.Segment> segments = mediaPlaylist.segments;
+    return segments.get(Math.max(0, segments.size() - 3)).relativeStartTimeUs;
+  }
+
   private static HlsPlaylist loadManifest(DataSource dataSource, DataSpec dataSpec)
       throws IOException {
     return ParsingLoadable.load(
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Finds the value of an attribute, or of a tag, in a line of an HLS playlist without using {@link
+ * java.util.regex}.
+ *
+ * <p>Each instance is equivalent to the regular expression returned by {@link #pattern()}: {@link
+ * #find(String)} returns what the first capturing group of the first match of that regular
+ * expression would be. The line is scanned once for each occurrence of the attribute's prefix, and
+ * no objects are allocated other than the returned value.
+ */
+/* package */ final class AttributePattern {
+
+  private static final int TYPE_QUOTED_STRING = 0;
+  private static final int TYPE_UNQUOTED_STRING = 1;
+  private static final int TYPE_TRAILING_STRING = 2;
+  private static final int TYPE_INTEGER = 3;
+  private static final int TYPE_DECIMAL = 4;
+  private static final int TYPE_SIGNED_DECIMAL = 5;
+  private static final int TYPE_RESOLUTION = 6;
+  private static final int TYPE_BYTE_RANGE = 7;
+  private static final int TYPE_QUOTED_BYTE_RANGE = 8;
+  private static final int TYPE_ENUMERATED = 9;
+  private static final int TYPE_ENUMERATED_LIST_ITEM = 10;
+  private static final int TYPE_QUOTED_NUMBERED_ID = 11;
+  private static final int TYPE_DECIMAL_PREFIXED_STRING = 12;
+
+  private final String prefix;
+  private final int type;
+  private final String[] values;
+  private final boolean notAfterHyphen;
+  private final String pattern;
+
+  /** Matches {@code prefix"(.+?)"}. */
+  public static AttributePattern quotedString(String prefix) {
+    return new AttributePattern(prefix, TYPE_QUOTED_STRING, "\"(.+?)\"");
+  }
+
+  /** Matches {@code prefix([^,.*]+)}. */
+  public static AttributePattern unquotedString(String prefix) {
+    return new AttributePattern(prefix, TYPE_UNQUOTED_STRING, "([^,.*]+)");
+  }
+
+  /** Matches {@code prefix(.+)\b}. */
+  public static AttributePattern trailingString(String prefix) {
+    return new AttributePattern(prefix, TYPE_TRAILING_STRING, "(.+)\\b");
+  }
+
+  /** Matches {@code prefix(\d+)\b}. */
+  public static AttributePattern integer(String prefix) {
+    return new AttributePattern(prefix, TYPE_INTEGER, "(\\d+)\\b");
+  }
+
+  /** Matches {@code [^-]prefix(\d+)\b}. */
+  public static AttributePattern integerNotAfterHyphen(String prefix) {
+    return new AttributePattern(
+        prefix,
+        TYPE_INTEGER,
+        /* values= */ new String[0],
+        /* notAfterHyphen= */ true,
+        "[^-]" + prefix + "(\\d+)\\b");
+  }
+
+  /** Matches {@code prefix([\d\.]+)\b}. */
+  public static AttributePattern decimal(String prefix) {
+    return new AttributePattern(prefix, TYPE_DECIMAL, "([\\d\\.]+)\\b");
+  }
+
+  /** Matches {@code prefix(-?[\d\.]+)\b}. */
+  public static AttributePattern signedDecimal(String prefix) {
+    return new AttributePattern(prefix, TYPE_SIGNED_DECIMAL, "(-?[\\d\\.]+)\\b");
+  }
+
+  /** Matches {@code prefix(\d+x\d+)}. */
+  public static AttributePattern resolution(String prefix) {
+    return new AttributePattern(prefix, TYPE_RESOLUTION, "(\\d+x\\d+)");
+  }
+
+  /** Matches {@code prefix(\d+(?:@\d+)?)\b}. */
+  public static AttributePattern byteRange(String prefix) {
+    return new AttributePattern(prefix, TYPE_BYTE_RANGE, "(\\d+(?:@\\d+)?)\\b");
+  }
+
+  /** Matches {@code prefix"(\d+(?:@\d+)?)\b"}. */
+  public static AttributePattern quotedByteRange(String prefix) {
+    return new AttributePattern(prefix, TYPE_QUOTED_BYTE_RANGE, "\"(\\d+(?:@\\d+)?)\\b\"");
+  }
+
+  /** Matches {@code prefix(value1|value2|...)}. */
+  public static AttributePattern enumerated(String prefix, String... values) {
+    return new AttributePattern(
+        prefix,
+        TYPE_ENUMERATED,
+        values,
+        /* notAfterHyphen= */ false,
+        prefix + "(" + join(values) + ")");
+  }
+
+  /** Matches {@code prefix(value1|value2|...)\s*(?:,|$)}. */
+  public static AttributePattern enumeratedListItem(String prefix, String... values) {
+    return new AttributePattern(
+        prefix,
+        TYPE_ENUMERATED_LIST_ITEM,
+        values,
+        /* notAfterHyphen= */ false,
+        prefix + "(" + join(values) + ")\\s*(?:,|$)");
+  }
+
+  /** Matches {@code prefix"((?:idPrefix1|idPrefix2|...)\d+)"}. */
+  public static AttributePattern quotedNumberedId(String prefix, String... idPrefixes) {
+    return new AttributePattern(
+        prefix,
+        TYPE_QUOTED_NUMBERED_ID,
+        idPrefixes,
+        /* notAfterHyphen= */ false,
+        prefix + "\"((?:" + join(idPrefixes) + ")\\d+)\"");
+  }
+
+  /** Matches {@code prefix[\d\.]+\b,(.+)}. */
+  public static AttributePattern decimalPrefixedString(String prefix) {
+    return new AttributePattern(prefix, TYPE_DECIMAL_PREFIXED_STRING, "[\\d\\.]+\\b,(.+)");
+  }
+
+  private AttributePattern(String prefix, int type, String valuePattern) {
+    this(prefix, type, new String[0], /* notAfterHyphen= */ false, prefix + valuePattern);
+  }
+
+  private AttributePattern(
+      String prefix, int type, String[] values, boolean notAfterHyphen, String pattern) {
+    this.prefix = prefix;
+    this.type = type;
+    this.values = values;
+    this.notAfterHyphen = notAfterHyphen;
+    this.pattern = pattern;
+  }
+
+  /** Returns the regular expression that this pattern is equivalent to. */
+  public String pattern() {
+    return pattern;
+  }
+
+  /**
+   * Returns the value matched in a line, or null if the line doesn't match.
+   *
+   * @param line The line.
+   * @return The value, which is the first capturing group of the first match of {@link
+   *     #pattern()} in {@code line}, or null if there's no match.
+   */
+  @Nullable
+  public String find(String line) {
+    int prefixIndex = line.indexOf(prefix);
+    while (prefixIndex != -1) {
+      if (!notAfterHyphen || (prefixIndex > 0 && line.charAt(prefixIndex - 1) != '-')) {
+        String value = matchValue(line, prefixIndex + prefix.length());
+        if (value != null) {
+          return value;
+        }
+      }
+      prefixIndex = line.indexOf(prefix, prefixIndex + 1);
+    }
+    return null;
+  }
+
+  @Nullable
+  private String matchValue(String line, int start) {
+    int length = line.length();
+    int end;
+    switch (type) {
+      case TYPE_QUOTED_STRING:
+        if (!isCharAt(line, start, '"')) {
+          return null;
+        }
+        // The lazy (.+?) takes at least one character, so the closing quote can't be the first.
+        end = line.indexOf('"', start + 2);
+        return end != -1 && !containsLineTerminator(line, start + 1, end)
+            ? line.substring(start + 1, end)
+            : null;
+      case TYPE_UNQUOTED_STRING:
+        end = start;
+        while (end < length && !isUnquotedStringTerminator(line.charAt(end))) {
+          end++;
+        }
+        return end > start ? line.substring(start, end) : null;
+      case TYPE_TRAILING_STRING:
+        end = findBoundaryBefore(line, start, findLineTerminator(line, start));
+        return end != -1 ? line.substring(start, end) : null;
+      case TYPE_INTEGER:
+        end = skipDigits(line, start);
+        return end > start && !isWordCharAt(line, end) ? line.substring(start, end) : null;
+      case TYPE_SIGNED_DECIMAL:
+        if (isCharAt(line, start, '-')) {
+          end = findBoundaryBefore(line, start + 1, skipDecimal(line, start + 1));
+          // Without the sign, ([\d\.]+) can't match at the hyphen.
+          return end != -1 ? line.substring(start, end) : null;
+        }
+        // Fall through.
+      case TYPE_DECIMAL:
+        end = findBoundaryBefore(line, start, skipDecimal(line, start));
+        return end != -1 ? line.substring(start, end) : null;
+      case TYPE_RESOLUTION:
+        end = skipDigits(line, start);
+        if (end == start || !isCharAt(line, end, 'x')) {
+          return null;
+        }
+        int heightStart = end + 1;
+        end = skipDigits(line, heightStart);
+        return end > heightStart ? line.substring(start, end) : null;
+      case TYPE_BYTE_RANGE:
+        end = skipByteRange(line, start);
+        if (end == start) {
+          return null;
+        }
+        if (isWordCharAt(line, end)) {
+          // Backtrack to the length alone, which is followed by '@' if the offset was matched.
+          end = skipDigits(line, start);
+          if (isWordCharAt(line, end)) {
+            return null;
+          }
+        }
+        return line.substring(start, end);
+      case TYPE_QUOTED_BYTE_RANGE:
+        if (!isCharAt(line, start, '"')) {
+          return null;
+        }
+        end = skipByteRange(line, start + 1);
+        return end > start + 1 && isCharAt(line, end, '"') ? line.substring(start + 1, end) : null;
+      case TYPE_ENUMERATED:
+        for (String value : values) {
+          if (line.startsWith(value, start)) {
+            return value;
+          }
+        }
+        return null;
+      case TYPE_ENUMERATED_LIST_ITEM:
+        for (String value : values) {
+          if (line.startsWith(value, start)
+              && isAtListItemEnd(line, start + value.length())) {
+            return value;
+          }
+        }
+        return null;
+      case TYPE_QUOTED_NUMBERED_ID:
+        if (!isCharAt(line, start, '"')) {
+          return null;
+        }
+        for (String idPrefix : values) {
+          if (line.startsWith(idPrefix, start + 1)) {
+            int numberStart = start + 1 + idPrefix.length();
+            end = skipDigits(line, numberStart);
+            if (end > numberStart && isCharAt(line, end, '"')) {
+              return line.substring(start + 1, end);
+            }
+          }
+        }
+        return null;
+      case TYPE_DECIMAL_PREFIXED_STRING:
+        end = skipDecimal(line, start);
+        if (end == start || !isCharAt(line, end, ',') || !isBoundary(line, end)) {
+          return null;
+        }
+        int valueStart = end + 1;
+        end = findLineTerminator(line, valueStart);
+        return end > valueStart ? line.substring(valueStart, end) : null;
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  private static String join(String[] values) {
+    StringBuilder joined = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        joined.append('|');
+      }
+      joined.append(values[i]);
+    }
+    return joined.toString();
+  }
+
+  /** Returns the index after the digits starting at {@code start}. */
+  private static int skipDigits(String line, int start) {
+    int index = start;
+    while (index < line.length() && isDigit(line.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  /** Returns the index after the digits and periods starting at {@code start}. */
+  private static int skipDecimal(String line, int start) {
+    int index = start;
+    while (index < line.length() && (isDigit(line.charAt(index)) || line.charAt(index) == '.')) {
+      index++;
+    }
+    return index;
+  }
+
+  /** Returns the index after {@code \d+(?:@\d+)?} starting at {@code start}. */
+  private static int skipByteRange(String line, int start) {
+    int end = skipDigits(line, start);
+    if (end > start && isCharAt(line, end, '@')) {
+      int offsetEnd = skipDigits(line, end + 1);
+      if (offsetEnd > end + 1) {
+        return offsetEnd;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Returns the greatest index in {@code (start, end]} that's a word boundary, or -1 if there's
+   * none.
+   */
+  private static int findBoundaryBefore(String line, int start, int end) {
+    for (int index = end; index > start; index--) {
+      if (isBoundary(line, index)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the index of the first line terminator at or after {@code start}, or the length. */
+  private static int findLineTerminator(String line, int start) {
+    int index = start;
+    while (index < line.length() && !isLineTerminator(line.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static boolean containsLineTerminator(String line, int start, int end) {
+    return findLineTerminator(line, start) < end;
+  }
+
+  /** Returns whether {@code \s*(?:,|$)} matches at {@code index}. */
+  private static boolean isAtListItemEnd(String line, int index) {
+    int length = line.length();
+    while (index < length && isWhitespace(line.charAt(index))) {
+      index++;
+    }
+    return index == length
+        || line.charAt(index) == ','
+        || (index == length - 1 && isLineTerminator(line.charAt(index)));
+  }
+
+  private static boolean isBoundary(String line, int index) {
+    return isWordCharAt(line, index - 1) != isWordCharAt(line, index);
+  }
+
+  private static boolean isCharAt(String line, int index, char c) {
+    return index < line.length() && line.charAt(index) == c;
+  }
+
+  private static boolean isWordCharAt(String line, int index) {
+    if (index < 0 || index >= line.length()) {
+      return false;
+    }
+    char c = line.charAt(index);
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isUnquotedStringTerminator(char c) {
+    return c == ',' || c == '.' || c == '*';
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+}
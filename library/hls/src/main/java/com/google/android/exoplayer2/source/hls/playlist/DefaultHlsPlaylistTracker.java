@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
@@ -49,14 +50,17 @@ public final class DefaultHlsPlaylistTracker
    */
   public static final double DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT = 3.5;
 
+  /** The query parameter with which a playlist delta update is requested. */
+  private static final String SKIP_PARAM = "_HLS_skip";
+
   private final HlsDataSourceFactory dataSourceFactory;
   private final HlsPlaylistParserFactory playlistParserFactory;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final HashMap<Uri, MediaPlaylistBundle> playlistBundles;
   private final List<PlaylistEventListener> listeners;
   private final double playlistStuckTargetDurationCoefficient;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
 
-  @Nullable private ParsingLoadable.Parser<HlsPlaylist> mediaPlaylistParser;
   @Nullable private EventDispatcher eventDispatcher;
   @Nullable private Loader initialPlaylistLoader;
   @Nullable private Handler playlistRefreshHandler;
@@ -101,10 +105,38 @@ public final class DefaultHlsPlaylistTracker
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       HlsPlaylistParserFactory playlistParserFactory,
       double playlistStuckTargetDurationCoefficient) {
+    this(
+        dataSourceFactory,
+        loadErrorHandlingPolicy,
+        playlistParserFactory,
+        playlistStuckTargetDurationCoefficient,
+        /* loaderThreadPool= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param playlistParserFactory An {@link HlsPlaylistParserFactory}.
+   * @param playlistStuckTargetDurationCoefficient A coefficient to apply to the target duration of
+   *     media playlists in order to determine that a non-changing playlist is stuck. Once a
+   *     playlist is deemed stuck, a {@link PlaylistStuckException} is thrown via {@link
+   *     #maybeThrowPlaylistRefreshError(Uri)}.
+   * @param loaderThreadPool A {@link LoaderThreadPool} on which to load playlists, or null to load
+   *     each playlist on a thread of its own.
+   */
+  public DefaultHlsPlaylistTracker(
+      HlsDataSourceFactory dataSourceFactory,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      HlsPlaylistParserFactory playlistParserFactory,
+      double playlistStuckTargetDurationCoefficient,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.dataSourceFactory = dataSourceFactory;
     this.playlistParserFactory = playlistParserFactory;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.playlistStuckTargetDurationCoefficient = playlistStuckTargetDurationCoefficient;
+    this.loaderThreadPool = loaderThreadPool;
     listeners = new ArrayList<>();
     playlistBundles = new HashMap<>();
     initialStartTimeUs = C.TIME_UNSET;
@@ -127,7 +159,11 @@ public final class DefaultHlsPlaylistTracker
             C.DATA_TYPE_MANIFEST,
             playlistParserFactory.createPlaylistParser());
     Assertions.checkState(initialPlaylistLoader == null);
-    initialPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MasterPlaylist");
+    initialPlaylistLoader =
+        new Loader(
+            "DefaultHlsPlaylistTracker:MasterPlaylist",
+            loaderThreadPool,
+            LoaderThreadPool.PRIORITY_MANIFEST);
     long elapsedRealtime =
         initialPlaylistLoader.startLoading(
             masterPlaylistLoadable,
@@ -230,7 +266,6 @@ public final class DefaultHlsPlaylistTracker
       masterPlaylist = (HlsMasterPlaylist) result;
     }
     this.masterPlaylist = masterPlaylist;
-    mediaPlaylistParser = playlistParserFactory.createPlaylistParser(masterPlaylist);
     primaryMediaPlaylistUrl = masterPlaylist.variants.get(0).url;
     createBundles(masterPlaylist.mediaPlaylistUrls);
     MediaPlaylistBundle primaryBundle = playlistBundles.get(primaryMediaPlaylistUrl);
@@ -447,7 +482,7 @@ public final class DefaultHlsPlaylistTracker
 
     private final Uri playlistUrl;
     private final Loader mediaPlaylistLoader;
-    private final ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable;
+    private final DataSource mediaPlaylistDataSource;
 
     @Nullable private HlsMediaPlaylist playlistSnapshot;
     private long lastSnapshotLoadMs;
@@ -455,17 +490,17 @@ public final class DefaultHlsPlaylistTracker
     private long earliestNextLoadTimeMs;
     private long blacklistUntilMs;
     private boolean loadPending;
+    private boolean deltaUpdateFailed;
     private IOException playlistError;
 
     public MediaPlaylistBundle(Uri playlistUrl) {
       this.playlistUrl = playlistUrl;
-      mediaPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MediaPlaylist");
-      mediaPlaylistLoadable =
-          new ParsingLoadable<>(
-              dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
-              playlistUrl,
-              C.DATA_TYPE_MANIFEST,
-              mediaPlaylistParser);
+      mediaPlaylistLoader =
+          new Loader(
+              "DefaultHlsPlaylistTracker:MediaPlaylist",
+              loaderThreadPool,
+              LoaderThreadPool.PRIORITY_MANIFEST);
+      mediaPlaylistDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST);
     }
 
     @Nullable
@@ -555,6 +590,24 @@ public final class DefaultHlsPlaylistTracker
         long loadDurationMs,
         IOException error,
         int errorCount) {
+      if (error instanceof HlsPlaylistParser.DeltaUpdateException) {
+        // The snapshot doesn't contain the segments that the delta update skipped. Report the
+        // error, which is recovered from by loading the playlist again in full without waiting.
+        eventDispatcher.loadError(
+            loadable.dataSpec,
+            loadable.getUri(),
+            loadable.getResponseHeaders(),
+            C.DATA_TYPE_MANIFEST,
+            elapsedRealtimeMs,
+            loadDurationMs,
+            loadable.bytesLoaded(),
+            error,
+            /* wasCanceled= */ false);
+        deltaUpdateFailed = true;
+        earliestNextLoadTimeMs = 0;
+        loadPlaylist();
+        return Loader.DONT_RETRY;
+      }
       LoadErrorAction loadErrorAction;
 
       long blacklistDurationMs =
@@ -605,6 +658,13 @@ public final class DefaultHlsPlaylistTracker
     // Internal methods.
 
     private void loadPlaylistImmediately() {
+      // The parser reuses the unchanged segments of the current snapshot.
+      ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable =
+          new ParsingLoadable<>(
+              mediaPlaylistDataSource,
+              getMediaPlaylistUriForReload(),
+              C.DATA_TYPE_MANIFEST,
+              playlistParserFactory.createPlaylistParser(masterPlaylist, playlistSnapshot));
       long elapsedRealtime =
           mediaPlaylistLoader.startLoading(
               mediaPlaylistLoadable,
@@ -616,10 +676,31 @@ public final class DefaultHlsPlaylistTracker
           elapsedRealtime);
     }
 
+    /**
+     * Returns the URL from which to reload the playlist. A playlist delta update is requested if
+     * the server supports them and the snapshot is recent enough for the update to apply to it,
+     * as required by the Playlist Delta Updates section of RFC 8216bis, unless the previous delta
+     * update failed.
+     */
+    private Uri getMediaPlaylistUriForReload() {
+      if (playlistSnapshot == null
+          || playlistSnapshot.hasEndTag
+          || playlistSnapshot.canSkipUntilUs == C.TIME_UNSET
+          || deltaUpdateFailed) {
+        return playlistUrl;
+      }
+      long snapshotAgeMs = SystemClock.elapsedRealtime() - lastSnapshotLoadMs;
+      if (snapshotAgeMs >= C.usToMs(playlistSnapshot.canSkipUntilUs) / 2) {
+        return playlistUrl;
+      }
+      return playlistUrl.buildUpon().appendQueryParameter(SKIP_PARAM, "YES").build();
+    }
+
     private void processLoadedPlaylist(HlsMediaPlaylist loadedPlaylist, long loadDurationMs) {
       HlsMediaPlaylist oldPlaylist = playlistSnapshot;
       long currentTimeMs = SystemClock.elapsedRealtime();
       lastSnapshotLoadMs = currentTimeMs;
+      deltaUpdateFailed = false;
       playlistSnapshot = getLatestPlaylistSnapshot(oldPlaylist, loadedPlaylist);
       if (playlistSnapshot != oldPlaylist) {
         playlistError = null;
@@ -152,6 +152,30 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       this.hasGapTag = hasGapTag;
     }
 
+    /**
+     * Returns a segment identical to this one except for the start time and the discontinuity
+     * sequence, which are set to the specified values.
+     *
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @return The segment.
+     */
+    public Segment copyWith(long relativeStartTimeUs, int relativeDiscontinuitySequence) {
+      return new Segment(
+          url,
+          initializationSegment,
+          title,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
+    }
+
     @Override
     public int compareTo(Long relativeStartTimeUs) {
       return this.relativeStartTimeUs > relativeStartTimeUs
@@ -222,6 +246,12 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    * acquisition data. Null if none of the segments in the playlist is CDM-encrypted.
    */
   @Nullable public final DrmInitData protectionSchemes;
+  /**
+   * The skip boundary in microseconds, as defined by the CAN-SKIP-UNTIL attribute of
+   * #EXT-X-SERVER-CONTROL, or {@link C#TIME_UNSET} if the server doesn't support playlist delta
+   * updates.
+   */
+  public final long canSkipUntilUs;
   /**
    * The list of segments in the playlist.
    */
@@ -264,6 +294,60 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       boolean hasProgramDateTime,
       @Nullable DrmInitData protectionSchemes,
       List<Segment> segments) {
+    this(
+        playlistType,
+        baseUri,
+        tags,
+        startOffsetUs,
+        startTimeUs,
+        hasDiscontinuitySequence,
+        discontinuitySequence,
+        mediaSequence,
+        version,
+        targetDurationUs,
+        hasIndependentSegments,
+        hasEndTag,
+        hasProgramDateTime,
+        protectionSchemes,
+        /* canSkipUntilUs= */ C.TIME_UNSET,
+        segments);
+  }
+
+  /**
+   * @param playlistType See {@link #playlistType}.
+   * @param baseUri See {@link #baseUri}.
+   * @param tags See {@link #tags}.
+   * @param startOffsetUs See {@link #startOffsetUs}.
+   * @param startTimeUs See {@link #startTimeUs}.
+   * @param hasDiscontinuitySequence See {@link #hasDiscontinuitySequence}.
+   * @param discontinuitySequence See {@link #discontinuitySequence}.
+   * @param mediaSequence See {@link #mediaSequence}.
+   * @param version See {@link #version}.
+   * @param targetDurationUs See {@link #targetDurationUs}.
+   * @param hasIndependentSegments See {@link #hasIndependentSegments}.
+   * @param hasEndTag See {@link #hasEndTag}.
+   * @param protectionSchemes See {@link #protectionSchemes}.
+   * @param hasProgramDateTime See {@link #hasProgramDateTime}.
+   * @param canSkipUntilUs See {@link #canSkipUntilUs}.
+   * @param segments See {@link #segments}.
+   */
+  public HlsMediaPlaylist(
+      @PlaylistType int playlistType,
+      String baseUri,
+      List<String> tags,
+      long startOffsetUs,
+      long startTimeUs,
+      boolean hasDiscontinuitySequence,
+      int discontinuitySequence,
+      long mediaSequence,
+      int version,
+      long targetDurationUs,
+      boolean hasIndependentSegments,
+      boolean hasEndTag,
+      boolean hasProgramDateTime,
+      @Nullable DrmInitData protectionSchemes,
+      long canSkipUntilUs,
+      List<Segment> segments) {
     super(baseUri, tags, hasIndependentSegments);
     this.playlistType = playlistType;
     this.startTimeUs = startTimeUs;
@@ -275,7 +359,11 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     this.hasEndTag = hasEndTag;
     this.hasProgramDateTime = hasProgramDateTime;
     this.protectionSchemes = protectionSchemes;
-    this.segments = Collections.unmodifiableList(segments);
+    this.canSkipUntilUs = canSkipUntilUs;
+    this.segments =
+        segments instanceof RelocatedSegmentList
+            ? segments
+            : Collections.unmodifiableList(segments);
     if (!segments.isEmpty()) {
       Segment last = segments.get(segments.size() - 1);
       durationUs = last.relativeStartTimeUs + last.durationUs;
@@ -343,6 +431,7 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         hasEndTag,
         hasProgramDateTime,
         protectionSchemes,
+        canSkipUntilUs,
         segments);
   }
 
@@ -369,6 +458,7 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         /* hasEndTag= */ true,
         hasProgramDateTime,
         protectionSchemes,
+        canSkipUntilUs,
         segments);
   }
 
@@ -50,8 +50,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.PolyNull;
 
 /**
@@ -82,6 +80,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final String TAG_SESSION_KEY = "#EXT-X-SESSION-KEY";
   private static final String TAG_BYTERANGE = "#EXT-X-BYTERANGE";
   private static final String TAG_GAP = "#EXT-X-GAP";
+  private static final String TAG_SERVER_CONTROL = "#EXT-X-SERVER-CONTROL";
+  private static final String TAG_SKIP = "#EXT-X-SKIP";
 
   private static final String TYPE_AUDIO = "AUDIO";
   private static final String TYPE_VIDEO = "VIDEO";
@@ -105,69 +105,87 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   private static final String ATTR_CLOSED_CAPTIONS_NONE = "CLOSED-CAPTIONS=NONE";
 
-  private static final Pattern REGEX_AVERAGE_BANDWIDTH =
-      Pattern.compile("AVERAGE-BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_VIDEO = Pattern.compile("VIDEO=\"(.+?)\"");
-  private static final Pattern REGEX_AUDIO = Pattern.compile("AUDIO=\"(.+?)\"");
-  private static final Pattern REGEX_SUBTITLES = Pattern.compile("SUBTITLES=\"(.+?)\"");
-  private static final Pattern REGEX_CLOSED_CAPTIONS = Pattern.compile("CLOSED-CAPTIONS=\"(.+?)\"");
-  private static final Pattern REGEX_BANDWIDTH = Pattern.compile("[^-]BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_CHANNELS = Pattern.compile("CHANNELS=\"(.+?)\"");
-  private static final Pattern REGEX_CODECS = Pattern.compile("CODECS=\"(.+?)\"");
-  private static final Pattern REGEX_RESOLUTION = Pattern.compile("RESOLUTION=(\\d+x\\d+)");
-  private static final Pattern REGEX_FRAME_RATE = Pattern.compile("FRAME-RATE=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_TARGET_DURATION = Pattern.compile(TAG_TARGET_DURATION
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_VERSION = Pattern.compile(TAG_VERSION + ":(\\d+)\\b");
-  private static final Pattern REGEX_PLAYLIST_TYPE = Pattern.compile(TAG_PLAYLIST_TYPE
-      + ":(.+)\\b");
-  private static final Pattern REGEX_MEDIA_SEQUENCE = Pattern.compile(TAG_MEDIA_SEQUENCE
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_MEDIA_DURATION = Pattern.compile(TAG_MEDIA_DURATION
-      + ":([\\d\\.]+)\\b");
-  private static final Pattern REGEX_MEDIA_TITLE =
-      Pattern.compile(TAG_MEDIA_DURATION + ":[\\d\\.]+\\b,(.+)");
-  private static final Pattern REGEX_TIME_OFFSET = Pattern.compile("TIME-OFFSET=(-?[\\d\\.]+)\\b");
-  private static final Pattern REGEX_BYTERANGE = Pattern.compile(TAG_BYTERANGE
-      + ":(\\d+(?:@\\d+)?)\\b");
-  private static final Pattern REGEX_ATTR_BYTERANGE =
-      Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
-  private static final Pattern REGEX_METHOD =
-      Pattern.compile(
-          "METHOD=("
-              + METHOD_NONE
-              + "|"
-              + METHOD_AES_128
-              + "|"
-              + METHOD_SAMPLE_AES
-              + "|"
-              + METHOD_SAMPLE_AES_CENC
-              + "|"
-              + METHOD_SAMPLE_AES_CTR
-              + ")"
-              + "\\s*(?:,|$)");
-  private static final Pattern REGEX_KEYFORMAT = Pattern.compile("KEYFORMAT=\"(.+?)\"");
-  private static final Pattern REGEX_KEYFORMATVERSIONS =
-      Pattern.compile("KEYFORMATVERSIONS=\"(.+?)\"");
-  private static final Pattern REGEX_URI = Pattern.compile("URI=\"(.+?)\"");
-  private static final Pattern REGEX_IV = Pattern.compile("IV=([^,.*]+)");
-  private static final Pattern REGEX_TYPE = Pattern.compile("TYPE=(" + TYPE_AUDIO + "|" + TYPE_VIDEO
-      + "|" + TYPE_SUBTITLES + "|" + TYPE_CLOSED_CAPTIONS + ")");
-  private static final Pattern REGEX_LANGUAGE = Pattern.compile("LANGUAGE=\"(.+?)\"");
-  private static final Pattern REGEX_NAME = Pattern.compile("NAME=\"(.+?)\"");
-  private static final Pattern REGEX_GROUP_ID = Pattern.compile("GROUP-ID=\"(.+?)\"");
-  private static final Pattern REGEX_CHARACTERISTICS = Pattern.compile("CHARACTERISTICS=\"(.+?)\"");
-  private static final Pattern REGEX_INSTREAM_ID =
-      Pattern.compile("INSTREAM-ID=\"((?:CC|SERVICE)\\d+)\"");
-  private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
-  private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
-  private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
-  private static final Pattern REGEX_VALUE = Pattern.compile("VALUE=\"(.+?)\"");
-  private static final Pattern REGEX_IMPORT = Pattern.compile("IMPORT=\"(.+?)\"");
-  private static final Pattern REGEX_VARIABLE_REFERENCE =
-      Pattern.compile("\\{\\$([a-zA-Z0-9\\-_]+)\\}");
+  private static final String VARIABLE_REFERENCE_START = "{$";
+
+  private static final AttributePattern PATTERN_AVERAGE_BANDWIDTH =
+      AttributePattern.integer("AVERAGE-BANDWIDTH=");
+  private static final AttributePattern PATTERN_VIDEO = AttributePattern.quotedString("VIDEO=");
+  private static final AttributePattern PATTERN_AUDIO = AttributePattern.quotedString("AUDIO=");
+  private static final AttributePattern PATTERN_SUBTITLES =
+      AttributePattern.quotedString("SUBTITLES=");
+  private static final AttributePattern PATTERN_CLOSED_CAPTIONS =
+      AttributePattern.quotedString("CLOSED-CAPTIONS=");
+  private static final AttributePattern PATTERN_BANDWIDTH =
+      AttributePattern.integerNotAfterHyphen("BANDWIDTH=");
+  private static final AttributePattern PATTERN_CHANNELS =
+      AttributePattern.quotedString("CHANNELS=");
+  private static final AttributePattern PATTERN_CODECS = AttributePattern.quotedString("CODECS=");
+  private static final AttributePattern PATTERN_RESOLUTION =
+      AttributePattern.resolution("RESOLUTION=");
+  private static final AttributePattern PATTERN_FRAME_RATE =
+      AttributePattern.decimal("FRAME-RATE=");
+  private static final AttributePattern PATTERN_TARGET_DURATION =
+      AttributePattern.integer(TAG_TARGET_DURATION + ":");
+  private static final AttributePattern PATTERN_VERSION =
+      AttributePattern.integer(TAG_VERSION + ":");
+  private static final AttributePattern PATTERN_PLAYLIST_TYPE =
+      AttributePattern.trailingString(TAG_PLAYLIST_TYPE + ":");
+  private static final AttributePattern PATTERN_MEDIA_SEQUENCE =
+      AttributePattern.integer(TAG_MEDIA_SEQUENCE + ":");
+  private static final AttributePattern PATTERN_MEDIA_DURATION =
+      AttributePattern.decimal(TAG_MEDIA_DURATION + ":");
+  private static final AttributePattern PATTERN_MEDIA_TITLE =
+      AttributePattern.decimalPrefixedString(TAG_MEDIA_DURATION + ":");
+  private static final AttributePattern PATTERN_TIME_OFFSET =
+      AttributePattern.signedDecimal("TIME-OFFSET=");
+  private static final AttributePattern PATTERN_BYTERANGE =
+      AttributePattern.byteRange(TAG_BYTERANGE + ":");
+  private static final AttributePattern PATTERN_ATTR_BYTERANGE =
+      AttributePattern.quotedByteRange("BYTERANGE=");
+  private static final AttributePattern PATTERN_METHOD =
+      AttributePattern.enumeratedListItem(
+          "METHOD=",
+          METHOD_NONE,
+          METHOD_AES_128,
+          METHOD_SAMPLE_AES,
+          METHOD_SAMPLE_AES_CENC,
+          METHOD_SAMPLE_AES_CTR);
+  private static final AttributePattern PATTERN_KEYFORMAT =
+      AttributePattern.quotedString("KEYFORMAT=");
+  private static final AttributePattern PATTERN_KEYFORMATVERSIONS =
+      AttributePattern.quotedString("KEYFORMATVERSIONS=");
+  private static final AttributePattern PATTERN_URI = AttributePattern.quotedString("URI=");
+  private static final AttributePattern PATTERN_IV = AttributePattern.unquotedString("IV=");
+  private static final AttributePattern PATTERN_TYPE =
+      AttributePattern.enumerated(
+          "TYPE=", TYPE_AUDIO, TYPE_VIDEO, TYPE_SUBTITLES, TYPE_CLOSED_CAPTIONS);
+  private static final AttributePattern PATTERN_LANGUAGE =
+      AttributePattern.quotedString("LANGUAGE=");
+  private static final AttributePattern PATTERN_NAME = AttributePattern.quotedString("NAME=");
+  private static final AttributePattern PATTERN_GROUP_ID =
+      AttributePattern.quotedString("GROUP-ID=");
+  private static final AttributePattern PATTERN_CHARACTERISTICS =
+      AttributePattern.quotedString("CHARACTERISTICS=");
+  private static final AttributePattern PATTERN_INSTREAM_ID =
+      AttributePattern.quotedNumberedId("INSTREAM-ID=", "CC", "SERVICE");
+  private static final AttributePattern PATTERN_AUTOSELECT = createBooleanAttrPattern("AUTOSELECT");
+  private static final AttributePattern PATTERN_DEFAULT = createBooleanAttrPattern("DEFAULT");
+  private static final AttributePattern PATTERN_FORCED = createBooleanAttrPattern("FORCED");
+  private static final AttributePattern PATTERN_VALUE = AttributePattern.quotedString("VALUE=");
+  private static final AttributePattern PATTERN_IMPORT = AttributePattern.quotedString("IMPORT=");
+  private static final AttributePattern PATTERN_CAN_SKIP_UNTIL =
+      AttributePattern.decimal("CAN-SKIP-UNTIL=");
+  private static final AttributePattern PATTERN_SKIPPED_SEGMENTS =
+      AttributePattern.integer("SKIPPED-SEGMENTS=");
+
+  /**
+   * Thrown when a playlist delta update can't be parsed, because the segments it skips aren't in
+   * the previous snapshot of the playlist. The playlist should be loaded again in full.
+   */
+  public static final class DeltaUpdateException extends IOException {}
 
   private final HlsMasterPlaylist masterPlaylist;
+  @Nullable private final HlsMediaPlaylist previousMediaPlaylist;
 
   /**
    * Creates an instance where media playlists are parsed without inheriting attributes from a
@@ -184,7 +202,28 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
    * @param masterPlaylist The master playlist from which media playlists will inherit attributes.
    */
   public HlsPlaylistParser(HlsMasterPlaylist masterPlaylist) {
+    this(masterPlaylist, /* previousMediaPlaylist= */ null);
+  }
+
+  /**
+   * Creates an instance where parsed media playlists inherit attributes from the given master
+   * playlist, and are parsed as refreshes of the given media playlist.
+   *
+   * <p>Segments that are also in the previous playlist, as identified by their media sequence
+   * numbers, are taken from it rather than parsed again. Segments skipped by a playlist delta
+   * update (#EXT-X-SKIP) are taken from it too, and {@link DeltaUpdateException} is thrown if it
+   * doesn't contain them. This saves parsing the segments. A reused segment whose start time
+   * relative to the start of the playlist changes, as it does whenever the playlist's window
+   * slides, is only copied with its new start time once it's accessed.
+   *
+   * @param masterPlaylist The master playlist from which media playlists will inherit attributes.
+   * @param previousMediaPlaylist The previous snapshot of the media playlist being refreshed, or
+   *     null if there isn't one.
+   */
+  public HlsPlaylistParser(
+      HlsMasterPlaylist masterPlaylist, @Nullable HlsMediaPlaylist previousMediaPlaylist) {
     this.masterPlaylist = masterPlaylist;
+    this.previousMediaPlaylist = previousMediaPlaylist;
   }
 
   @Override
@@ -214,7 +253,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             || line.equals(TAG_ENDLIST)) {
           extraLines.add(line);
           return parseMediaPlaylist(
-              masterPlaylist, new LineIterator(extraLines, reader), uri.toString());
+              masterPlaylist,
+              previousMediaPlaylist,
+              new LineIterator(extraLines, reader),
+              uri.toString());
         } else {
           extraLines.add(line);
         }
@@ -282,8 +324,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
       if (line.startsWith(TAG_DEFINE)) {
         variableDefinitions.put(
-            /* key= */ parseStringAttr(line, REGEX_NAME, variableDefinitions),
-            /* value= */ parseStringAttr(line, REGEX_VALUE, variableDefinitions));
+            /* key= */ parseStringAttr(line, PATTERN_NAME, variableDefinitions),
+            /* value= */ parseStringAttr(line, PATTERN_VALUE, variableDefinitions));
       } else if (line.equals(TAG_INDEPENDENT_SEGMENTS)) {
         hasIndependentSegmentsTag = true;
       } else if (line.startsWith(TAG_MEDIA)) {
@@ -292,25 +334,26 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         mediaTags.add(line);
       } else if (line.startsWith(TAG_SESSION_KEY)) {
         String keyFormat =
-            parseOptionalStringAttr(line, REGEX_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
+            parseOptionalStringAttr(
+                line, PATTERN_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
         SchemeData schemeData = parseDrmSchemeData(line, keyFormat, variableDefinitions);
         if (schemeData != null) {
-          String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
+          String method = parseStringAttr(line, PATTERN_METHOD, variableDefinitions);
           String scheme = parseEncryptionScheme(method);
           sessionKeyDrmInitData.add(new DrmInitData(scheme, schemeData));
         }
       } else if (line.startsWith(TAG_STREAM_INF)) {
         noClosedCaptions |= line.contains(ATTR_CLOSED_CAPTIONS_NONE);
-        int bitrate = parseIntAttr(line, REGEX_BANDWIDTH);
+        int bitrate = parseIntAttr(line, PATTERN_BANDWIDTH);
         String averageBandwidthString =
-            parseOptionalStringAttr(line, REGEX_AVERAGE_BANDWIDTH, variableDefinitions);
+            parseOptionalStringAttr(line, PATTERN_AVERAGE_BANDWIDTH, variableDefinitions);
         if (averageBandwidthString != null) {
           // If available, the average bandwidth attribute is used as the variant's bitrate.
           bitrate = Integer.parseInt(averageBandwidthString);
         }
-        String codecs = parseOptionalStringAttr(line, REGEX_CODECS, variableDefinitions);
+        String codecs = parseOptionalStringAttr(line, PATTERN_CODECS, variableDefinitions);
         String resolutionString =
-            parseOptionalStringAttr(line, REGEX_RESOLUTION, variableDefinitions);
+            parseOptionalStringAttr(line, PATTERN_RESOLUTION, variableDefinitions);
         int width;
         int height;
         if (resolutionString != null) {
@@ -328,16 +371,16 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         }
         float frameRate = Format.NO_VALUE;
         String frameRateString =
-            parseOptionalStringAttr(line, REGEX_FRAME_RATE, variableDefinitions);
+            parseOptionalStringAttr(line, PATTERN_FRAME_RATE, variableDefinitions);
         if (frameRateString != null) {
           frameRate = Float.parseFloat(frameRateString);
         }
-        String videoGroupId = parseOptionalStringAttr(line, REGEX_VIDEO, variableDefinitions);
-        String audioGroupId = parseOptionalStringAttr(line, REGEX_AUDIO, variableDefinitions);
+        String videoGroupId = parseOptionalStringAttr(line, PATTERN_VIDEO, variableDefinitions);
+        String audioGroupId = parseOptionalStringAttr(line, PATTERN_AUDIO, variableDefinitions);
         String subtitlesGroupId =
-            parseOptionalStringAttr(line, REGEX_SUBTITLES, variableDefinitions);
+            parseOptionalStringAttr(line, PATTERN_SUBTITLES, variableDefinitions);
         String closedCaptionsGroupId =
-            parseOptionalStringAttr(line, REGEX_CLOSED_CAPTIONS, variableDefinitions);
+            parseOptionalStringAttr(line, PATTERN_CLOSED_CAPTIONS, variableDefinitions);
         line =
             replaceVariableReferences(
                 iterator.next(), variableDefinitions); // #EXT-X-STREAM-INF's URI.
@@ -389,18 +432,18 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
     for (int i = 0; i < mediaTags.size(); i++) {
       line = mediaTags.get(i);
-      String groupId = parseStringAttr(line, REGEX_GROUP_ID, variableDefinitions);
-      String name = parseStringAttr(line, REGEX_NAME, variableDefinitions);
-      String referenceUri = parseOptionalStringAttr(line, REGEX_URI, variableDefinitions);
+      String groupId = parseStringAttr(line, PATTERN_GROUP_ID, variableDefinitions);
+      String name = parseStringAttr(line, PATTERN_NAME, variableDefinitions);
+      String referenceUri = parseOptionalStringAttr(line, PATTERN_URI, variableDefinitions);
       Uri uri = referenceUri == null ? null : UriUtil.resolveToUri(baseUri, referenceUri);
-      String language = parseOptionalStringAttr(line, REGEX_LANGUAGE, variableDefinitions);
+      String language = parseOptionalStringAttr(line, PATTERN_LANGUAGE, variableDefinitions);
       @C.SelectionFlags int selectionFlags = parseSelectionFlags(line);
       @C.RoleFlags int roleFlags = parseRoleFlags(line, variableDefinitions);
       String formatId = groupId + ":" + name;
       Format format;
       Metadata metadata =
           new Metadata(new HlsTrackMetadataEntry(groupId, name, Collections.emptyList()));
-      switch (parseStringAttr(line, REGEX_TYPE, variableDefinitions)) {
+      switch (parseStringAttr(line, PATTERN_TYPE, variableDefinitions)) {
         case TYPE_VIDEO:
           Variant variant = getVariantWithVideoGroup(variants, groupId);
           String codecs = null;
@@ -481,7 +524,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           subtitles.add(new Rendition(uri, format, groupId, name));
           break;
         case TYPE_CLOSED_CAPTIONS:
-          String instreamId = parseStringAttr(line, REGEX_INSTREAM_ID, variableDefinitions);
+          String instreamId = parseStringAttr(line, PATTERN_INSTREAM_ID, variableDefinitions);
           String mimeType;
           int accessibilityChannel;
           if (instreamId.startsWith("CC")) {
@@ -554,7 +597,11 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   private static HlsMediaPlaylist parseMediaPlaylist(
-      HlsMasterPlaylist masterPlaylist, LineIterator iterator, String baseUri) throws IOException {
+      HlsMasterPlaylist masterPlaylist,
+      @Nullable HlsMediaPlaylist previousMediaPlaylist,
+      LineIterator iterator,
+      String baseUri)
+      throws IOException {
     @HlsMediaPlaylist.PlaylistType int playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_UNKNOWN;
     long startOffsetUs = C.TIME_UNSET;
     long mediaSequence = 0;
@@ -562,13 +609,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     long targetDurationUs = C.TIME_UNSET;
     boolean hasIndependentSegmentsTag = masterPlaylist.hasIndependentSegments;
     boolean hasEndTag = false;
+    long canSkipUntilUs = C.TIME_UNSET;
     Segment initializationSegment = null;
     HashMap<String, String> variableDefinitions = new HashMap<>();
-    List<Segment> segments = new ArrayList<>();
+    RelocatedSegmentList segments = new RelocatedSegmentList();
     List<String> tags = new ArrayList<>();
 
-    long segmentDurationUs = 0;
-    String segmentTitle = "";
+    // The #EXTINF line of the next segment, which is only parsed if the segment is new.
+    @Nullable String segmentMediaDurationLine = null;
     boolean hasDiscontinuitySequence = false;
     int playlistDiscontinuitySequence = 0;
     int relativeDiscontinuitySequence = 0;
@@ -596,17 +644,19 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       }
 
       if (line.startsWith(TAG_PLAYLIST_TYPE)) {
-        String playlistTypeString = parseStringAttr(line, REGEX_PLAYLIST_TYPE, variableDefinitions);
+        String playlistTypeString =
+            parseStringAttr(line, PATTERN_PLAYLIST_TYPE, variableDefinitions);
         if ("VOD".equals(playlistTypeString)) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_VOD;
         } else if ("EVENT".equals(playlistTypeString)) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_EVENT;
         }
       } else if (line.startsWith(TAG_START)) {
-        startOffsetUs = (long) (parseDoubleAttr(line, REGEX_TIME_OFFSET) * C.MICROS_PER_SECOND);
+        startOffsetUs = (long) (parseDoubleAttr(line, PATTERN_TIME_OFFSET) * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_INIT_SEGMENT)) {
-        String uri = parseStringAttr(line, REGEX_URI, variableDefinitions);
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        String uri = parseStringAttr(line, PATTERN_URI, variableDefinitions);
+        String byteRange =
+            parseOptionalStringAttr(line, PATTERN_ATTR_BYTERANGE, variableDefinitions);
         if (byteRange != null) {
           String[] splitByteRange = byteRange.split("@");
           segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
@@ -630,14 +680,14 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         segmentByteRangeOffset = 0;
         segmentByteRangeLength = C.LENGTH_UNSET;
       } else if (line.startsWith(TAG_TARGET_DURATION)) {
-        targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
+        targetDurationUs = parseIntAttr(line, PATTERN_TARGET_DURATION) * C.MICROS_PER_SECOND;
       } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
-        mediaSequence = parseLongAttr(line, REGEX_MEDIA_SEQUENCE);
+        mediaSequence = parseLongAttr(line, PATTERN_MEDIA_SEQUENCE);
         segmentMediaSequence = mediaSequence;
       } else if (line.startsWith(TAG_VERSION)) {
-        version = parseIntAttr(line, REGEX_VERSION);
+        version = parseIntAttr(line, PATTERN_VERSION);
       } else if (line.startsWith(TAG_DEFINE)) {
-        String importName = parseOptionalStringAttr(line, REGEX_IMPORT, variableDefinitions);
+        String importName = parseOptionalStringAttr(line, PATTERN_IMPORT, variableDefinitions);
         if (importName != null) {
           String value = masterPlaylist.variableDefinitions.get(importName);
           if (value != null) {
@@ -647,28 +697,70 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         } else {
           variableDefinitions.put(
-              parseStringAttr(line, REGEX_NAME, variableDefinitions),
-              parseStringAttr(line, REGEX_VALUE, variableDefinitions));
+              parseStringAttr(line, PATTERN_NAME, variableDefinitions),
+              parseStringAttr(line, PATTERN_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_MEDIA_DURATION) * C.MICROS_PER_SECOND);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        segmentMediaDurationLine = line;
+      } else if (line.startsWith(TAG_SERVER_CONTROL)) {
+        String canSkipUntilString =
+            parseOptionalStringAttr(line, PATTERN_CAN_SKIP_UNTIL, variableDefinitions);
+        if (canSkipUntilString != null) {
+          canSkipUntilUs = (long) (Double.parseDouble(canSkipUntilString) * C.MICROS_PER_SECOND);
+        }
+      } else if (line.startsWith(TAG_SKIP)) {
+        int skippedSegmentCount = parseIntAttr(line, PATTERN_SKIPPED_SEGMENTS);
+        if (previousMediaPlaylist == null
+            || segmentMediaSequence < previousMediaPlaylist.mediaSequence
+            || segmentMediaSequence + skippedSegmentCount
+                > previousMediaPlaylist.mediaSequence + previousMediaPlaylist.segments.size()) {
+          throw new DeltaUpdateException();
+        }
+        List<Segment> previousSegments = previousMediaPlaylist.segments;
+        int startIndex = (int) (segmentMediaSequence - previousMediaPlaylist.mediaSequence);
+        int baseRelativeDiscontinuitySequence = relativeDiscontinuitySequence;
+        int startRelativeDiscontinuitySequence =
+            RelocatedSegmentList.getRelativeDiscontinuitySequence(previousSegments, startIndex);
+        for (int i = startIndex; i < startIndex + skippedSegmentCount; i++) {
+          Segment segment = RelocatedSegmentList.getUnrelocatedSegment(previousSegments, i);
+          relativeDiscontinuitySequence =
+              baseRelativeDiscontinuitySequence
+                  + RelocatedSegmentList.getRelativeDiscontinuitySequence(previousSegments, i)
+                  - startRelativeDiscontinuitySequence;
+          segments.add(segment, segmentStartTimeUs, relativeDiscontinuitySequence);
+          segmentStartTimeUs += segment.durationUs;
+          // Carry the state that applied to the skipped segments over to the segments that follow.
+          if (segment.byterangeLength != C.LENGTH_UNSET) {
+            segmentByteRangeOffset = segment.byterangeOffset + segment.byterangeLength;
+          }
+          initializationSegment = segment.initializationSegment;
+          cachedDrmInitData = segment.drmInitData;
+          if (cachedDrmInitData != null && playlistProtectionSchemes == null) {
+            playlistProtectionSchemes = previousMediaPlaylist.protectionSchemes;
+          }
+          fullSegmentEncryptionKeyUri = segment.fullSegmentEncryptionKeyUri;
+          if (segment.encryptionIV == null
+              || !segment.encryptionIV.equals(Long.toHexString(segmentMediaSequence))) {
+            fullSegmentEncryptionIV = segment.encryptionIV;
+          }
+          segmentMediaSequence++;
+        }
       } else if (line.startsWith(TAG_KEY)) {
-        String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
+        String method = parseStringAttr(line, PATTERN_METHOD, variableDefinitions);
         String keyFormat =
-            parseOptionalStringAttr(line, REGEX_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
+            parseOptionalStringAttr(
+                line, PATTERN_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
         fullSegmentEncryptionKeyUri = null;
         fullSegmentEncryptionIV = null;
         if (METHOD_NONE.equals(method)) {
           currentSchemeDatas.clear();
           cachedDrmInitData = null;
         } else /* !METHOD_NONE.equals(method) */ {
-          fullSegmentEncryptionIV = parseOptionalStringAttr(line, REGEX_IV, variableDefinitions);
+          fullSegmentEncryptionIV = parseOptionalStringAttr(line, PATTERN_IV, variableDefinitions);
           if (KEYFORMAT_IDENTITY.equals(keyFormat)) {
             if (METHOD_AES_128.equals(method)) {
               // The segment is fully encrypted using an identity key.
-              fullSegmentEncryptionKeyUri = parseStringAttr(line, REGEX_URI, variableDefinitions);
+              fullSegmentEncryptionKeyUri = parseStringAttr(line, PATTERN_URI, variableDefinitions);
             } else {
               // Do nothing. Samples are encrypted using an identity key, but this is not supported.
               // Hopefully, a traditional DRM alternative is also provided.
@@ -685,7 +777,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
       } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
+        String byteRange = parseStringAttr(line, PATTERN_BYTERANGE, variableDefinitions);
         String[] splitByteRange = byteRange.split("@");
         segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
         if (splitByteRange.length > 1) {
@@ -718,7 +810,6 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           segmentEncryptionIV = Long.toHexString(segmentMediaSequence);
         }
 
-        segmentMediaSequence++;
         if (segmentByteRangeLength == C.LENGTH_UNSET) {
           segmentByteRangeOffset = 0;
         }
@@ -735,23 +826,56 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
 
-        segments.add(
-            new Segment(
-                replaceVariableReferences(line, variableDefinitions),
+        String segmentUrl = replaceVariableReferences(line, variableDefinitions);
+        Segment segment =
+            getUnchangedSegment(
+                previousMediaPlaylist,
+                segmentMediaSequence,
+                segmentUrl,
                 initializationSegment,
-                segmentTitle,
-                segmentDurationUs,
-                relativeDiscontinuitySequence,
-                segmentStartTimeUs,
                 cachedDrmInitData,
                 fullSegmentEncryptionKeyUri,
                 segmentEncryptionIV,
                 segmentByteRangeOffset,
                 segmentByteRangeLength,
-                hasGapTag));
-        segmentStartTimeUs += segmentDurationUs;
-        segmentDurationUs = 0;
-        segmentTitle = "";
+                hasGapTag);
+        if (segment != null) {
+          // The segment is unchanged, so its #EXTINF line needn't be parsed. Its initialization
+          // segment is equivalent to the current one, and replaces it so that the same instance is
+          // shared with the segments that follow. The segment is only copied with its position in
+          // this playlist if it's accessed.
+          initializationSegment = segment.initializationSegment;
+        } else {
+          long segmentDurationUs = 0;
+          String segmentTitle = "";
+          if (segmentMediaDurationLine != null) {
+            segmentDurationUs =
+                (long)
+                    (parseDoubleAttr(segmentMediaDurationLine, PATTERN_MEDIA_DURATION)
+                        * C.MICROS_PER_SECOND);
+            segmentTitle =
+                parseOptionalStringAttr(
+                    segmentMediaDurationLine, PATTERN_MEDIA_TITLE, "", variableDefinitions);
+          }
+          segment =
+              new Segment(
+                  segmentUrl,
+                  initializationSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  relativeDiscontinuitySequence,
+                  segmentStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag);
+        }
+        segments.add(segment, segmentStartTimeUs, relativeDiscontinuitySequence);
+        segmentMediaSequence++;
+        segmentStartTimeUs += segment.durationUs;
+        segmentMediaDurationLine = null;
         if (segmentByteRangeLength != C.LENGTH_UNSET) {
           segmentByteRangeOffset += segmentByteRangeLength;
         }
@@ -774,19 +898,77 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasEndTag,
         /* hasProgramDateTime= */ playlistStartTimeUs != 0,
         playlistProtectionSchemes,
+        canSkipUntilUs,
         segments);
   }
 
+  /**
+   * Returns the segment of {@code previousMediaPlaylist} with the given media sequence number, if
+   * it has the given attributes, or null otherwise. The duration and title of a segment with a
+   * given media sequence number never change (see RFC 8216, Section 6.2.1), so aren't compared.
+   */
+  @Nullable
+  private static Segment getUnchangedSegment(
+      @Nullable HlsMediaPlaylist previousMediaPlaylist,
+      long mediaSequence,
+      String url,
+      @Nullable Segment initializationSegment,
+      @Nullable DrmInitData drmInitData,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String encryptionIV,
+      long byterangeOffset,
+      long byterangeLength,
+      boolean hasGapTag) {
+    if (previousMediaPlaylist == null) {
+      return null;
+    }
+    long index = mediaSequence - previousMediaPlaylist.mediaSequence;
+    if (index < 0 || index >= previousMediaPlaylist.segments.size()) {
+      return null;
+    }
+    Segment segment =
+        RelocatedSegmentList.getUnrelocatedSegment(previousMediaPlaylist.segments, (int) index);
+    return url.equals(segment.url)
+            && byterangeOffset == segment.byterangeOffset
+            && byterangeLength == segment.byterangeLength
+            && hasGapTag == segment.hasGapTag
+            && Util.areEqual(fullSegmentEncryptionKeyUri, segment.fullSegmentEncryptionKeyUri)
+            && Util.areEqual(encryptionIV, segment.encryptionIV)
+            && Util.areEqual(drmInitData, segment.drmInitData)
+            && areEquivalentInitializationSegments(
+                initializationSegment, segment.initializationSegment)
+        ? segment
+        : null;
+  }
+
+  private static boolean areEquivalentInitializationSegments(
+      @Nullable Segment initializationSegment, @Nullable Segment otherInitializationSegment) {
+    if (initializationSegment == otherInitializationSegment) {
+      return true;
+    }
+    if (initializationSegment == null || otherInitializationSegment == null) {
+      return false;
+    }
+    return initializationSegment.url.equals(otherInitializationSegment.url)
+        && initializationSegment.byterangeOffset == otherInitializationSegment.byterangeOffset
+        && initializationSegment.byterangeLength == otherInitializationSegment.byterangeLength
+        && Util.areEqual(
+            initializationSegment.fullSegmentEncryptionKeyUri,
+            otherInitializationSegment.fullSegmentEncryptionKeyUri)
+        && Util.areEqual(
+            initializationSegment.encryptionIV, otherInitializationSegment.encryptionIV);
+  }
+
   @C.SelectionFlags
   private static int parseSelectionFlags(String line) {
     int flags = 0;
-    if (parseOptionalBooleanAttribute(line, REGEX_DEFAULT, false)) {
+    if (parseOptionalBooleanAttribute(line, PATTERN_DEFAULT, false)) {
       flags |= C.SELECTION_FLAG_DEFAULT;
     }
-    if (parseOptionalBooleanAttribute(line, REGEX_FORCED, false)) {
+    if (parseOptionalBooleanAttribute(line, PATTERN_FORCED, false)) {
       flags |= C.SELECTION_FLAG_FORCED;
     }
-    if (parseOptionalBooleanAttribute(line, REGEX_AUTOSELECT, false)) {
+    if (parseOptionalBooleanAttribute(line, PATTERN_AUTOSELECT, false)) {
       flags |= C.SELECTION_FLAG_AUTOSELECT;
     }
     return flags;
@@ -795,7 +977,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   @C.RoleFlags
   private static int parseRoleFlags(String line, Map<String, String> variableDefinitions) {
     String concatenatedCharacteristics =
-        parseOptionalStringAttr(line, REGEX_CHARACTERISTICS, variableDefinitions);
+        parseOptionalStringAttr(line, PATTERN_CHARACTERISTICS, variableDefinitions);
     if (TextUtils.isEmpty(concatenatedCharacteristics)) {
       return 0;
     }
@@ -817,7 +999,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   private static int parseChannelsAttribute(String line, Map<String, String> variableDefinitions) {
-    String channelsString = parseOptionalStringAttr(line, REGEX_CHANNELS, variableDefinitions);
+    String channelsString = parseOptionalStringAttr(line, PATTERN_CHANNELS, variableDefinitions);
     return channelsString != null
         ? Integer.parseInt(Util.splitAtFirst(channelsString, "/")[0])
         : Format.NO_VALUE;
@@ -828,9 +1010,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       String line, String keyFormat, Map<String, String> variableDefinitions)
       throws ParserException {
     String keyFormatVersions =
-        parseOptionalStringAttr(line, REGEX_KEYFORMATVERSIONS, "1", variableDefinitions);
+        parseOptionalStringAttr(line, PATTERN_KEYFORMATVERSIONS, "1", variableDefinitions);
     if (KEYFORMAT_WIDEVINE_PSSH_BINARY.equals(keyFormat)) {
-      String uriString = parseStringAttr(line, REGEX_URI, variableDefinitions);
+      String uriString = parseStringAttr(line, PATTERN_URI, variableDefinitions);
       return new SchemeData(
           C.WIDEVINE_UUID,
           MimeTypes.VIDEO_MP4,
@@ -838,7 +1020,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     } else if (KEYFORMAT_WIDEVINE_PSSH_JSON.equals(keyFormat)) {
       return new SchemeData(C.WIDEVINE_UUID, "hls", Util.getUtf8Bytes(line));
     } else if (KEYFORMAT_PLAYREADY.equals(keyFormat) && "1".equals(keyFormatVersions)) {
-      String uriString = parseStringAttr(line, REGEX_URI, variableDefinitions);
+      String uriString = parseStringAttr(line, PATTERN_URI, variableDefinitions);
       byte[] data = Base64.decode(uriString.substring(uriString.indexOf(',')), Base64.DEFAULT);
       byte[] psshData = PsshAtomUtil.buildPsshAtom(C.PLAYREADY_UUID, data);
       return new SchemeData(C.PLAYREADY_UUID, MimeTypes.VIDEO_MP4, psshData);
@@ -852,20 +1034,21 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         : C.CENC_TYPE_cbcs;
   }
 
-  private static int parseIntAttr(String line, Pattern pattern) throws ParserException {
+  private static int parseIntAttr(String line, AttributePattern pattern) throws ParserException {
     return Integer.parseInt(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
-  private static long parseLongAttr(String line, Pattern pattern) throws ParserException {
+  private static long parseLongAttr(String line, AttributePattern pattern) throws ParserException {
     return Long.parseLong(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
-  private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
+  private static double parseDoubleAttr(String line, AttributePattern pattern)
+      throws ParserException {
     return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
   private static String parseStringAttr(
-      String line, Pattern pattern, Map<String, String> variableDefinitions)
+      String line, AttributePattern pattern, Map<String, String> variableDefinitions)
       throws ParserException {
     String value = parseOptionalStringAttr(line, pattern, variableDefinitions);
     if (value != null) {
@@ -876,17 +1059,19 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   private static @Nullable String parseOptionalStringAttr(
-      String line, Pattern pattern, Map<String, String> variableDefinitions) {
+      String line, AttributePattern pattern, Map<String, String> variableDefinitions) {
     return parseOptionalStringAttr(line, pattern, null, variableDefinitions);
   }
 
   private static @PolyNull String parseOptionalStringAttr(
       String line,
-      Pattern pattern,
+      AttributePattern pattern,
       @PolyNull String defaultValue,
       Map<String, String> variableDefinitions) {
-    Matcher matcher = pattern.matcher(line);
-    String value = matcher.find() ? matcher.group(1) : defaultValue;
+    String value = pattern.find(line);
+    if (value == null) {
+      value = defaultValue;
+    }
     return variableDefinitions.isEmpty() || value == null
         ? value
         : replaceVariableReferences(value, variableDefinitions);
@@ -894,33 +1079,59 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   private static String replaceVariableReferences(
       String string, Map<String, String> variableDefinitions) {
-    Matcher matcher = REGEX_VARIABLE_REFERENCE.matcher(string);
-    // TODO: Replace StringBuffer with StringBuilder once Java 9 is available.
-    StringBuffer stringWithReplacements = new StringBuffer();
-    while (matcher.find()) {
-      String groupName = matcher.group(1);
-      if (variableDefinitions.containsKey(groupName)) {
-        matcher.appendReplacement(
-            stringWithReplacements, Matcher.quoteReplacement(variableDefinitions.get(groupName)));
+    // Finds the references {$name}, where the name is made of [a-zA-Z0-9\-_] characters.
+    int referenceStart = string.indexOf(VARIABLE_REFERENCE_START);
+    if (referenceStart == -1) {
+      return string;
+    }
+    StringBuilder stringWithReplacements = new StringBuilder();
+    int replacedEnd = 0;
+    while (referenceStart != -1) {
+      int nameStart = referenceStart + VARIABLE_REFERENCE_START.length();
+      int nameEnd = nameStart;
+      while (nameEnd < string.length() && isVariableNameChar(string.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      if (nameEnd == nameStart || nameEnd == string.length() || string.charAt(nameEnd) != '}') {
+        referenceStart = string.indexOf(VARIABLE_REFERENCE_START, referenceStart + 1);
+        continue;
+      }
+      String name = string.substring(nameStart, nameEnd);
+      if (variableDefinitions.containsKey(name)) {
+        stringWithReplacements
+            .append(string, replacedEnd, referenceStart)
+            .append(variableDefinitions.get(name));
+        replacedEnd = nameEnd + 1;
       } else {
         // The variable is not defined. The value is ignored.
       }
+      referenceStart = string.indexOf(VARIABLE_REFERENCE_START, nameEnd + 1);
+    }
+    if (replacedEnd == 0) {
+      return string;
     }
-    matcher.appendTail(stringWithReplacements);
-    return stringWithReplacements.toString();
+    return stringWithReplacements.append(string, replacedEnd, string.length()).toString();
+  }
+
+  private static boolean isVariableNameChar(char c) {
+    return (c >= 'a' && c <= 'z')
+        || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9')
+        || c == '-'
+        || c == '_';
   }
 
   private static boolean parseOptionalBooleanAttribute(
-      String line, Pattern pattern, boolean defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return matcher.group(1).equals(BOOLEAN_TRUE);
+      String line, AttributePattern pattern, boolean defaultValue) {
+    String value = pattern.find(line);
+    if (value != null) {
+      return value.equals(BOOLEAN_TRUE);
     }
     return defaultValue;
   }
 
-  private static Pattern compileBooleanAttrPattern(String attribute) {
-    return Pattern.compile(attribute + "=(" + BOOLEAN_FALSE + "|" + BOOLEAN_TRUE + ")");
+  private static AttributePattern createBooleanAttrPattern(String attribute) {
+    return AttributePattern.enumerated(attribute + "=", BOOLEAN_FALSE, BOOLEAN_TRUE);
   }
 
   private static class LineIterator {
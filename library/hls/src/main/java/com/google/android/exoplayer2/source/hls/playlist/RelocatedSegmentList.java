@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of the segments of a media playlist, which may include segments of a
+ * previous snapshot of the playlist whose start times and discontinuity sequence numbers are
+ * different in this one.
+ *
+ * <p>Segments are added with their start times and discontinuity sequence numbers in this playlist,
+ * and a segment whose values differ is only copied with them once it's accessed. Since a refresh
+ * of a live playlist usually accesses few of its segments, this avoids copying the segments that
+ * are carried over whenever the playlist's window slides.
+ */
+/* package */ final class RelocatedSegmentList extends AbstractList<Segment>
+    implements RandomAccess {
+
+  private Segment[] segments;
+  private long[] relativeStartTimesUs;
+  private int[] relativeDiscontinuitySequences;
+  private int size;
+
+  public RelocatedSegmentList() {
+    segments = new Segment[16];
+    relativeStartTimesUs = new long[16];
+    relativeDiscontinuitySequences = new int[16];
+  }
+
+  /**
+   * Adds a segment at the end of the list. Must not be called once the list has been passed to a
+   * playlist.
+   *
+   * @param segment The segment, which may have a different start time or discontinuity sequence
+   *     number than the ones it has in this list.
+   * @param relativeStartTimeUs The start time of the segment in this list. See {@link
+   *     Segment#relativeStartTimeUs}.
+   * @param relativeDiscontinuitySequence The discontinuity sequence number of the segment in this
+   *     list. See {@link Segment#relativeDiscontinuitySequence}.
+   */
+  public void add(Segment segment, long relativeStartTimeUs, int relativeDiscontinuitySequence) {
+    if (size == segments.length) {
+      int newLength = size * 2;
+      segments = Arrays.copyOf(segments, newLength);
+      relativeStartTimesUs = Arrays.copyOf(relativeStartTimesUs, newLength);
+      relativeDiscontinuitySequences = Arrays.copyOf(relativeDiscontinuitySequences, newLength);
+    }
+    segments[size] = segment;
+    relativeStartTimesUs[size] = relativeStartTimeUs;
+    relativeDiscontinuitySequences[size] = relativeDiscontinuitySequence;
+    size++;
+  }
+
+  /**
+   * Returns the segment at the given index without copying it. Only the attributes of the segment
+   * that don't depend on its position in the playlist are valid.
+   *
+   * @param segments The segments of a playlist.
+   * @param index The index of the segment.
+   * @return The segment.
+   */
+  public static Segment getUnrelocatedSegment(List<Segment> segments, int index) {
+    return segments instanceof RelocatedSegmentList
+        ? ((RelocatedSegmentList) segments).segments[index]
+        : segments.get(index);
+  }
+
+  /**
+   * Returns the {@link Segment#relativeDiscontinuitySequence} of the segment at the given index,
+   * without copying it.
+   *
+   * @param segments The segments of a playlist.
+   * @param index The index of the segment.
+   * @return The discontinuity sequence number of the segment.
+   */
+  public static int getRelativeDiscontinuitySequence(List<Segment> segments, int index) {
+    return segments instanceof RelocatedSegmentList
+        ? ((RelocatedSegmentList) segments).relativeDiscontinuitySequences[index]
+        : segments.get(index).relativeDiscontinuitySequence;
+  }
+
+  @Override
+  public Segment get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException();
+    }
+    Segment segment = segments[index];
+    long relativeStartTimeUs = relativeStartTimesUs[index];
+    int relativeDiscontinuitySequence = relativeDiscontinuitySequences[index];
+    if (segment.relativeStartTimeUs != relativeStartTimeUs
+        || segment.relativeDiscontinuitySequence != relativeDiscontinuitySequence) {
+      segment = segment.copyWith(relativeStartTimeUs, relativeDiscontinuitySequence);
+      // Segments are immutable, so concurrent accesses may at worst copy a segment more than once.
+      segments[index] = segment;
+    }
+    return segment;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+}
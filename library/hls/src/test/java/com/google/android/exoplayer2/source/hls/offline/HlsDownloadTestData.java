@@ -66,6 +66,25 @@ import java.nio.charset.Charset;
               + "#EXT-X-ENDLIST")
           .getBytes(Charset.forName(C.UTF8_NAME));
 
+  String LIVE_MEDIA_PLAYLIST_URI = "live_index.m3u8";
+
+  byte[] LIVE_MEDIA_PLAYLIST_DATA =
+      ("#EXTM3U\n"
+              + "#EXT-X-TARGETDURATION:10\n"
+              + "#EXT-X-VERSION:3\n"
+              + "#EXT-X-MEDIA-SEQUENCE:0\n"
+              + "#EXTINF:9.97667,\n"
+              + "fileSequence0.ts\n"
+              + "#EXTINF:9.97667,\n"
+              + "fileSequence1.ts\n"
+              + "#EXTINF:9.97667,\n"
+              + "fileSequence2.ts\n"
+              + "#EXTINF:9.97667,\n"
+              + "fileSequence3.ts\n"
+              + "#EXTINF:9.97667,\n"
+              + "fileSequence4.ts\n")
+          .getBytes(Charset.forName(C.UTF8_NAME));
+
   String ENC_MEDIA_PLAYLIST_URI = "enc_index.m3u8";
 
   byte[] ENC_MEDIA_PLAYLIST_DATA =
@@ -17,6 +17,8 @@ package com.google.android.exoplayer2.source.hls.offline;
 
 import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.ENC_MEDIA_PLAYLIST_DATA;
 import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.ENC_MEDIA_PLAYLIST_URI;
+import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.LIVE_MEDIA_PLAYLIST_DATA;
+import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.LIVE_MEDIA_PLAYLIST_URI;
 import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.MASTER_MEDIA_PLAYLIST_1_INDEX;
 import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.MASTER_MEDIA_PLAYLIST_2_INDEX;
 import static com.google.android.exoplayer2.source.hls.offline.HlsDownloadTestData.MASTER_PLAYLIST_DATA;
@@ -37,6 +39,7 @@ import static com.google.common.truth.Truth.assertThat;
 import android.net.Uri;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.offline.DefaultDownloaderFactory;
 import com.google.android.exoplayer2.offline.DownloadRequest;
 import com.google.android.exoplayer2.offline.Downloader;
@@ -212,6 +215,38 @@ public class HlsDownloaderTest {
     assertCachedData(cache, fakeDataSet);
   }
 
+  @Test
+  public void testPrefetchMediaPlaylist() throws Exception {
+    HlsDownloader downloader = getHlsDownloader(MEDIA_PLAYLIST_1_URI, getKeys());
+    // Each segment is almost 10 seconds long, so only the first one starts within the duration.
+    downloader.prefetch(/* durationUs= */ 5 * C.MICROS_PER_SECOND);
+
+    assertCachedData(
+        cache,
+        new RequestSet(fakeDataSet)
+            .subset(MEDIA_PLAYLIST_1_URI, MEDIA_PLAYLIST_1_DIR + "fileSequence0.ts"));
+  }
+
+  @Test
+  public void testPrefetchLiveMediaPlaylist() throws Exception {
+    fakeDataSet =
+        new FakeDataSet()
+            .setData(LIVE_MEDIA_PLAYLIST_URI, LIVE_MEDIA_PLAYLIST_DATA)
+            .setRandomData("fileSequence0.ts", 10)
+            .setRandomData("fileSequence1.ts", 11)
+            .setRandomData("fileSequence2.ts", 12)
+            .setRandomData("fileSequence3.ts", 13)
+            .setRandomData("fileSequence4.ts", 14);
+
+    HlsDownloader downloader = getHlsDownloader(LIVE_MEDIA_PLAYLIST_URI, getKeys());
+    downloader.prefetch(/* durationUs= */ 5 * C.MICROS_PER_SECOND);
+
+    // Playback of a live playlist starts at the third segment from the end by default.
+    assertCachedData(
+        cache,
+        new RequestSet(fakeDataSet).subset(LIVE_MEDIA_PLAYLIST_URI, "fileSequence2.ts"));
+  }
+
   private HlsDownloader getHlsDownloader(String mediaPlaylistUri, List<StreamKey> keys) {
     Factory factory = new Factory().setFakeDataSet(fakeDataSet);
     return new HlsDownloader(
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AttributePattern}. */
+@RunWith(AndroidJUnit4.class)
+public final class AttributePatternTest {
+
+  private static final AttributePattern[] PATTERNS =
+      new AttributePattern[] {
+        AttributePattern.quotedString("URI="),
+        AttributePattern.unquotedString("IV="),
+        AttributePattern.trailingString("#EXT-X-PLAYLIST-TYPE:"),
+        AttributePattern.integer("AVERAGE-BANDWIDTH="),
+        AttributePattern.integerNotAfterHyphen("BANDWIDTH="),
+        AttributePattern.decimal("#EXTINF:"),
+        AttributePattern.signedDecimal("TIME-OFFSET="),
+        AttributePattern.resolution("RESOLUTION="),
+        AttributePattern.byteRange("#EXT-X-BYTERANGE:"),
+        AttributePattern.quotedByteRange("BYTERANGE="),
+        AttributePattern.enumerated("TYPE=", "AUDIO", "VIDEO", "SUBTITLES", "CLOSED-CAPTIONS"),
+        AttributePattern.enumeratedListItem(
+            "METHOD=", "NONE", "AES-128", "SAMPLE-AES", "SAMPLE-AES-CENC", "SAMPLE-AES-CTR"),
+        AttributePattern.quotedNumberedId("INSTREAM-ID=", "CC", "SERVICE"),
+        AttributePattern.decimalPrefixedString("#EXTINF:")
+      };
+
+  private static final String[] TOKENS =
+      new String[] {
+        "URI=",
+        "IV=",
+        "#EXT-X-PLAYLIST-TYPE:",
+        "AVERAGE-BANDWIDTH=",
+        "BANDWIDTH=",
+        "#EXTINF:",
+        "TIME-OFFSET=",
+        "RESOLUTION=",
+        "#EXT-X-BYTERANGE:",
+        "BYTERANGE=",
+        "TYPE=",
+        "METHOD=",
+        "INSTREAM-ID=",
+        "AUDIO",
+        "SAMPLE-AES",
+        "-CENC",
+        "CC",
+        "SERVICE",
+        "VOD",
+        "\"",
+        ",",
+        ".",
+        "*",
+        "-",
+        "@",
+        "x",
+        "_",
+        "a",
+        " ",
+        "\t",
+        "\u2028",
+        "0",
+        "1",
+        "12",
+        "345",
+        "0x1F"
+      };
+
+  @Test
+  public void testFindMatchesRegularExpressionOnHlsLines() {
+    String[] lines =
+        new String[] {
+          "#EXT-X-STREAM-INF:BANDWIDTH=1280000,AVERAGE-BANDWIDTH=1000000,RESOLUTION=1280x720",
+          "#EXT-X-KEY:METHOD=SAMPLE-AES-CENC,URI=\"skd://key\",IV=0x1234,KEYFORMAT=\"identity\"",
+          "#EXT-X-KEY:METHOD=SAMPLE-AES ,URI=\"data:text/plain;base64,AAAA\"",
+          "#EXT-X-MEDIA:TYPE=CLOSED-CAPTIONS,GROUP-ID=\"cc\",INSTREAM-ID=\"SERVICE12\"",
+          "#EXT-X-MAP:URI=\"init.mp4\",BYTERANGE=\"720@0\"",
+          "#EXT-X-BYTERANGE:1024@2048",
+          "#EXT-X-START:TIME-OFFSET=-25.5",
+          "#EXT-X-PLAYLIST-TYPE:VOD",
+          "#EXTINF:9.97667,title",
+          "#EXTINF:10.,",
+        };
+    for (String line : lines) {
+      assertMatchesRegularExpression(line);
+    }
+  }
+
+  @Test
+  public void testFindMatchesRegularExpressionOnRandomLines() {
+    Random random = new Random(/* seed= */ 0);
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      line.setLength(0);
+      int tokenCount = random.nextInt(12);
+      for (int j = 0; j < tokenCount; j++) {
+        line.append(TOKENS[random.nextInt(TOKENS.length)]);
+      }
+      assertMatchesRegularExpression(line.toString());
+    }
+  }
+
+  @Test
+  public void testPattern() {
+    assertThat(AttributePattern.integerNotAfterHyphen("BANDWIDTH=").pattern())
+        .isEqualTo("[^-]BANDWIDTH=(\\d+)\\b");
+    assertThat(AttributePattern.enumerated("FORCED=", "NO", "YES").pattern())
+        .isEqualTo("FORCED=(NO|YES)");
+  }
+
+  private static void assertMatchesRegularExpression(String line) {
+    for (AttributePattern pattern : PATTERNS) {
+      Matcher matcher = Pattern.compile(pattern.pattern()).matcher(line);
+      String expectedValue = matcher.find() ? matcher.group(1) : null;
+      assertWithMessage(pattern.pattern() + " in " + line)
+          .that(pattern.find(line))
+          .isEqualTo(expectedValue);
+    }
+  }
+}
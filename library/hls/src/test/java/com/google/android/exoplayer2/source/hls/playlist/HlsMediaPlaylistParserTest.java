@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
@@ -528,4 +529,213 @@ public class HlsMediaPlaylistParserTest {
       assertThat(playlist.segments.get(i - 1).url).isEqualTo("long_path" + i + ".ts");
     }
   }
+
+  @Test
+  public void testParseRefreshReusesUnchangedSegments() throws IOException {
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXTINF:4,\n"
+                + "segment10.ts\n"
+                + "#EXTINF:4,\n"
+                + "segment11.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:3,\n"
+                + "segment12.ts\n",
+            /* previousMediaPlaylist= */ null);
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:11\n"
+                + "#EXTINF:4,\n"
+                + "segment11.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:3,\n"
+                + "segment12.ts\n"
+                + "#EXTINF:2,\n"
+                + "segment13.ts\n",
+            previousPlaylist);
+
+    assertThat(playlist.segments).hasSize(3);
+    assertSegment(playlist.segments.get(0), "segment11.ts", 4_000_000, 0, 0);
+    assertSegment(playlist.segments.get(1), "segment12.ts", 3_000_000, 4_000_000, 1);
+    assertSegment(playlist.segments.get(2), "segment13.ts", 2_000_000, 7_000_000, 1);
+
+    HlsMediaPlaylist appendedPlaylist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:11\n"
+                + "#EXTINF:4,\n"
+                + "segment11.ts\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:3,\n"
+                + "segment12.ts\n"
+                + "#EXTINF:2,\n"
+                + "segment13.ts\n"
+                + "#EXTINF:4,\n"
+                + "segment14.ts\n",
+            playlist);
+
+    // Segments that keep their position in the playlist are the same instances.
+    for (int i = 0; i < 3; i++) {
+      assertThat(appendedPlaylist.segments.get(i)).isSameInstanceAs(playlist.segments.get(i));
+    }
+    assertSegment(appendedPlaylist.segments.get(3), "segment14.ts", 4_000_000, 9_000_000, 1);
+  }
+
+  @Test
+  public void testParseRefreshCopiesRelocatedSegmentsOnlyWhenAccessed() throws IOException {
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:10\n"
+                + "#EXTINF:4,\n"
+                + "segment10.ts\n"
+                + "#EXTINF:4,\n"
+                + "segment11.ts\n"
+                + "#EXTINF:3,\n"
+                + "segment12.ts\n",
+            /* previousMediaPlaylist= */ null);
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:11\n"
+                + "#EXTINF:4,\n"
+                + "segment11.ts\n"
+                + "#EXTINF:3,\n"
+                + "segment12.ts\n",
+            previousPlaylist);
+
+    // The window has slid, but the reused segments haven't been copied yet.
+    assertThat(RelocatedSegmentList.getUnrelocatedSegment(playlist.segments, 0))
+        .isSameInstanceAs(previousPlaylist.segments.get(1));
+    Segment segment = playlist.segments.get(0);
+    assertSegment(segment, "segment11.ts", 4_000_000, 0, 0);
+    assertThat(segment).isNotSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(segment);
+  }
+
+  @Test
+  public void testParseRefreshDoesNotReuseChangedSegments() throws IOException {
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXTINF:4,\n"
+                + "segment0.ts\n",
+            /* previousMediaPlaylist= */ null);
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXTINF:3,\n"
+                + "reset0.ts\n",
+            previousPlaylist);
+
+    assertSegment(playlist.segments.get(0), "reset0.ts", 3_000_000, 0, 0);
+  }
+
+  @Test
+  public void testParseDeltaUpdate() throws IOException {
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=24.0\n"
+                + "#EXT-X-MEDIA-SEQUENCE:20\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                + "#EXTINF:4,\n"
+                + "segment20.m4s\n"
+                + "#EXTINF:4,\n"
+                + "segment21.m4s\n"
+                + "#EXT-X-DISCONTINUITY\n"
+                + "#EXTINF:4,\n"
+                + "segment22.m4s\n"
+                + "#EXTINF:4,\n"
+                + "segment23.m4s\n",
+            /* previousMediaPlaylist= */ null);
+    HlsMediaPlaylist playlist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=24.0\n"
+                + "#EXT-X-MEDIA-SEQUENCE:21\n"
+                + "#EXT-X-SKIP:SKIPPED-SEGMENTS=2\n"
+                + "#EXTINF:4,\n"
+                + "segment23.m4s\n"
+                + "#EXTINF:2,\n"
+                + "segment24.m4s\n",
+            previousPlaylist);
+
+    assertThat(previousPlaylist.canSkipUntilUs).isEqualTo(24_000_000);
+    assertThat(playlist.mediaSequence).isEqualTo(21);
+    assertThat(playlist.segments).hasSize(4);
+    assertSegment(playlist.segments.get(0), "segment21.m4s", 4_000_000, 0, 0);
+    assertSegment(playlist.segments.get(1), "segment22.m4s", 4_000_000, 4_000_000, 1);
+    assertSegment(playlist.segments.get(2), "segment23.m4s", 4_000_000, 8_000_000, 1);
+    assertSegment(playlist.segments.get(3), "segment24.m4s", 2_000_000, 12_000_000, 1);
+    assertThat(playlist.segments.get(3).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+  }
+
+  @Test
+  public void testParseDeltaUpdateOfMissingSegmentsThrows() throws IOException {
+    HlsMediaPlaylist previousPlaylist =
+        parseMediaPlaylist(
+            "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:4\n"
+                + "#EXT-X-MEDIA-SEQUENCE:20\n"
+                + "#EXTINF:4,\n"
+                + "segment20.m4s\n",
+            /* previousMediaPlaylist= */ null);
+    String deltaUpdate =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:20\n"
+            + "#EXT-X-SKIP:SKIPPED-SEGMENTS=2\n"
+            + "#EXTINF:4,\n"
+            + "segment22.m4s\n";
+
+    try {
+      parseMediaPlaylist(deltaUpdate, previousPlaylist);
+      fail();
+    } catch (HlsPlaylistParser.DeltaUpdateException e) {
+      // Expected.
+    }
+    try {
+      parseMediaPlaylist(deltaUpdate, /* previousMediaPlaylist= */ null);
+      fail();
+    } catch (HlsPlaylistParser.DeltaUpdateException e) {
+      // Expected.
+    }
+  }
+
+  private static HlsMediaPlaylist parseMediaPlaylist(
+      String playlistString, @Nullable HlsMediaPlaylist previousMediaPlaylist) throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+    return (HlsMediaPlaylist)
+        new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousMediaPlaylist)
+            .parse(playlistUri, inputStream);
+  }
+
+  private static void assertSegment(
+      Segment segment,
+      String url,
+      long durationUs,
+      long relativeStartTimeUs,
+      int relativeDiscontinuitySequence) {
+    assertThat(segment.url).isEqualTo(url);
+    assertThat(segment.durationUs).isEqualTo(durationUs);
+    assertThat(segment.relativeStartTimeUs).isEqualTo(relativeStartTimeUs);
+    assertThat(segment.relativeDiscontinuitySequence).isEqualTo(relativeDiscontinuitySequence);
+  }
 }
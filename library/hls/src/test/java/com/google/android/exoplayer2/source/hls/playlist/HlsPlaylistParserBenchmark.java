@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the time taken, and the memory allocated, to parse large HLS playlists.
+ *
+ * <p>The generated master playlist stresses variant parsing: it has several hundred
+ * #EXT-X-STREAM-INF tags, each with the attributes that packagers commonly write. The generated
+ * media playlist stresses segment parsing: it has ten thousand segments, with byte ranges and key
+ * rotation.
+ *
+ * <p>The playlists in the test assets are laid out as packagers write them for real-world streams:
+ *
+ * <ul>
+ *   <li>A master playlist of a catalog title, with AVC and HEVC ladders repeated for each of three
+ *       audio groups, dozens of audio and subtitle renditions, session keys and I-frame variants.
+ *   <li>A media playlist of a live stream with a three hour window, with a program date time on
+ *       every segment, SAMPLE-AES key rotation and ad break discontinuities.
+ *   <li>A media playlist of a film packaged as a single file, whose segments are byte ranges of it
+ *       encrypted with AES-128.
+ * </ul>
+ *
+ * <p>Each playlist is parsed a number of times to warm up, and then a number of measured times.
+ * Results are logged. Allocations are only measured when the JVM supports it.
+ */
+@Ignore("Benchmark. Remove this annotation to run it. Results are logged.")
+@RunWith(AndroidJUnit4.class)
+public final class HlsPlaylistParserBenchmark {
+
+  private static final String TAG = "HlsPlaylistParserBenchmark";
+
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.com/test.m3u8");
+  private static final String MASTER_PLAYLIST_MANY_RENDITIONS = "playlist/master_many_renditions";
+  private static final String MEDIA_PLAYLIST_LIVE_WINDOW = "playlist/media_live_window";
+  private static final String MEDIA_PLAYLIST_BYTE_RANGES = "playlist/media_byte_ranges";
+  private static final int VARIANT_COUNT = 400;
+  private static final int SEGMENT_COUNT = 10_000;
+  private static final int SEGMENTS_PER_KEY = 100;
+  private static final int WARMUP_ITERATIONS = 10;
+  private static final int MEASURED_ITERATIONS = 20;
+
+  @Test
+  public void benchmarkMasterPlaylist() throws IOException {
+    byte[] playlist = Util.getUtf8Bytes(createMasterPlaylist());
+
+    HlsMasterPlaylist masterPlaylist = (HlsMasterPlaylist) benchmark("master", playlist);
+
+    assertThat(masterPlaylist.variants).hasSize(VARIANT_COUNT);
+    assertThat(masterPlaylist.audios).hasSize(2);
+    assertThat(masterPlaylist.subtitles).hasSize(2);
+  }
+
+  @Test
+  public void benchmarkMediaPlaylist() throws IOException {
+    byte[] playlist = Util.getUtf8Bytes(createMediaPlaylist());
+
+    HlsMediaPlaylist mediaPlaylist = (HlsMediaPlaylist) benchmark("media", playlist);
+
+    assertThat(mediaPlaylist.segments).hasSize(SEGMENT_COUNT);
+    assertThat(mediaPlaylist.segments.get(SEGMENT_COUNT - 1).byterangeLength)
+        .isEqualTo(1_000_000L + SEGMENT_COUNT - 1);
+  }
+
+  @Test
+  public void benchmarkMasterPlaylistWithManyRenditions() throws IOException {
+    byte[] playlist =
+        TestUtil.getByteArray(
+            ApplicationProvider.getApplicationContext(), MASTER_PLAYLIST_MANY_RENDITIONS);
+
+    HlsMasterPlaylist masterPlaylist =
+        (HlsMasterPlaylist) benchmark("master with many renditions", playlist);
+
+    // Variants that only differ by audio group share a URL, and are deduplicated.
+    assertThat(masterPlaylist.variants).hasSize(22);
+    assertThat(masterPlaylist.audios).hasSize(39);
+    assertThat(masterPlaylist.subtitles).hasSize(25);
+    assertThat(masterPlaylist.sessionKeyDrmInitData).hasSize(1);
+  }
+
+  @Test
+  public void benchmarkLiveMediaPlaylist() throws IOException {
+    byte[] playlist =
+        TestUtil.getByteArray(
+            ApplicationProvider.getApplicationContext(), MEDIA_PLAYLIST_LIVE_WINDOW);
+
+    HlsMediaPlaylist mediaPlaylist = (HlsMediaPlaylist) benchmark("live media", playlist);
+
+    assertThat(mediaPlaylist.hasEndTag).isFalse();
+    assertThat(mediaPlaylist.mediaSequence).isEqualTo(274853);
+    assertThat(mediaPlaylist.segments).hasSize(1800);
+    assertThat(mediaPlaylist.segments.get(1799).drmInitData).isNotNull();
+  }
+
+  @Test
+  public void benchmarkByteRangeMediaPlaylist() throws IOException {
+    byte[] playlist =
+        TestUtil.getByteArray(
+            ApplicationProvider.getApplicationContext(), MEDIA_PLAYLIST_BYTE_RANGES);
+
+    HlsMediaPlaylist mediaPlaylist = (HlsMediaPlaylist) benchmark("byte range media", playlist);
+
+    assertThat(mediaPlaylist.hasEndTag).isTrue();
+    assertThat(mediaPlaylist.segments).hasSize(1800);
+    HlsMediaPlaylist.Segment lastSegment = mediaPlaylist.segments.get(1799);
+    assertThat(lastSegment.byterangeOffset).isEqualTo(2701109675L);
+    assertThat(lastSegment.fullSegmentEncryptionKeyUri)
+        .isEqualTo("https://keys.example.com/film1/3");
+  }
+
+  private static HlsPlaylist benchmark(String name, byte[] playlist) throws IOException {
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    HlsPlaylist result = null;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      result = parser.parse(PLAYLIST_URI, new ByteArrayInputStream(playlist));
+    }
+    long startAllocatedBytes = getThreadAllocatedBytes();
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      result = parser.parse(PLAYLIST_URI, new ByteArrayInputStream(playlist));
+    }
+    long durationNs = System.nanoTime() - startTimeNs;
+    long endAllocatedBytes = getThreadAllocatedBytes();
+
+    String allocations =
+        startAllocatedBytes == C.LENGTH_UNSET || endAllocatedBytes == C.LENGTH_UNSET
+            ? "unknown"
+            : ((endAllocatedBytes - startAllocatedBytes) / MEASURED_ITERATIONS / 1024) + " KiB";
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Parsing %s playlist of %d bytes: %.2f ms/op, %s allocated/op",
+            name,
+            playlist.length,
+            durationNs / 1e6 / MEASURED_ITERATIONS,
+            allocations));
+    return result;
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far, or {@link C#LENGTH_UNSET}
+   * if the JVM doesn't support measuring it.
+   */
+  private static long getThreadAllocatedBytes() {
+    try {
+      Object threadMxBean =
+          Class.forName("java.lang.management.ManagementFactory")
+              .getMethod("getThreadMXBean")
+              .invoke(/* obj= */ null);
+      Method getThreadAllocatedBytes =
+          Class.forName("com.sun.management.ThreadMXBean")
+              .getMethod("getThreadAllocatedBytes", long.class);
+      return (long) getThreadAllocatedBytes.invoke(threadMxBean, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return C.LENGTH_UNSET;
+    }
+  }
+
+  private static String createMasterPlaylist() {
+    StringBuilder playlist =
+        new StringBuilder(
+            "#EXTM3U\n"
+                + "#EXT-X-VERSION:6\n"
+                + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+                + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",LANGUAGE=\"en\",NAME=\"English\","
+                + "AUTOSELECT=YES,DEFAULT=YES,CHANNELS=\"2\",URI=\"audio/en/prog_index.m3u8\"\n"
+                + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",LANGUAGE=\"fr\",NAME=\"French\","
+                + "AUTOSELECT=YES,DEFAULT=NO,CHANNELS=\"2\",URI=\"audio/fr/prog_index.m3u8\"\n"
+                + "#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",LANGUAGE=\"en\",NAME=\"English\","
+                + "AUTOSELECT=YES,DEFAULT=YES,FORCED=NO,URI=\"subs/en/prog_index.m3u8\"\n"
+                + "#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"subs\",LANGUAGE=\"en\","
+                + "NAME=\"English (SDH)\",AUTOSELECT=YES,DEFAULT=NO,FORCED=NO,"
+                + "CHARACTERISTICS=\"public.accessibility.transcribes-spoken-dialog,"
+                + "public.accessibility.describes-music-and-sound\","
+                + "URI=\"subs/en-sdh/prog_index.m3u8\"\n"
+                + "#EXT-X-MEDIA:TYPE=CLOSED-CAPTIONS,GROUP-ID=\"cc\",LANGUAGE=\"en\","
+                + "NAME=\"English\",AUTOSELECT=YES,DEFAULT=YES,INSTREAM-ID=\"CC1\"\n");
+    for (int i = 0; i < VARIANT_COUNT; i++) {
+      int height = 144 + 4 * i;
+      int width = height * 16 / 9;
+      int bandwidth = 100_000 + 20_000 * i;
+      playlist
+          .append("#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=")
+          .append(bandwidth * 9 / 10)
+          .append(",BANDWIDTH=")
+          .append(bandwidth)
+          .append(",CODECS=\"avc1.640028,mp4a.40.2\",RESOLUTION=")
+          .append(width)
+          .append('x')
+          .append(height)
+          .append(",FRAME-RATE=29.970,AUDIO=\"aac\",SUBTITLES=\"subs\",CLOSED-CAPTIONS=\"cc\"\n")
+          .append("video/")
+          .append(i)
+          .append("/prog_index.m3u8\n");
+    }
+    return playlist.toString();
+  }
+
+  private static String createMediaPlaylist() {
+    StringBuilder playlist =
+        new StringBuilder(
+            "#EXTM3U\n"
+                + "#EXT-X-VERSION:6\n"
+                + "#EXT-X-TARGETDURATION:7\n"
+                + "#EXT-X-MEDIA-SEQUENCE:1\n"
+                + "#EXT-X-PLAYLIST-TYPE:EVENT\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\",BYTERANGE=\"720@0\"\n");
+    long byteRangeOffset = 720;
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      if (i % SEGMENTS_PER_KEY == 0) {
+        playlist
+            .append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://keys.example.com/")
+            .append(i / SEGMENTS_PER_KEY)
+            .append("\",IV=0x")
+            .append(String.format(Locale.US, "%032X", i))
+            .append('\n')
+            .append("#EXT-X-PROGRAM-DATE-TIME:2019-08-01T00:00:00.000Z\n");
+      }
+      long segmentLength = 1_000_000 + i;
+      playlist
+          .append("#EXTINF:6.006,\n")
+          .append("#EXT-X-BYTERANGE:")
+          .append(segmentLength)
+          .append('@')
+          .append(byteRangeOffset)
+          .append('\n')
+          .append("media.mp4\n");
+      byteRangeOffset += segmentLength;
+    }
+    return playlist.toString();
+  }
+}
@@ -34,6 +34,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -53,6 +54,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private final Allocator allocator;
   private final TrackGroupArray trackGroups;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
 
   @Nullable private Callback callback;
   private SsManifest manifest;
@@ -69,7 +71,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       EventDispatcher eventDispatcher,
       LoaderErrorThrower manifestLoaderErrorThrower,
-      Allocator allocator) {
+      Allocator allocator,
+      @Nullable LoaderThreadPool loaderThreadPool) {
     this.manifest = manifest;
     this.chunkSourceFactory = chunkSourceFactory;
     this.transferListener = transferListener;
@@ -79,6 +82,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     this.eventDispatcher = eventDispatcher;
     this.allocator = allocator;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderThreadPool = loaderThreadPool;
     trackGroups = buildTrackGroups(manifest, drmSessionManager);
     sampleStreams = newSampleStreamArray(0);
     compositeSequenceableLoader =
@@ -250,7 +254,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         positionUs,
         drmSessionManager,
         loadErrorHandlingPolicy,
-        eventDispatcher);
+        eventDispatcher,
+        loaderThreadPool);
   }
 
   private static TrackGroupArray buildTrackGroups(
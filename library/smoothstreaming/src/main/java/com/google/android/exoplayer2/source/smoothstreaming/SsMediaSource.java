@@ -47,6 +47,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
@@ -74,6 +75,7 @@ public final class SsMediaSource extends BaseMediaSource
     private DrmSessionManager<?> drmSessionManager;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long livePresentationDelayMs;
+    @Nullable private LoaderThreadPool loaderThreadPool;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -217,6 +219,20 @@ public final class SsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets a {@link LoaderThreadPool} on which manifests and media are loaded. The default value is
+     * null, in which case each {@link Loader} loads on a thread of its own.
+     *
+     * @param loaderThreadPool A {@link LoaderThreadPool}, or null.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderThreadPool = loaderThreadPool;
+      return this;
+    }
+
     /**
      * Returns a new {@link SsMediaSource} using the current parameters and the specified sideloaded
      * manifest.
@@ -241,6 +257,7 @@ public final class SsMediaSource extends BaseMediaSource
           drmSessionManager,
           loadErrorHandlingPolicy,
           livePresentationDelayMs,
+          loaderThreadPool,
           tag);
     }
 
@@ -301,6 +318,7 @@ public final class SsMediaSource extends BaseMediaSource
           drmSessionManager,
           loadErrorHandlingPolicy,
           livePresentationDelayMs,
+          loaderThreadPool,
           tag);
     }
 
@@ -344,6 +362,7 @@ public final class SsMediaSource extends BaseMediaSource
   private final EventDispatcher manifestEventDispatcher;
   private final ParsingLoadable.Parser<? extends SsManifest> manifestParser;
   private final ArrayList<SsMediaPeriod> mediaPeriods;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
   @Nullable private final Object tag;
 
   private DataSource manifestDataSource;
@@ -407,6 +426,7 @@ public final class SsMediaSource extends BaseMediaSource
         DrmSessionManager.getDummyDrmSessionManager(),
         new DefaultLoadErrorHandlingPolicy(minLoadableRetryCount),
         DEFAULT_LIVE_PRESENTATION_DELAY_MS,
+        /* loaderThreadPool= */ null,
         /* tag= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
@@ -508,6 +528,7 @@ public final class SsMediaSource extends BaseMediaSource
         DrmSessionManager.getDummyDrmSessionManager(),
         new DefaultLoadErrorHandlingPolicy(minLoadableRetryCount),
         livePresentationDelayMs,
+        /* loaderThreadPool= */ null,
         /* tag= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
@@ -524,6 +545,7 @@ public final class SsMediaSource extends BaseMediaSource
       DrmSessionManager<?> drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       long livePresentationDelayMs,
+      @Nullable LoaderThreadPool loaderThreadPool,
       @Nullable Object tag) {
     Assertions.checkState(manifest == null || !manifest.isLive);
     this.manifest = manifest;
@@ -536,6 +558,7 @@ public final class SsMediaSource extends BaseMediaSource
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.livePresentationDelayMs = livePresentationDelayMs;
     this.manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
+    this.loaderThreadPool = loaderThreadPool;
     this.tag = tag;
     sideloadedManifest = manifest != null;
     mediaPeriods = new ArrayList<>();
@@ -557,7 +580,8 @@ public final class SsMediaSource extends BaseMediaSource
       processManifest();
     } else {
       manifestDataSource = manifestDataSourceFactory.createDataSource();
-      manifestLoader = new Loader("Loader:Manifest");
+      manifestLoader =
+          new Loader("Loader:Manifest", loaderThreadPool, LoaderThreadPool.PRIORITY_MANIFEST);
       manifestLoaderErrorThrower = manifestLoader;
       manifestRefreshHandler = new Handler();
       startLoadingManifest();
@@ -582,7 +606,8 @@ public final class SsMediaSource extends BaseMediaSource
             loadErrorHandlingPolicy,
             eventDispatcher,
             manifestLoaderErrorThrower,
-            allocator);
+            allocator,
+            loaderThreadPool);
     mediaPeriods.add(period);
     return period;
   }
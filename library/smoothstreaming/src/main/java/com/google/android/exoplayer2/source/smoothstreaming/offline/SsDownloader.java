@@ -20,6 +20,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
 import com.google.android.exoplayer2.offline.SegmentDownloader;
 import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest.StreamElement;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifestParser;
@@ -89,4 +90,45 @@ public final class SsDownloader extends SegmentDownloader<SsManifest> {
     return segments;
   }
 
+  @Override
+  protected List<Segment> getPrefetchSegments(
+      DataSource dataSource, SsManifest manifest, long durationUs)
+      throws InterruptedException, IOException {
+    if (!manifest.isLive) {
+      return super.getPrefetchSegments(dataSource, manifest, durationUs);
+    }
+    // Playback of a live stream starts a presentation delay behind the end of the available chunks.
+    long endTimeUs = Long.MIN_VALUE;
+    for (StreamElement streamElement : manifest.streamElements) {
+      if (streamElement.chunkCount > 0) {
+        int lastChunkIndex = streamElement.chunkCount - 1;
+        endTimeUs =
+            Math.max(
+                endTimeUs,
+                streamElement.getStartTimeUs(lastChunkIndex)
+                    + streamElement.getChunkDurationUs(lastChunkIndex));
+      }
+    }
+    long startTimeUs = endTimeUs - C.msToUs(SsMediaSource.DEFAULT_LIVE_PRESENTATION_DELAY_MS);
+    ArrayList<Segment> segments = new ArrayList<>();
+    for (StreamElement streamElement : manifest.streamElements) {
+      if (streamElement.chunkCount == 0) {
+        continue;
+      }
+      int firstChunkIndex = streamElement.getChunkIndex(startTimeUs);
+      long prefetchEndTimeUs = streamElement.getStartTimeUs(firstChunkIndex) + durationUs;
+      for (int i = 0; i < streamElement.formats.length; i++) {
+        for (int j = firstChunkIndex;
+            j < streamElement.chunkCount && streamElement.getStartTimeUs(j) < prefetchEndTimeUs;
+            j++) {
+          segments.add(
+              new Segment(
+                  streamElement.getStartTimeUs(j),
+                  new DataSpec(streamElement.buildRequestUri(i, j))));
+        }
+      }
+    }
+    return segments;
+  }
+
 }
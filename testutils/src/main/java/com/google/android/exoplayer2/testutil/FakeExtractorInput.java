@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * A fake {@link ExtractorInput} capable of simulating various scenarios.
@@ -108,6 +109,19 @@ public final class FakeExtractorInput implements ExtractorInput {
     return readFullyInternal(target, offset, length, true) ? length : C.RESULT_END_OF_INPUT;
   }
 
+  @Override
+  public int read(ByteBuffer target, int length) throws IOException {
+    checkIOException(readPosition, failedReadPositions);
+    length = getReadLength(length);
+    if (!checkXFully(/* allowEndOfInput= */ true, readPosition, length)) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    target.put(data, readPosition, length);
+    readPosition += length;
+    peekPosition = readPosition;
+    return length;
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException {
@@ -197,6 +211,12 @@ public final class FakeExtractorInput implements ExtractorInput {
     throw e;
   }
 
+  @Override
+  public long getBytesCopied() {
+    // Data is always read directly from the backing array into the target.
+    return 0;
+  }
+
   private void checkIOException(int position, SparseBooleanArray failedPositions)
       throws SimulatedIOException {
     if (simulateIOErrors && !failedPositions.get(position)) {